@@ -0,0 +1,139 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import de.lmu.ifi.dbs.elki.database.AbstractDatabase;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Reproducible data set generators for the benchmarks.
+ *
+ * All generators are deterministic given their seed, so that benchmark
+ * results can be compared across commits and machines.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public final class BenchmarkData {
+  /**
+   * Fake constructor: do not instantiate.
+   */
+  private BenchmarkData() {
+    // Do not instantiate.
+  }
+
+  /**
+   * Generate uniformly distributed data in the unit cube.
+   *
+   * @param size Number of points
+   * @param dim Dimensionality
+   * @param seed Random seed
+   * @return Data
+   */
+  public static double[][] uniform(int size, int dim, long seed) {
+    Random rnd = new Random(seed);
+    double[][] data = new double[size][dim];
+    for(double[] row : data) {
+      for(int d = 0; d < dim; d++) {
+        row[d] = rnd.nextDouble();
+      }
+    }
+    return data;
+  }
+
+  /**
+   * Generate a mixture of Gaussian clusters with random centers in the unit
+   * cube, which is more realistic for index structures than uniform data.
+   *
+   * @param size Number of points
+   * @param dim Dimensionality
+   * @param clusters Number of clusters
+   * @param stddev Standard deviation of each cluster
+   * @param seed Random seed
+   * @return Data
+   */
+  public static double[][] gaussianClusters(int size, int dim, int clusters, double stddev, long seed) {
+    Random rnd = new Random(seed);
+    double[][] centers = new double[clusters][dim];
+    for(double[] center : centers) {
+      for(int d = 0; d < dim; d++) {
+        center[d] = rnd.nextDouble();
+      }
+    }
+    double[][] data = new double[size][dim];
+    for(int i = 0; i < size; i++) {
+      double[] center = centers[rnd.nextInt(clusters)], row = data[i];
+      for(int d = 0; d < dim; d++) {
+        row[d] = center[d] + rnd.nextGaussian() * stddev;
+      }
+    }
+    return data;
+  }
+
+  /**
+   * Serialize data as whitespace separated text, as read by the ELKI parsers.
+   *
+   * @param data Data
+   * @param label Label to append to each row, may be {@code null}
+   * @return Text, as UTF-8 bytes
+   */
+  public static byte[] toText(double[][] data, String label) {
+    StringBuilder buf = new StringBuilder();
+    for(double[] row : data) {
+      for(int d = 0; d < row.length; d++) {
+        buf.append(d > 0 ? " " : "").append(row[d]);
+      }
+      if(label != null) {
+        buf.append(' ').append(label);
+      }
+      buf.append('\n');
+    }
+    return buf.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Build a static database from an array, with the given (index)
+   * parameters, e.g. {@link AbstractDatabase.Parameterizer#INDEX_ID}.
+   *
+   * @param data Data
+   * @param params Database parameters, may be {@code null}
+   * @return Initialized database
+   */
+  public static Database makeDatabase(double[][] data, ListParameterization params) {
+    if(params == null) {
+      params = new ListParameterization();
+    }
+    params.addParameter(AbstractDatabase.Parameterizer.DATABASE_CONNECTION_ID, new ArrayAdapterDatabaseConnection(data));
+    Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, params);
+    if(params.hasUnusedParameters()) {
+      throw new IllegalArgumentException("Unused parameters: " + params.getRemainingParameters());
+    }
+    db.initialize();
+    return db;
+  }
+}
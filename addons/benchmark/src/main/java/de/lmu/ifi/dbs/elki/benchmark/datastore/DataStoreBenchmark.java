@@ -0,0 +1,149 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark.datastore;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+
+/**
+ * Benchmark double data stores: the array store used for DBID ranges, and the
+ * hash based store used for arbitrary DBIDs.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DataStoreBenchmark {
+  /**
+   * Number of objects.
+   */
+  private static final int SIZE = 100000;
+
+  /**
+   * Store type: "range" for an array store, "hash" for a hash store.
+   */
+  @Param({ "range", "hash" })
+  public String type;
+
+  /**
+   * DBIDs the store is allocated for.
+   */
+  private DBIDs ids;
+
+  /**
+   * Access order (random permutation).
+   */
+  private ArrayModifiableDBIDs order;
+
+  /**
+   * Prefilled store.
+   */
+  private WritableDoubleDataStore store;
+
+  /**
+   * Set up the DBIDs and the store.
+   */
+  @Setup
+  public void setup() {
+    DBIDRange range = DBIDUtil.generateStaticDBIDRange(SIZE);
+    // Copying the range into an array forces the hash based store.
+    ids = "range".equals(type) ? range : DBIDUtil.newArray(range);
+    order = DBIDUtil.newArray(range);
+    DBIDUtil.randomShuffle(order, new Random(0L));
+    store = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, 0.);
+    double v = 0.;
+    for(DBIDIter it = order.iter(); it.valid(); it.advance()) {
+      store.putDouble(it, ++v);
+    }
+  }
+
+  /**
+   * Allocate and fill a new store.
+   *
+   * @return Store
+   */
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public WritableDoubleDataStore allocateAndWrite() {
+    WritableDoubleDataStore s = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, 0.);
+    double v = 0.;
+    for(DBIDIter it = order.iter(); it.valid(); it.advance()) {
+      s.putDouble(it, ++v);
+    }
+    return s;
+  }
+
+  /**
+   * Random order reads.
+   *
+   * @return Checksum
+   */
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public double read() {
+    double sum = 0.;
+    for(DBIDIter it = order.iter(); it.valid(); it.advance()) {
+      sum += store.doubleValue(it);
+    }
+    return sum;
+  }
+
+  /**
+   * Random order increments.
+   *
+   * @return Store
+   */
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public WritableDoubleDataStore increment() {
+    for(DBIDIter it = order.iter(); it.valid(); it.advance()) {
+      store.increment(it, 1.);
+    }
+    return store;
+  }
+}
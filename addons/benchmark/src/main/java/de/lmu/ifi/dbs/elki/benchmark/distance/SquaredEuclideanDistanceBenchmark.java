@@ -0,0 +1,142 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark.distance;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.benchmark.BenchmarkData;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+
+/**
+ * Benchmark the squared Euclidean distance, on vectors and on raw arrays.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SquaredEuclideanDistanceBenchmark {
+  /**
+   * Number of vectors to compute distances for.
+   */
+  private static final int SIZE = 1024;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "2", "10", "100" })
+  public int dim;
+
+  /**
+   * Vectors.
+   */
+  private DoubleVector[] vecs;
+
+  /**
+   * Query vector.
+   */
+  private DoubleVector query;
+
+  /**
+   * Raw data arrays, the last one is the query.
+   */
+  private double[][] data;
+
+  /**
+   * Generate the data.
+   */
+  @Setup
+  public void setup() {
+    data = BenchmarkData.uniform(SIZE + 1, dim, 0L);
+    vecs = new DoubleVector[SIZE];
+    for(int i = 0; i < SIZE; i++) {
+      vecs[i] = DoubleVector.wrap(data[i]);
+    }
+    query = DoubleVector.wrap(data[SIZE]);
+  }
+
+  /**
+   * Distance of one query to all vectors.
+   *
+   * @return Sum of distances
+   */
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public double distance() {
+    final SquaredEuclideanDistanceFunction df = SquaredEuclideanDistanceFunction.STATIC;
+    double sum = 0.;
+    for(DoubleVector v : vecs) {
+      sum += df.distance(query, v);
+    }
+    return sum;
+  }
+
+  /**
+   * Minimum distance of one query to all vectors (as used in spatial indexes).
+   *
+   * @return Sum of distances
+   */
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public double minDist() {
+    final SquaredEuclideanDistanceFunction df = SquaredEuclideanDistanceFunction.STATIC;
+    double sum = 0.;
+    for(DoubleVector v : vecs) {
+      sum += df.minDist(query, v);
+    }
+    return sum;
+  }
+
+  /**
+   * Distance of one query to all vectors, using raw arrays.
+   *
+   * @return Sum of distances
+   */
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public double distanceArray() {
+    final SquaredEuclideanDistanceFunction df = SquaredEuclideanDistanceFunction.STATIC;
+    final double[] q = data[SIZE];
+    double sum = 0.;
+    for(int i = 0; i < SIZE; i++) {
+      sum += df.distance(q, data[i]);
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark.heap;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.ComparableMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMaxHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleMinHeap;
+
+/**
+ * Benchmark the primitive and object heaps: fill the heap, then empty it.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class HeapBenchmark {
+  /**
+   * Number of elements.
+   */
+  @Param({ "100", "10000" })
+  public int size;
+
+  /**
+   * Keys.
+   */
+  private double[] keys;
+
+  /**
+   * Boxed keys.
+   */
+  private Double[] boxed;
+
+  /**
+   * Generate the keys.
+   */
+  @Setup
+  public void setup() {
+    Random rnd = new Random(0L);
+    keys = new double[size];
+    boxed = new Double[size];
+    for(int i = 0; i < size; i++) {
+      boxed[i] = keys[i] = rnd.nextDouble();
+    }
+  }
+
+  /**
+   * Benchmark {@link DoubleMinHeap}.
+   *
+   * @return Checksum
+   */
+  @Benchmark
+  public double doubleMinHeap() {
+    DoubleMinHeap heap = new DoubleMinHeap(size);
+    for(double k : keys) {
+      heap.add(k);
+    }
+    double sum = 0.;
+    while(!heap.isEmpty()) {
+      sum += heap.poll();
+    }
+    return sum;
+  }
+
+  /**
+   * Benchmark {@link DoubleIntegerMinHeap}.
+   *
+   * @return Checksum
+   */
+  @Benchmark
+  public double doubleIntegerMinHeap() {
+    DoubleIntegerMinHeap heap = new DoubleIntegerMinHeap(size);
+    for(int i = 0; i < keys.length; i++) {
+      heap.add(keys[i], i);
+    }
+    double sum = 0.;
+    while(!heap.isEmpty()) {
+      sum += heap.peekKey() * heap.peekValue();
+      heap.poll();
+    }
+    return sum;
+  }
+
+  /**
+   * Benchmark a bounded {@link DoubleIntegerMaxHeap}, as used for top-k
+   * selection.
+   *
+   * @return Checksum
+   */
+  @Benchmark
+  public double doubleIntegerMaxHeapTop10() {
+    DoubleIntegerMaxHeap heap = new DoubleIntegerMaxHeap(10);
+    for(int i = 0; i < keys.length; i++) {
+      heap.add(keys[i], i, 10);
+    }
+    return heap.peekKey();
+  }
+
+  /**
+   * Benchmark {@link ComparableMinHeap} with boxed keys.
+   *
+   * @return Checksum
+   */
+  @Benchmark
+  public double comparableMinHeap() {
+    ComparableMinHeap<Double> heap = new ComparableMinHeap<>(size);
+    for(Double k : boxed) {
+      heap.add(k);
+    }
+    double sum = 0.;
+    while(!heap.isEmpty()) {
+      sum += heap.poll();
+    }
+    return sum;
+  }
+}
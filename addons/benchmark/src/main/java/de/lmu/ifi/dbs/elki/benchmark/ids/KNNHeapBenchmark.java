@@ -0,0 +1,128 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark.ids;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+
+/**
+ * Benchmark the kNN heaps obtained via {@link DBIDUtil#newHeap}, i.e., the
+ * {@code DoubleIntegerDBIDKNNHeap} of the integer DBID implementation.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class KNNHeapBenchmark {
+  /**
+   * Number of candidates offered to the heap.
+   */
+  private static final int SIZE = 10000;
+
+  /**
+   * Heap size.
+   */
+  @Param({ "1", "10", "100" })
+  public int k;
+
+  /**
+   * Candidate distances.
+   */
+  private double[] dists;
+
+  /**
+   * Candidate ids.
+   */
+  private DBIDRange ids;
+
+  /**
+   * Generate the candidates.
+   */
+  @Setup
+  public void setup() {
+    Random rnd = new Random(0L);
+    dists = new double[SIZE];
+    for(int i = 0; i < SIZE; i++) {
+      dists[i] = rnd.nextDouble();
+    }
+    ids = DBIDUtil.generateStaticDBIDRange(SIZE);
+  }
+
+  /**
+   * Fill a heap.
+   *
+   * @param heap Heap
+   * @return Heap
+   */
+  private KNNHeap fill(KNNHeap heap) {
+    final double[] dists = this.dists;
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      heap.insert(dists[it.getOffset()], it);
+    }
+    return heap;
+  }
+
+  /**
+   * Allocate a heap and insert all candidates.
+   *
+   * @return kNN distance
+   */
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public double insert() {
+    return fill(DBIDUtil.newHeap(k)).getKNNDistance();
+  }
+
+  /**
+   * Allocate a heap, insert all candidates, and produce the sorted result.
+   *
+   * @return Result list
+   */
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public KNNList insertToList() {
+    return fill(DBIDUtil.newHeap(k)).toKNNList();
+  }
+}
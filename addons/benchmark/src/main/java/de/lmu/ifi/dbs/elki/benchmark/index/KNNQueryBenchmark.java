@@ -0,0 +1,154 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark.index;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.benchmark.BenchmarkData;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.AbstractDatabase;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.covertree.AbstractCoverTree;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.covertree.CoverTree;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mtree.MTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Benchmark kNN queries with different index structures, on clustered data.
+ *
+ * The index is built once per trial, and not included in the measurements.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class KNNQueryBenchmark {
+  /**
+   * Number of queries per invocation.
+   */
+  private static final int QUERIES = 1000;
+
+  /**
+   * Index to use.
+   */
+  @Param({ "linear", "rstar", "mtree", "covertree" })
+  public String index;
+
+  /**
+   * Data set size.
+   */
+  @Param({ "100000" })
+  public int size;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "2", "10" })
+  public int dim;
+
+  /**
+   * Number of neighbors.
+   */
+  @Param({ "10" })
+  public int k;
+
+  /**
+   * kNN query.
+   */
+  private KNNQuery<NumberVector> knnq;
+
+  /**
+   * Query objects.
+   */
+  private ArrayDBIDs queries;
+
+  /**
+   * Generate the data and build the index.
+   */
+  @Setup
+  public void setup() {
+    ListParameterization params = new ListParameterization();
+    switch(index){
+    case "linear":
+      break;
+    case "rstar":
+      params.addParameter(AbstractDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+      break;
+    case "mtree":
+      params.addParameter(AbstractDatabase.Parameterizer.INDEX_ID, MTreeFactory.class);
+      break;
+    case "covertree":
+      params.addParameter(AbstractDatabase.Parameterizer.INDEX_ID, CoverTree.Factory.class);
+      params.addParameter(AbstractCoverTree.Factory.Parameterizer.DISTANCE_FUNCTION_ID, EuclideanDistanceFunction.class);
+      break;
+    default:
+      throw new IllegalArgumentException("Unknown index: " + index);
+    }
+    Database db = BenchmarkData.makeDatabase(BenchmarkData.gaussianClusters(size, dim, 20, 0.02, 0L), params);
+    Relation<NumberVector> relation = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    DistanceQuery<NumberVector> distq = db.getDistanceQuery(relation, EuclideanDistanceFunction.STATIC);
+    knnq = db.getKNNQuery(distq, k);
+    queries = DBIDUtil.ensureArray(DBIDUtil.randomSample(relation.getDBIDs(), QUERIES, new Random(1L)));
+  }
+
+  /**
+   * Run the kNN queries.
+   *
+   * @return Checksum
+   */
+  @Benchmark
+  @OperationsPerInvocation(QUERIES)
+  public double knn() {
+    double sum = 0.;
+    for(DBIDIter it = queries.iter(); it.valid(); it.advance()) {
+      sum += knnq.getKNNForDBID(it, k).getKNNDistance();
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.benchmark.BenchmarkData;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.parser.CSVReaderFormat;
+import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
+import de.lmu.ifi.dbs.elki.utilities.io.TokenizedReader;
+import de.lmu.ifi.dbs.elki.utilities.io.Tokenizer;
+
+/**
+ * Benchmark text parsing: the raw {@link TokenizedReader}, and the full
+ * {@link NumberVectorLabelParser} on top of it.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TokenizedReaderBenchmark {
+  /**
+   * Number of rows.
+   */
+  @Param({ "10000" })
+  public int size;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "2", "20" })
+  public int dim;
+
+  /**
+   * Serialized data.
+   */
+  private byte[] text;
+
+  /**
+   * Generate the input.
+   */
+  @Setup
+  public void setup() {
+    text = BenchmarkData.toText(BenchmarkData.uniform(size, dim, 0L), "label");
+  }
+
+  /**
+   * Tokenize and parse all numbers.
+   *
+   * @return Checksum
+   * @throws IOException never
+   */
+  @Benchmark
+  public double tokenize() throws IOException {
+    double sum = 0.;
+    try (TokenizedReader reader = CSVReaderFormat.DEFAULT_FORMAT.makeReader()) {
+      reader.reset(new ByteArrayInputStream(text));
+      Tokenizer tok = reader.getTokenizer();
+      while(reader.nextLineExceptComments()) {
+        for(int i = 0; i < dim && tok.valid(); i++, tok.advance()) {
+          sum += tok.getDouble();
+        }
+      }
+    }
+    return sum;
+  }
+
+  /**
+   * Parse into a bundle of vectors and labels.
+   *
+   * @return Bundle
+   */
+  @Benchmark
+  public MultipleObjectsBundle parse() {
+    return new NumberVectorLabelParser<>(DoubleVector.FACTORY).parse(new ByteArrayInputStream(text));
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+/**
+ * <p>JMH microbenchmarks for performance critical parts of ELKI.</p>
+ *
+ * <p>These benchmarks measure individual primitives (distance functions,
+ * heaps, data stores, parsing, index queries) rather than whole algorithm
+ * runs (for these, see {@link de.lmu.ifi.dbs.elki.algorithm.benchmark}). All
+ * data sets are generated by {@link de.lmu.ifi.dbs.elki.benchmark.BenchmarkData}
+ * from fixed seeds, so results are comparable across commits.</p>
+ *
+ * <p>Build and run with Maven:</p>
+ * <pre>
+ * mvn -P benchmark -pl addons/benchmark -am package
+ * java -jar addons/benchmark/target/benchmarks.jar [JMH options] [regexp]
+ * </pre>
+ * <p>or with Gradle:</p>
+ * <pre>
+ * gradle -Pbenchmark :elki-benchmark:jmh -Pjmh="KNNQueryBenchmark -f 1"
+ * </pre>
+ */
+package de.lmu.ifi.dbs.elki.benchmark;
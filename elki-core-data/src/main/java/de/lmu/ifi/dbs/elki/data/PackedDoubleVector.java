@@ -0,0 +1,236 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.ArrayAdapter;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.DoubleArray;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.NumberArrayAdapter;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferSerializer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+
+/**
+ * Flyweight vector of real numbers, referencing a slice of a shared
+ * {@code double[]} array.
+ *
+ * Many such vectors can share a single packed array (as used by a packed
+ * relation), which avoids one array object per vector and keeps the data
+ * contiguous in memory. The vector does not copy the data, so the backing
+ * array must not be modified while the vector is in use.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class PackedDoubleVector extends AbstractNumberVector {
+  /**
+   * Static factory instance.
+   */
+  public static final PackedDoubleVector.Factory FACTORY = new PackedDoubleVector.Factory();
+
+  /**
+   * Serializer using varint encoding.
+   */
+  public static final ByteBufferSerializer<PackedDoubleVector> VARIABLE_SERIALIZER = new VariableSerializer();
+
+  /**
+   * Backing array, shared with other vectors.
+   */
+  private final double[] data;
+
+  /**
+   * Offset in the backing array.
+   */
+  private final int offset;
+
+  /**
+   * Dimensionality.
+   */
+  private final int dim;
+
+  /**
+   * Constructor, without copying the data.
+   *
+   * @param data Backing array
+   * @param offset Offset of the first value
+   * @param dim Dimensionality
+   */
+  public PackedDoubleVector(double[] data, int offset, int dim) {
+    assert (offset >= 0 && offset + dim <= data.length) : "Slice is out of bounds.";
+    this.data = data;
+    this.offset = offset;
+    this.dim = dim;
+  }
+
+  @Override
+  public int getDimensionality() {
+    return dim;
+  }
+
+  @Override
+  public double doubleValue(int dimension) {
+    assert (dimension < dim) : "Non-existant dimension accessed.";
+    return data[offset + dimension];
+  }
+
+  @Override
+  public long longValue(int dimension) {
+    assert (dimension < dim) : "Non-existant dimension accessed.";
+    return (long) data[offset + dimension];
+  }
+
+  @Override
+  public double[] toArray() {
+    return Arrays.copyOfRange(data, offset, offset + dim);
+  }
+
+  /**
+   * Get the backing array. Do not modify!
+   *
+   * @return Backing array
+   */
+  public double[] getBackingArray() {
+    return data;
+  }
+
+  /**
+   * Get the offset of this vector in the backing array.
+   *
+   * @return Offset
+   */
+  public int getOffset() {
+    return offset;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder featureLine = new StringBuilder();
+    for(int i = 0; i < dim; i++) {
+      featureLine.append(data[offset + i]);
+      if(i + 1 < dim) {
+        featureLine.append(ATTRIBUTE_SEPARATOR);
+      }
+    }
+    return featureLine.toString();
+  }
+
+  /**
+   * Factory for packed double vectors.
+   *
+   * Vectors created by the factory use their own array; the packing happens
+   * when the data is materialized into a relation.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.has PackedDoubleVector
+   */
+  public static class Factory extends AbstractNumberVector.Factory<PackedDoubleVector> {
+    @Override
+    public PackedDoubleVector newNumberVector(double[] values) {
+      return new PackedDoubleVector(values.clone(), 0, values.length);
+    }
+
+    @Override
+    public <A> PackedDoubleVector newFeatureVector(A array, ArrayAdapter<? extends Number, A> adapter) {
+      final int dim = adapter.size(array);
+      double[] values = new double[dim];
+      for(int i = 0; i < dim; i++) {
+        values[i] = adapter.get(array, i).doubleValue();
+      }
+      return new PackedDoubleVector(values, 0, dim);
+    }
+
+    @Override
+    public <A> PackedDoubleVector newNumberVector(A array, NumberArrayAdapter<?, ? super A> adapter) {
+      if(adapter.getClass() == DoubleArray.class) {
+        double[] values = ((DoubleArray) array).toArray();
+        return new PackedDoubleVector(values, 0, values.length);
+      }
+      final int dim = adapter.size(array);
+      double[] values = new double[dim];
+      for(int i = 0; i < dim; i++) {
+        values[i] = adapter.getDouble(array, i);
+      }
+      return new PackedDoubleVector(values, 0, dim);
+    }
+
+    @Override
+    public ByteBufferSerializer<PackedDoubleVector> getDefaultSerializer() {
+      return VARIABLE_SERIALIZER;
+    }
+
+    @Override
+    public Class<? super PackedDoubleVector> getRestrictionClass() {
+      return PackedDoubleVector.class;
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    public static class Parameterizer extends AbstractParameterizer {
+      @Override
+      protected PackedDoubleVector.Factory makeInstance() {
+        return FACTORY;
+      }
+    }
+  }
+
+  /**
+   * Serialization class for variable dimensionality by using VarInt encoding.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.uses PackedDoubleVector - - «serializes»
+   */
+  public static class VariableSerializer implements ByteBufferSerializer<PackedDoubleVector> {
+    @Override
+    public PackedDoubleVector fromByteBuffer(ByteBuffer buffer) throws IOException {
+      final int dimensionality = ByteArrayUtil.readUnsignedVarint(buffer);
+      assert (buffer.remaining() >= ByteArrayUtil.SIZE_DOUBLE * dimensionality) : "Not enough data remaining in buffer to read " + dimensionality + " doubles";
+      final double[] values = new double[dimensionality];
+      for(int i = 0; i < dimensionality; i++) {
+        values[i] = buffer.getDouble();
+      }
+      return new PackedDoubleVector(values, 0, dimensionality);
+    }
+
+    @Override
+    public void toByteBuffer(ByteBuffer buffer, PackedDoubleVector vec) throws IOException {
+      assert (buffer.remaining() >= ByteArrayUtil.SIZE_DOUBLE * vec.dim) : "Not enough space remaining in buffer to write " + vec.dim + " doubles";
+      ByteArrayUtil.writeUnsignedVarint(buffer, vec.dim);
+      for(int i = 0; i < vec.dim; i++) {
+        buffer.putDouble(vec.data[vec.offset + i]);
+      }
+    }
+
+    @Override
+    public int getByteSize(PackedDoubleVector vec) {
+      return ByteArrayUtil.getUnsignedVarintSize(vec.dim) + ByteArrayUtil.SIZE_DOUBLE * vec.dim;
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.datastore.memory;
+
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDBIDDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDFactory;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+
+/**
+ * Writable data store for DBID values, using an open addressing hash table for
+ * arbitrary DBIDs.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class HashIntegerDBIDDBIDStore extends IntegerDBIDHashTable implements WritableDBIDDataStore {
+  /**
+   * Values, parallel to the keys.
+   */
+  private int[] values;
+
+  /**
+   * Value returned for missing keys.
+   */
+  private final int invalid;
+
+  /**
+   * Constructor.
+   *
+   * @param size Expected size
+   */
+  public HashIntegerDBIDDBIDStore(int size) {
+    super(size);
+    this.invalid = DBIDUtil.asInteger(DBIDUtil.invalid());
+  }
+
+  /**
+   * Get the integer value of an entry.
+   *
+   * @param id Key
+   * @return Value, or the invalid DBID
+   */
+  private int intValue(DBIDRef id) {
+    final int i = find(DBIDUtil.asInteger(id));
+    return i >= 0 ? values[i] : invalid;
+  }
+
+  @Override
+  @Deprecated
+  public DBID get(DBIDRef id) {
+    return DBIDUtil.importInteger(intValue(id));
+  }
+
+  @Override
+  @Deprecated
+  public DBID put(DBIDRef id, DBID value) {
+    final int i = insert(DBIDUtil.asInteger(id));
+    final int v = DBIDUtil.asInteger(value);
+    if(i < 0) {
+      values[-i - 1] = v;
+      return DBIDUtil.importInteger(invalid);
+    }
+    final int prev = values[i];
+    values[i] = v;
+    return DBIDUtil.importInteger(prev);
+  }
+
+  @Override
+  public void put(DBIDRef id, DBIDRef value) {
+    putDBID(id, value);
+  }
+
+  @Override
+  public void putDBID(DBIDRef id, DBIDRef value) {
+    final int i = insert(DBIDUtil.asInteger(id));
+    values[i < 0 ? -i - 1 : i] = DBIDUtil.asInteger(value);
+  }
+
+  @Override
+  public DBIDVar assignVar(DBIDRef id, DBIDVar var) {
+    DBIDFactory.FACTORY.assignVar(var, intValue(id));
+    return var;
+  }
+
+  @Override
+  public void delete(DBIDRef id) {
+    remove(DBIDUtil.asInteger(id));
+  }
+
+  @Override
+  public void clear() {
+    clearTable();
+  }
+
+  @Override
+  public void destroy() {
+    keys = null;
+    values = null;
+  }
+
+  @Override
+  protected void allocateValues(int cap) {
+    values = new int[cap];
+  }
+
+  @Override
+  protected Object valueArray() {
+    return values;
+  }
+
+  @Override
+  protected void copyValue(Object old, int from, int to) {
+    values[to] = ((int[]) old)[from];
+  }
+
+  @Override
+  protected void moveValue(int from, int to) {
+    values[to] = values[from];
+  }
+
+  @Override
+  protected void clearValue(int i) {
+    // Not necessary for primitive values.
+  }
+
+  @Override
+  protected void clearValues() {
+    // Not necessary for primitive values.
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.datastore.memory;
+
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+
+/**
+ * Writable data store for integer values, using an open addressing hash table
+ * for arbitrary DBIDs.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class HashIntegerDBIDIntegerStore extends IntegerDBIDHashTable implements WritableIntegerDataStore {
+  /**
+   * Values, parallel to the keys.
+   */
+  private int[] values;
+
+  /**
+   * Default value.
+   */
+  private final int def;
+
+  /**
+   * Constructor.
+   *
+   * @param size Expected size
+   */
+  public HashIntegerDBIDIntegerStore(int size) {
+    this(size, 0);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param size Expected size
+   * @param def Default value
+   */
+  public HashIntegerDBIDIntegerStore(int size, int def) {
+    super(size);
+    this.def = def;
+  }
+
+  @Override
+  @Deprecated
+  public Integer get(DBIDRef id) {
+    return Integer.valueOf(intValue(id));
+  }
+
+  @Override
+  public int intValue(DBIDRef id) {
+    final int i = find(DBIDUtil.asInteger(id));
+    return i >= 0 ? values[i] : def;
+  }
+
+  @Override
+  @Deprecated
+  public Integer put(DBIDRef id, Integer value) {
+    return Integer.valueOf(putInt(id, value.intValue()));
+  }
+
+  @Override
+  public void delete(DBIDRef id) {
+    remove(DBIDUtil.asInteger(id));
+  }
+
+  @Override
+  public int putInt(DBIDRef id, int value) {
+    final int i = insert(DBIDUtil.asInteger(id));
+    if(i < 0) {
+      values[-i - 1] = value;
+      return def;
+    }
+    final int prev = values[i];
+    values[i] = value;
+    return prev;
+  }
+
+  @Override
+  public int put(DBIDRef id, int value) {
+    return putInt(id, value);
+  }
+
+  @Override
+  public void increment(DBIDRef id, int adjust) {
+    final int i = insert(DBIDUtil.asInteger(id));
+    if(i < 0) {
+      values[-i - 1] = def + adjust;
+    }
+    else {
+      values[i] += adjust;
+    }
+  }
+
+  @Override
+  public void clear() {
+    clearTable();
+  }
+
+  @Override
+  public void destroy() {
+    keys = null;
+    values = null;
+  }
+
+  @Override
+  protected void allocateValues(int cap) {
+    values = new int[cap];
+  }
+
+  @Override
+  protected Object valueArray() {
+    return values;
+  }
+
+  @Override
+  protected void copyValue(Object old, int from, int to) {
+    values[to] = ((int[]) old)[from];
+  }
+
+  @Override
+  protected void moveValue(int from, int to) {
+    values[to] = values[from];
+  }
+
+  @Override
+  protected void clearValue(int i) {
+    // Not necessary for primitive values.
+  }
+
+  @Override
+  protected void clearValues() {
+    // Not necessary for primitive values.
+  }
+}
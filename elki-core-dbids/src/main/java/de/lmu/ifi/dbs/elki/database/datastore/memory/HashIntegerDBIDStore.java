@@ -0,0 +1,128 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.datastore.memory;
+
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+
+/**
+ * Writable data store for arbitrary objects, using an open addressing hash
+ * table for arbitrary DBIDs.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @param <T> Representation object type
+ */
+public class HashIntegerDBIDStore<T> extends IntegerDBIDHashTable implements WritableDataStore<T> {
+  /**
+   * Values, parallel to the keys.
+   */
+  private Object[] values;
+
+  /**
+   * Constructor.
+   *
+   * @param size Expected size
+   */
+  public HashIntegerDBIDStore(int size) {
+    super(size);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public T get(DBIDRef id) {
+    final int i = find(DBIDUtil.asInteger(id));
+    return i >= 0 ? (T) values[i] : null;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public T put(DBIDRef id, T value) {
+    final int key = DBIDUtil.asInteger(id);
+    if(value == null) {
+      final int i = find(key);
+      if(i < 0) {
+        return null;
+      }
+      final T prev = (T) values[i];
+      remove(key);
+      return prev;
+    }
+    final int i = insert(key);
+    if(i < 0) {
+      values[-i - 1] = value;
+      return null;
+    }
+    final T prev = (T) values[i];
+    values[i] = value;
+    return prev;
+  }
+
+  @Override
+  public void delete(DBIDRef id) {
+    remove(DBIDUtil.asInteger(id));
+  }
+
+  @Override
+  public void clear() {
+    clearTable();
+  }
+
+  @Override
+  public void destroy() {
+    keys = null;
+    values = null;
+  }
+
+  @Override
+  protected void allocateValues(int cap) {
+    values = new Object[cap];
+  }
+
+  @Override
+  protected Object valueArray() {
+    return values;
+  }
+
+  @Override
+  protected void copyValue(Object old, int from, int to) {
+    values[to] = ((Object[]) old)[from];
+  }
+
+  @Override
+  protected void moveValue(int from, int to) {
+    values[to] = values[from];
+  }
+
+  @Override
+  protected void clearValue(int i) {
+    values[i] = null;
+  }
+
+  @Override
+  protected void clearValues() {
+    Arrays.fill(values, null);
+  }
+}
@@ -0,0 +1,277 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.datastore.memory;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash table for integer DBID keys, used by the hash-based
+ * data stores.
+ *
+ * Keys are stored in a plain {@code int[]}, values are kept by the subclasses
+ * in parallel primitive arrays; there are no entry objects, no boxing, and no
+ * separate state array. We use linear probing with a multiplicative
+ * (Fibonacci) hash, which maps the mostly consecutive integer DBIDs evenly
+ * onto the table, and backward shift deletion, so that no tombstones are
+ * needed.
+ *
+ * {@link Integer#MIN_VALUE} (the invalid DBID) is used to mark free slots, and
+ * cannot be used as key.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+abstract class IntegerDBIDHashTable {
+  /**
+   * Marker for free slots.
+   */
+  protected static final int FREE = Integer.MIN_VALUE;
+
+  /**
+   * Multiplier for Fibonacci hashing, 2^32 / golden ratio.
+   */
+  private static final int PHI = 0x9E3779B9;
+
+  /**
+   * Minimum table size.
+   */
+  private static final int MIN_SIZE = 8;
+
+  /**
+   * Maximum load factor, in 1/16.
+   */
+  private static final int LOAD_16 = 12;
+
+  /**
+   * Keys, {@link #FREE} for empty slots.
+   */
+  protected int[] keys;
+
+  /**
+   * Number of keys.
+   */
+  protected int size;
+
+  /**
+   * Bit mask for the table size.
+   */
+  private int mask;
+
+  /**
+   * Shift for hashing.
+   */
+  private int shift;
+
+  /**
+   * Resize threshold.
+   */
+  private int threshold;
+
+  /**
+   * Constructor.
+   *
+   * @param expected Expected number of entries
+   */
+  protected IntegerDBIDHashTable(int expected) {
+    super();
+    int cap = MIN_SIZE;
+    while(cap < (1 << 30) && ((long) cap * LOAD_16) >>> 4 < expected) {
+      cap <<= 1;
+    }
+    initialize(cap);
+  }
+
+  /**
+   * Allocate a new, empty key table.
+   *
+   * @param cap Capacity, power of two
+   */
+  private void initialize(int cap) {
+    keys = new int[cap];
+    Arrays.fill(keys, FREE);
+    mask = cap - 1;
+    shift = Integer.numberOfLeadingZeros(cap) + 1;
+    threshold = (int) (((long) cap * LOAD_16) >>> 4);
+    allocateValues(cap);
+  }
+
+  /**
+   * Home slot of a key.
+   *
+   * @param key Key
+   * @return Slot
+   */
+  private int home(int key) {
+    return (key * PHI) >>> shift;
+  }
+
+  /**
+   * Find the slot of a key.
+   *
+   * @param key Key
+   * @return Slot, or -1 if not found
+   */
+  protected int find(int key) {
+    final int[] keys = this.keys;
+    for(int i = home(key);; i = (i + 1) & mask) {
+      final int k = keys[i];
+      if(k == key) {
+        return i;
+      }
+      if(k == FREE) {
+        return -1;
+      }
+    }
+  }
+
+  /**
+   * Find the slot of a key, inserting the key if necessary.
+   *
+   * @param key Key
+   * @return Slot if the key existed, {@code -slot - 1} if it was inserted
+   */
+  protected int insert(int key) {
+    assert key != FREE : "Invalid DBIDs cannot be used as keys.";
+    int i = home(key);
+    for(;; i = (i + 1) & mask) {
+      final int k = keys[i];
+      if(k == key) {
+        return i;
+      }
+      if(k == FREE) {
+        break;
+      }
+    }
+    if(size >= threshold) {
+      grow();
+      for(i = home(key); keys[i] != FREE; i = (i + 1) & mask) {
+        // Find a free slot.
+      }
+    }
+    keys[i] = key;
+    ++size;
+    return -i - 1;
+  }
+
+  /**
+   * Remove a key.
+   *
+   * @param key Key
+   * @return {@code true} when the key was present
+   */
+  protected boolean remove(int key) {
+    int i = find(key);
+    if(i < 0) {
+      return false;
+    }
+    // Backward shift deletion: move following entries of the same cluster
+    // into the hole, unless their home slot is cyclically in (i, j].
+    final int[] keys = this.keys;
+    for(int j = (i + 1) & mask;; j = (j + 1) & mask) {
+      final int k = keys[j];
+      if(k == FREE) {
+        break;
+      }
+      final int h = home(k);
+      if(i <= j ? (h <= i || h > j) : (h <= i && h > j)) {
+        keys[i] = k;
+        moveValue(j, i);
+        i = j;
+      }
+    }
+    keys[i] = FREE;
+    clearValue(i);
+    --size;
+    return true;
+  }
+
+  /**
+   * Remove all entries.
+   */
+  protected void clearTable() {
+    Arrays.fill(keys, FREE);
+    size = 0;
+    clearValues();
+  }
+
+  /**
+   * Double the table size.
+   */
+  private void grow() {
+    final int[] oldkeys = keys;
+    final Object oldvalues = valueArray();
+    initialize(oldkeys.length << 1);
+    for(int j = 0; j < oldkeys.length; j++) {
+      final int k = oldkeys[j];
+      if(k != FREE) {
+        int i = home(k);
+        while(keys[i] != FREE) {
+          i = (i + 1) & mask;
+        }
+        keys[i] = k;
+        copyValue(oldvalues, j, i);
+      }
+    }
+  }
+
+  /**
+   * Allocate the value storage.
+   *
+   * @param cap Capacity
+   */
+  protected abstract void allocateValues(int cap);
+
+  /**
+   * Get the current value array, to copy from when resizing.
+   *
+   * @return Value array
+   */
+  protected abstract Object valueArray();
+
+  /**
+   * Copy a value from an old value array.
+   *
+   * @param old Old value array
+   * @param from Source slot
+   * @param to Destination slot
+   */
+  protected abstract void copyValue(Object old, int from, int to);
+
+  /**
+   * Move a value within the table.
+   *
+   * @param from Source slot
+   * @param to Destination slot
+   */
+  protected abstract void moveValue(int from, int to);
+
+  /**
+   * Clear the value at a slot.
+   *
+   * @param i Slot
+   */
+  protected abstract void clearValue(int i);
+
+  /**
+   * Clear all values.
+   */
+  protected abstract void clearValues();
+}
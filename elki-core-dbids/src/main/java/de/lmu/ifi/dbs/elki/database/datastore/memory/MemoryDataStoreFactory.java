@@ -61,7 +61,7 @@ public class MemoryDataStoreFactory implements DataStoreFactory {
       return new ArrayStore<>(data, range);
     }
     else {
-      return new MapIntegerDBIDStore<>(ids.size());
+      return new HashIntegerDBIDStore<>(ids.size());
     }
   }
 
@@ -72,7 +72,7 @@ public class MemoryDataStoreFactory implements DataStoreFactory {
       return new ArrayDBIDStore(range.size(), range);
     }
     else {
-      return new MapIntegerDBIDDBIDStore(ids.size());
+      return new HashIntegerDBIDDBIDStore(ids.size());
     }
   }
 
@@ -83,7 +83,7 @@ public class MemoryDataStoreFactory implements DataStoreFactory {
       return new ArrayDoubleStore(range.size(), range);
     }
     else {
-      return new MapIntegerDBIDDoubleStore(ids.size());
+      return new HashIntegerDBIDDoubleStore(ids.size());
     }
   }
 
@@ -94,7 +94,7 @@ public class MemoryDataStoreFactory implements DataStoreFactory {
       return new ArrayDoubleStore(range.size(), range, def);
     }
     else {
-      return new MapIntegerDBIDDoubleStore(ids.size(), def);
+      return new HashIntegerDBIDDoubleStore(ids.size(), def);
     }
   }
 
@@ -105,7 +105,7 @@ public class MemoryDataStoreFactory implements DataStoreFactory {
       return new ArrayIntegerStore(range.size(), range);
     }
     else {
-      return new MapIntegerDBIDIntegerStore(ids.size());
+      return new HashIntegerDBIDIntegerStore(ids.size());
     }
   }
 
@@ -116,7 +116,7 @@ public class MemoryDataStoreFactory implements DataStoreFactory {
       return new ArrayIntegerStore(range.size(), range, def);
     }
     else {
-      return new MapIntegerDBIDIntegerStore(ids.size(), def);
+      return new HashIntegerDBIDIntegerStore(ids.size(), def);
     }
   }
 
@@ -20,13 +20,18 @@
  */
 package de.lmu.ifi.dbs.elki.parallel;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
 /**
  * Core for parallel processing in ELKI, based on {@link ThreadPoolExecutor}.
  * 
@@ -129,4 +134,46 @@ public class ParallelCore {
       }
     }
   }
+
+  /**
+   * Run the same worker on several threads, and wait for all to complete.
+   *
+   * Workers should claim their work from shared state, e.g., an atomic
+   * cursor. Unchecked exceptions of the workers are rethrown.
+   *
+   * @param numworkers Number of workers to start
+   * @param worker Worker to run
+   */
+  public void runWorkers(int numworkers, Callable<Void> worker) {
+    connect();
+    List<Future<Void>> parts = new ArrayList<>(numworkers);
+    try {
+      for(int i = 0; i < numworkers; i++) {
+        parts.add(submit(worker));
+      }
+      for(Future<Void> fut : parts) {
+        fut.get();
+      }
+    }
+    catch(ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if(cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if(cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException("Parallel execution failed.", cause);
+    }
+    catch(InterruptedException e) {
+      for(Future<Void> fut : parts) {
+        fut.cancel(true);
+      }
+      Thread.currentThread().interrupt();
+      throw new AbortException("Parallel execution interrupted.", e);
+    }
+    finally {
+      disconnect();
+    }
+  }
 }
@@ -0,0 +1,222 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.utilities.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Read primitive values directly from a {@link ByteBuffer}, without the stream
+ * header and block data overhead of {@link ObjectInputStream}.
+ *
+ * Objects are supported for compatibility only: they must have been written
+ * with {@link ByteBufferObjectOutput#writeObject}, which uses Java
+ * serialization for each object individually.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has ByteBuffer
+ */
+public class ByteBufferObjectInput implements ObjectInput {
+  /**
+   * Buffer to read from.
+   */
+  private ByteBuffer buffer;
+
+  /**
+   * Constructor.
+   *
+   * @param buffer Buffer to read from
+   */
+  public ByteBufferObjectInput(ByteBuffer buffer) {
+    super();
+    this.buffer = buffer;
+  }
+
+  @Override
+  public void readFully(byte[] b) throws IOException {
+    readFully(b, 0, b.length);
+  }
+
+  @Override
+  public void readFully(byte[] b, int off, int len) throws IOException {
+    if(buffer.remaining() < len) {
+      throw new EOFException();
+    }
+    buffer.get(b, off, len);
+  }
+
+  @Override
+  public int skipBytes(int n) {
+    final int skip = Math.max(0, Math.min(n, buffer.remaining()));
+    buffer.position(buffer.position() + skip);
+    return skip;
+  }
+
+  @Override
+  public boolean readBoolean() throws IOException {
+    return readByte() != 0;
+  }
+
+  @Override
+  public byte readByte() throws IOException {
+    try {
+      return buffer.get();
+    }
+    catch(BufferUnderflowException e) {
+      throw new EOFException();
+    }
+  }
+
+  @Override
+  public int readUnsignedByte() throws IOException {
+    return readByte() & 0xFF;
+  }
+
+  @Override
+  public short readShort() throws IOException {
+    try {
+      return buffer.getShort();
+    }
+    catch(BufferUnderflowException e) {
+      throw new EOFException();
+    }
+  }
+
+  @Override
+  public int readUnsignedShort() throws IOException {
+    return readShort() & 0xFFFF;
+  }
+
+  @Override
+  public char readChar() throws IOException {
+    try {
+      return buffer.getChar();
+    }
+    catch(BufferUnderflowException e) {
+      throw new EOFException();
+    }
+  }
+
+  @Override
+  public int readInt() throws IOException {
+    try {
+      return buffer.getInt();
+    }
+    catch(BufferUnderflowException e) {
+      throw new EOFException();
+    }
+  }
+
+  @Override
+  public long readLong() throws IOException {
+    try {
+      return buffer.getLong();
+    }
+    catch(BufferUnderflowException e) {
+      throw new EOFException();
+    }
+  }
+
+  @Override
+  public float readFloat() throws IOException {
+    try {
+      return buffer.getFloat();
+    }
+    catch(BufferUnderflowException e) {
+      throw new EOFException();
+    }
+  }
+
+  @Override
+  public double readDouble() throws IOException {
+    try {
+      return buffer.getDouble();
+    }
+    catch(BufferUnderflowException e) {
+      throw new EOFException();
+    }
+  }
+
+  /**
+   * Not supported.
+   *
+   * @deprecated Line based reading is not supported.
+   */
+  @Deprecated
+  @Override
+  public String readLine() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public String readUTF() throws IOException {
+    return DataInputStream.readUTF(this);
+  }
+
+  @Override
+  public Object readObject() throws ClassNotFoundException, IOException {
+    byte[] data = new byte[readInt()];
+    readFully(data);
+    try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data))) {
+      return ois.readObject();
+    }
+  }
+
+  @Override
+  public int read() {
+    return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+  }
+
+  @Override
+  public int read(byte[] b) {
+    return read(b, 0, b.length);
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) {
+    final int maxread = Math.min(len, buffer.remaining());
+    buffer.get(b, off, maxread);
+    return maxread == 0 && len > 0 ? -1 : maxread;
+  }
+
+  @Override
+  public long skip(long n) {
+    return skipBytes((int) Math.min(n, Integer.MAX_VALUE));
+  }
+
+  @Override
+  public int available() {
+    return buffer.remaining();
+  }
+
+  @Override
+  public void close() {
+    // Nothing to do.
+  }
+}
@@ -0,0 +1,201 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.utilities.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Write primitive values directly into a {@link ByteBuffer}, without the
+ * stream header and block data overhead of {@link ObjectOutputStream}.
+ *
+ * If the buffer is too small, an {@link IOException} is thrown.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has ByteBuffer
+ */
+public class ByteBufferObjectOutput implements ObjectOutput {
+  /**
+   * Buffer to write to.
+   */
+  private ByteBuffer buffer;
+
+  /**
+   * Constructor.
+   *
+   * @param buffer Buffer to write to
+   */
+  public ByteBufferObjectOutput(ByteBuffer buffer) {
+    super();
+    this.buffer = buffer;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    writeByte(b);
+  }
+
+  @Override
+  public void write(byte[] b) throws IOException {
+    write(b, 0, b.length);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    try {
+      buffer.put(b, off, len);
+    }
+    catch(BufferOverflowException e) {
+      throw new IOException("Buffer overflow.", e);
+    }
+  }
+
+  @Override
+  public void writeBoolean(boolean v) throws IOException {
+    writeByte(v ? 1 : 0);
+  }
+
+  @Override
+  public void writeByte(int v) throws IOException {
+    try {
+      buffer.put((byte) v);
+    }
+    catch(BufferOverflowException e) {
+      throw new IOException("Buffer overflow.", e);
+    }
+  }
+
+  @Override
+  public void writeShort(int v) throws IOException {
+    try {
+      buffer.putShort((short) v);
+    }
+    catch(BufferOverflowException e) {
+      throw new IOException("Buffer overflow.", e);
+    }
+  }
+
+  @Override
+  public void writeChar(int v) throws IOException {
+    try {
+      buffer.putChar((char) v);
+    }
+    catch(BufferOverflowException e) {
+      throw new IOException("Buffer overflow.", e);
+    }
+  }
+
+  @Override
+  public void writeInt(int v) throws IOException {
+    try {
+      buffer.putInt(v);
+    }
+    catch(BufferOverflowException e) {
+      throw new IOException("Buffer overflow.", e);
+    }
+  }
+
+  @Override
+  public void writeLong(long v) throws IOException {
+    try {
+      buffer.putLong(v);
+    }
+    catch(BufferOverflowException e) {
+      throw new IOException("Buffer overflow.", e);
+    }
+  }
+
+  @Override
+  public void writeFloat(float v) throws IOException {
+    try {
+      buffer.putFloat(v);
+    }
+    catch(BufferOverflowException e) {
+      throw new IOException("Buffer overflow.", e);
+    }
+  }
+
+  @Override
+  public void writeDouble(double v) throws IOException {
+    try {
+      buffer.putDouble(v);
+    }
+    catch(BufferOverflowException e) {
+      throw new IOException("Buffer overflow.", e);
+    }
+  }
+
+  @Override
+  public void writeBytes(String s) throws IOException {
+    for(int i = 0; i < s.length(); i++) {
+      writeByte(s.charAt(i));
+    }
+  }
+
+  @Override
+  public void writeChars(String s) throws IOException {
+    for(int i = 0; i < s.length(); i++) {
+      writeChar(s.charAt(i));
+    }
+  }
+
+  @Override
+  public void writeUTF(String s) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream(s.length() + 2);
+    try (DataOutputStream dos = new DataOutputStream(baos)) {
+      dos.writeUTF(s);
+    }
+    write(baos.toByteArray());
+  }
+
+  /**
+   * Write an object, using Java serialization. This is expensive, and only
+   * supported for compatibility.
+   *
+   * @param obj Object to write
+   */
+  @Override
+  public void writeObject(Object obj) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+      oos.writeObject(obj);
+    }
+    writeInt(baos.size());
+    write(baos.toByteArray());
+  }
+
+  @Override
+  public void flush() {
+    // Nothing to do.
+  }
+
+  @Override
+  public void close() {
+    // Nothing to do.
+  }
+}
@@ -26,6 +26,7 @@ import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Stack;
+import java.util.concurrent.atomic.LongAdder;
 
 import de.lmu.ifi.dbs.elki.data.HyperBoundingBox;
 import de.lmu.ifi.dbs.elki.data.ModifiableHyperBoundingBox;
@@ -41,9 +42,9 @@ import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialDirectoryEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialIndexTree;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialPointLeafEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk.BulkSplit;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.util.NodeArrayAdapter;
 import de.lmu.ifi.dbs.elki.logging.Logging;
-import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
 import de.lmu.ifi.dbs.elki.persistent.PageFile;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.BitsUtil;
@@ -340,17 +341,21 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
     int minEntries = leafMinimum;
     int maxEntries = leafCapacity;
 
-    ArrayList<E> result = new ArrayList<>();
     List<List<E>> partitions = settings.bulkSplitter.partition(objects, minEntries, maxEntries);
-
-    for(List<E> partition : partitions) {
-      // create leaf node
-      N leafNode = createNewLeafNode();
-
-      // insert data
-      for(E o : partition) {
-        leafNode.addLeafEntry(o);
+    // Fill the leaf nodes; parallel splitters may do this concurrently.
+    List<N> leaves = settings.bulkSplitter.mapPartitions(partitions, new BulkSplit.PartitionMapper<E, N>() {
+      @Override
+      public N map(List<E> partition) {
+        N leafNode = createNewLeafNode();
+        for(E o : partition) {
+          leafNode.addLeafEntry(o);
+        }
+        return leafNode;
       }
+    });
+
+    ArrayList<E> result = new ArrayList<>(leaves.size());
+    for(N leafNode : leaves) {
       // write to file
       writeNode(leafNode);
 
@@ -835,36 +840,39 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
   /**
    * Class for tracking some statistics.
    *
+   * Queries are read-only and may be run from multiple threads at the same
+   * time. We therefore use {@link LongAdder}s, which keep per-thread cells
+   * that are only merged when the statistics are logged.
+   *
    * @author Erich Schubert
    *
-   * @apiviz.composedOf Counter
+   * @apiviz.composedOf LongAdder
    */
   public class Statistics {
     /**
      * For counting the number of distance computations.
      */
-    protected final Counter distanceCalcs;
+    protected final LongAdder distanceCalcs;
 
     /**
      * For counting the number of knn queries answered.
      */
-    protected final Counter knnQueries;
+    protected final LongAdder knnQueries;
 
     /**
      * For counting the number of range queries answered.
      */
-    protected final Counter rangeQueries;
+    protected final LongAdder rangeQueries;
 
     /**
      * Constructor.
      */
     public Statistics() {
       super();
-      Logging log = getLogger();
-      final String prefix = AbstractRStarTree.this.getClass().getName();
-      distanceCalcs = log.isStatistics() ? log.newCounter(prefix + ".distancecalcs") : null;
-      knnQueries = log.isStatistics() ? log.newCounter(prefix + ".knnqueries") : null;
-      rangeQueries = log.isStatistics() ? log.newCounter(prefix + ".rangequeries") : null;
+      final boolean enabled = getLogger().isStatistics();
+      distanceCalcs = enabled ? new LongAdder() : null;
+      knnQueries = enabled ? new LongAdder() : null;
+      rangeQueries = enabled ? new LongAdder() : null;
     }
 
     /**
@@ -899,14 +907,15 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
      */
     public void logStatistics() {
       Logging log = getLogger();
-      if(statistics.distanceCalcs != null) {
-        log.statistics(statistics.distanceCalcs);
+      final String prefix = AbstractRStarTree.this.getClass().getName();
+      if(distanceCalcs != null) {
+        log.statistics(new LongStatistic(prefix + ".distancecalcs", distanceCalcs.sum()));
       }
-      if(statistics.knnQueries != null) {
-        log.statistics(statistics.knnQueries);
+      if(knnQueries != null) {
+        log.statistics(new LongStatistic(prefix + ".knnqueries", knnQueries.sum()));
       }
-      if(statistics.rangeQueries != null) {
-        log.statistics(statistics.rangeQueries);
+      if(rangeQueries != null) {
+        log.statistics(new LongStatistic(prefix + ".rangequeries", rangeQueries.sum()));
       }
     }
   }
@@ -54,6 +54,9 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 /**
  * Instance of a KNN query for a particular spatial index.
  * 
+ * Queries only read the tree, and can be shared by multiple threads (e.g., in
+ * parallel algorithms), as long as the tree is not modified concurrently.
+ * 
  * Reference:
  * <p>
  * G. R. Hjaltason, H. Samet<br />
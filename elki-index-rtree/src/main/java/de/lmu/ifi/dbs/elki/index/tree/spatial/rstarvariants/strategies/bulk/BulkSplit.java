@@ -20,6 +20,7 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
@@ -41,4 +42,41 @@ public interface BulkSplit {
    * @return the partition of the specified spatial objects
    */
   public <T extends SpatialComparable> List<List<T>> partition(List<T> spatialObjects, int minEntries, int maxEntries);
-}
\ No newline at end of file
+
+  /**
+   * Map each partition to a result, e.g., to build the leaf pages of a bulk
+   * load. The default implementation processes the partitions sequentially;
+   * parallel strategies may invoke the mapper concurrently.
+   *
+   * @param <T> actual type we split
+   * @param <P> result type
+   * @param partitions Partitions, as returned by {@link #partition}
+   * @param mapper Mapper to apply
+   * @return Results, in the order of the partitions
+   */
+  default <T, P> List<P> mapPartitions(List<List<T>> partitions, PartitionMapper<T, P> mapper) {
+    List<P> ret = new ArrayList<>(partitions.size());
+    for(List<T> partition : partitions) {
+      ret.add(mapper.map(partition));
+    }
+    return ret;
+  }
+
+  /**
+   * Function applied to each partition.
+   *
+   * @author Erich Schubert
+   *
+   * @param <T> Object type
+   * @param <P> Result type
+   */
+  public static interface PartitionMapper<T, P> {
+    /**
+     * Map a single partition.
+     *
+     * @param partition Partition
+     * @return Result
+     */
+    P map(List<T> partition);
+  }
+}
@@ -0,0 +1,303 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
+import de.lmu.ifi.dbs.elki.data.spatial.SpatialSingleMeanComparator;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.Alias;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.QuickSelect;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import net.jafama.FastMath;
+
+/**
+ * Parallel version of the Sort-Tile-Recursive bulk split.
+ *
+ * The slab boundaries of each level are found by recursive bisection with
+ * QuickSelect, one bisection level per round, and the slabs of each round
+ * are processed concurrently on the {@link ParallelCore}. Slabs that become
+ * small are then tiled independently with the sequential code. The tiles are
+ * the same as with {@link SortTileRecursiveBulkSplit}, up to ties.
+ *
+ * When used for bulk loading an R-tree, the leaf pages are also built
+ * concurrently, see {@link #mapPartitions}.
+ *
+ * Reference:
+ * <p>
+ * Leutenegger, S.T. and Lopez, M.A. and Edgington, J.:<br />
+ * STR: A simple and efficient algorithm for R-tree packing<br />
+ * In: Proc. 13th International Conference on Data Engineering, 1997
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@Reference(authors = "Leutenegger, S.T. and Lopez, M.A. and Edgington, J.", title = "STR: A simple and efficient algorithm for R-tree packing", booktitle = "Proc. 13th International Conference on Data Engineering, 1997", url = "http://dx.doi.org/10.1109/ICDE.1997.582015")
+@Alias({ "pstr", "PSTR" })
+public class ParallelSortTileRecursiveBulkSplit extends SortTileRecursiveBulkSplit {
+  /**
+   * Static instance.
+   */
+  public static final ParallelSortTileRecursiveBulkSplit STATIC = new ParallelSortTileRecursiveBulkSplit();
+
+  /**
+   * Slabs smaller than this are tiled sequentially.
+   */
+  private static final int SEQUENTIAL_THRESHOLD = 1 << 14;
+
+  @Override
+  public <T extends SpatialComparable> List<List<T>> partition(List<T> spatialObjects, int minEntries, int maxEntries) {
+    final int size = spatialObjects.size();
+    if(size <= SEQUENTIAL_THRESHOLD) {
+      return super.partition(spatialObjects, minEntries, maxEntries);
+    }
+    final int dims = spatialObjects.get(0).getDimensionality();
+    List<Slab<T>> pending = new ArrayList<>();
+    pending.add(new Slab<>(spatialObjects, 0, size, 0, dims, maxEntries));
+    List<Slab<T>> done = new ArrayList<>();
+    while(!pending.isEmpty()) {
+      // Find the slab boundaries, by recursive bisection:
+      List<Select<T>> select = new ArrayList<>();
+      for(Slab<T> slab : pending) {
+        if(slab.bounds.length > 2) {
+          select.add(new Select<>(slab, 0, slab.bounds.length - 1));
+        }
+      }
+      while(!select.isEmpty()) {
+        runAll(select);
+        List<Select<T>> next = new ArrayList<>();
+        for(Select<T> sel : select) {
+          sel.split(next);
+        }
+        select = next;
+      }
+      // Descend into the slabs:
+      List<Slab<T>> next = new ArrayList<>();
+      for(Slab<T> slab : pending) {
+        final int[] bounds = slab.bounds;
+        for(int i = 1; i < bounds.length; i++) {
+          Slab<T> child = new Slab<>(spatialObjects, bounds[i - 1], bounds[i], slab.depth + 1, dims, maxEntries);
+          if(child.depth == dims || child.end - child.start <= SEQUENTIAL_THRESHOLD) {
+            done.add(child);
+          }
+          else {
+            next.add(child);
+          }
+        }
+      }
+      pending = next;
+    }
+    // Tile the remaining slabs, and restore the sequential order:
+    runAll(done);
+    Collections.sort(done, new Comparator<Slab<T>>() {
+      @Override
+      public int compare(Slab<T> o1, Slab<T> o2) {
+        return Integer.compare(o1.start, o2.start);
+      }
+    });
+    List<List<T>> ret = new ArrayList<>();
+    for(Slab<T> slab : done) {
+      ret.addAll(slab.tiles);
+    }
+    return ret;
+  }
+
+  /**
+   * Build the pages concurrently.
+   */
+  @Override
+  public <T, P> List<P> mapPartitions(final List<List<T>> partitions, final PartitionMapper<T, P> mapper) {
+    final List<P> ret = new ArrayList<>(Collections.<P> nCopies(partitions.size(), null));
+    final AtomicInteger next = new AtomicInteger();
+    ParallelCore core = ParallelCore.getCore();
+    core.runWorkers(Math.max(1, Math.min(core.getParallelism(), partitions.size())), new Callable<Void>() {
+      @Override
+      public Void call() {
+        for(int i; (i = next.getAndIncrement()) < partitions.size();) {
+          ret.set(i, mapper.map(partitions.get(i)));
+        }
+        return null;
+      }
+    });
+    return ret;
+  }
+
+  /**
+   * Run the given jobs concurrently.
+   *
+   * @param jobs Jobs to run
+   */
+  private static void runAll(final List<? extends Runnable> jobs) {
+    final AtomicInteger next = new AtomicInteger();
+    ParallelCore core = ParallelCore.getCore();
+    core.runWorkers(Math.max(1, Math.min(core.getParallelism(), jobs.size())), new Callable<Void>() {
+      @Override
+      public Void call() {
+        for(int i; (i = next.getAndIncrement()) < jobs.size();) {
+          jobs.get(i).run();
+        }
+        return null;
+      }
+    });
+  }
+
+  /**
+   * A slab of the data, to be split in the given dimension.
+   *
+   * @author Erich Schubert
+   *
+   * @param <T> Object type
+   */
+  private class Slab<T extends SpatialComparable> implements Runnable {
+    /**
+     * Object list.
+     */
+    final List<T> objs;
+
+    /**
+     * Interval, depth, and parameters.
+     */
+    final int start, end, depth, dims, maxEntries;
+
+    /**
+     * Boundaries of the sub-slabs.
+     */
+    int[] bounds;
+
+    /**
+     * Tiles, when tiled sequentially.
+     */
+    List<List<T>> tiles;
+
+    /**
+     * Constructor.
+     *
+     * @param objs Object list
+     * @param start Subinterval start
+     * @param end Subinterval end
+     * @param depth Iteration depth
+     * @param dims Total number of dimensions
+     * @param maxEntries Maximum page size
+     */
+    Slab(List<T> objs, int start, int end, int depth, int dims, int maxEntries) {
+      this.objs = objs;
+      this.start = start;
+      this.end = end;
+      this.depth = depth;
+      this.dims = dims;
+      this.maxEntries = maxEntries;
+      if(depth < dims) {
+        final int p = (int) FastMath.ceil((end - start) / (double) maxEntries);
+        final int s = (int) FastMath.ceil(FastMath.pow(p, 1.0 / (dims - depth)));
+        final double len = end - start; // double intentional!
+        bounds = new int[s + 1];
+        for(int i = 0; i <= s; i++) {
+          bounds[i] = start + (int) ((i * len) / s);
+        }
+      }
+    }
+
+    @Override
+    public void run() {
+      tiles = new ArrayList<>();
+      if(depth == dims) {
+        tiles.add(objs.subList(start, end));
+        return;
+      }
+      strPartition(objs, start, end, depth, dims, maxEntries, new SpatialSingleMeanComparator(depth), tiles);
+    }
+  }
+
+  /**
+   * Move the objects of a range of sub-slabs into place, by bisection.
+   *
+   * @author Erich Schubert
+   *
+   * @param <T> Object type
+   */
+  private static class Select<T extends SpatialComparable> implements Runnable {
+    /**
+     * Slab to split.
+     */
+    private final Slab<T> slab;
+
+    /**
+     * Sub-slab range to process.
+     */
+    private final int lo, hi;
+
+    /**
+     * Constructor.
+     *
+     * @param slab Slab to split
+     * @param lo First sub-slab
+     * @param hi Last sub-slab (exclusive)
+     */
+    Select(Slab<T> slab, int lo, int hi) {
+      this.slab = slab;
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    @Override
+    public void run() {
+      final int[] bounds = slab.bounds;
+      QuickSelect.quickSelect(slab.objs, new SpatialSingleMeanComparator(slab.depth), bounds[lo], bounds[hi], bounds[(lo + hi) >>> 1]);
+    }
+
+    /**
+     * Produce the bisection tasks for the next round.
+     *
+     * @param next Output list
+     */
+    void split(List<Select<T>> next) {
+      final int mid = (lo + hi) >>> 1;
+      if(mid - lo > 1) {
+        next.add(new Select<>(slab, lo, mid));
+      }
+      if(hi - mid > 1) {
+        next.add(new Select<>(slab, mid, hi));
+      }
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractParameterizer {
+    @Override
+    protected ParallelSortTileRecursiveBulkSplit makeInstance() {
+      return STATIC;
+    }
+  }
+}
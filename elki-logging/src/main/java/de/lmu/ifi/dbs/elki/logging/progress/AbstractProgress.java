@@ -142,6 +142,19 @@ public abstract class AbstractProgress implements Progress {
     }
   }
 
+  /**
+   * Increment the processed counter by more than one.
+   *
+   * @param increment Number of additional items processed
+   * @param logger Logger to report to.
+   */
+  public void incrementProcessed(int increment, Logging logger) {
+    this.processed.addAndGet(increment);
+    if(testLoggingRate()) {
+      logger.progress(this);
+    }
+  }
+
   /**
    * Logging rate control.
    * 
@@ -20,8 +20,11 @@
  */
 package de.lmu.ifi.dbs.elki.persistent;
 
+import java.util.concurrent.atomic.LongAdder;
+
 import de.lmu.ifi.dbs.elki.logging.Logging;
-import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+
 /**
  * Abstract base class for the page file API for both caches and true page files
  * (in-memory and on-disk).
@@ -34,13 +37,16 @@ import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
 public abstract class AbstractPageFile<P extends Page> implements PageFile<P> {
   /**
    * The read I/O-Access of this file.
+   * 
+   * Page files may be read concurrently, so we use a {@link LongAdder}, which
+   * keeps per-thread cells that are only merged when the value is logged.
    */
-  private Counter readAccess;
+  private LongAdder readAccess;
 
   /**
    * The write I/O-Access of this file.
    */
-  private Counter writeAccess;
+  private LongAdder writeAccess;
 
   /**
    * Constructor.
@@ -48,8 +54,8 @@ public abstract class AbstractPageFile<P extends Page> implements PageFile<P> {
   public AbstractPageFile() {
     super();
     Logging log = getLogger();
-    this.readAccess = log.isStatistics() ? log.newCounter(this.getClass().getName() + ".reads") : null;
-    this.writeAccess = log.isStatistics() ? log.newCounter(this.getClass().getName() + ".writes") : null;
+    this.readAccess = log.isStatistics() ? new LongAdder() : null;
+    this.writeAccess = log.isStatistics() ? new LongAdder() : null;
   }
 
   /**
@@ -88,11 +94,12 @@ public abstract class AbstractPageFile<P extends Page> implements PageFile<P> {
   
   @Override
   public void logStatistics() {
+    final String prefix = this.getClass().getName();
     if (readAccess != null) {
-      getLogger().statistics(readAccess);
+      getLogger().statistics(new LongStatistic(prefix + ".reads", readAccess.sum()));
     }
     if (writeAccess != null) {
-      getLogger().statistics(writeAccess);
+      getLogger().statistics(new LongStatistic(prefix + ".writes", writeAccess.sum()));
     }
   }
   
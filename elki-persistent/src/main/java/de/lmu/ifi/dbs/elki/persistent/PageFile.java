@@ -51,6 +51,9 @@ public interface PageFile<P extends Page> {
   /**
    * Reads the page with the given id from this file.
    * 
+   * Implementations must support concurrent reads from multiple threads, as
+   * long as there are no concurrent modifications of the page file.
+   * 
    * @param pageID the id of the page to be returned
    * @return the page with the given pageId
    */
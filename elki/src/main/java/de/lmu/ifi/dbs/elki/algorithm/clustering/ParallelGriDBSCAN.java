@@ -0,0 +1,555 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.ClusterModel;
+import de.lmu.ifi.dbs.elki.data.model.Model;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor.RangeTask;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.DoubleIntegerArrayQuickSort;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.unionfind.ConcurrentUnionFindInteger;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.IncompatibleDataException;
+import gnu.trove.iterator.TLongIntIterator;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongIntHashMap;
+import net.jafama.FastMath;
+
+/**
+ * Multi-threaded variant of {@link GriDBSCAN}.
+ *
+ * The data is partitioned into the same overlapping grid cells, where each
+ * object has one "home" cell that contains its entire epsilon neighborhood.
+ * The cells are then processed concurrently in two passes, using a small local
+ * index on each cell (the cell members sorted along one axis):
+ * <ol>
+ * <li>the core point property is determined for all objects in their home
+ * cell, with early termination once minPts neighbors were found,</li>
+ * <li>each core point is joined with its core neighbors using a lock-free
+ * union-find, which merges clusters across cell borders, and each non-core
+ * point is assigned to its nearest core point, if any.</li>
+ * </ol>
+ * Because no expansion order is involved, the result is deterministic and the
+ * clusters of the core points agree with {@link DBSCAN}. Border points
+ * reachable from multiple clusters are assigned to the nearest core point,
+ * whereas DBSCAN assigns them to the cluster found first.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses ConcurrentUnionFindInteger
+ *
+ * @param <V> the type of vector the algorithm is applied to
+ */
+public class ParallelGriDBSCAN<V extends NumberVector> extends GriDBSCAN<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelGriDBSCAN.class);
+
+  /**
+   * Constructor with parameters.
+   *
+   * @param distanceFunction Distance function
+   * @param epsilon Epsilon value
+   * @param minpts Minpts parameter
+   * @param gridwidth Grid width
+   */
+  public ParallelGriDBSCAN(DistanceFunction<? super V> distanceFunction, double epsilon, int minpts, double gridwidth) {
+    super(distanceFunction, epsilon, minpts, gridwidth);
+  }
+
+  @Override
+  public Clustering<Model> run(Relation<V> relation) {
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+
+    // Degenerate result:
+    if(size < minpts) {
+      Clustering<Model> result = new Clustering<>("DBSCAN Clustering", "dbscan-clustering");
+      result.addToplevelCluster(new Cluster<Model>(ids, true, ClusterModel.CLUSTER));
+      return result;
+    }
+
+    double gridwidth = this.gridwidth; // local copy.
+    if(gridwidth < 2. * epsilon) {
+      LOG.warning("Invalid grid width (less than 2*epsilon, recommended 10*epsilon). Increasing grid width automatically.");
+      gridwidth = 2. * epsilon;
+    }
+    final Grid grid = new Grid(relation, ids, epsilon, gridwidth);
+    final int[][] members = grid.members;
+    final int[] home = grid.home;
+    final int sortdim = grid.sortdim;
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(ParallelGriDBSCAN.class.getName() + ".used-cells", members.length));
+    }
+    final DistanceQuery<V> dq = getDistanceFunction().instantiate(relation);
+
+    // Pass 1: find the core points.
+    final boolean[] core = new boolean[size];
+    FiniteProgress cprog = LOG.isVerbose() ? new FiniteProgress("Finding core points", members.length, LOG) : null;
+    ParallelExecutor.run(members.length, 1, new CellTask(cprog) {
+      @Override
+      void process(int cell, CellIndex idx) {
+        final int[] offs = idx.offs;
+        for(int j = 0; j < offs.length; j++) {
+          final int i = offs[j];
+          if(home[i] != cell) {
+            continue;
+          }
+          int count = 0;
+          for(int k = idx.start(j), end = idx.end(j); k < end; k++) {
+            if(idx.distance(j, k) <= epsilon && ++count >= minpts) {
+              core[i] = true;
+              break;
+            }
+          }
+        }
+      }
+
+      @Override
+      CellIndex index(int cell) {
+        return members[cell].length < minpts ? null : new CellIndex(relation, ids, dq, members[cell], sortdim, epsilon);
+      }
+    });
+    LOG.ensureCompleted(cprog);
+
+    // Pass 2: connect core points, and assign border points.
+    final ConcurrentUnionFindInteger uf = new ConcurrentUnionFindInteger(size);
+    final int[] border = new int[size];
+    Arrays.fill(border, -1);
+    FiniteProgress mprog = LOG.isVerbose() ? new FiniteProgress("Connecting core points", members.length, LOG) : null;
+    ParallelExecutor.run(members.length, 1, new CellTask(mprog) {
+      @Override
+      void process(int cell, CellIndex idx) {
+        final int[] offs = idx.offs;
+        for(int j = 0; j < offs.length; j++) {
+          final int i = offs[j];
+          if(home[i] != cell) {
+            continue;
+          }
+          if(core[i]) {
+            for(int k = idx.start(j), end = idx.end(j); k < end; k++) {
+              // Relation is symmetric, so we only need to join with smaller.
+              final int o = offs[k];
+              if(o < i && core[o] && idx.distance(j, k) <= epsilon) {
+                uf.union(i, o);
+              }
+            }
+            continue;
+          }
+          double best = Double.POSITIVE_INFINITY;
+          for(int k = idx.start(j), end = idx.end(j); k < end; k++) {
+            if(!core[offs[k]]) {
+              continue;
+            }
+            final double d = idx.distance(j, k);
+            if(d <= epsilon && d < best) {
+              best = d;
+              border[i] = offs[k];
+            }
+          }
+        }
+      }
+
+      @Override
+      CellIndex index(int cell) {
+        for(int i : members[cell]) {
+          if(core[i]) {
+            return new CellIndex(relation, ids, dq, members[cell], sortdim, epsilon);
+          }
+        }
+        return null; // No core points, no clusters.
+      }
+    });
+    LOG.ensureCompleted(mprog);
+
+    // Build the final result, in order of the first member of each cluster:
+    int[] clusterof = new int[size];
+    Arrays.fill(clusterof, -1);
+    List<ModifiableDBIDs> clusters = new ArrayList<>();
+    ModifiableDBIDs noise = DBIDUtil.newArray();
+    int numcore = 0;
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      final int i = it.getOffset();
+      final int ref = core[i] ? i : border[i];
+      if(ref < 0) {
+        noise.add(it);
+        continue;
+      }
+      numcore += core[i] ? 1 : 0;
+      final int root = uf.find(ref);
+      if(clusterof[root] < 0) {
+        clusterof[root] = clusters.size();
+        clusters.add(DBIDUtil.newArray());
+      }
+      clusters.get(clusterof[root]).add(it);
+    }
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(ParallelGriDBSCAN.class.getName() + ".core-points", numcore));
+    }
+    Clustering<Model> result = new Clustering<>("DBSCAN Clustering", "dbscan-clustering");
+    for(ModifiableDBIDs c : clusters) {
+      result.addToplevelCluster(new Cluster<Model>(c, ClusterModel.CLUSTER));
+    }
+    if(noise.size() > 0) {
+      result.addToplevelCluster(new Cluster<Model>(noise, true, ClusterModel.CLUSTER));
+    }
+    return result;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Overlapping grid partitioning of the data, storing array offsets.
+   *
+   * @author Erich Schubert
+   */
+  private static class Grid {
+    /**
+     * Members of each occupied cell, sorted by size descending.
+     */
+    int[][] members;
+
+    /**
+     * Home cell of each object.
+     */
+    int[] home;
+
+    /**
+     * Axis to sort the cells on.
+     */
+    int sortdim;
+
+    /**
+     * Epsilon and grid width.
+     */
+    private double epsilon, gridwidth;
+
+    /**
+     * Grid offset.
+     */
+    private double[] offset;
+
+    /**
+     * Number of cells per dimension.
+     */
+    private int[] cells;
+
+    /**
+     * Map from cell key to cell number.
+     */
+    private TLongIntHashMap keys = new TLongIntHashMap(1000, .5f, Long.MIN_VALUE, -1);
+
+    /**
+     * Members of the cells, during construction.
+     */
+    private List<TIntArrayList> lists = new ArrayList<>();
+
+    /**
+     * Build the grid.
+     *
+     * @param relation Data relation
+     * @param ids Object ids
+     * @param epsilon Epsilon radius
+     * @param gridwidth Grid width
+     */
+    Grid(Relation<? extends NumberVector> relation, ArrayDBIDs ids, double epsilon, double gridwidth) {
+      this.epsilon = epsilon;
+      this.gridwidth = gridwidth;
+      double[][] domain = RelationUtil.computeMinMax(relation);
+      final int dim = domain[0].length;
+      offset = new double[dim];
+      cells = new int[dim];
+      double maxw = -1;
+      for(int d = 0; d < dim; d++) {
+        final double mi = domain[0][d], ma = domain[1][d], wi = ma - mi;
+        if(mi == Double.NEGATIVE_INFINITY || ma == Double.POSITIVE_INFINITY || mi != mi || ma != ma) {
+          throw new IncompatibleDataException("Dimension " + d + " contains non-finite values.");
+        }
+        int c = cells[d] = Math.max(1, (int) FastMath.ceil(wi / gridwidth));
+        offset[d] = mi - (c * gridwidth - wi) * .5;
+        if(wi > maxw) {
+          maxw = wi;
+          sortdim = d;
+        }
+      }
+      // Keys may overflow for excessive numbers of cells. This merges cells,
+      // which is less efficient but still correct.
+      home = new int[ids.size()];
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        NumberVector obj = relation.get(it);
+        long hkey = 0;
+        for(int d = 0; d < dim; d++) {
+          hkey = hkey * cells[d] + Math.min(cells[d] - 1, (int) FastMath.floor((obj.doubleValue(d) - offset[d]) / gridwidth));
+        }
+        insert(it.getOffset(), obj, 0, 0L);
+        home[it.getOffset()] = keys.get(hkey);
+      }
+      // Largest cells first, for load balancing:
+      final int[] order = new int[lists.size()];
+      Integer[] tmp = new Integer[lists.size()];
+      for(int i = 0; i < tmp.length; i++) {
+        tmp[i] = i;
+      }
+      Arrays.sort(tmp, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer o1, Integer o2) {
+          return Integer.compare(lists.get(o2).size(), lists.get(o1).size());
+        }
+      });
+      members = new int[tmp.length][];
+      for(int i = 0; i < tmp.length; i++) {
+        order[tmp[i]] = i;
+        members[i] = lists.get(tmp[i]).toArray();
+      }
+      for(int i = 0; i < home.length; i++) {
+        home[i] = order[home[i]];
+      }
+      lists = null;
+      keys = null;
+    }
+
+    /**
+     * Insert a single object into all cells within epsilon.
+     *
+     * @param off Object offset
+     * @param obj Object
+     * @param d Current dimension
+     * @param v Current cell key
+     */
+    private void insert(int off, NumberVector obj, int d, long v) {
+      final int cn = cells[d];
+      final double x = obj.doubleValue(d) - offset[d];
+      final int mi = Math.max(0, (int) FastMath.floor((x - epsilon) / gridwidth));
+      final int ma = Math.min(cn - 1, (int) FastMath.floor((x + epsilon) / gridwidth));
+      for(int i = mi; i <= ma; i++) {
+        final long c = v * cn + i;
+        if(d + 1 < cells.length) {
+          insert(off, obj, d + 1, c);
+          continue;
+        }
+        int cell = keys.get(c);
+        if(cell < 0) {
+          keys.put(c, cell = lists.size());
+          lists.add(new TIntArrayList());
+        }
+        lists.get(cell).add(off);
+      }
+    }
+  }
+
+  /**
+   * Local index of a single cell: the members sorted along one axis.
+   *
+   * @author Erich Schubert
+   */
+  private static class CellIndex {
+    /**
+     * Member offsets, sorted by coordinate.
+     */
+    final int[] offs;
+
+    /**
+     * Coordinates along the sort axis.
+     */
+    private final double[] coords;
+
+    /**
+     * Epsilon radius.
+     */
+    private final double epsilon;
+
+    /**
+     * Distance query.
+     */
+    private final DistanceQuery<?> dq;
+
+    /**
+     * Iterators for distance computations.
+     */
+    private final DBIDArrayIter a, b;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param ids Object IDs
+     * @param dq Distance query
+     * @param members Cell members
+     * @param sortdim Axis to sort on
+     * @param epsilon Epsilon radius
+     */
+    CellIndex(Relation<? extends NumberVector> relation, ArrayDBIDs ids, DistanceQuery<?> dq, int[] members, int sortdim, double epsilon) {
+      this.offs = members.clone();
+      this.coords = new double[offs.length];
+      this.epsilon = epsilon;
+      this.dq = dq;
+      this.a = ids.iter();
+      this.b = ids.iter();
+      for(int i = 0; i < offs.length; i++) {
+        coords[i] = relation.get(a.seek(offs[i])).doubleValue(sortdim);
+      }
+      DoubleIntegerArrayQuickSort.sort(coords, offs, offs.length);
+    }
+
+    /**
+     * First candidate neighbor of the j'th member: for Lp norms, no
+     * coordinate can differ by more than epsilon.
+     *
+     * @param j Member position
+     * @return First candidate position
+     */
+    int start(int j) {
+      final double lo = coords[j] - epsilon;
+      int l = 0, h = j;
+      while(l < h) {
+        final int m = (l + h) >>> 1;
+        if(coords[m] < lo) {
+          l = m + 1;
+        }
+        else {
+          h = m;
+        }
+      }
+      return l;
+    }
+
+    /**
+     * End of the candidate neighbors of the j'th member (exclusive).
+     *
+     * @param j Member position
+     * @return End position
+     */
+    int end(int j) {
+      final double hi = coords[j] + epsilon;
+      int l = j + 1, h = coords.length;
+      while(l < h) {
+        final int m = (l + h) >>> 1;
+        if(coords[m] <= hi) {
+          l = m + 1;
+        }
+        else {
+          h = m;
+        }
+      }
+      return l;
+    }
+
+    /**
+     * Distance of two members.
+     *
+     * @param j First member position
+     * @param k Second member position
+     * @return Distance
+     */
+    double distance(int j, int k) {
+      return dq.distance(a.seek(offs[j]), b.seek(offs[k]));
+    }
+  }
+
+  /**
+   * Task processing one grid cell at a time.
+   *
+   * @author Erich Schubert
+   */
+  private abstract static class CellTask implements RangeTask {
+    /**
+     * Progress, may be {@code null}.
+     */
+    private FiniteProgress prog;
+
+    /**
+     * Constructor.
+     *
+     * @param prog Progress
+     */
+    CellTask(FiniteProgress prog) {
+      this.prog = prog;
+    }
+
+    @Override
+    public void process(int start, int end) {
+      for(int cell = start; cell < end; cell++) {
+        CellIndex idx = index(cell);
+        if(idx != null) {
+          process(cell, idx);
+        }
+      }
+      if(prog != null) {
+        prog.incrementProcessed(end - start, LOG);
+      }
+    }
+
+    /**
+     * Build the index of a cell, if it needs to be processed.
+     *
+     * @param cell Cell number
+     * @return Index, or {@code null} to skip the cell
+     */
+    abstract CellIndex index(int cell);
+
+    /**
+     * Process a single cell.
+     *
+     * @param cell Cell number
+     * @param idx Cell index
+     */
+    abstract void process(int cell, CellIndex idx);
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <O> Vector type to use
+   */
+  public static class Parameterizer<O extends NumberVector> extends GriDBSCAN.Parameterizer<O> {
+    @Override
+    protected ParallelGriDBSCAN<O> makeInstance() {
+      return new ParallelGriDBSCAN<>(distanceFunction, epsilon, minpts, gridwidth);
+    }
+  }
+}
@@ -0,0 +1,504 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.affinitypropagation;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractDistanceBasedAlgorithm;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.ClusteringAlgorithm;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.model.MedoidModel;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.progress.MutableProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor.RangeTask;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.QuickSelect;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+
+import gnu.trove.iterator.TIntObjectIterator;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+/**
+ * Sparse affinity propagation, where each object only considers its k nearest
+ * neighbors (and itself) as candidate exemplars.
+ *
+ * All other similarities are treated as -&infin;, i.e., they never carry any
+ * messages, and we only store the responsibilities and availabilities of the
+ * kNN graph edges. Memory and runtime per iteration therefore scale with
+ * O(n&middot;k) instead of O(n&sup2;). The kNN graph is obtained from the
+ * database, so an index such as
+ * {@link de.lmu.ifi.dbs.elki.index.preprocessed.knn.NNDescent} can be used to
+ * approximate it. The similarity of an edge is the negative distance, and the
+ * preference (diagonal) is set to a quantile of the edge similarities.
+ *
+ * The responsibility updates are processed row by row, the availability
+ * updates column by column (using a transposed edge index), both in parallel.
+ * With k = n-1, this computes the same result as
+ * {@link AffinityPropagationClusteringAlgorithm} with
+ * {@link DistanceBasedInitializationWithMedian}.
+ *
+ * Reference:
+ * <p>
+ * Clustering by Passing Messages Between Data Points<br />
+ * B. J. Frey and D. Dueck<br />
+ * Science Vol 315
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses KNNQuery
+ *
+ * @param <O> object type
+ */
+@Reference(title = "Clustering by Passing Messages Between Data Points", authors = "B. J. Frey and D. Dueck", booktitle = "Science Vol 315", url = "http://dx.doi.org/10.1126/science.1136800")
+public class SparseAffinityPropagation<O> extends AbstractDistanceBasedAlgorithm<O, Clustering<MedoidModel>> implements ClusteringAlgorithm<Clustering<MedoidModel>> {
+  /**
+   * Class logger
+   */
+  private static final Logging LOG = Logging.getLogger(SparseAffinityPropagation.class);
+
+  /**
+   * Number of rows (or columns) to process at once.
+   */
+  private static final int CHUNK = 256;
+
+  /**
+   * Number of neighbors.
+   */
+  int k;
+
+  /**
+   * Quantile of the edge similarities to use as preference.
+   */
+  double quantile;
+
+  /**
+   * Damping factor lambda.
+   */
+  double lambda = 0.5;
+
+  /**
+   * Terminate after 10 iterations with no changes.
+   */
+  int convergence = 10;
+
+  /**
+   * Maximum number of iterations.
+   */
+  int maxiter = 1000;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function
+   * @param k Number of neighbors
+   * @param quantile Quantile of the similarities to use as preference
+   * @param lambda Damping factor
+   * @param convergence Termination threshold (Number of stable iterations)
+   * @param maxiter Maximum number of iterations
+   */
+  public SparseAffinityPropagation(DistanceFunction<? super O> distanceFunction, int k, double quantile, double lambda, int convergence, int maxiter) {
+    super(distanceFunction);
+    this.k = k;
+    this.quantile = quantile;
+    this.lambda = lambda;
+    this.convergence = convergence;
+    this.maxiter = maxiter;
+  }
+
+  /**
+   * Perform affinity propagation clustering.
+   *
+   * @param db Database
+   * @param relation Relation
+   * @return Clustering result
+   */
+  public Clustering<MedoidModel> run(Database db, Relation<O> relation) {
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    final DistanceQuery<O> dq = db.getDistanceQuery(relation, getDistanceFunction());
+    final KNNQuery<O> knnq = db.getKNNQuery(dq, k + 1);
+
+    // Row i uses the edges i*stride to i*stride+deg[i]; the first is the
+    // self-edge, and the column indexes refer to positions in ids.
+    final int stride = Math.min(k, size - 1) + 1;
+    // All edges are addressed with int offsets into flat arrays.
+    if((long) size * stride > Integer.MAX_VALUE - 8) {
+      throw new AbortException("Too many edges for sparse affinity propagation: " + size + " * " + stride + ". Reduce k.");
+    }
+    final int[] deg = new int[size], col = new int[size * stride];
+    final double[] s = new double[size * stride];
+    final WritableIntegerDataStore offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, -1);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      offsets.putInt(it, it.getOffset());
+    }
+
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      // Build the sparse similarity graph:
+      final FiniteProgress kprog = LOG.isVerbose() ? new FiniteProgress("Computing kNN graph", size, LOG) : null;
+      ParallelExecutor.run(size, CHUNK, new RangeTask() {
+        @Override
+        public void process(int start, int end) {
+          DBIDArrayIter it = ids.iter().seek(start);
+          for(int i = start; i < end; i++, it.advance()) {
+            final int base = i * stride;
+            col[base] = i;
+            int e = base + 1;
+            KNNList knn = knnq.getKNNForDBID(it, k + 1);
+            for(DoubleDBIDListIter n = knn.iter(); n.valid() && e < base + stride; n.advance()) {
+              if(DBIDUtil.equal(it, n)) {
+                continue;
+              }
+              col[e] = offsets.intValue(n);
+              s[e] = -n.doubleValue();
+              ++e;
+            }
+            deg[i] = e - base;
+          }
+          if(kprog != null) {
+            kprog.incrementProcessed(end - start, LOG);
+          }
+        }
+      });
+      LOG.ensureCompleted(kprog);
+      offsets.destroy();
+
+      // Preference from the quantile of the edge similarities:
+      int m = 0;
+      for(int i = 0; i < size; i++) {
+        m += deg[i];
+      }
+      double[] flat = new double[m - size];
+      for(int i = 0, j = 0; i < size; i++) {
+        final int base = i * stride;
+        for(int e = base + 1, end = base + deg[i]; e < end; e++) {
+          flat[j++] = s[e];
+        }
+      }
+      final double preference = flat.length > 0 ? QuickSelect.quantile(flat, quantile) : 0.;
+      flat = null;
+      for(int i = 0; i < size; i++) {
+        s[i * stride] = preference;
+      }
+      if(LOG.isStatistics()) {
+        LOG.statistics(new LongStatistic(this.getClass().getName() + ".edges", m));
+      }
+
+      // Transposed index: edges into each column, beginning with the
+      // self-edge.
+      final int[] colstart = new int[size + 1], incoming = new int[m];
+      for(int i = 0; i < size; i++) {
+        final int base = i * stride;
+        for(int e = base, end = base + deg[i]; e < end; e++) {
+          ++colstart[col[e] + 1];
+        }
+      }
+      for(int i = 0; i < size; i++) {
+        colstart[i + 1] += colstart[i];
+      }
+      int[] fill = new int[size];
+      for(int i = 0; i < size; i++) {
+        incoming[colstart[i]] = i * stride;
+        fill[i] = colstart[i] + 1;
+      }
+      for(int i = 0; i < size; i++) {
+        final int base = i * stride;
+        for(int e = base + 1, end = base + deg[i]; e < end; e++) {
+          incoming[fill[col[e]]++] = e;
+        }
+      }
+      fill = null;
+
+      final double[] r = new double[size * stride], a = new double[size * stride];
+      final int[] assignment = new int[size];
+      final AtomicInteger changed = new AtomicInteger();
+      RangeTask responsibilities = new RangeTask() {
+        @Override
+        public void process(int start, int end) {
+          for(int i = start; i < end; i++) {
+            final int base = i * stride, rend = base + deg[i];
+            // Find the two largest values
+            double max1 = Double.NEGATIVE_INFINITY, max2 = Double.NEGATIVE_INFINITY;
+            int maxe = -1;
+            for(int e = base; e < rend; e++) {
+              double val = a[e] + s[e];
+              if(val > max1) {
+                max2 = max1;
+                max1 = val;
+                maxe = e;
+              }
+              else if(val > max2) {
+                max2 = val;
+              }
+            }
+            // With the maximum value known, update r:
+            for(int e = base; e < rend; e++) {
+              double val = s[e] - ((e != maxe) ? max1 : max2);
+              r[e] = r[e] * lambda + val * (1. - lambda);
+            }
+          }
+        }
+      };
+      RangeTask availabilities = new RangeTask() {
+        @Override
+        public void process(int start, int end) {
+          for(int c = start; c < end; c++) {
+            final int cstart = colstart[c], cend = colstart[c + 1];
+            // Sum of max(0, r_ic), but r_cc is always included.
+            final int self = incoming[cstart];
+            double colposum = r[self];
+            for(int j = cstart + 1; j < cend; j++) {
+              final double v = r[incoming[j]];
+              colposum += v > 0. ? v : 0.;
+            }
+            a[self] = a[self] * lambda + (colposum - r[self]) * (1. - lambda);
+            for(int j = cstart + 1; j < cend; j++) {
+              final int e = incoming[j];
+              double val = colposum - (r[e] > 0. ? r[e] : 0.);
+              val = val < 0. ? val : 0.;
+              a[e] = a[e] * lambda + val * (1. - lambda);
+            }
+          }
+        }
+      };
+      RangeTask assign = new RangeTask() {
+        @Override
+        public void process(int start, int end) {
+          int c = 0;
+          for(int i = start; i < end; i++) {
+            final int base = i * stride, rend = base + deg[i];
+            // Self-edge first, so it wins ties.
+            double max = a[base] + r[base];
+            int maxj = i;
+            for(int e = base + 1; e < rend; e++) {
+              double v = a[e] + r[e];
+              if(v > max) {
+                max = v;
+                maxj = col[e];
+              }
+            }
+            if(assignment[i] != maxj) {
+              ++c;
+              assignment[i] = maxj;
+            }
+          }
+          changed.addAndGet(c);
+        }
+      };
+
+      IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("Affinity Propagation Iteration", LOG) : null;
+      MutableProgress aprog = LOG.isVerbose() ? new MutableProgress("Stable assignments", size + 1, LOG) : null;
+      int inactive = 0;
+      for(int iteration = 0; iteration < maxiter && inactive < convergence; iteration++) {
+        ParallelExecutor.run(size, CHUNK, responsibilities);
+        ParallelExecutor.run(size, CHUNK, availabilities);
+        changed.set(0);
+        ParallelExecutor.run(size, CHUNK, assign);
+        final int c = changed.get();
+        inactive = (c > 0) ? 0 : (inactive + 1);
+        LOG.incrementProcessed(prog);
+        if(aprog != null) {
+          aprog.setProcessed(size - c, LOG);
+        }
+      }
+      if(aprog != null) {
+        aprog.setProcessed(aprog.getTotal(), LOG);
+      }
+      LOG.setCompleted(prog);
+      return buildClustering(ids, assignment);
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Build the clustering from the exemplar assignment.
+   *
+   * @param ids Object IDs
+   * @param assignment Exemplar of each object
+   * @return Clustering
+   */
+  private Clustering<MedoidModel> buildClustering(ArrayDBIDs ids, int[] assignment) {
+    // Cluster map, by lead object
+    TIntObjectHashMap<ModifiableDBIDs> map = new TIntObjectHashMap<>();
+    DBIDArrayIter i1 = ids.iter();
+    for(int i = 0; i1.valid(); i1.advance(), i++) {
+      // The chosen exemplar may only be reachable via neighbors: chase arrows,
+      // but do not loop forever on cycles.
+      int c = assignment[i];
+      for(int steps = 0; assignment[c] != c && steps < assignment.length; steps++) {
+        c = assignment[c];
+      }
+      ModifiableDBIDs cids = map.get(c);
+      if(cids == null) {
+        cids = DBIDUtil.newArray();
+        map.put(c, cids);
+      }
+      cids.add(i1);
+    }
+    Clustering<MedoidModel> clustering = new Clustering<>("Affinity Propagation Clustering", "ap-clustering");
+    ModifiableDBIDs noise = DBIDUtil.newArray();
+    for(TIntObjectIterator<ModifiableDBIDs> iter = map.iterator(); iter.hasNext();) {
+      iter.advance(); // Trove iterator; advance first!
+      i1.seek(iter.key());
+      if(iter.value().size() > 1) {
+        MedoidModel mod = new MedoidModel(DBIDUtil.deref(i1));
+        clustering.addToplevelCluster(new Cluster<>(iter.value(), mod));
+      }
+      else {
+        noise.add(i1);
+      }
+    }
+    if(noise.size() > 0) {
+      MedoidModel mod = new MedoidModel(DBIDUtil.deref(noise.iter()));
+      clustering.addToplevelCluster(new Cluster<>(noise, true, mod));
+    }
+    return clustering;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(getDistanceFunction().getInputTypeRestriction());
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <O> object type
+   */
+  public static class Parameterizer<O> extends AbstractParameterizer {
+    /**
+     * Parameter for the number of neighbors.
+     */
+    public static final OptionID K_ID = new OptionID("ap.knn", "Number of nearest neighbors to consider as exemplars for each object.");
+
+    /**
+     * Distance function.
+     */
+    DistanceFunction<? super O> distance;
+
+    /**
+     * Number of neighbors.
+     */
+    int k;
+
+    /**
+     * Quantile to use.
+     */
+    double quantile;
+
+    /**
+     * Dampening parameter.
+     */
+    double lambda = .5;
+
+    /**
+     * Number of stable iterations for convergence.
+     */
+    int convergence;
+
+    /**
+     * Maximum number of iterations.
+     */
+    int maxiter;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      ObjectParameter<DistanceFunction<? super O>> distP = new ObjectParameter<>(DistanceBasedInitializationWithMedian.Parameterizer.DISTANCE_ID, DistanceFunction.class, SquaredEuclideanDistanceFunction.class);
+      if(config.grab(distP)) {
+        distance = distP.instantiateClass(config);
+      }
+      IntParameter kP = new IntParameter(K_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(kP)) {
+        k = kP.intValue();
+      }
+      DoubleParameter quantileP = new DoubleParameter(AffinityPropagationInitialization.QUANTILE_ID, .5);
+      if(config.grab(quantileP)) {
+        quantile = quantileP.doubleValue();
+      }
+      final DoubleParameter lambdaP = new DoubleParameter(AffinityPropagationClusteringAlgorithm.Parameterizer.LAMBDA_ID, .5);
+      lambdaP.addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE);
+      lambdaP.addConstraint(CommonConstraints.LESS_THAN_ONE_DOUBLE);
+      if(config.grab(lambdaP)) {
+        lambda = lambdaP.doubleValue();
+      }
+      final IntParameter convergenceP = new IntParameter(AffinityPropagationClusteringAlgorithm.Parameterizer.CONVERGENCE_ID, 15);
+      convergenceP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(convergenceP)) {
+        convergence = convergenceP.intValue();
+      }
+      final IntParameter maxiterP = new IntParameter(AffinityPropagationClusteringAlgorithm.Parameterizer.MAXITER_ID, 1000);
+      if(config.grab(maxiterP)) {
+        maxiter = maxiterP.intValue();
+      }
+    }
+
+    @Override
+    protected SparseAffinityPropagation<O> makeInstance() {
+      return new SparseAffinityPropagation<>(distance, k, quantile, lambda, convergence, maxiter);
+    }
+  }
+}
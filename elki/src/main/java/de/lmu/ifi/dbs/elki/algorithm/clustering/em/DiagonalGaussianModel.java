@@ -116,6 +116,17 @@ public class DiagonalGaussianModel implements EMClusterModel<EMModel> {
     this.wsum = 0.;
   }
 
+  /**
+   * Constructor for an empty accumulator.
+   *
+   * @param dim Dimensionality
+   */
+  private DiagonalGaussianModel(int dim) {
+    this.mean = new double[dim];
+    this.variances = new double[dim];
+    this.nmea = new double[dim];
+  }
+
   @Override
   public void beginEStep() {
     wsum = 0.;
@@ -145,6 +156,26 @@ public class DiagonalGaussianModel implements EMClusterModel<EMModel> {
     System.arraycopy(nmea, 0, mean, 0, nmea.length);
   }
 
+  @Override
+  public DiagonalGaussianModel newAccumulator() {
+    return new DiagonalGaussianModel(mean.length);
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<EMModel> other) {
+    final DiagonalGaussianModel o = (DiagonalGaussianModel) other;
+    if(!(o.wsum > 0.)) {
+      return;
+    }
+    final double nwsum = wsum + o.wsum, f = wsum * o.wsum / nwsum, r = o.wsum / nwsum;
+    for(int i = 0; i < mean.length; i++) {
+      final double delta = o.mean[i] - mean[i];
+      variances[i] += delta * delta * f + o.variances[i];
+      mean[i] += delta * r;
+    }
+    wsum = nwsum;
+  }
+
   @Override
   public void finalizeEStep() {
     if(wsum > 0.) {
@@ -21,6 +21,7 @@
 package de.lmu.ifi.dbs.elki.algorithm.clustering.em;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
@@ -162,7 +163,7 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
     }
     List<? extends EMClusterModel<M>> models = mfactory.buildInitialModels(database, relation, k, SquaredEuclideanDistanceFunction.STATIC);
     WritableDataStore<double[]> probClusterIGivenX = DataStoreUtil.makeStorage(relation.getDBIDs(), DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_SORTED, double[].class);
-    double emNew = assignProbabilitiesToInstances(relation, models, probClusterIGivenX);
+    double emNew = expectationStep(relation, models, probClusterIGivenX);
 
     // iteration unless no change
     if(LOG.isVerbose()) {
@@ -174,9 +175,9 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
 
     for(int it = 1; it <= maxiter || maxiter < 0; it++) {
       final double emOld = emNew;
-      recomputeCovarianceMatrices(relation, probClusterIGivenX, models);
+      maximizationStep(relation, probClusterIGivenX, models);
       // reassign probabilities
-      emNew = assignProbabilitiesToInstances(relation, models, probClusterIGivenX);
+      emNew = expectationStep(relation, models, probClusterIGivenX);
 
       if(LOG.isVerbose()) {
         LOG.verbose("iteration " + it + " - expectation value: " + emNew);
@@ -227,6 +228,29 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
     return result;
   }
 
+  /**
+   * Perform the maximization step, i.e., recompute the cluster models.
+   *
+   * @param relation Vector data
+   * @param probClusterIGivenX Object probabilities
+   * @param models Cluster models to update
+   */
+  protected void maximizationStep(Relation<V> relation, WritableDataStore<double[]> probClusterIGivenX, List<? extends EMClusterModel<M>> models) {
+    recomputeCovarianceMatrices(relation, probClusterIGivenX, models);
+  }
+
+  /**
+   * Perform the expectation step, i.e., assign the cluster probabilities.
+   *
+   * @param relation Vector data
+   * @param models Cluster models
+   * @param probClusterIGivenX Output storage for cluster probabilities
+   * @return the expectation value of the current mixture of distributions
+   */
+  protected double expectationStep(Relation<V> relation, List<? extends EMClusterModel<M>> models, WritableDataStore<double[]> probClusterIGivenX) {
+    return assignProbabilitiesToInstances(relation, models, probClusterIGivenX);
+  }
+
   /**
    * Recompute the covariance matrixes.
    * 
@@ -277,35 +301,49 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
     double emSum = 0.;
 
     for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
-      NumberVector vec = relation.get(iditer);
-      double[] probabilities = new double[k];
-      {
-        int i = 0;
-        for(EMClusterModel<?> m : models) {
-          probabilities[i] = m.estimateDensity(vec);
-          ++i;
-        }
-      }
-      double priorProbability = 0.;
-      for(int i = 0; i < k; i++) {
-        priorProbability += probabilities[i];
-      }
-      double logP = Math.max(FastMath.log(priorProbability), MIN_LOGLIKELIHOOD);
-      emSum += (logP == logP) ? logP : 0.; /* avoid NaN */
-
       double[] clusterProbabilities = new double[k];
-      if(priorProbability > 0.) {
-        for(int i = 0; i < k; i++) {
-          // do not divide by zero!
-          clusterProbabilities[i] = probabilities[i] / priorProbability;
-        }
-      }
+      emSum += computeProbabilities(relation.get(iditer), models, clusterProbabilities);
       probClusterIGivenX.put(iditer, clusterProbabilities);
     }
 
     return emSum / relation.size();
   }
 
+  /**
+   * Compute the cluster probabilities of a single object.
+   *
+   * @param vec Object
+   * @param models Cluster models
+   * @param clusterProbabilities Output array for the cluster probabilities
+   * @return Log likelihood of the object
+   */
+  protected static double computeProbabilities(NumberVector vec, List<? extends EMClusterModel<?>> models, double[] clusterProbabilities) {
+    final int k = models.size();
+    {
+      int i = 0;
+      for(EMClusterModel<?> m : models) {
+        clusterProbabilities[i] = m.estimateDensity(vec);
+        ++i;
+      }
+    }
+    double priorProbability = 0.;
+    for(int i = 0; i < k; i++) {
+      priorProbability += clusterProbabilities[i];
+    }
+    double logP = Math.max(FastMath.log(priorProbability), MIN_LOGLIKELIHOOD);
+
+    if(priorProbability > 0.) {
+      for(int i = 0; i < k; i++) {
+        // do not divide by zero!
+        clusterProbabilities[i] /= priorProbability;
+      }
+    }
+    else {
+      Arrays.fill(clusterProbabilities, 0.);
+    }
+    return (logP == logP) ? logP : 0.; /* avoid NaN */
+  }
+
   @Override
   public TypeInformation[] getInputTypeRestriction() {
     return TypeUtil.array(TypeUtil.NUMBER_VECTOR_FIELD);
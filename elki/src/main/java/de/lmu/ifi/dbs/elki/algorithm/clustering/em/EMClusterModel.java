@@ -48,6 +48,24 @@ public interface EMClusterModel<M extends MeanModel> {
    */
   void finalizeEStep();
 
+  /**
+   * Create a new, empty model of the same type and dimensionality, to
+   * accumulate the statistics of a part of the data with {@link #updateE}, to
+   * be combined with {@link #mergeE} later. Used for parallel processing.
+   *
+   * @return Empty accumulator
+   */
+  EMClusterModel<M> newAccumulator();
+
+  /**
+   * Merge the statistics of an accumulator obtained from
+   * {@link #newAccumulator}, after {@link #beginEStep} and before
+   * {@link #finalizeEStep}.
+   *
+   * @param other Accumulator to merge
+   */
+  void mergeE(EMClusterModel<M> other);
+
   /**
    * Estimate the likelihood of a vector.
    * 
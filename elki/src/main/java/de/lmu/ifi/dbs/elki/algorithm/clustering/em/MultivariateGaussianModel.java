@@ -28,6 +28,7 @@ import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.model.EMModel;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.math.MathUtil;
+import de.lmu.ifi.dbs.elki.math.linearalgebra.CholeskyDecomposition;
 import de.lmu.ifi.dbs.elki.math.linearalgebra.LUDecomposition;
 import de.lmu.ifi.dbs.elki.math.linearalgebra.VMath;
 import net.jafama.FastMath;
@@ -59,6 +60,12 @@ public class MultivariateGaussianModel implements EMClusterModel<EMModel> {
    */
   double[][] covariance, invCovMatr;
 
+  /**
+   * Cholesky factor L of the covariance matrix, {@code null} if the matrix is
+   * not positive definite (and the inverse is used instead).
+   */
+  double[][] chol;
+
   /**
    * Temporary storage, to avoid reallocations.
    */
@@ -120,6 +127,17 @@ public class MultivariateGaussianModel implements EMClusterModel<EMModel> {
     this.wsum = 0.;
   }
 
+  /**
+   * Constructor for an empty accumulator.
+   *
+   * @param dim Dimensionality
+   */
+  private MultivariateGaussianModel(int dim) {
+    this.mean = new double[dim];
+    this.covariance = new double[dim][dim];
+    this.nmea = new double[dim];
+  }
+
   @Override
   public void beginEStep() {
     wsum = 0.;
@@ -156,6 +174,39 @@ public class MultivariateGaussianModel implements EMClusterModel<EMModel> {
     System.arraycopy(nmea, 0, mean, 0, nmea.length);
   }
 
+  @Override
+  public MultivariateGaussianModel newAccumulator() {
+    return new MultivariateGaussianModel(mean.length);
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<EMModel> other) {
+    final MultivariateGaussianModel o = (MultivariateGaussianModel) other;
+    if(!(o.wsum > 0.)) {
+      return;
+    }
+    final double nwsum = wsum + o.wsum, f = wsum * o.wsum / nwsum;
+    // Difference of the means
+    for(int i = 0; i < mean.length; i++) {
+      nmea[i] = o.mean[i] - mean[i];
+    }
+    // Combine the scatter matrices
+    for(int i = 0; i < mean.length; i++) {
+      for(int j = i; j < mean.length; j++) {
+        final double delta = nmea[i] * nmea[j] * f + o.covariance[i][j];
+        covariance[i][j] += delta;
+        if(i != j) {
+          covariance[j][i] += delta;
+        }
+      }
+    }
+    final double r = o.wsum / nwsum;
+    for(int i = 0; i < mean.length; i++) {
+      mean[i] += nmea[i] * r;
+    }
+    wsum = nwsum;
+  }
+
   @Override
   public void finalizeEStep() {
     if(wsum > Double.MIN_NORMAL) {
@@ -165,24 +216,36 @@ public class MultivariateGaussianModel implements EMClusterModel<EMModel> {
   }
 
   /**
-   * Robust computation of the inverse covariance matrix.
+   * Robust computation of the Cholesky factor, or else the inverse of the
+   * covariance matrix.
    */
   private void robustInvert() {
     // TODO: further improve handling of degenerated cases?
     final int dim = mean.length;
-    LUDecomposition lu = new LUDecomposition(covariance);
-    double det = lu.det();
-    if(!(det > 0.)) {
+    CholeskyDecomposition cd = new CholeskyDecomposition(covariance);
+    if(!cd.isSPD()) {
       // Add a small value to the diagonal
       for(int i = 0; i < dim; i++) {
         covariance[i][i] += SINGULARITY_CHEAT;
       }
-      lu = new LUDecomposition(covariance);
-      det = lu.det();
-      if(!(det > 0.)) {
-        LOG.warning("Singularity cheat did not resolve zero determinant.");
-        det = 1.;
+      cd = new CholeskyDecomposition(covariance);
+    }
+    if(cd.isSPD()) {
+      chol = cd.getL();
+      invCovMatr = null;
+      double det = 1.;
+      for(int i = 0; i < dim; i++) {
+        det *= chol[i][i];
       }
+      normDistrFactor = 1. / FastMath.sqrt(norm * det * det);
+      return;
+    }
+    chol = null;
+    LUDecomposition lu = new LUDecomposition(covariance);
+    double det = lu.det();
+    if(!(det > 0.)) {
+      LOG.warning("Singularity cheat did not resolve zero determinant.");
+      det = 1.;
     }
     normDistrFactor = 1. / FastMath.sqrt(norm * det);
     invCovMatr = lu.solve(identity(dim, dim));
@@ -209,7 +272,23 @@ public class MultivariateGaussianModel implements EMClusterModel<EMModel> {
    * @return Mahalanobis distance
    */
   public double mahalanobisDistance(NumberVector vec) {
-    return VMath.mahalanobisDistance(invCovMatr, vec.toArray(), mean);
+    if(chol == null) {
+      return VMath.mahalanobisDistance(invCovMatr, vec.toArray(), mean);
+    }
+    // Solve L y = vec - mean by forward substitution; the distance is |y|^2.
+    final int dim = mean.length;
+    final double[] y = new double[dim];
+    double agg = 0.;
+    for(int i = 0; i < dim; i++) {
+      final double[] li = chol[i];
+      double s = vec.doubleValue(i) - mean[i];
+      for(int j = 0; j < i; j++) {
+        s -= li[j] * y[j];
+      }
+      y[i] = s /= li[i];
+      agg += s * s;
+    }
+    return agg;
   }
 
   @Override
@@ -0,0 +1,307 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.em;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.MeanModel;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.parallel.Executor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+
+/**
+ * Multi-threaded EM clustering.
+ *
+ * Both the expectation and the maximization step are performed on all
+ * available cores, by partitioning the data. In the maximization step, each
+ * thread accumulates the sufficient statistics (weights, means, and scatter
+ * matrices) in private copies of the models (see
+ * {@link EMClusterModel#newAccumulator}), which are merged at the end, so no
+ * locking is necessary while processing the data.
+ *
+ * Because the statistics are summed in a different order, the results may
+ * differ from {@link EM} within the numerical precision.
+ *
+ * Reference:
+ * <p>
+ * A. P. Dempster, N. M. Laird, D. B. Rubin:<br />
+ * Maximum Likelihood from Incomplete Data via the EM algorithm.<br />
+ * In Journal of the Royal Statistical Society, Series B, 39(1), 1977, pp. 1-31
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has EStepProcessor
+ * @apiviz.has MStepProcessor
+ *
+ * @param <V> vector type to analyze
+ * @param <M> model type to produce
+ */
+@Reference(authors = "A. P. Dempster, N. M. Laird, D. B. Rubin", //
+    title = "Maximum Likelihood from Incomplete Data via the EM algorithm", //
+    booktitle = "Journal of the Royal Statistical Society, Series B, 39(1), 1977, pp. 1-31", //
+    url = "http://www.jstor.org/stable/2984875")
+public class ParallelEM<V extends NumberVector, M extends MeanModel> extends EM<V, M> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelEM.class);
+
+  /**
+   * Constructor.
+   *
+   * @param k k parameter
+   * @param delta delta parameter
+   * @param mfactory EM cluster model factory
+   * @param maxiter Maximum number of iterations
+   * @param soft Include soft assignments
+   */
+  public ParallelEM(int k, double delta, EMClusterModelFactory<V, M> mfactory, int maxiter, boolean soft) {
+    super(k, delta, mfactory, maxiter, soft);
+  }
+
+  @Override
+  protected double expectationStep(Relation<V> relation, List<? extends EMClusterModel<M>> models, WritableDataStore<double[]> probClusterIGivenX) {
+    // Allocate the output arrays first, so the threads only modify them.
+    DBIDIter iditer = relation.iterDBIDs();
+    if(iditer.valid() && probClusterIGivenX.get(iditer) == null) {
+      for(; iditer.valid(); iditer.advance()) {
+        probClusterIGivenX.put(iditer, new double[models.size()]);
+      }
+    }
+    EStepProcessor<V> proc = new EStepProcessor<>(relation, models, probClusterIGivenX);
+    ParallelExecutor.run(relation.getDBIDs(), proc);
+    return proc.emSum / relation.size();
+  }
+
+  @Override
+  protected void maximizationStep(Relation<V> relation, WritableDataStore<double[]> probClusterIGivenX, List<? extends EMClusterModel<M>> models) {
+    for(EMClusterModel<?> m : models) {
+      m.beginEStep();
+    }
+    MStepProcessor<M> proc = new MStepProcessor<>(relation, probClusterIGivenX, models);
+    ParallelExecutor.run(relation.getDBIDs(), proc);
+    int i = 0;
+    for(EMClusterModel<?> m : models) {
+      m.finalizeEStep();
+      m.setWeight(proc.wsum[i] / relation.size());
+      i++;
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Processor for the expectation step.
+   *
+   * @author Erich Schubert
+   *
+   * @param <V> Vector type
+   */
+  private static class EStepProcessor<V extends NumberVector> implements Processor {
+    /**
+     * Vector data.
+     */
+    private Relation<V> relation;
+
+    /**
+     * Cluster models.
+     */
+    private List<? extends EMClusterModel<?>> models;
+
+    /**
+     * Output storage for cluster probabilities.
+     */
+    private WritableDataStore<double[]> probClusterIGivenX;
+
+    /**
+     * Sum of log likelihoods.
+     */
+    double emSum = 0.;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Vector data
+     * @param models Cluster models
+     * @param probClusterIGivenX Output storage for cluster probabilities
+     */
+    EStepProcessor(Relation<V> relation, List<? extends EMClusterModel<?>> models, WritableDataStore<double[]> probClusterIGivenX) {
+      this.relation = relation;
+      this.models = models;
+      this.probClusterIGivenX = probClusterIGivenX;
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      return new Instance();
+    }
+
+    @Override
+    public synchronized void cleanup(Processor.Instance inst) {
+      @SuppressWarnings("unchecked")
+      Instance instance = (Instance) inst;
+      emSum += instance.emSum;
+    }
+
+    /**
+     * Instance for a single thread.
+     *
+     * @author Erich Schubert
+     */
+    private class Instance implements Processor.Instance {
+      /**
+       * Sum of log likelihoods.
+       */
+      double emSum = 0.;
+
+      @Override
+      public void map(DBIDRef id) {
+        emSum += computeProbabilities(relation.get(id), models, probClusterIGivenX.get(id));
+      }
+    }
+  }
+
+  /**
+   * Processor for the maximization step.
+   *
+   * @author Erich Schubert
+   *
+   * @param <M> Model type
+   */
+  private static class MStepProcessor<M extends MeanModel> implements Processor {
+    /**
+     * Vector data.
+     */
+    private Relation<? extends NumberVector> relation;
+
+    /**
+     * Cluster probabilities.
+     */
+    private WritableDataStore<double[]> probClusterIGivenX;
+
+    /**
+     * Cluster models to update.
+     */
+    private List<? extends EMClusterModel<M>> models;
+
+    /**
+     * Sum of weights of each cluster.
+     */
+    double[] wsum;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Vector data
+     * @param probClusterIGivenX Cluster probabilities
+     * @param models Cluster models to update
+     */
+    MStepProcessor(Relation<? extends NumberVector> relation, WritableDataStore<double[]> probClusterIGivenX, List<? extends EMClusterModel<M>> models) {
+      this.relation = relation;
+      this.probClusterIGivenX = probClusterIGivenX;
+      this.models = models;
+      this.wsum = new double[models.size()];
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      return new Instance();
+    }
+
+    @Override
+    public synchronized void cleanup(Processor.Instance inst) {
+      @SuppressWarnings("unchecked")
+      Instance i = (Instance) inst;
+      for(int c = 0; c < wsum.length; c++) {
+        models.get(c).mergeE(i.accumulators.get(c));
+        wsum[c] += i.wsum[c];
+      }
+    }
+
+    /**
+     * Instance for a single thread.
+     *
+     * @author Erich Schubert
+     */
+    private class Instance implements Processor.Instance {
+      /**
+       * Thread-local statistics.
+       */
+      List<EMClusterModel<M>> accumulators;
+
+      /**
+       * Sum of weights of each cluster.
+       */
+      double[] wsum;
+
+      /**
+       * Constructor.
+       */
+      Instance() {
+        accumulators = new ArrayList<>(models.size());
+        for(EMClusterModel<M> m : models) {
+          accumulators.add(m.newAccumulator());
+        }
+        wsum = new double[models.size()];
+      }
+
+      @Override
+      public void map(DBIDRef id) {
+        double[] clusterProbabilities = probClusterIGivenX.get(id);
+        NumberVector instance = relation.get(id);
+        for(int i = 0; i < clusterProbabilities.length; i++) {
+          final double prior = clusterProbabilities[i];
+          if(prior > 0.) {
+            accumulators.get(i).updateE(instance, prior);
+          }
+          wsum[i] += prior;
+        }
+      }
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector, M extends MeanModel> extends EM.Parameterizer<V, M> {
+    @Override
+    protected ParallelEM<V, M> makeInstance() {
+      return new ParallelEM<>(k, delta, initializer, maxiter, false);
+    }
+  }
+}
@@ -104,6 +104,16 @@ public class SphericalGaussianModel implements EMClusterModel<EMModel> {
     this.wsum = 0.;
   }
 
+  /**
+   * Constructor for an empty accumulator.
+   *
+   * @param dim Dimensionality
+   */
+  private SphericalGaussianModel(int dim) {
+    this.mean = new double[dim];
+    this.nmea = new double[dim];
+  }
+
   @Override
   public void beginEStep() {
     wsum = 0.;
@@ -132,6 +142,28 @@ public class SphericalGaussianModel implements EMClusterModel<EMModel> {
     System.arraycopy(nmea, 0, mean, 0, nmea.length);
   }
 
+  @Override
+  public SphericalGaussianModel newAccumulator() {
+    return new SphericalGaussianModel(mean.length);
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<EMModel> other) {
+    final SphericalGaussianModel o = (SphericalGaussianModel) other;
+    if(!(o.wsum > 0.)) {
+      return;
+    }
+    final double nwsum = wsum + o.wsum, f = wsum * o.wsum / nwsum, r = o.wsum / nwsum;
+    double sqdelta = 0.;
+    for(int i = 0; i < mean.length; i++) {
+      final double delta = o.mean[i] - mean[i];
+      sqdelta += delta * delta;
+      mean[i] += delta * r;
+    }
+    variance += sqdelta * f + o.variance;
+    wsum = nwsum;
+  }
+
   @Override
   public void finalizeEStep() {
     if(wsum > 0.) {
@@ -0,0 +1,442 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractDistanceBasedAlgorithm;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.distancematrix.ChunkedDistanceStorage;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor.RangeTask;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Multi-threaded and memory-lean variant of
+ * {@link AnderbergHierarchicalClustering}.
+ *
+ * The distance matrix is stored in chunks addressed with long offsets, so it is
+ * not limited by the maximum Java array size, and may optionally be stored
+ * with single precision to halve the memory requirements. Computing the
+ * initial matrix, initializing the nearest-neighbor cache, and the row update
+ * after each merge are performed in parallel; the merges themselves remain
+ * sequential, and produce the same hierarchy as the single-threaded version
+ * (up to the precision of the matrix).
+ *
+ * Reference:
+ * <p>
+ * M. R. Anderberg<br />
+ * Hierarchical Clustering Methods<br />
+ * Cluster Analysis for Applications<br />
+ * ISBN: 0120576503
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf LinkageMethod
+ * @apiviz.composedOf PointerHierarchyRepresentationBuilder
+ * @apiviz.composedOf ChunkedDistanceStorage
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "M. R. Anderberg", //
+title = "Hierarchical Clustering Methods", //
+booktitle = "Cluster Analysis for Applications")
+public class ParallelAnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchyRepresentationResult>implements HierarchicalClusteringAlgorithm {
+  /**
+   * Class logger
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelAnderbergHierarchicalClustering.class);
+
+  /**
+   * Minimum working set size to perform the row updates in parallel; below,
+   * the synchronization overhead outweighs the benefits.
+   */
+  private static final int PARALLEL_THRESHOLD = 10000;
+
+  /**
+   * Number of rows claimed at once by a worker when computing the matrix.
+   */
+  private static final int ROW_CHUNK = 16;
+
+  /**
+   * Current linkage method in use.
+   */
+  LinkageMethod linkage = WardLinkageMethod.STATIC;
+
+  /**
+   * Store the matrix with single precision only.
+   */
+  boolean single;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function to use
+   * @param linkage Linkage method
+   * @param single Store the matrix with single precision only
+   */
+  public ParallelAnderbergHierarchicalClustering(DistanceFunction<? super O> distanceFunction, LinkageMethod linkage, boolean single) {
+    super(distanceFunction);
+    this.linkage = linkage;
+    this.single = single;
+  }
+
+  /**
+   * Run the algorithm
+   *
+   * @param db Database
+   * @param relation Relation
+   * @return Clustering hierarchy
+   */
+  public PointerHierarchyRepresentationResult run(Database db, Relation<O> relation) {
+    final DistanceQuery<O> dq = db.getDistanceQuery(relation, getDistanceFunction());
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+
+    if(SingleLinkageMethod.class.isInstance(linkage)) {
+      LOG.verbose("Notice: SLINK is a much faster algorithm for single-linkage clustering!");
+    }
+    final long msize = triangleSize(size);
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".matrix-bytes", msize * (single ? 4 : 8)));
+    }
+    final ChunkedDistanceStorage matrix = ChunkedDistanceStorage.allocate(msize, single);
+    // Cluster sizes, 0 for clusters that have been merged into another.
+    final int[] sizes = new int[size];
+    // Arrays used for caching:
+    final double[] bestd = new double[size];
+    final int[] besti = new int[size];
+    // Initialize space for result:
+    PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids);
+
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      // Compute the initial (lower triangular) distance matrix.
+      final boolean square = WardLinkageMethod.class.isInstance(linkage) && !(SquaredEuclideanDistanceFunction.class.isInstance(dq.getDistanceFunction()));
+      final FiniteProgress mprog = LOG.isVerbose() ? new FiniteProgress("Computing distance matrix", size, LOG) : null;
+      ParallelExecutor.run(size, ROW_CHUNK, new RangeTask() {
+        @Override
+        public void process(int start, int end) {
+          DBIDArrayIter ix = ids.iter().seek(start), iy = ids.iter();
+          for(int x = start; x < end; x++, ix.advance()) {
+            // Position counter - must agree with getOffset!
+            long pos = triangleSize(x);
+            for(iy.seek(0); iy.getOffset() < x; iy.advance(), pos++) {
+              final double d = dq.distance(ix, iy);
+              matrix.set(pos, square ? d * d : d);
+            }
+            sizes[x] = 1;
+          }
+          if(mprog != null) {
+            mprog.incrementProcessed(end - start, LOG);
+          }
+        }
+      });
+      LOG.ensureCompleted(mprog);
+
+      // Initialize the nearest neighbor cache:
+      ParallelExecutor.run(size, Math.max(ROW_CHUNK, size / (core.getParallelism() << 3)), new RangeTask() {
+        @Override
+        public void process(int start, int end) {
+          for(int j = start; j < end; j++) {
+            findBest(size, matrix, sizes, bestd, besti, j);
+          }
+        }
+      });
+
+      // Repeat until everything merged into 1 cluster
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Agglomerative clustering", size - 1, LOG) : null;
+      DBIDArrayIter ix = ids.iter(), iy = ids.iter();
+      int wsize = size;
+      for(int i = 1; i < size; i++) {
+        int x = findMerge(core, wsize, matrix, ix, iy, sizes, bestd, besti, builder);
+        if(x == wsize - 1) {
+          --wsize;
+          while(sizes[wsize - 1] == 0) {
+            --wsize;
+          }
+        }
+        LOG.incrementProcessed(prog);
+      }
+      LOG.ensureCompleted(prog);
+    }
+    finally {
+      core.disconnect();
+    }
+    return builder.complete();
+  }
+
+  /**
+   * Compute the size of a complete x by x triangle (minus diagonal)
+   *
+   * @param x Offset
+   * @return Size of complete triangle
+   */
+  protected static long triangleSize(long x) {
+    return (x * (x - 1)) >>> 1;
+  }
+
+  /**
+   * Perform the next merge step.
+   *
+   * @param core Parallel core
+   * @param size Data set size
+   * @param matrix Distance matrix
+   * @param ix First iterator
+   * @param iy Second iterator
+   * @param sizes Cluster sizes
+   * @param bestd Best distance
+   * @param besti Index of best distance
+   * @param builder Hierarchy builder
+   * @return x, for shrinking the working set.
+   */
+  protected int findMerge(ParallelCore core, int size, ChunkedDistanceStorage matrix, DBIDArrayIter ix, DBIDArrayIter iy, int[] sizes, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder) {
+    double mindist = Double.POSITIVE_INFINITY;
+    int x = -1, y = -1;
+    // Find minimum:
+    for(int cx = 0; cx < size; cx++) {
+      // Skip if object has already joined a cluster:
+      if(besti[cx] < 0) {
+        continue;
+      }
+      if(bestd[cx] < mindist) {
+        mindist = bestd[cx];
+        x = cx;
+        y = besti[cx];
+      }
+    }
+    assert(x >= 0 && y >= 0);
+    merge(core, size, matrix, ix, iy, sizes, bestd, besti, builder, mindist, x < y ? y : x, x < y ? x : y);
+    return x;
+  }
+
+  /**
+   * Execute the cluster merge.
+   *
+   * @param core Parallel core
+   * @param size Data set size
+   * @param matrix Distance matrix
+   * @param ix First iterator
+   * @param iy Second iterator
+   * @param sizes Cluster sizes
+   * @param bestd Best distance
+   * @param besti Index of best distance
+   * @param builder Hierarchy builder
+   * @param mindist Distance that was used for merging
+   * @param x First matrix position
+   * @param y Second matrix position
+   */
+  protected void merge(ParallelCore core, final int size, final ChunkedDistanceStorage matrix, DBIDArrayIter ix, DBIDArrayIter iy, final int[] sizes, final double[] bestd, final int[] besti, PointerHierarchyRepresentationBuilder builder, final double mindist, final int x, final int y) {
+    // Avoid allocating memory, by reusing existing iterators:
+    ix.seek(x);
+    iy.seek(y);
+    if(LOG.isDebuggingFine()) {
+      LOG.debugFine("Merging: " + DBIDUtil.toString(ix) + " -> " + DBIDUtil.toString(iy) + " " + mindist);
+    }
+    // Perform merge in data structure: x -> y
+    assert(y < x);
+    // Since y < x, prefer keeping y, dropping x.
+    builder.add(ix, mindist, iy);
+    // Update cluster size for y:
+    final int sizex = sizes[x], sizey = sizes[y];
+    builder.setSize(iy, sizex + sizey);
+    sizes[y] = sizex + sizey;
+
+    // Deactivate x:
+    sizes[x] = 0;
+    besti[x] = -1;
+
+    // Each row j only reads and writes d(x, j), d(y, j) and its own cache,
+    // so all rows can be updated concurrently.
+    final long xbase = triangleSize(x), ybase = triangleSize(y);
+    RangeTask update = new RangeTask() {
+      @Override
+      public void process(int start, int end) {
+        for(int j = start; j < end; j++) {
+          final int sizej = sizes[j];
+          if(sizej == 0 || j == y) {
+            continue;
+          }
+          final long xj = j < x ? xbase + j : triangleSize(j) + x;
+          final long yj = j < y ? ybase + j : triangleSize(j) + y;
+          final double d = linkage.combine(sizex, matrix.get(xj), sizey, matrix.get(yj), sizej, mindist);
+          matrix.set(yj, d);
+          updateCache(size, matrix, sizes, bestd, besti, x, y, j, d);
+        }
+      }
+    };
+    if(size < PARALLEL_THRESHOLD) {
+      update.process(0, size);
+    }
+    else {
+      ParallelExecutor.run(size, Math.max(ROW_CHUNK, size / (core.getParallelism() << 3)), update);
+    }
+    if(besti[y] == x) {
+      findBest(size, matrix, sizes, bestd, besti, y);
+    }
+  }
+
+  /**
+   * Update the cache.
+   *
+   * @param size Working set size
+   * @param matrix Distance matrix
+   * @param sizes Cluster sizes
+   * @param bestd Best distance
+   * @param besti Best index
+   * @param x First cluster
+   * @param y Second cluster, {@code y < x}
+   * @param j Updated value d(y, j)
+   * @param d New distance
+   */
+  private static void updateCache(int size, ChunkedDistanceStorage matrix, int[] sizes, double[] bestd, int[] besti, int x, int y, int j, double d) {
+    // New best
+    if(d <= bestd[j]) {
+      bestd[j] = d;
+      besti[j] = y;
+      return;
+    }
+    // Needs slow upate.
+    if(besti[j] == x || besti[j] == y) {
+      findBest(size, matrix, sizes, bestd, besti, j);
+    }
+  }
+
+  /**
+   * Find the nearest active neighbor of j.
+   *
+   * @param size Working set size
+   * @param matrix Distance matrix
+   * @param sizes Cluster sizes
+   * @param bestd Best distance
+   * @param besti Best index
+   * @param j Object to update
+   */
+  private static void findBest(int size, ChunkedDistanceStorage matrix, int[] sizes, double[] bestd, int[] besti, int j) {
+    final long jbase = triangleSize(j);
+    double bestdj = Double.POSITIVE_INFINITY;
+    int bestij = -1;
+    long o = jbase;
+    for(int i = 0; i < j; i++, o++) {
+      if(sizes[i] == 0) {
+        continue;
+      }
+      final double v = matrix.get(o);
+      if(v < bestdj) {
+        bestdj = v;
+        bestij = i;
+      }
+    }
+    o = jbase + j + j;
+    for(int i = j + 1; i < size; o += i, i++) {
+      if(sizes[i] == 0) {
+        continue;
+      }
+      final double v = matrix.get(o);
+      if(v < bestdj) {
+        bestdj = v;
+        bestij = i;
+      }
+    }
+    bestd[j] = bestdj;
+    besti[j] = bestij;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    // The input relation must match our distance function:
+    return TypeUtil.array(getDistanceFunction().getInputTypeRestriction());
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <O> Object type
+   */
+  public static class Parameterizer<O> extends AbstractDistanceBasedAlgorithm.Parameterizer<O> {
+    /**
+     * Flag to store the distance matrix with single precision.
+     */
+    public static final OptionID FLOAT_ID = new OptionID("hierarchical.float", "Store the distance matrix with single precision only, to halve memory usage.");
+
+    /**
+     * Current linkage in use.
+     */
+    protected LinkageMethod linkage;
+
+    /**
+     * Store the matrix with single precision only.
+     */
+    protected boolean single;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      // We don't call super, because we want a different default distance.
+      ObjectParameter<DistanceFunction<O>> distanceFunctionP = makeParameterDistanceFunction(SquaredEuclideanDistanceFunction.class, DistanceFunction.class);
+      if(config.grab(distanceFunctionP)) {
+        distanceFunction = distanceFunctionP.instantiateClass(config);
+      }
+
+      ObjectParameter<LinkageMethod> linkageP = new ObjectParameter<>(AGNES.Parameterizer.LINKAGE_ID, LinkageMethod.class);
+      linkageP.setDefaultValue(WardLinkageMethod.class);
+      if(config.grab(linkageP)) {
+        linkage = linkageP.instantiateClass(config);
+      }
+
+      Flag floatF = new Flag(FLOAT_ID);
+      if(config.grab(floatF)) {
+        single = floatF.isTrue();
+      }
+    }
+
+    @Override
+    protected ParallelAnderbergHierarchicalClustering<O> makeInstance() {
+      return new ParallelAnderbergHierarchicalClustering<>(distanceFunction, linkage, single);
+    }
+  }
+}
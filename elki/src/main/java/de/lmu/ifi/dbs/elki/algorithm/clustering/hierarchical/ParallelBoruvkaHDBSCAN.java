@@ -0,0 +1,419 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDBIDDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.Executor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor.Scheduling;
+import de.lmu.ifi.dbs.elki.parallel.processor.KDistanceProcessor;
+import de.lmu.ifi.dbs.elki.parallel.processor.KNNProcessor;
+import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
+import de.lmu.ifi.dbs.elki.parallel.processor.WriteDoubleDataStoreProcessor;
+import de.lmu.ifi.dbs.elki.parallel.variables.SharedDouble;
+import de.lmu.ifi.dbs.elki.parallel.variables.SharedObject;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleLongHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleLongMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.unionfind.WeightedQuickUnionInteger;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+
+/**
+ * Parallel HDBSCAN clustering for large data sets, using the kNN query of the
+ * database (e.g., an R*-tree or k-d-tree index).
+ *
+ * Core distances are computed with parallel kNN queries. The minimum spanning
+ * tree of the mutual reachability graph is then built with Borůvka's
+ * algorithm: in every round, the cheapest edge leaving each component is found
+ * by incremental kNN queries of all points in parallel, and all these edges
+ * are added at once, so there are at most log2(n) rounds. A search stops as
+ * soon as the neighbor distance exceeds the best edge known for its
+ * component, as the mutual reachability distance is never smaller than the
+ * distance itself.
+ *
+ * Edges are ordered by their length, and ties are broken by the object
+ * offsets, so the resulting spanning tree does not depend on the thread
+ * scheduling; the result is the same as with {@link HDBSCANLinearMemory}.
+ *
+ * Reference:
+ * <p>
+ * R. J. G. B. Campello, D. Moulavi, and J. Sander<br />
+ * Density-Based Clustering Based on Hierarchical Density Estimates<br />
+ * Pacific-Asia Conference on Advances in Knowledge Discovery and Data Mining,
+ * PAKDD
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @param <O> Object type
+ *
+ * @apiviz.has PointerDensityHierarchyRepresentationResult
+ * @apiviz.has EdgeProcessor
+ */
+@Title("HDBSCAN: Hierarchical Density-Based Spatial Clustering of Applications with Noise")
+@Description("Density-Based Clustering Based on Hierarchical Density Estimates")
+@Reference(authors = "R. J. G. B. Campello, D. Moulavi, and J. Sander", //
+    title = "Density-Based Clustering Based on Hierarchical Density Estimates", //
+    booktitle = "Pacific-Asia Conference on Advances in Knowledge Discovery and Data Mining, PAKDD", //
+    url = "http://dx.doi.org/10.1007/978-3-642-37456-2_14")
+public class ParallelBoruvkaHDBSCAN<O> extends AbstractHDBSCAN<O, PointerDensityHierarchyRepresentationResult> implements HierarchicalClusteringAlgorithm {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelBoruvkaHDBSCAN.class);
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function
+   * @param minPts Minimum number of points for density
+   */
+  public ParallelBoruvkaHDBSCAN(DistanceFunction<? super O> distanceFunction, int minPts) {
+    super(distanceFunction, minPts);
+  }
+
+  /**
+   * Run the algorithm
+   *
+   * @param db Database
+   * @param relation Relation
+   * @return Clustering hierarchy
+   */
+  public PointerDensityHierarchyRepresentationResult run(Database db, Relation<O> relation) {
+    final DistanceQuery<O> distQ = db.getDistanceQuery(relation, getDistanceFunction());
+    final KNNQuery<O> knnQ = db.getKNNQuery(distQ, minPts);
+    // We need array addressing later.
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+
+    // 1. Compute the core distances
+    final WritableDoubleDataStore coredists = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_DB);
+    {
+      KNNProcessor<O> knnm = new KNNProcessor<>(minPts, knnQ);
+      SharedObject<KNNList> knnv = new SharedObject<>();
+      KDistanceProcessor kdistm = new KDistanceProcessor(minPts);
+      SharedDouble kdistv = new SharedDouble();
+      WriteDoubleDataStoreProcessor storem = new WriteDoubleDataStoreProcessor(coredists);
+      knnm.connectKNNOutput(knnv);
+      kdistm.connectKNNInput(knnv);
+      kdistm.connectOutput(kdistv);
+      storem.connectInput(kdistv);
+
+      FiniteProgress cprog = LOG.isVerbose() ? new FiniteProgress("Computing core sizes", size, LOG) : null;
+      ParallelExecutor.run(ids, Scheduling.DYNAMIC, cprog, LOG, knnm, kdistm, storem);
+    }
+
+    // 2. Build spanning tree.
+    final int numedges = size - 1;
+    DoubleLongHeap heap = new DoubleLongMinHeap(numedges);
+    FiniteProgress mprog = LOG.isVerbose() ? new FiniteProgress("Computing minimum spanning tree (n-1 edges)", numedges, LOG) : null;
+    EdgeProcessor proc = new EdgeProcessor(ids, coredists, knnQ, minPts);
+    WeightedQuickUnionInteger uf = new WeightedQuickUnionInteger();
+    for(int i = 0; i < size; i++) {
+      uf.nextIndex(1);
+    }
+    int rounds = 0;
+    for(int components = size; components > 1; rounds++) {
+      // Current component of each object, and reset the search bounds.
+      for(int i = 0; i < size; i++) {
+        final int c = uf.find(i);
+        proc.comp[i] = c;
+        proc.bestj[i] = -1;
+        proc.bound.set(i, Double.doubleToRawLongBits(Double.POSITIVE_INFINITY));
+      }
+      ParallelExecutor.run(ids, Scheduling.DYNAMIC, null, null, proc);
+      // Choose the best edge of each component.
+      int[] compbest = new int[size];
+      Arrays.fill(compbest, -1);
+      for(int i = 0; i < size; i++) {
+        if(proc.bestj[i] < 0) {
+          continue;
+        }
+        final int c = proc.comp[i], o = compbest[c];
+        if(o < 0 || proc.better(i, o)) {
+          compbest[c] = i;
+        }
+      }
+      // Add the edges.
+      int added = 0;
+      for(int c = 0; c < size; c++) {
+        final int i = compbest[c];
+        if(i < 0) {
+          continue;
+        }
+        final int j = proc.bestj[i];
+        // Due to the total ordering of edges, only duplicates are rejected.
+        if(!uf.isConnected(i, j)) {
+          uf.union(i, j);
+          heap.add(proc.bestd[i], (((long) Math.min(i, j)) << 31) | Math.max(i, j));
+          ++added;
+          LOG.incrementProcessed(mprog);
+        }
+      }
+      if(added == 0) {
+        throw new IllegalStateException("Borůvka round without progress - this should never happen.");
+      }
+      components -= added;
+    }
+    LOG.ensureCompleted(mprog);
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".boruvka-rounds", rounds));
+    }
+    // Storage for pointer representation:
+    WritableDBIDDataStore pi = DataStoreUtil.makeDBIDStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC);
+    WritableDoubleDataStore lambda = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC, Double.POSITIVE_INFINITY);
+    convertToPointerRepresentation(ids, heap, pi, lambda);
+
+    return new PointerDensityHierarchyRepresentationResult(ids, pi, lambda, coredists);
+  }
+
+  /**
+   * Processor to find the cheapest edge from each object to another component.
+   *
+   * @author Erich Schubert
+   */
+  private static class EdgeProcessor implements Processor {
+    /**
+     * Object ids.
+     */
+    final ArrayDBIDs ids;
+
+    /**
+     * Offset of each object in the ids array.
+     */
+    final WritableIntegerDataStore offsets;
+
+    /**
+     * Core distances.
+     */
+    final WritableDoubleDataStore coredists;
+
+    /**
+     * kNN query.
+     */
+    final KNNQuery<?> knnQ;
+
+    /**
+     * Component of each object, by offset.
+     */
+    final int[] comp;
+
+    /**
+     * Number of neighbors to query initially for each object.
+     */
+    final int[] ks;
+
+    /**
+     * Best edge of each object: length.
+     */
+    final double[] bestd;
+
+    /**
+     * Best edge of each object: other end, or -1.
+     */
+    final int[] bestj;
+
+    /**
+     * Length of the best edge known for each component (as raw long bits),
+     * used for pruning the search.
+     */
+    final AtomicLongArray bound;
+
+    /**
+     * Constructor.
+     *
+     * @param ids Object ids
+     * @param coredists Core distances
+     * @param knnQ kNN query
+     * @param minPts Minimum number of points for density
+     */
+    EdgeProcessor(ArrayDBIDs ids, WritableDoubleDataStore coredists, KNNQuery<?> knnQ, int minPts) {
+      final int size = ids.size();
+      this.ids = ids;
+      this.coredists = coredists;
+      this.knnQ = knnQ;
+      this.offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        offsets.putInt(it, it.getOffset());
+      }
+      this.comp = new int[size];
+      this.ks = new int[size];
+      // Edges are at least as long as the core distance, so we need more than
+      // minPts neighbors.
+      Arrays.fill(ks, minPts << 1);
+      this.bestd = new double[size];
+      this.bestj = new int[size];
+      this.bound = new AtomicLongArray(size);
+    }
+
+    /**
+     * Compare the best edges of two objects, by length and offsets.
+     *
+     * @param i First object
+     * @param o Second object
+     * @return {@code true} if the edge of i is shorter.
+     */
+    boolean better(int i, int o) {
+      return better(bestd[i], i, bestj[i], bestd[o], o, bestj[o]);
+    }
+
+    /**
+     * Total order of edges, by length and offsets.
+     *
+     * @param d1 First edge length
+     * @param i1 First edge, first end
+     * @param j1 First edge, second end
+     * @param d2 Second edge length
+     * @param i2 Second edge, first end
+     * @param j2 Second edge, second end
+     * @return {@code true} if the first edge is smaller.
+     */
+    static boolean better(double d1, int i1, int j1, double d2, int i2, int j2) {
+      if(d1 != d2) {
+        return d1 < d2;
+      }
+      final int l1 = Math.min(i1, j1), l2 = Math.min(i2, j2);
+      return l1 != l2 ? l1 < l2 : Math.max(i1, j1) < Math.max(i2, j2);
+    }
+
+    /**
+     * Lower the bound of a component.
+     *
+     * @param c Component
+     * @param d New bound
+     */
+    void lowerBound(int c, double d) {
+      while(true) {
+        final long cur = bound.get(c);
+        if(Double.longBitsToDouble(cur) <= d || bound.compareAndSet(c, cur, Double.doubleToRawLongBits(d))) {
+          return;
+        }
+      }
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      return new Instance();
+    }
+
+    @Override
+    public void cleanup(Processor.Instance inst) {
+      // Nothing to do.
+    }
+
+    /**
+     * Instance for a single thread.
+     *
+     * @author Erich Schubert
+     */
+    private class Instance implements Processor.Instance {
+      @Override
+      public void map(DBIDRef id) {
+        final int i = offsets.intValue(id), c = comp[i];
+        final double corei = coredists.doubleValue(id);
+        double best = Double.POSITIVE_INFINITY;
+        int bj = -1;
+        for(int k = ks[i];; k <<= 1) {
+          // The core distance is a lower bound for all edges.
+          if(corei > Double.longBitsToDouble(bound.get(c))) {
+            break;
+          }
+          KNNList knn = knnQ.getKNNForDBID(id, k);
+          boolean done = knn.size() < k;
+          for(DoubleDBIDListIter it = knn.iter(); it.valid(); it.advance()) {
+            final double d = it.doubleValue();
+            if(d > best || d > Double.longBitsToDouble(bound.get(c))) {
+              done = true;
+              break;
+            }
+            final int j = offsets.intValue(it);
+            if(comp[j] == c) {
+              continue;
+            }
+            final double m = Math.max(d, Math.max(corei, coredists.doubleValue(it)));
+            if(bj < 0 || better(m, i, j, best, i, bj)) {
+              best = m;
+              bj = j;
+              lowerBound(c, m);
+            }
+          }
+          if(done) {
+            ks[i] = k;
+            break;
+          }
+        }
+        bestd[i] = best;
+        bestj[i] = bj;
+      }
+    }
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(getDistanceFunction().getInputTypeRestriction());
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <O> Object type
+   */
+  public static class Parameterizer<O> extends AbstractHDBSCAN.Parameterizer<O> {
+    @Override
+    protected ParallelBoruvkaHDBSCAN<O> makeInstance() {
+      return new ParallelBoruvkaHDBSCAN<>(distanceFunction, minPts);
+    }
+  }
+}
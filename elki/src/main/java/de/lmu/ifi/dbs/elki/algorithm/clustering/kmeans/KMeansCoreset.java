@@ -0,0 +1,591 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.KMeansModel;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleMeta;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleStreamSource;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.StringStatistic;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Single-pass k-means using a merge-and-reduce coreset.
+ *
+ * The data is read once, in blocks of {@code m} points. Whenever two blocks of
+ * the same level exist, they are merged and reduced back to {@code m} weighted
+ * representatives, chosen by k-means++ style D² sampling. The coreset thus
+ * needs only {@code O(m log(n/m))} memory. Weighted k-means is then run on the
+ * coreset, using the configured {@link KMeansInitialization}.
+ *
+ * Besides the usual {@link #run} on a relation (which needs a second pass to
+ * assign the objects), the means can be computed directly from a
+ * {@link BundleStreamSource} such as a streaming parser, without ever
+ * materializing the data.
+ *
+ * Reference:
+ * <p>
+ * M. R. Ackermann, M. Märtens, C. Raupach, K. Swierkot, C. Lammersen, C.
+ * Sohler<br />
+ * StreamKM++: A clustering algorithm for data streams<br />
+ * ACM Journal of Experimental Algorithmics 17
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has KMeansModel
+ * @apiviz.composedOf Coreset
+ */
+@Reference(authors = "M. R. Ackermann, M. Märtens, C. Raupach, K. Swierkot, C. Lammersen, C. Sohler", //
+    title = "StreamKM++: A clustering algorithm for data streams", //
+    booktitle = "ACM Journal of Experimental Algorithmics 17", //
+    url = "http://dx.doi.org/10.1145/2133803.2184450")
+public class KMeansCoreset extends AbstractKMeans<NumberVector, KMeansModel> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(KMeansCoreset.class);
+
+  /**
+   * Key for statistics logging.
+   */
+  private static final String KEY = KMeansCoreset.class.getName();
+
+  /**
+   * Block (and reduced coreset) size.
+   */
+  int coresetsize;
+
+  /**
+   * Random used for sampling.
+   */
+  RandomFactory random;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Initialization method
+   * @param coresetsize Block size
+   * @param random Random factory used for sampling.
+   */
+  public KMeansCoreset(NumberVectorDistanceFunction<? super NumberVector> distanceFunction, int k, int maxiter, KMeansInitialization<? super NumberVector> initializer, int coresetsize, RandomFactory random) {
+    super(distanceFunction, k, maxiter, initializer);
+    this.coresetsize = coresetsize;
+    this.random = random;
+  }
+
+  @Override
+  public Clustering<KMeansModel> run(Database database, Relation<NumberVector> relation) {
+    if(relation.size() <= 0) {
+      return new Clustering<>("k-Means Clustering", "kmeans-clustering");
+    }
+    Coreset coreset = new Coreset(coresetsize, getDistanceFunction(), random.getSingleThreadedRandom());
+    for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
+      coreset.add(relation.get(iditer).toArray());
+    }
+    double[][] means = clusterCoreset(coreset);
+
+    // Assignment pass
+    List<ModifiableDBIDs> clusters = new ArrayList<>();
+    for(int i = 0; i < k; i++) {
+      clusters.add(DBIDUtil.newHashSet((int) (relation.size() * 2. / k)));
+    }
+    WritableIntegerDataStore assignment = DataStoreUtil.makeIntegerStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+    double[] varsum = new double[k];
+    assignToNearestCluster(relation, means, clusters, assignment, varsum);
+    logVarstat(LOG.isStatistics() ? new DoubleStatistic(this.getClass().getName() + ".variance-sum") : null, varsum);
+
+    // Wrap result
+    Clustering<KMeansModel> result = new Clustering<>("k-Means Clustering", "kmeans-clustering");
+    for(int i = 0; i < clusters.size(); i++) {
+      DBIDs ids = clusters.get(i);
+      if(ids.size() == 0) {
+        continue;
+      }
+      KMeansModel model = new KMeansModel(means[i], varsum[i]);
+      result.addToplevelCluster(new Cluster<>(ids, model));
+    }
+    return result;
+  }
+
+  /**
+   * Compute the k-means centers of a data stream in a single pass, using the
+   * first number vector column of the stream.
+   *
+   * @param source Stream source, e.g. a streaming parser
+   * @return Cluster means, empty if the stream was empty
+   */
+  public double[][] run(BundleStreamSource source) {
+    Coreset coreset = new Coreset(coresetsize, getDistanceFunction(), random.getSingleThreadedRandom());
+    int col = -1;
+    for(BundleStreamSource.Event ev = source.nextEvent(); ev != BundleStreamSource.Event.END_OF_STREAM; ev = source.nextEvent()) {
+      switch(ev){
+      case META_CHANGED:
+        BundleMeta meta = source.getMeta();
+        col = -1;
+        for(int i = 0; i < meta.size(); i++) {
+          if(TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(meta.get(i))) {
+            col = i;
+            break;
+          }
+        }
+        if(col < 0) {
+          throw new AbortException("No number vector field in the data stream.");
+        }
+        break;
+      case NEXT_OBJECT:
+        coreset.add(((NumberVector) source.data(col)).toArray());
+        break;
+      default:
+        LOG.warning("Unknown event: " + ev);
+      }
+    }
+    return clusterCoreset(coreset);
+  }
+
+  /**
+   * Run weighted k-means on the final coreset.
+   *
+   * @param coreset Coreset
+   * @return Cluster means
+   */
+  protected double[][] clusterCoreset(Coreset coreset) {
+    final int n = coreset.flatten();
+    if(n == 0) {
+      return new double[0][];
+    }
+    final double[][] pts = coreset.points;
+    final double[] ws = coreset.weights;
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(KEY + ".coreset-size", n));
+      LOG.statistics(new StringStatistic(KEY + ".initialization", initializer.toString()));
+    }
+    // Initialize on the (unweighted) coreset points:
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(pts), null);
+    db.initialize();
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    double[][] means = initializer.chooseInitialMeans(db, rel, k, getDistanceFunction());
+
+    final NumberVectorDistanceFunction<?> df = getDistanceFunction();
+    final int dim = pts[0].length;
+    int[] assignment = new int[n];
+    Arrays.fill(assignment, -1);
+    double[][] sums = new double[k][dim];
+    double[] wsum = new double[k];
+    IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("Weighted k-means iteration", LOG) : null;
+    int iteration = 0;
+    for(; maxiter <= 0 || iteration < maxiter; iteration++) {
+      LOG.incrementProcessed(prog);
+      boolean changed = false;
+      for(int i = 0; i < k; i++) {
+        Arrays.fill(sums[i], 0.);
+      }
+      Arrays.fill(wsum, 0.);
+      for(int j = 0; j < n; j++) {
+        final int c = Coreset.nearest(df, pts[j], means, means.length);
+        changed |= assignment[j] != c;
+        assignment[j] = c;
+        final double w = ws[j];
+        final double[] sum = sums[c], p = pts[j];
+        for(int d = 0; d < dim; d++) {
+          sum[d] += w * p[d];
+        }
+        wsum[c] += w;
+      }
+      if(!changed) {
+        break;
+      }
+      for(int i = 0; i < k; i++) {
+        if(wsum[i] > 0) { // Otherwise, keep the previous mean.
+          for(int d = 0; d < dim; d++) {
+            means[i][d] = sums[i][d] / wsum[i];
+          }
+        }
+      }
+    }
+    LOG.setCompleted(prog);
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(KEY + ".iterations", iteration));
+    }
+    return means;
+  }
+
+  /**
+   * Merge-and-reduce coreset of weighted points.
+   *
+   * @author Erich Schubert
+   */
+  public static class Coreset {
+    /**
+     * Block size.
+     */
+    final int m;
+
+    /**
+     * Distance function.
+     */
+    final NumberVectorDistanceFunction<?> df;
+
+    /**
+     * Random generator.
+     */
+    final Random rnd;
+
+    /**
+     * Input buffer of unweighted points.
+     */
+    double[][] buffer;
+
+    /**
+     * Fill of the input buffer.
+     */
+    int fill = 0;
+
+    /**
+     * Reduced blocks, by level; {@code null} for empty levels.
+     */
+    List<double[][]> levelpoints = new ArrayList<>();
+
+    /**
+     * Weights of the reduced blocks.
+     */
+    List<double[]> levelweights = new ArrayList<>();
+
+    /**
+     * Final points and weights, after {@link #flatten}.
+     */
+    double[][] points;
+
+    /**
+     * Final weights, after {@link #flatten}.
+     */
+    double[] weights;
+
+    /**
+     * Constructor.
+     *
+     * @param m Block size
+     * @param df Distance function
+     * @param rnd Random generator
+     */
+    public Coreset(int m, NumberVectorDistanceFunction<?> df, Random rnd) {
+      this.m = m;
+      this.df = df;
+      this.rnd = rnd;
+      this.buffer = new double[m][];
+    }
+
+    /**
+     * Add a point.
+     *
+     * @param v Point
+     */
+    public void add(double[] v) {
+      buffer[fill++] = v;
+      if(fill == m) {
+        double[] w = new double[m];
+        Arrays.fill(w, 1.);
+        push(buffer, w);
+        buffer = new double[m][];
+        fill = 0;
+      }
+    }
+
+    /**
+     * Insert a block at the lowest level, merging and reducing as necessary.
+     *
+     * @param p Points
+     * @param w Weights
+     */
+    private void push(double[][] p, double[] w) {
+      for(int l = 0;; l++) {
+        if(l == levelpoints.size()) {
+          levelpoints.add(p);
+          levelweights.add(w);
+          return;
+        }
+        if(levelpoints.get(l) == null) {
+          levelpoints.set(l, p);
+          levelweights.set(l, w);
+          return;
+        }
+        double[][] mp = new double[m << 1][];
+        double[] mw = new double[m << 1];
+        System.arraycopy(levelpoints.get(l), 0, mp, 0, m);
+        System.arraycopy(levelweights.get(l), 0, mw, 0, m);
+        System.arraycopy(p, 0, mp, m, m);
+        System.arraycopy(w, 0, mw, m, m);
+        levelpoints.set(l, null);
+        levelweights.set(l, null);
+        reduce(mp, mw);
+        p = points;
+        w = weights;
+      }
+    }
+
+    /**
+     * Reduce a set of weighted points to (at most) m weighted means, using
+     * weighted D² sampling. The result is stored in {@link #points} and
+     * {@link #weights}.
+     *
+     * @param p Points
+     * @param w Weights
+     */
+    private void reduce(double[][] p, double[] w) {
+      final int n = p.length, dim = p[0].length;
+      double[][] centers = new double[m][];
+      double[] mind = new double[n];
+      int[] nearest = new int[n];
+      // First center, proportional to weight only.
+      double tot = 0.;
+      for(int i = 0; i < n; i++) {
+        tot += w[i];
+      }
+      centers[0] = p[sample(w, null, tot)];
+      for(int i = 0; i < n; i++) {
+        mind[i] = df.distance(DoubleVector.wrap(p[i]), DoubleVector.wrap(centers[0]));
+      }
+      int c = 1;
+      for(; c < m; c++) {
+        tot = 0.;
+        for(int i = 0; i < n; i++) {
+          tot += w[i] * mind[i];
+        }
+        if(!(tot > 0.)) {
+          break; // All points coincide with a center.
+        }
+        final double[] cen = centers[c] = p[sample(w, mind, tot)];
+        for(int i = 0; i < n; i++) {
+          final double d = df.distance(DoubleVector.wrap(p[i]), DoubleVector.wrap(cen));
+          if(d < mind[i]) {
+            mind[i] = d;
+            nearest[i] = c;
+          }
+        }
+      }
+      // Aggregate into weighted means.
+      double[][] sums = new double[c][dim];
+      double[] wsum = new double[c];
+      for(int i = 0; i < n; i++) {
+        final double[] sum = sums[nearest[i]], v = p[i];
+        final double wi = w[i];
+        for(int d = 0; d < dim; d++) {
+          sum[d] += wi * v[d];
+        }
+        wsum[nearest[i]] += wi;
+      }
+      for(int j = 0; j < c; j++) {
+        if(!(wsum[j] > 0.)) {
+          sums[j] = centers[j]; // Zero weight, dropped in flatten()
+          continue;
+        }
+        final double[] sum = sums[j];
+        for(int d = 0; d < dim; d++) {
+          sum[d] /= wsum[j];
+        }
+      }
+      // Pad, such that all blocks have size m.
+      if(c < m) {
+        sums = Arrays.copyOf(sums, m);
+        wsum = Arrays.copyOf(wsum, m);
+        for(int j = c; j < m; j++) {
+          sums[j] = sums[0];
+        }
+      }
+      points = sums;
+      weights = wsum;
+    }
+
+    /**
+     * Weighted sampling.
+     *
+     * @param w Weights
+     * @param f Additional factors, may be {@code null}
+     * @param tot Total
+     * @return Sampled index
+     */
+    private int sample(double[] w, double[] f, double tot) {
+      double r = rnd.nextDouble() * tot;
+      int i = 0;
+      for(; i < w.length - 1; i++) {
+        r -= (f != null) ? w[i] * f[i] : w[i];
+        if(r < 0) {
+          break;
+        }
+      }
+      return i;
+    }
+
+    /**
+     * Collect all blocks into {@link #points} and {@link #weights}, dropping
+     * zero-weight padding.
+     *
+     * @return Number of weighted points
+     */
+    public int flatten() {
+      int n = fill;
+      for(double[][] p : levelpoints) {
+        n += (p != null) ? p.length : 0;
+      }
+      double[][] pts = new double[n][];
+      double[] ws = new double[n];
+      int j = 0;
+      for(int i = 0; i < fill; i++, j++) {
+        pts[j] = buffer[i];
+        ws[j] = 1.;
+      }
+      for(int l = 0; l < levelpoints.size(); l++) {
+        double[][] p = levelpoints.get(l);
+        if(p == null) {
+          continue;
+        }
+        double[] w = levelweights.get(l);
+        for(int i = 0; i < p.length; i++) {
+          if(w[i] > 0) {
+            pts[j] = p[i];
+            ws[j++] = w[i];
+          }
+        }
+      }
+      points = Arrays.copyOf(pts, j);
+      weights = Arrays.copyOf(ws, j);
+      return j;
+    }
+
+    /**
+     * Find the nearest mean.
+     *
+     * @param df Distance function
+     * @param v Vector
+     * @param means Means
+     * @param k Number of means
+     * @return Index of nearest mean
+     */
+    static int nearest(NumberVectorDistanceFunction<?> df, double[] v, double[][] means, int k) {
+      final DoubleVector dv = DoubleVector.wrap(v);
+      double mindist = Double.POSITIVE_INFINITY;
+      int minIndex = 0;
+      for(int i = 0; i < k; i++) {
+        double dist = df.distance(dv, DoubleVector.wrap(means[i]));
+        if(dist < mindist) {
+          minIndex = i;
+          mindist = dist;
+        }
+      }
+      return minIndex;
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractKMeans.Parameterizer<NumberVector> {
+    /**
+     * Parameter for the coreset block size.
+     */
+    public static final OptionID CORESET_ID = new OptionID("kmeans.coreset.size", "Number of weighted points each block of the coreset is reduced to.");
+
+    /**
+     * Random source for sampling.
+     */
+    public static final OptionID RANDOM_ID = new OptionID("kmeans.coreset.random", "Random source for sampling the coreset.");
+
+    /**
+     * Block size.
+     */
+    int coresetsize;
+
+    /**
+     * Random used for sampling.
+     */
+    RandomFactory random;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      IntParameter coresetP = new IntParameter(CORESET_ID, 1000);
+      coresetP.addConstraint(CommonConstraints.GREATER_THAN_ONE_INT);
+      if(config.grab(coresetP)) {
+        coresetsize = coresetP.intValue();
+      }
+      RandomParameter randomP = new RandomParameter(RANDOM_ID);
+      if(config.grab(randomP)) {
+        random = randomP.getValue();
+      }
+    }
+
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+
+    @Override
+    protected KMeansCoreset makeInstance() {
+      return new KMeansCoreset(distanceFunction, k, maxiter, initializer, coresetsize, random);
+    }
+  }
+}
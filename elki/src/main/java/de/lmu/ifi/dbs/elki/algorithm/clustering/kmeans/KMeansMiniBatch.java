@@ -0,0 +1,355 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.KMeansModel;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleMeta;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleStreamSource;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.StringStatistic;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Mini-batch k-means.
+ *
+ * In every iteration, a small random sample (with replacement) is drawn, and
+ * each center is moved towards the sample points assigned to it, with a
+ * per-center learning rate of one over the number of points it has received so
+ * far. The cost of an iteration only depends on the batch size, not on the
+ * data set size; a single assignment pass at the end produces the partitioning.
+ *
+ * Data streams that do not fit into memory can be processed with
+ * {@link #run(BundleStreamSource)}, which draws the mini-batches from a
+ * reservoir sample of the stream.
+ *
+ * Reference:
+ * <p>
+ * D. Sculley<br />
+ * Web-scale k-means clustering<br />
+ * Proc. 19th International Conference on World Wide Web (WWW 2010)
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has KMeansModel
+ *
+ * @param <V> vector datatype
+ */
+@Reference(authors = "D. Sculley", //
+    title = "Web-scale k-means clustering", //
+    booktitle = "Proc. 19th International Conference on World Wide Web (WWW 2010)", //
+    url = "http://dx.doi.org/10.1145/1772690.1772862")
+public class KMeansMiniBatch<V extends NumberVector> extends AbstractKMeans<V, KMeansModel> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(KMeansMiniBatch.class);
+
+  /**
+   * Key for statistics logging.
+   */
+  private static final String KEY = KMeansMiniBatch.class.getName();
+
+  /**
+   * Batch size.
+   */
+  int batchsize;
+
+  /**
+   * Random used for sampling.
+   */
+  RandomFactory random;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction distance function
+   * @param k k parameter
+   * @param maxiter Number of mini-batch iterations
+   * @param initializer Initialization method
+   * @param batchsize Batch size
+   * @param random Random factory used for sampling.
+   */
+  public KMeansMiniBatch(NumberVectorDistanceFunction<? super V> distanceFunction, int k, int maxiter, KMeansInitialization<? super V> initializer, int batchsize, RandomFactory random) {
+    super(distanceFunction, k, maxiter, initializer);
+    this.batchsize = batchsize;
+    this.random = random;
+  }
+
+  @Override
+  public Clustering<KMeansModel> run(Database database, Relation<V> relation) {
+    if(relation.size() <= 0) {
+      return new Clustering<>("k-Means Clustering", "kmeans-clustering");
+    }
+    // Choose initial means
+    if(LOG.isStatistics()) {
+      LOG.statistics(new StringStatistic(KEY + ".initializer", initializer.toString()));
+    }
+    double[][] means = computeMeans(database, relation, random.getSingleThreadedRandom());
+    final int size = relation.size();
+
+    // Final assignment pass
+    List<ModifiableDBIDs> clusters = new ArrayList<>();
+    for(int i = 0; i < k; i++) {
+      clusters.add(DBIDUtil.newHashSet((int) (size * 2. / k)));
+    }
+    WritableIntegerDataStore assignment = DataStoreUtil.makeIntegerStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+    double[] varsum = new double[k];
+    assignToNearestCluster(relation, means, clusters, assignment, varsum);
+    logVarstat(LOG.isStatistics() ? new DoubleStatistic(this.getClass().getName() + ".variance-sum") : null, varsum);
+
+    // Wrap result
+    Clustering<KMeansModel> result = new Clustering<>("k-Means Clustering", "kmeans-clustering");
+    for(int i = 0; i < clusters.size(); i++) {
+      DBIDs ids = clusters.get(i);
+      if(ids.size() == 0) {
+        continue;
+      }
+      KMeansModel model = new KMeansModel(means[i], varsum[i]);
+      result.addToplevelCluster(new Cluster<>(ids, model));
+    }
+    return result;
+  }
+
+  /**
+   * Compute the k-means centers of a data stream in a single pass, using the
+   * first number vector column of the stream.
+   *
+   * A uniform reservoir sample of batchsize * maxiter points is kept, which is
+   * as many points as the mini-batches draw in total, and the mini-batches are
+   * then drawn from this sample. The memory use thus does not depend on the
+   * length of the stream.
+   *
+   * @param source Stream source, e.g. a streaming parser
+   * @return Cluster means, empty if the stream was empty
+   */
+  public double[][] run(BundleStreamSource source) {
+    final int capacity = (int) Math.min((long) batchsize * maxiter, Integer.MAX_VALUE - 8);
+    Random rnd = random.getSingleThreadedRandom();
+    List<double[]> sample = new ArrayList<>();
+    long seen = 0;
+    int col = -1;
+    for(BundleStreamSource.Event ev = source.nextEvent(); ev != BundleStreamSource.Event.END_OF_STREAM; ev = source.nextEvent()) {
+      switch(ev){
+      case META_CHANGED:
+        BundleMeta meta = source.getMeta();
+        col = -1;
+        for(int i = 0; i < meta.size(); i++) {
+          if(TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(meta.get(i))) {
+            col = i;
+            break;
+          }
+        }
+        if(col < 0) {
+          throw new AbortException("No number vector field in the data stream.");
+        }
+        break;
+      case NEXT_OBJECT:
+        // Reservoir sampling:
+        if(seen < capacity) {
+          sample.add(((NumberVector) source.data(col)).toArray());
+        }
+        else {
+          final long r = (long) (rnd.nextDouble() * (seen + 1));
+          if(r < capacity) {
+            sample.set((int) r, ((NumberVector) source.data(col)).toArray());
+          }
+        }
+        ++seen;
+        break;
+      default:
+        LOG.warning("Unknown event: " + ev);
+      }
+    }
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(KEY + ".stream-size", seen));
+      LOG.statistics(new LongStatistic(KEY + ".sample-size", sample.size()));
+    }
+    if(sample.isEmpty()) {
+      return new double[0][];
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(sample.toArray(new double[sample.size()][])), null);
+    db.initialize();
+    // The sample consists of DoubleVectors, which must be acceptable as V:
+    Relation<V> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    return computeMeans(db, rel, rnd);
+  }
+
+  /**
+   * Choose the initial means, and run the mini-batch iterations.
+   *
+   * @param database Database
+   * @param relation Data relation
+   * @param rnd Random generator for sampling
+   * @return Cluster means
+   */
+  protected double[][] computeMeans(Database database, Relation<V> relation, Random rnd) {
+    double[][] means = initializer.chooseInitialMeans(database, relation, k, getDistanceFunction());
+
+    final NumberVectorDistanceFunction<? super V> df = getDistanceFunction();
+    final int size = relation.size();
+    DBIDArrayIter iter = DBIDUtil.ensureArray(relation.getDBIDs()).iter();
+    int[] counts = new int[k];
+    int[] offsets = new int[batchsize], nearest = new int[batchsize];
+
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Mini-batch iteration", maxiter, LOG) : null;
+    for(int iteration = 0; iteration < maxiter; iteration++) {
+      // Assign the batch to the current centers first:
+      for(int j = 0; j < batchsize; j++) {
+        offsets[j] = rnd.nextInt(size);
+        nearest[j] = nearestMean(df, relation.get(iter.seek(offsets[j])), means);
+      }
+      // Then apply the gradient steps:
+      for(int j = 0; j < batchsize; j++) {
+        final int c = nearest[j];
+        incrementalUpdateMean(means[c], relation.get(iter.seek(offsets[j])), ++counts[c], 1.);
+      }
+      LOG.incrementProcessed(prog);
+    }
+    LOG.ensureCompleted(prog);
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(KEY + ".iterations", maxiter));
+    }
+    return means;
+  }
+
+  /**
+   * Find the nearest mean.
+   *
+   * @param df Distance function
+   * @param fv Vector
+   * @param means Current means
+   * @return Index of the nearest mean
+   */
+  private int nearestMean(NumberVectorDistanceFunction<? super V> df, V fv, double[][] means) {
+    double mindist = Double.POSITIVE_INFINITY;
+    int minIndex = 0;
+    for(int i = 0; i < k; i++) {
+      double dist = df.distance(fv, DoubleVector.wrap(means[i]));
+      if(dist < mindist) {
+        minIndex = i;
+        mindist = dist;
+      }
+    }
+    return minIndex;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector> extends AbstractKMeans.Parameterizer<V> {
+    /**
+     * Parameter for the batch size.
+     */
+    public static final OptionID BATCHSIZE_ID = new OptionID("kmeans.minibatch.size", "Number of samples in each mini-batch.");
+
+    /**
+     * Random source for sampling.
+     */
+    public static final OptionID RANDOM_ID = new OptionID("kmeans.minibatch.random", "Random source for sampling the mini-batches.");
+
+    /**
+     * Batch size.
+     */
+    int batchsize;
+
+    /**
+     * Random used for sampling.
+     */
+    RandomFactory random;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      IntParameter batchsizeP = new IntParameter(BATCHSIZE_ID, 100);
+      batchsizeP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(batchsizeP)) {
+        batchsize = batchsizeP.intValue();
+      }
+      RandomParameter randomP = new RandomParameter(RANDOM_ID);
+      if(config.grab(randomP)) {
+        random = randomP.getValue();
+      }
+    }
+
+    @Override
+    protected void getParameterMaxIter(Parameterization config) {
+      // Mini-batches do not converge in the assignment, so we need a limit.
+      IntParameter maxiterP = new IntParameter(KMeans.MAXITER_ID, 100);
+      maxiterP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(maxiterP)) {
+        maxiter = maxiterP.getValue();
+      }
+    }
+
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+
+    @Override
+    protected KMeansMiniBatch<V> makeInstance() {
+      return new KMeansMiniBatch<>(distanceFunction, k, maxiter, initializer, batchsize, random);
+    }
+  }
+}
@@ -0,0 +1,300 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+import static de.lmu.ifi.dbs.elki.math.linearalgebra.VMath.plusEquals;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
+import net.jafama.FastMath;
+
+/**
+ * Base class for parallel k-means with distance bounds (Elkan, Hamerly).
+ *
+ * The bounds are stored per object, and each worker only touches the bounds of
+ * the objects in its own partition, so they need no synchronization. Changes
+ * to the cluster sums and sizes are accumulated per worker, and merged once
+ * per iteration. Bound updates for the movement of the means are applied
+ * lazily, when the object is visited in the next iteration.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has Instance
+ *
+ * @param <V> Vector type
+ */
+public abstract class KMeansBoundsProcessor<V extends NumberVector> implements Processor {
+  /**
+   * Data relation.
+   */
+  Relation<V> relation;
+
+  /**
+   * Distance function.
+   */
+  NumberVectorDistanceFunction<? super V> distance;
+
+  /**
+   * Assignment storage.
+   */
+  WritableIntegerDataStore assignment;
+
+  /**
+   * Current mean vectors.
+   */
+  double[][] means;
+
+  /**
+   * Distance each mean moved in the previous iteration.
+   */
+  double[] move;
+
+  /**
+   * Cluster sums, maintained incrementally.
+   */
+  double[][] sums;
+
+  /**
+   * Cluster sizes.
+   */
+  int[] sizes;
+
+  /**
+   * Number of reassigned objects in the last iteration.
+   */
+  int changed = 0;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param distance Distance function
+   * @param assignment Cluster assignment
+   * @param k Number of clusters
+   * @param dim Dimensionality
+   */
+  public KMeansBoundsProcessor(Relation<V> relation, NumberVectorDistanceFunction<? super V> distance, WritableIntegerDataStore assignment, int k, int dim) {
+    super();
+    this.relation = relation;
+    this.distance = distance;
+    this.assignment = assignment;
+    this.sums = new double[k][dim];
+    this.sizes = new int[k];
+    this.move = new double[k];
+  }
+
+  /**
+   * Get the number of reassigned objects.
+   *
+   * @return Number of changes
+   */
+  public int changed() {
+    return changed;
+  }
+
+  /**
+   * Initialize for a new iteration.
+   *
+   * @param means Current means
+   */
+  public void nextIteration(double[][] means) {
+    this.means = means;
+    changed = 0;
+  }
+
+  @Override
+  public void cleanup(Processor.Instance inst) {
+    @SuppressWarnings("unchecked")
+    Instance<V> instance = (Instance<V>) inst;
+    synchronized(this) {
+      changed += instance.changed;
+      for(int i = 0; i < sums.length; i++) {
+        if(instance.dsizes[i] != 0 || instance.touched[i]) {
+          plusEquals(sums[i], instance.dsums[i]);
+          sizes[i] += instance.dsizes[i];
+        }
+      }
+    }
+  }
+
+  /**
+   * Compute the new means, and store the distances moved.
+   *
+   * @return New means
+   */
+  public double[][] updateMeans() {
+    final boolean issquared = distance instanceof SquaredEuclideanDistanceFunction;
+    double[][] newmeans = new double[means.length][];
+    for(int i = 0; i < means.length; i++) {
+      if(sizes[i] == 0) {
+        newmeans[i] = means[i]; // Keep old mean.
+        move[i] = 0.;
+        continue;
+      }
+      final double[] sum = sums[i], mean = newmeans[i] = new double[sum.length];
+      final double s = 1. / sizes[i];
+      for(int d = 0; d < sum.length; d++) {
+        mean[d] = sum[d] * s;
+      }
+      double m = distance.distance(DoubleVector.wrap(means[i]), DoubleVector.wrap(mean));
+      move[i] = issquared ? FastMath.sqrt(m) : m;
+    }
+    return newmeans;
+  }
+
+  /**
+   * Maximum distance moved by any mean in the last iteration.
+   *
+   * @return Maximum distance
+   */
+  public double maxMoved() {
+    double max = 0.;
+    for(double m : move) {
+      max = (m > max) ? m : max;
+    }
+    return max;
+  }
+
+  /**
+   * Instance to process part of the data set, for a single iteration.
+   *
+   * @author Erich Schubert
+   *
+   * @param <V> Vector type
+   */
+  public abstract static class Instance<V extends NumberVector> implements Processor.Instance {
+    /**
+     * Data relation.
+     */
+    protected Relation<V> relation;
+
+    /**
+     * Distance function.
+     */
+    protected NumberVectorDistanceFunction<? super V> distance;
+
+    /**
+     * Use the square root of the distance, to make it a metric.
+     */
+    protected boolean issquared;
+
+    /**
+     * Cluster assignment storage.
+     */
+    protected WritableIntegerDataStore assignment;
+
+    /**
+     * Current mean vectors (shared, read only).
+     */
+    protected double[][] means;
+
+    /**
+     * Distance each mean moved in the previous iteration.
+     */
+    protected double[] move;
+
+    /**
+     * Changes to the cluster sums.
+     */
+    double[][] dsums;
+
+    /**
+     * Changes to the cluster sizes.
+     */
+    int[] dsizes;
+
+    /**
+     * Clusters whose sums were modified.
+     */
+    boolean[] touched;
+
+    /**
+     * Number of reassigned objects.
+     */
+    int changed = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param parent Parent processor
+     */
+    public Instance(KMeansBoundsProcessor<V> parent) {
+      super();
+      this.relation = parent.relation;
+      this.distance = parent.distance;
+      this.issquared = distance instanceof SquaredEuclideanDistanceFunction;
+      this.assignment = parent.assignment;
+      this.means = parent.means;
+      this.move = parent.move;
+      final int k = means.length;
+      this.dsums = new double[k][means[0].length];
+      this.dsizes = new int[k];
+      this.touched = new boolean[k];
+    }
+
+    /**
+     * Compute the (metric) distance to a mean.
+     *
+     * @param fv Vector
+     * @param i Mean number
+     * @return Distance
+     */
+    protected double distance(V fv, int i) {
+      final double d = distance.distance(fv, DoubleVector.wrap(means[i]));
+      return issquared ? FastMath.sqrt(d) : d;
+    }
+
+    /**
+     * Assign or reassign an object.
+     *
+     * @param id Object
+     * @param fv Vector
+     * @param from Previous cluster, or -1
+     * @param to New cluster
+     */
+    protected void reassign(DBIDRef id, V fv, int from, int to) {
+      assignment.putInt(id, to);
+      final double[] newsum = dsums[to];
+      final double[] oldsum = from >= 0 ? dsums[from] : null;
+      for(int d = 0; d < fv.getDimensionality(); d++) {
+        final double v = fv.doubleValue(d);
+        newsum[d] += v;
+        if(oldsum != null) {
+          oldsum[d] -= v;
+        }
+      }
+      ++dsizes[to];
+      touched[to] = true;
+      if(from >= 0) {
+        --dsizes[from];
+        touched[from] = true;
+      }
+      ++changed;
+    }
+  }
+}
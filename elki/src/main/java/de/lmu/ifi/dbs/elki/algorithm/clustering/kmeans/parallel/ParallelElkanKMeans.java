@@ -0,0 +1,407 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.ClusteringAlgorithmUtil;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.AbstractKMeans;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansElkan;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.KMeansModel;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.StringStatistic;
+import de.lmu.ifi.dbs.elki.parallel.Executor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor.Scheduling;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
+import net.jafama.FastMath;
+
+/**
+ * Parallel version of Elkan's k-means using the triangle inequality.
+ *
+ * Each worker keeps the upper bound and the k lower bounds of its own
+ * partition of the data, and accumulates the changes to the cluster sums
+ * locally; these are merged after each iteration.
+ *
+ * <p>
+ * Reference:<br />
+ * C. Elkan<br/>
+ * Using the triangle inequality to accelerate k-means<br/>
+ * Proc. 20th International Conference on Machine Learning, ICML 2003
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has KMeansModel
+ * @apiviz.composedOf ElkanProcessor
+ *
+ * @param <V> vector datatype
+ */
+@Reference(authors = "C. Elkan", //
+    title = "Using the triangle inequality to accelerate k-means", //
+    booktitle = "Proc. 20th International Conference on Machine Learning, ICML 2003", //
+    url = "http://www.aaai.org/Library/ICML/2003/icml03-022.php")
+public class ParallelElkanKMeans<V extends NumberVector> extends AbstractKMeans<V, KMeansModel> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelElkanKMeans.class);
+
+  /**
+   * Key for statistics logging.
+   */
+  private static final String KEY = ParallelElkanKMeans.class.getName();
+
+  /**
+   * Flag whether to compute the final variance statistic.
+   */
+  private boolean varstat = false;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Initialization method
+   * @param varstat Compute the variance statistic
+   */
+  public ParallelElkanKMeans(NumberVectorDistanceFunction<? super V> distanceFunction, int k, int maxiter, KMeansInitialization<? super V> initializer, boolean varstat) {
+    super(distanceFunction, k, maxiter, initializer);
+    this.varstat = varstat;
+  }
+
+  @Override
+  public Clustering<KMeansModel> run(Database database, Relation<V> relation) {
+    if(relation.size() <= 0) {
+      return new Clustering<>("k-Means Clustering", "kmeans-clustering");
+    }
+    DBIDs ids = relation.getDBIDs();
+    // Choose initial means
+    if(LOG.isStatistics()) {
+      LOG.statistics(new StringStatistic(KEY + ".initialization", initializer.toString()));
+    }
+    double[][] means = initializer.chooseInitialMeans(database, relation, k, getDistanceFunction());
+    WritableIntegerDataStore assignment = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+    ElkanProcessor<V> proc = new ElkanProcessor<>(relation, getDistanceFunction(), assignment, k, means[0].length);
+
+    IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("K-Means iteration", LOG) : null;
+    LongStatistic rstat = LOG.isStatistics() ? new LongStatistic(KEY + ".reassignments") : null;
+    int iteration = 0;
+    for(; maxiter <= 0 || iteration < maxiter; iteration++) {
+      LOG.incrementProcessed(prog);
+      proc.nextIteration(means);
+      ParallelExecutor.run(ids, Scheduling.DYNAMIC, null, null, proc);
+      final int changed = proc.changed();
+      if(rstat != null) {
+        rstat.setLong(changed);
+        LOG.statistics(rstat);
+      }
+      // Stop if no cluster assignment changed.
+      if(changed == 0) {
+        break;
+      }
+      means = proc.updateMeans();
+    }
+    LOG.setCompleted(prog);
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(KEY + ".iterations", iteration));
+    }
+    proc.upper.destroy();
+    proc.lower.destroy();
+
+    // Wrap result
+    ArrayModifiableDBIDs[] clusters = ClusteringAlgorithmUtil.partitionsFromIntegerLabels(ids, assignment, k);
+    double totalvariance = 0.;
+    Clustering<KMeansModel> result = new Clustering<>("k-Means Clustering", "kmeans-clustering");
+    for(int i = 0; i < clusters.length; i++) {
+      DBIDs cids = clusters[i];
+      if(cids.size() == 0) {
+        continue;
+      }
+      double[] mean = means[i];
+      double varsum = 0.;
+      if(varstat) {
+        DoubleVector mvec = DoubleVector.wrap(mean);
+        for(DBIDIter it = cids.iter(); it.valid(); it.advance()) {
+          varsum += distanceFunction.distance(mvec, relation.get(it));
+        }
+        totalvariance += varsum;
+      }
+      KMeansModel model = new KMeansModel(mean, varsum);
+      result.addToplevelCluster(new Cluster<>(cids, model));
+    }
+    if(LOG.isStatistics() && varstat) {
+      LOG.statistics(new DoubleStatistic(this.getClass().getName() + ".variance-sum", totalvariance));
+    }
+    return result;
+  }
+
+  /**
+   * Processor for Elkan's bounds.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.has Instance
+   *
+   * @param <V> Vector type
+   */
+  public static class ElkanProcessor<V extends NumberVector> extends KMeansBoundsProcessor<V> {
+    /**
+     * Upper bound to the nearest mean.
+     */
+    WritableDoubleDataStore upper;
+
+    /**
+     * Lower bounds to each mean.
+     */
+    WritableDataStore<double[]> lower;
+
+    /**
+     * Half the distance of each mean to its nearest other mean.
+     */
+    double[] sep;
+
+    /**
+     * Half the center-to-center distances.
+     */
+    double[][] cdist;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param distance Distance function
+     * @param assignment Cluster assignment
+     * @param k Number of clusters
+     * @param dim Dimensionality
+     */
+    public ElkanProcessor(Relation<V> relation, NumberVectorDistanceFunction<? super V> distance, WritableIntegerDataStore assignment, int k, int dim) {
+      super(relation, distance, assignment, k, dim);
+      upper = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, Double.POSITIVE_INFINITY);
+      lower = DataStoreUtil.makeStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, double[].class);
+      for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+        lower.put(it, new double[k]); // Filled with 0.
+      }
+      sep = new double[k];
+      cdist = new double[k][k];
+    }
+
+    @Override
+    public void nextIteration(double[][] means) {
+      super.nextIteration(means);
+      // Recompute the separation of cluster means.
+      final int k = means.length;
+      final boolean issquared = (distance instanceof SquaredEuclideanDistanceFunction);
+      Arrays.fill(sep, Double.POSITIVE_INFINITY);
+      for(int i = 1; i < k; i++) {
+        DoubleVector mi = DoubleVector.wrap(means[i]);
+        for(int j = 0; j < i; j++) {
+          double d = distance.distance(mi, DoubleVector.wrap(means[j]));
+          d = issquared ? FastMath.sqrt(d) : d;
+          d *= .5;
+          cdist[i][j] = d;
+          cdist[j][i] = d;
+          sep[i] = (d < sep[i]) ? d : sep[i];
+          sep[j] = (d < sep[j]) ? d : sep[j];
+        }
+      }
+    }
+
+    @Override
+    public Instance<V> instantiate(Executor executor) {
+      return new Instance<>(this);
+    }
+
+    /**
+     * Instance to process part of the data set, for a single iteration.
+     *
+     * @author Erich Schubert
+     *
+     * @param <V> Vector type
+     */
+    public static class Instance<V extends NumberVector> extends KMeansBoundsProcessor.Instance<V> {
+      /**
+       * Upper bounds.
+       */
+      WritableDoubleDataStore upper;
+
+      /**
+       * Lower bounds.
+       */
+      WritableDataStore<double[]> lower;
+
+      /**
+       * Separation of means.
+       */
+      double[] sep;
+
+      /**
+       * Center-to-center distances.
+       */
+      double[][] cdist;
+
+      /**
+       * Constructor.
+       *
+       * @param parent Parent processor
+       */
+      public Instance(ElkanProcessor<V> parent) {
+        super(parent);
+        this.upper = parent.upper;
+        this.lower = parent.lower;
+        this.sep = parent.sep;
+        this.cdist = parent.cdist;
+      }
+
+      @Override
+      public void map(DBIDRef id) {
+        final int orig = assignment.intValue(id);
+        final double[] l = lower.get(id);
+        final int k = means.length;
+        if(orig < 0) {
+          // Initial assignment: compute all distances.
+          V fv = relation.get(id);
+          double best = Double.POSITIVE_INFINITY;
+          int cur = -1;
+          for(int j = 0; j < k; j++) {
+            final double dist = l[j] = distance(fv, j);
+            if(dist < best) {
+              cur = j;
+              best = dist;
+            }
+          }
+          upper.putDouble(id, best);
+          reassign(id, fv, -1, cur);
+          return;
+        }
+        // Apply the movement of the means to the bounds:
+        double u = upper.doubleValue(id) + move[orig];
+        for(int j = 0; j < k; j++) {
+          l[j] -= move[j];
+        }
+        // Upper bound check (#2):
+        if(u <= sep[orig]) {
+          upper.putDouble(id, u);
+          return;
+        }
+        boolean recompute_u = true; // Elkan's r(x)
+        V fv = relation.get(id);
+        // Check all (other) means:
+        int cur = orig;
+        for(int j = 0; j < k; j++) {
+          if(orig == j || u <= l[j] || u <= cdist[cur][j]) {
+            continue; // Condition #3 i-iii not satisfied
+          }
+          if(recompute_u) { // Need to update bound? #3a
+            u = distance(fv, cur);
+            recompute_u = false; // Once only
+            if(u <= l[j] || u <= cdist[cur][j]) { // #3b
+              continue;
+            }
+          }
+          final double dist = l[j] = distance(fv, j);
+          if(dist < u) {
+            cur = j;
+            u = dist;
+          }
+        }
+        upper.putDouble(id, u);
+        if(cur != orig) {
+          reassign(id, fv, orig, cur);
+        }
+      }
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector> extends AbstractKMeans.Parameterizer<V> {
+    /**
+     * Compute the final variance statisic.
+     */
+    protected boolean varstat = false;
+
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+
+    @Override
+    protected void getParameterDistanceFunction(Parameterization config) {
+      super.getParameterDistanceFunction(config);
+      if(distanceFunction instanceof SquaredEuclideanDistanceFunction) {
+        return; // Proper choice.
+      }
+      if(distanceFunction != null && !distanceFunction.isMetric()) {
+        LOG.warning("Elkan k-means requires a metric distance, and k-means should only be used with squared Euclidean distance!");
+      }
+    }
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      Flag varF = new Flag(KMeansElkan.Parameterizer.VARSTAT_ID);
+      if(config.grab(varF)) {
+        varstat = varF.isTrue();
+      }
+    }
+
+    @Override
+    protected ParallelElkanKMeans<V> makeInstance() {
+      return new ParallelElkanKMeans<>(distanceFunction, k, maxiter, initializer, varstat);
+    }
+  }
+}
@@ -40,6 +40,7 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunctio
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
 import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor.Scheduling;
 
 /**
  * Parallel implementation of k-Means clustering.
@@ -88,7 +89,7 @@ public class ParallelLloydKMeans<V extends NumberVector> extends AbstractKMeans<
     for(int iteration = 0; maxiter <= 0 || iteration < maxiter; iteration++) {
       LOG.incrementProcessed(prog);
       kmm.nextIteration(means);
-      ParallelExecutor.run(ids, kmm);
+      ParallelExecutor.run(ids, Scheduling.DYNAMIC, null, null, kmm);
       // Stop if no cluster assignment changed.
       if(!kmm.changed()) {
         break;
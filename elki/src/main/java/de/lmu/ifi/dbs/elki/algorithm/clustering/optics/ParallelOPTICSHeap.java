@@ -0,0 +1,398 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.optics;
+
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.math.MathUtil;
+import de.lmu.ifi.dbs.elki.parallel.Executor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor.Scheduling;
+import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.Heap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.UpdatableHeap;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+
+/**
+ * The OPTICS algorithm for density-based hierarchical clustering, with
+ * neighborhoods prefetched in parallel.
+ *
+ * The cluster order itself is inherently sequential, but the range queries
+ * dominate the runtime. Whenever the neighborhood of the next object is not
+ * yet known, this implementation queries the neighborhoods of a batch of
+ * objects that will be processed soon - the candidates on the heap, and the
+ * next start objects - in parallel. As every object is processed exactly once,
+ * all prefetched neighborhoods will be used, and they are discarded after use;
+ * so at most twice the batch size of neighborhoods are kept in memory.
+ *
+ * The neighborhoods are processed in the same order as in {@link OPTICSHeap},
+ * so the resulting cluster order is identical.
+ *
+ * Reference:
+ * <p>
+ * M. Ankerst, M. Breunig, H.-P. Kriegel, and J. Sander:<br />
+ * OPTICS: Ordering Points to Identify the Clustering Structure. <br/>
+ * In: Proc. ACM SIGMOD Int. Conf. on Management of Data (SIGMOD '99).
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf Instance
+ * @apiviz.has NeighborhoodProcessor
+ *
+ * @param <O> the type of DatabaseObjects handled by the algorithm
+ */
+@Title("OPTICS: Density-Based Hierarchical Clustering")
+@Description("Algorithm to find density-connected sets in a database based on the parameters 'minPts' and 'epsilon' (specifying a volume). These two parameters determine a density threshold for clustering.")
+@Reference(authors = "M. Ankerst, M. Breunig, H.-P. Kriegel, and J. Sander", //
+title = "OPTICS: Ordering Points to Identify the Clustering Structure", //
+booktitle = "Proc. ACM SIGMOD Int. Conf. on Management of Data (SIGMOD '99)", //
+url = "http://dx.doi.org/10.1145/304181.304187")
+public class ParallelOPTICSHeap<O> extends AbstractOPTICS<O> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelOPTICSHeap.class);
+
+  /**
+   * Placeholder for neighborhoods that are being prefetched.
+   */
+  private static final DoubleDBIDList PENDING = DBIDUtil.newDistanceDBIDList(0);
+
+  /**
+   * Number of neighborhoods to prefetch at once.
+   */
+  protected int prefetch;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function
+   * @param epsilon Epsilon value
+   * @param minpts Minpts value
+   * @param prefetch Number of neighborhoods to prefetch at once
+   */
+  public ParallelOPTICSHeap(DistanceFunction<? super O> distanceFunction, double epsilon, int minpts, int prefetch) {
+    super(distanceFunction, epsilon, minpts);
+    this.prefetch = prefetch;
+  }
+
+  @Override
+  public ClusterOrder run(Database db, Relation<O> relation) {
+    return new Instance(db, relation).run();
+  }
+
+  /**
+   * Instance for processing a single data set.
+   *
+   * @author Erich Schubert
+   */
+  private class Instance {
+    /**
+     * Holds a set of processed ids.
+     */
+    private ModifiableDBIDs processedIDs;
+
+    /**
+     * Heap of candidates.
+     */
+    UpdatableHeap<OPTICSHeapEntry> heap;
+
+    /**
+     * Output cluster order.
+     */
+    ClusterOrder clusterOrder;
+
+    /**
+     * IDs to process.
+     */
+    private DBIDs ids;
+
+    /**
+     * Iterator to look ahead for the next start objects.
+     */
+    private DBIDIter lookahead;
+
+    /**
+     * Progress for logging.
+     */
+    FiniteProgress progress;
+
+    /**
+     * Prefetched neighborhoods, {@code null} if not available.
+     */
+    WritableDataStore<DoubleDBIDList> cache;
+
+    /**
+     * Objects to prefetch.
+     */
+    ArrayModifiableDBIDs batch;
+
+    /**
+     * Processor for prefetching.
+     */
+    NeighborhoodProcessor<O> processor;
+
+    /**
+     * Number of prefetching batches.
+     */
+    long batches = 0;
+
+    /**
+     * Constructor for a single data set.
+     *
+     * @param db Database
+     * @param relation Data relation
+     */
+    public Instance(Database db, Relation<O> relation) {
+      ids = relation.getDBIDs();
+      processedIDs = DBIDUtil.newHashSet(ids.size());
+      clusterOrder = new ClusterOrder(ids, "OPTICS Clusterorder", "optics-clusterorder");
+      progress = LOG.isVerbose() ? new FiniteProgress("OPTICS", ids.size(), LOG) : null;
+      DistanceQuery<O> dq = db.getDistanceQuery(relation, getDistanceFunction());
+      RangeQuery<O> rangeQuery = db.getRangeQuery(dq, epsilon);
+      heap = new UpdatableHeap<>();
+      cache = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, DoubleDBIDList.class);
+      batch = DBIDUtil.newArray(prefetch);
+      processor = new NeighborhoodProcessor<>(rangeQuery, epsilon, minpts, cache);
+    }
+
+    /**
+     * Process the data set.
+     *
+     * @return Cluster order result.
+     */
+    public ClusterOrder run() {
+      lookahead = ids.iter();
+      for(DBIDIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
+        if(!processedIDs.contains(iditer)) {
+          assert (heap.isEmpty());
+          expandClusterOrder(iditer);
+        }
+      }
+      LOG.ensureCompleted(progress);
+      cache.destroy();
+      if(LOG.isStatistics()) {
+        LOG.statistics(new LongStatistic(ParallelOPTICSHeap.class.getName() + ".prefetch-batches", batches));
+      }
+      return clusterOrder;
+    }
+
+    /**
+     * OPTICS-function expandClusterOrder.
+     *
+     * @param objectID the currently processed object
+     */
+    protected void expandClusterOrder(DBIDRef objectID) {
+      heap.add(new OPTICSHeapEntry(DBIDUtil.deref(objectID), null, Double.POSITIVE_INFINITY));
+
+      while(!heap.isEmpty()) {
+        final OPTICSHeapEntry current = heap.poll();
+        clusterOrder.add(current.objectID, current.reachability, current.predecessorID);
+        processedIDs.add(current.objectID);
+
+        DoubleDBIDList neighbors = cache.get(current.objectID);
+        if(neighbors == null) {
+          prefetch(current.objectID);
+          neighbors = cache.get(current.objectID);
+        }
+        cache.put(current.objectID, null);
+        if(neighbors.size() >= minpts) {
+          // Sorted by the processor already.
+          DoubleDBIDListIter neighbor = neighbors.iter();
+          final double coreDistance = neighbor.seek(minpts - 1).doubleValue();
+
+          for(neighbor.seek(0); neighbor.valid(); neighbor.advance()) {
+            if(processedIDs.contains(neighbor)) {
+              continue;
+            }
+            double reachability = MathUtil.max(neighbor.doubleValue(), coreDistance);
+            heap.add(new OPTICSHeapEntry(DBIDUtil.deref(neighbor), current.objectID, reachability));
+          }
+        }
+        LOG.incrementProcessed(progress);
+      }
+    }
+
+    /**
+     * Prefetch the neighborhoods of the current object, the candidates on the
+     * heap, and the next start objects.
+     *
+     * @param cur Current object
+     */
+    private void prefetch(DBIDRef cur) {
+      batch.clear();
+      batch.add(cur);
+      cache.put(cur, PENDING);
+      for(Heap<OPTICSHeapEntry>.UnorderedIter it = heap.unorderedIter(); it.valid() && batch.size() < prefetch; it.advance()) {
+        final DBIDRef id = it.get().objectID;
+        if(cache.get(id) == null) {
+          batch.add(id);
+          cache.put(id, PENDING);
+        }
+      }
+      for(; lookahead.valid() && batch.size() < prefetch; lookahead.advance()) {
+        if(!processedIDs.contains(lookahead) && cache.get(lookahead) == null) {
+          batch.add(lookahead);
+          cache.put(lookahead, PENDING);
+        }
+      }
+      // The worker threads only replace existing entries of the cache.
+      ParallelExecutor.run(batch, Scheduling.DYNAMIC, null, null, processor);
+      ++batches;
+    }
+  }
+
+  /**
+   * Processor to compute the sorted neighborhoods of objects.
+   *
+   * @author Erich Schubert
+   *
+   * @param <O> Object type
+   */
+  private static class NeighborhoodProcessor<O> implements Processor {
+    /**
+     * Range query.
+     */
+    private RangeQuery<O> rangeQuery;
+
+    /**
+     * Query radius.
+     */
+    private double epsilon;
+
+    /**
+     * Minimum number of points.
+     */
+    private int minpts;
+
+    /**
+     * Output storage.
+     */
+    private WritableDataStore<DoubleDBIDList> output;
+
+    /**
+     * Constructor.
+     *
+     * @param rangeQuery Range query
+     * @param epsilon Query radius
+     * @param minpts Minimum number of points
+     * @param output Output storage
+     */
+    NeighborhoodProcessor(RangeQuery<O> rangeQuery, double epsilon, int minpts, WritableDataStore<DoubleDBIDList> output) {
+      this.rangeQuery = rangeQuery;
+      this.epsilon = epsilon;
+      this.minpts = minpts;
+      this.output = output;
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      return new Instance();
+    }
+
+    @Override
+    public void cleanup(Processor.Instance inst) {
+      // Nothing to do.
+    }
+
+    /**
+     * Instance for a single thread.
+     *
+     * @author Erich Schubert
+     */
+    private class Instance implements Processor.Instance {
+      @Override
+      public void map(DBIDRef id) {
+        ModifiableDoubleDBIDList neighbors = DBIDUtil.newDistanceDBIDList();
+        rangeQuery.getRangeForDBID(id, epsilon, neighbors);
+        if(neighbors.size() >= minpts) {
+          neighbors.sort();
+        }
+        output.put(id, neighbors);
+      }
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<O> extends AbstractOPTICS.Parameterizer<O> {
+    /**
+     * Number of neighborhoods to prefetch at once.
+     */
+    public static final OptionID PREFETCH_ID = new OptionID("optics.prefetch", "Number of neighborhoods to query in parallel at once. At most twice as many neighborhoods are kept in memory.");
+
+    /**
+     * Number of neighborhoods to prefetch at once.
+     */
+    protected int prefetch = 1024;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      IntParameter prefetchP = new IntParameter(PREFETCH_ID, 1024) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(prefetchP)) {
+        prefetch = prefetchP.intValue();
+      }
+    }
+
+    @Override
+    protected ParallelOPTICSHeap<O> makeInstance() {
+      return new ParallelOPTICSHeap<>(distanceFunction, epsilon, minpts, prefetch);
+    }
+  }
+}
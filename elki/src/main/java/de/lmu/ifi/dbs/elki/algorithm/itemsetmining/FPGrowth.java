@@ -190,7 +190,7 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
    * @param dim Maximum dimensionality
    * @return Item counts
    */
-  private int[] countItemSupport(final Relation<BitVector> relation, final int dim) {
+  protected int[] countItemSupport(final Relation<BitVector> relation, final int dim) {
     final int[] counts = new int[dim];
     FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Finding frequent 1-items", relation.size(), LOG) : null;
     for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
@@ -247,7 +247,7 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
    * @param minsupp Minimum support
    * @return Forward index
    */
-  private int[] buildIndex(final int[] counts, int[] positions, int minsupp) {
+  protected int[] buildIndex(final int[] counts, int[] positions, int minsupp) {
     // Count the number of frequent items:
     int numfreq = 0;
     for(int i = 0; i < counts.length; i++) {
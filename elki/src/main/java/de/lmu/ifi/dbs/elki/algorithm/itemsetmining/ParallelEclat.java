@@ -0,0 +1,335 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.itemsetmining;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.BitVector;
+import de.lmu.ifi.dbs.elki.data.SparseFeatureVector;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor.RangeTask;
+import de.lmu.ifi.dbs.elki.result.FrequentItemsetsResult;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerArrayQuickSort;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerComparator;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+
+/**
+ * Multi-threaded Eclat using diffsets (dEclat).
+ *
+ * Transactions are numbered consecutively, and each frequent item is stored as
+ * a sorted {@code int[]} list of transaction numbers. Below the first level,
+ * only the diffsets are kept, i.e. the transactions of the prefix that are
+ * <em>missing</em> the extension. On dense data these are much smaller than
+ * the transaction lists, and the support is obtained by subtraction.
+ *
+ * Items are ordered by ascending support, and the equivalence classes of the
+ * single items are mined independently on all available processors.
+ *
+ * Reference:
+ * <p>
+ * M. J. Zaki, K. Gouda<br />
+ * Fast vertical mining using diffsets<br />
+ * Proc. 9th ACM SIGKDD Int. Conf. on Knowledge Discovery and Data Mining
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@Reference(authors = "M. J. Zaki, K. Gouda", //
+    title = "Fast vertical mining using diffsets", //
+    booktitle = "Proc. 9th ACM SIGKDD Int. Conf. on Knowledge Discovery and Data Mining", //
+    url = "http://dx.doi.org/10.1145/956750.956788")
+public class ParallelEclat extends Eclat {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelEclat.class);
+
+  /**
+   * Prefix for statistics.
+   */
+  private static final String STAT = ParallelEclat.class.getName() + ".";
+
+  /**
+   * Constructor.
+   *
+   * @param minsupp Minimum support
+   * @param minlength Minimum length
+   * @param maxlength Maximum length
+   */
+  public ParallelEclat(double minsupp, int minlength, int maxlength) {
+    super(minsupp, minlength, maxlength);
+  }
+
+  @Override
+  public FrequentItemsetsResult run(Database db, final Relation<BitVector> relation) {
+    final int dim = RelationUtil.dimensionality(relation);
+    final VectorFieldTypeInformation<BitVector> meta = RelationUtil.assumeVectorField(relation);
+    // Compute absolute minsupport
+    final int minsupp = getMinimumSupport(relation.size());
+
+    LOG.verbose("Build 1-dimensional transaction lists.");
+    Duration ctime = LOG.newDuration(STAT + "eclat.transposition.time").begin();
+    final int[] counts = new int[dim];
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+      SparseFeatureVector<?> bv = relation.get(iter);
+      for(int it = bv.iter(); bv.iterValid(it); it = bv.iterAdvance(it)) {
+        counts[bv.iterDim(it)]++;
+      }
+    }
+    final int[] idx = buildIndex(counts, minsupp);
+    final int[][] tids = buildTransactionLists(relation, counts, idx);
+    LOG.statistics(ctime.end());
+
+    final int items = idx.length;
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Building frequent itemsets", items, LOG) : null;
+    Duration etime = LOG.newDuration(STAT + "eclat.extraction.time").begin();
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    final List<Itemset>[] partial = new List[items];
+    ParallelExecutor.run(items, 1, new RangeTask() {
+      @Override
+      public void process(int start, int end) {
+        int[] buf = new int[items];
+        int[] scratch = new int[relation.size()];
+        for(int i = start; i < end; i++) {
+          List<Itemset> solution = new ArrayList<>();
+          extractItemsets(tids, idx, i, minsupp, buf, scratch, solution);
+          partial[i] = solution;
+          LOG.incrementProcessed(prog);
+        }
+      }
+    });
+    LOG.ensureCompleted(prog);
+    final List<Itemset> solution = new ArrayList<>();
+    for(List<Itemset> part : partial) {
+      solution.addAll(part);
+    }
+    Collections.sort(solution);
+    LOG.statistics(etime.end());
+
+    LOG.statistics(new LongStatistic(STAT + "frequent-itemsets", solution.size()));
+    return new FrequentItemsetsResult("Eclat", "eclat", solution, meta, relation.size());
+  }
+
+  /**
+   * Build the list of frequent items, by ascending support.
+   *
+   * @param counts Item counts
+   * @param minsupp Minimum support
+   * @return Frequent items
+   */
+  private static int[] buildIndex(final int[] counts, int minsupp) {
+    int numfreq = 0;
+    for(int i = 0; i < counts.length; i++) {
+      if(counts[i] >= minsupp) {
+        ++numfreq;
+      }
+    }
+    int[] idx = new int[numfreq];
+    for(int i = 0, j = 0; i < counts.length; i++) {
+      if(counts[i] >= minsupp) {
+        idx[j++] = i;
+      }
+    }
+    // Least frequent first: this keeps transaction lists and diffsets small.
+    IntegerArrayQuickSort.sort(idx, new IntegerComparator() {
+      @Override
+      public int compare(int x, int y) {
+        int c = Integer.compare(counts[x], counts[y]);
+        return c != 0 ? c : Integer.compare(x, y);
+      }
+    });
+    return idx;
+  }
+
+  /**
+   * Transpose the data into sorted transaction number lists.
+   *
+   * @param relation Data relation
+   * @param counts Item counts
+   * @param idx Frequent items
+   * @return Transaction lists, in the order of {@code idx}
+   */
+  private static int[][] buildTransactionLists(Relation<BitVector> relation, int[] counts, int[] idx) {
+    int[] iidx = new int[counts.length];
+    Arrays.fill(iidx, -1);
+    int[][] tids = new int[idx.length][];
+    for(int i = 0; i < idx.length; i++) {
+      iidx[idx[i]] = i;
+      tids[i] = new int[counts[idx[i]]];
+    }
+    int[] fill = new int[idx.length];
+    int tid = 0;
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance(), tid++) {
+      SparseFeatureVector<?> bv = relation.get(iter);
+      for(int it = bv.iter(); bv.iterValid(it); it = bv.iterAdvance(it)) {
+        final int i = iidx[bv.iterDim(it)];
+        if(i >= 0) {
+          tids[i][fill[i]++] = tid;
+        }
+      }
+    }
+    return tids;
+  }
+
+  /**
+   * Mine the equivalence class of a single item.
+   *
+   * @param tids Transaction lists
+   * @param idx Item index
+   * @param i Current item
+   * @param minsupp Minimum support
+   * @param buf Itemset buffer
+   * @param scratch Scratch buffer for set differences
+   * @param solution Output list
+   */
+  private void extractItemsets(int[][] tids, int[] idx, int i, int minsupp, int[] buf, int[] scratch, List<Itemset> solution) {
+    final int[] ti = tids[i];
+    if(minlength <= 1) {
+      solution.add(new OneItemset(idx[i], ti.length));
+    }
+    if(maxlength <= 1) {
+      return;
+    }
+    // Second level: diffsets from the transaction lists.
+    final int size = tids.length - i - 1;
+    int[] items = new int[size], supps = new int[size];
+    int[][] diffs = new int[size][];
+    int n = 0;
+    for(int j = i + 1; j < tids.length; j++) {
+      int l = difference(ti, tids[j], ti.length - minsupp, scratch);
+      if(l >= 0) {
+        items[n] = j;
+        supps[n] = ti.length - l;
+        diffs[n++] = Arrays.copyOf(scratch, l);
+      }
+    }
+    buf[0] = i;
+    extractItemsets(items, supps, diffs, n, idx, buf, 1, minsupp, scratch, solution);
+  }
+
+  /**
+   * Recursive extraction of an equivalence class represented by diffsets.
+   *
+   * @param items Class members
+   * @param supps Member supports
+   * @param diffs Member diffsets
+   * @param n Number of members
+   * @param idx Item index
+   * @param buf Prefix buffer
+   * @param depth Prefix length
+   * @param minsupp Minimum support
+   * @param scratch Scratch buffer
+   * @param solution Output list
+   */
+  private void extractItemsets(int[] items, int[] supps, int[][] diffs, int n, int[] idx, int[] buf, int depth, int minsupp, int[] scratch, List<Itemset> solution) {
+    final int depth1 = depth + 1;
+    for(int a = 0; a < n; a++) {
+      buf[depth] = items[a];
+      if(depth1 >= minlength) {
+        int[] indices = new int[depth1];
+        for(int k = 0; k < depth1; k++) {
+          indices[k] = idx[buf[k]];
+        }
+        Arrays.sort(indices);
+        solution.add(new SparseItemset(indices, supps[a]));
+      }
+      if(depth1 >= maxlength || a + 1 == n) {
+        continue;
+      }
+      final int size = n - a - 1;
+      int[] nitems = new int[size], nsupps = new int[size];
+      int[][] ndiffs = new int[size][];
+      int m = 0;
+      for(int b = a + 1; b < n; b++) {
+        // d(PXY) = d(PY) \ d(PX), supp(PXY) = supp(PX) - |d(PXY)|
+        int l = difference(diffs[b], diffs[a], supps[a] - minsupp, scratch);
+        if(l >= 0) {
+          nitems[m] = items[b];
+          nsupps[m] = supps[a] - l;
+          ndiffs[m++] = Arrays.copyOf(scratch, l);
+        }
+      }
+      if(m > 0) {
+        extractItemsets(nitems, nsupps, ndiffs, m, idx, buf, depth1, minsupp, scratch, solution);
+      }
+    }
+  }
+
+  /**
+   * Compute the sorted set difference {@code first \ second}, aborting early
+   * when it becomes larger than the given limit.
+   *
+   * @param first First set
+   * @param second Set to remove
+   * @param limit Maximum size of the result
+   * @param out Output buffer
+   * @return Size of the difference, or -1 if larger than the limit.
+   */
+  private static int difference(int[] first, int[] second, int limit, int[] out) {
+    int l = 0, i1 = 0, i2 = 0;
+    while(i1 < first.length) {
+      final int v1 = first[i1];
+      while(i2 < second.length && second[i2] < v1) {
+        ++i2;
+      }
+      if(i2 == second.length || second[i2] != v1) {
+        if(l == limit) {
+          return -1;
+        }
+        out[l++] = v1;
+      }
+      ++i1;
+    }
+    return l;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends Eclat.Parameterizer {
+    @Override
+    protected ParallelEclat makeInstance() {
+      return new ParallelEclat(minsupp, minlength, maxlength);
+    }
+  }
+}
@@ -0,0 +1,478 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.itemsetmining;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.BitVector;
+import de.lmu.ifi.dbs.elki.data.SparseFeatureVector;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor.RangeTask;
+import de.lmu.ifi.dbs.elki.result.FrequentItemsetsResult;
+
+/**
+ * Multi-threaded FP-Growth on an array-encoded FP-tree.
+ *
+ * The FP-tree is stored in a few parallel {@code int[]} arrays (item, count,
+ * parent, and header list successor) instead of one object per node, which
+ * substantially reduces memory and allocation cost of the tree and of all
+ * conditional trees. After construction, the tree is only read, and the
+ * conditional trees of the individual items are built and mined on all
+ * available processors.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf ArrayFPTree
+ */
+public class ParallelFPGrowth extends FPGrowth {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelFPGrowth.class);
+
+  /**
+   * Prefix for statistics.
+   */
+  private static final String STAT = ParallelFPGrowth.class.getName() + ".";
+
+  /**
+   * Constructor.
+   *
+   * @param minsupp Minimum support (relative or absolute)
+   * @param minlength Minimum length
+   * @param maxlength Maximum length
+   */
+  public ParallelFPGrowth(double minsupp, int minlength, int maxlength) {
+    super(minsupp, minlength, maxlength);
+  }
+
+  @Override
+  public FrequentItemsetsResult run(Database db, final Relation<BitVector> relation) {
+    final int dim = RelationUtil.dimensionality(relation);
+    final VectorFieldTypeInformation<BitVector> meta = RelationUtil.assumeVectorField(relation);
+    // Compute absolute minsupport
+    final int minsupp = getMinimumSupport(relation.size());
+
+    LOG.verbose("Finding item frequencies for ordering.");
+    final int[] counts = countItemSupport(relation, dim);
+    // Forward and backward indexes
+    int[] iidx = new int[dim];
+    final int[] idx = buildIndex(counts, iidx, minsupp);
+    final int items = idx.length;
+
+    LOG.statistics(new LongStatistic(STAT + "raw-items", dim));
+    LOG.statistics(new LongStatistic(STAT + "raw-transactions", relation.size()));
+    LOG.statistics(new DoubleStatistic(STAT + "minsupp-relative", minsupp / (double) relation.size()));
+    LOG.statistics(new LongStatistic(STAT + "minsupp-absolute", minsupp));
+
+    LOG.verbose("Building FP-Tree.");
+    Duration ctime = LOG.newDuration(STAT + "fp-tree.construction.time").begin();
+    final ArrayFPTree tree = buildFPTree(relation, iidx, items);
+    LOG.statistics(new LongStatistic(STAT + "items", items));
+    LOG.statistics(new LongStatistic(STAT + "nodes", tree.size));
+    LOG.statistics(new LongStatistic(STAT + "transactions", tree.count[0]));
+    LOG.statistics(ctime.end());
+
+    LOG.verbose("Extracting frequent patterns.");
+    Duration etime = LOG.newDuration(STAT + "fp-growth.extraction.time").begin();
+    // Items that cannot begin an itemset of sufficient length:
+    final int stop = (minlength > 1) ? minlength - 1 : 0;
+    final FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Extracting itemsets", items - stop, LOG) : null;
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    final List<Itemset>[] partial = new List[items];
+    // Start extraction with the least frequent items
+    ParallelExecutor.run(items - stop, 1, new RangeTask() {
+      @Override
+      public void process(int start, int end) {
+        for(int k = start; k < end; k++) {
+          final int item = items - 1 - k;
+          Miner miner = new Miner(idx, minsupp, minlength, maxlength);
+          miner.extract(tree, item, 0);
+          partial[item] = miner.solution;
+          LOG.incrementProcessed(prog);
+        }
+      }
+    });
+    LOG.ensureCompleted(prog);
+    final List<Itemset> solution = new ArrayList<>();
+    for(int i = stop; i < items; i++) {
+      solution.addAll(partial[i]);
+    }
+    Collections.sort(solution);
+    LOG.statistics(etime.end());
+    LOG.statistics(new LongStatistic(STAT + "frequent-itemsets", solution.size()));
+
+    return new FrequentItemsetsResult("FP-Growth", "fp-growth", solution, meta, relation.size());
+  }
+
+  /**
+   * Build the array-encoded FP-tree.
+   *
+   * @param relation Data
+   * @param iidx Inverse index (dimension to item rank)
+   * @param items Number of items
+   * @return FP-tree
+   */
+  private ArrayFPTree buildFPTree(final Relation<BitVector> relation, int[] iidx, final int items) {
+    // Every frequent item occurs in at least one node; the arrays grow on
+    // demand, as the tree is usually much smaller than the data.
+    ArrayFPTree tree = new ArrayFPTree(items, items + 1);
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Building FP-tree", relation.size(), LOG) : null;
+    int[] buf = new int[items];
+    for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
+      // Convert item to index representation:
+      int l = 0;
+      SparseFeatureVector<?> bv = relation.get(iditer);
+      for(int it = bv.iter(); bv.iterValid(it); it = bv.iterAdvance(it)) {
+        int i = iidx[bv.iterDim(it)];
+        if(i >= 0) { // Skip non-frequent items
+          buf[l++] = i;
+        }
+      }
+      // Skip too short entries
+      if(l >= minlength) {
+        Arrays.sort(buf, 0, l); // Sort ascending
+        tree.insert(buf, 0, l, 1);
+      }
+      LOG.incrementProcessed(prog);
+    }
+    LOG.ensureCompleted(prog);
+    tree.reduceMemory();
+    return tree;
+  }
+
+  /**
+   * Per-thread extraction of frequent itemsets from (conditional) FP-trees.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class Miner {
+    /**
+     * Item index, to translate back to the original items.
+     */
+    final int[] idx;
+
+    /**
+     * Parameters.
+     */
+    final int minsupp, minlength, maxlength;
+
+    /**
+     * Scratch buffers: postfix, projected path, and parent supports.
+     */
+    final int[] postfix, buf2, buf3;
+
+    /**
+     * Itemsets found.
+     */
+    final List<Itemset> solution = new ArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * @param idx Item index
+     * @param minsupp Minimum support
+     * @param minlength Minimum length
+     * @param maxlength Maximum length
+     */
+    Miner(int[] idx, int minsupp, int minlength, int maxlength) {
+      this.idx = idx;
+      this.minsupp = minsupp;
+      this.minlength = minlength;
+      this.maxlength = maxlength;
+      this.postfix = new int[idx.length];
+      this.buf2 = new int[idx.length];
+      this.buf3 = new int[idx.length];
+    }
+
+    /**
+     * Extract itemsets ending in the given item. The tree is not modified.
+     *
+     * @param tree FP-tree
+     * @param item Current item
+     * @param plen Postfix length
+     */
+    void extract(ArrayFPTree tree, int item, int plen) {
+      final int first = tree.header[item];
+      if(first < 0) {
+        return; // Not in this tree.
+      }
+      final int[] key = tree.key, count = tree.count, parent = tree.parent,
+          next = tree.next;
+      // Single node: the conditional pattern base is a single path.
+      if(next[first] < 0) {
+        if(count[first] >= minsupp) {
+          extractLinear(tree, first, count[first], plen);
+        }
+        return;
+      }
+      // Count total support.
+      int support = 0;
+      for(int cur = first; cur >= 0; cur = next[cur]) {
+        support += count[cur];
+      }
+      if(support < minsupp) {
+        return;
+      }
+      postfix[plen++] = item;
+      if(plen >= minlength && plen <= maxlength) {
+        collect(support, plen);
+      }
+      if(plen >= maxlength) {
+        return;
+      }
+      // Check which parent items to keep in the projection.
+      Arrays.fill(buf3, 0, item, 0);
+      for(int cur = first; cur >= 0; cur = next[cur]) {
+        for(int p = parent[cur]; key[p] >= 0; p = parent[p]) {
+          buf3[key[p]] += count[cur];
+        }
+      }
+      // For testing minimum length:
+      final int mminlength = minlength - plen;
+      int fparents = 0;
+      for(int i = 0; i < item; i++) {
+        if(buf3[i] >= minsupp) {
+          fparents += 1;
+        }
+      }
+      if(fparents == 0 || fparents < mminlength) {
+        return; // Not enough parents that are still frequent.
+      }
+      // Build projected tree:
+      ArrayFPTree proj = new ArrayFPTree(item, 16);
+      for(int cur = first; cur >= 0; cur = next[cur]) {
+        int j = buf2.length;
+        for(int p = parent[cur]; key[p] >= 0; p = parent[p]) {
+          if(buf3[key[p]] >= minsupp) {
+            buf2[--j] = key[p];
+          }
+        }
+        if(j < buf2.length && buf2.length - j >= mminlength) {
+          proj.insert(buf2, j, buf2.length, count[cur]);
+        }
+      }
+      proj.reduceMemory();
+      for(int j = item - 1; j >= 0; j--) {
+        extract(proj, j, plen);
+      }
+    }
+
+    /**
+     * Extract itemsets from the single path above a node.
+     *
+     * @param tree FP-tree
+     * @param node Current node
+     * @param supp Current support
+     * @param plen Postfix length
+     */
+    private void extractLinear(ArrayFPTree tree, int node, int supp, int plen) {
+      final int item = tree.key[node];
+      // Unsatisfiable even with all items above:
+      if(plen + 1 + item < minlength) {
+        return;
+      }
+      postfix[plen++] = item;
+      if(plen >= minlength && plen <= maxlength) {
+        collect(supp, plen);
+      }
+      // Any more parents will exceed the maximum length:
+      if(plen >= maxlength) {
+        return;
+      }
+      for(int p = tree.parent[node]; tree.key[p] >= 0; p = tree.parent[p]) {
+        if(plen + 1 + tree.key[p] < minlength) {
+          break; // Too short, and keys are decreasing.
+        }
+        extractLinear(tree, p, supp, plen);
+      }
+    }
+
+    /**
+     * Store an itemset.
+     *
+     * @param support Support
+     * @param plen Postfix length
+     */
+    private void collect(int support, int plen) {
+      // Always translate the indexes back to the original values via 'idx'!
+      if(plen == 1) {
+        solution.add(new OneItemset(idx[postfix[0]], support));
+        return;
+      }
+      int[] indices = new int[plen];
+      for(int i = 0; i < plen; i++) {
+        indices[i] = idx[postfix[i]];
+      }
+      Arrays.sort(indices);
+      solution.add(new SparseItemset(indices, support));
+    }
+  }
+
+  /**
+   * FP-tree stored in parallel arrays; node 0 is the root.
+   *
+   * @author Erich Schubert
+   */
+  public static class ArrayFPTree {
+    /**
+     * Node item, support count, parent node, and next node with the same item.
+     */
+    int[] key, count, parent, next;
+
+    /**
+     * First child and next sibling, only needed during construction.
+     */
+    int[] child, sibling;
+
+    /**
+     * Header table: first node of each item.
+     */
+    int[] header;
+
+    /**
+     * Number of nodes in use.
+     */
+    int size = 1;
+
+    /**
+     * Constructor.
+     *
+     * @param items Number of items in header table
+     * @param capacity Initial capacity
+     */
+    public ArrayFPTree(int items, int capacity) {
+      capacity = Math.max(capacity, 2);
+      key = new int[capacity];
+      count = new int[capacity];
+      parent = new int[capacity];
+      next = new int[capacity];
+      child = new int[capacity];
+      sibling = new int[capacity];
+      key[0] = parent[0] = next[0] = child[0] = sibling[0] = -1;
+      header = new int[items];
+      Arrays.fill(header, -1);
+    }
+
+    /**
+     * Insert an itemset into the tree.
+     *
+     * @param buf Buffer, sorted ascending
+     * @param i Start position in buffer
+     * @param l End position in buffer
+     * @param weight Weight
+     */
+    public void insert(int[] buf, int i, int l, int weight) {
+      int node = 0;
+      count[0] += weight;
+      for(; i < l; i++) {
+        final int label = buf[i];
+        int c = child[node];
+        while(c >= 0 && key[c] != label) {
+          c = sibling[c];
+        }
+        if(c < 0) {
+          c = newNode(node, label);
+        }
+        count[c] += weight;
+        node = c;
+      }
+    }
+
+    /**
+     * Create a new node, linking it into its parent and the header table.
+     *
+     * @param p Parent node
+     * @param label Node label
+     * @return New node
+     */
+    private int newNode(int p, int label) {
+      if(size == key.length) {
+        final int newsize = key.length << 1;
+        key = Arrays.copyOf(key, newsize);
+        count = Arrays.copyOf(count, newsize);
+        parent = Arrays.copyOf(parent, newsize);
+        next = Arrays.copyOf(next, newsize);
+        child = Arrays.copyOf(child, newsize);
+        sibling = Arrays.copyOf(sibling, newsize);
+      }
+      final int n = size++;
+      key[n] = label;
+      count[n] = 0;
+      parent[n] = p;
+      child[n] = -1;
+      sibling[n] = child[p];
+      child[p] = n;
+      next[n] = header[label];
+      header[label] = n;
+      return n;
+    }
+
+    /**
+     * Release the memory used for parent-to-child navigation, and trim the
+     * remaining arrays. Only child-to-parent links are needed for extraction.
+     */
+    public void reduceMemory() {
+      child = sibling = null;
+      if(size < key.length) {
+        key = Arrays.copyOf(key, size);
+        count = Arrays.copyOf(count, size);
+        parent = Arrays.copyOf(parent, size);
+        next = Arrays.copyOf(next, size);
+      }
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends FPGrowth.Parameterizer {
+    @Override
+    protected ParallelFPGrowth makeInstance() {
+      return new ParallelFPGrowth(minsupp, minlength, maxlength);
+    }
+  }
+}
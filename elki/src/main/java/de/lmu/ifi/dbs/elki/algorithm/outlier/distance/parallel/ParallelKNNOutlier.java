@@ -38,8 +38,10 @@ import de.lmu.ifi.dbs.elki.database.relation.MaterializedDoubleRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.math.DoubleMinMax;
 import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor.Scheduling;
 import de.lmu.ifi.dbs.elki.parallel.processor.DoubleMinMaxProcessor;
 import de.lmu.ifi.dbs.elki.parallel.processor.KDistanceProcessor;
 import de.lmu.ifi.dbs.elki.parallel.processor.KNNProcessor;
@@ -133,7 +135,8 @@ public class ParallelKNNOutlier<O> extends AbstractDistanceBasedAlgorithm<O, Out
     DoubleMinMaxProcessor mmm = new DoubleMinMaxProcessor();
     mmm.connectInput(kdistv);
 
-    ParallelExecutor.run(ids, knnm, kdistm, storem, mmm);
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("kNN distance for objects", ids.size(), LOG) : null;
+    ParallelExecutor.run(ids, Scheduling.DYNAMIC, prog, LOG, knnm, kdistm, storem, mmm);
 
     DoubleMinMax minmax = mmm.getMinMax();
     DoubleRelation scoreres = new MaterializedDoubleRelation("kNN Outlier Score", "knn-outlier", store, ids);
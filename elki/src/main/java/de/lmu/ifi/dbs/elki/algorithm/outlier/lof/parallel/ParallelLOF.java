@@ -39,8 +39,10 @@ import de.lmu.ifi.dbs.elki.database.relation.MaterializedDoubleRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.math.DoubleMinMax;
 import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor.Scheduling;
 import de.lmu.ifi.dbs.elki.parallel.processor.DoubleMinMaxProcessor;
 import de.lmu.ifi.dbs.elki.parallel.processor.KDistanceProcessor;
 import de.lmu.ifi.dbs.elki.parallel.processor.KNNProcessor;
@@ -129,7 +131,8 @@ public class ParallelLOF<O> extends AbstractDistanceBasedAlgorithm<O, OutlierRes
       kdistm.connectOutput(kdistv);
       storem.connectInput(kdistv);
 
-      ParallelExecutor.run(ids, knnm, storek, kdistm, storem);
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("kNN and k-distance", ids.size(), LOG) : null;
+      ParallelExecutor.run(ids, Scheduling.DYNAMIC, prog, LOG, knnm, storek, kdistm, storem);
     }
 
     // Phase two: lrd
@@ -39,8 +39,10 @@ import de.lmu.ifi.dbs.elki.database.relation.MaterializedDoubleRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.math.DoubleMinMax;
 import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor.Scheduling;
 import de.lmu.ifi.dbs.elki.parallel.processor.DoubleMinMaxProcessor;
 import de.lmu.ifi.dbs.elki.parallel.processor.KNNProcessor;
 import de.lmu.ifi.dbs.elki.parallel.processor.WriteDataStoreProcessor;
@@ -120,7 +122,8 @@ public class ParallelSimplifiedLOF<O> extends AbstractDistanceBasedAlgorithm<O,
       knnm.connectKNNOutput(knnv);
       storek.connectInput(knnv);
 
-      ParallelExecutor.run(ids, knnm, storek);
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("kNN computation", ids.size(), LOG) : null;
+      ParallelExecutor.run(ids, Scheduling.DYNAMIC, prog, LOG, knnm, storek);
     }
 
     // Phase two: simplified-lrd
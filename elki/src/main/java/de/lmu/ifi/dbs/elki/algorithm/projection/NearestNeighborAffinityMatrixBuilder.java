@@ -38,6 +38,8 @@ import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.math.MathUtil;
 import de.lmu.ifi.dbs.elki.math.MeanVariance;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor.RangeTask;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.DoubleArray;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.IntegerArray;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
@@ -132,28 +134,32 @@ public class NearestNeighborAffinityMatrixBuilder<O> extends PerplexityAffinityM
    * @param indices Output of indexes
    * @param initialScale Initial scaling factor
    */
-  protected void computePij(DBIDRange ids, KNNQuery<?> knnq, boolean square, int numberOfNeighbours, double[][] pij, int[][] indices, double initialScale) {
+  protected void computePij(final DBIDRange ids, final KNNQuery<?> knnq, final boolean square, final int numberOfNeighbours, final double[][] pij, final int[][] indices, double initialScale) {
     Duration timer = LOG.isStatistics() ? LOG.newDuration(this.getClass().getName() + ".runtime.neighborspijmatrix").begin() : null;
     final double logPerp = FastMath.log(perplexity);
-    // Scratch arrays, resizable
-    DoubleArray dists = new DoubleArray(numberOfNeighbours + 10);
-    IntegerArray inds = new IntegerArray(numberOfNeighbours + 10);
-    // Compute nearest-neighbor sparse affinity matrix
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Finding neighbors and optimizing perplexity", ids.size(), LOG) : null;
-    MeanVariance mv = LOG.isStatistics() ? new MeanVariance() : null;
-    for(DBIDArrayIter ix = ids.iter(); ix.valid(); ix.advance()) {
-      dists.clear();
-      inds.clear();
-      KNNList neighbours = knnq.getKNNForDBID(ix, numberOfNeighbours + 1);
-      convertNeighbors(ids, ix, square, neighbours, dists, inds);
-      double beta = computeSigma(ix.getOffset(), dists, perplexity, logPerp, //
-          pij[ix.getOffset()] = new double[dists.size()]);
-      if(mv != null) {
-        mv.put(beta > 0 ? FastMath.sqrt(.5 / beta) : 0.); // Sigma
+    // Compute nearest-neighbor sparse affinity matrix, in parallel.
+    final FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Finding neighbors and optimizing perplexity", ids.size(), LOG) : null;
+    final double[] betas = new double[ids.size()];
+    ParallelExecutor.run(ids.size(), PARALLEL_CHUNK, new RangeTask() {
+      @Override
+      public void process(int start, int end) {
+        // Scratch arrays, resizable
+        DoubleArray dists = new DoubleArray(numberOfNeighbours + 10);
+        IntegerArray inds = new IntegerArray(numberOfNeighbours + 10);
+        for(DBIDArrayIter ix = ids.iter().seek(start); ix.getOffset() < end; ix.advance()) {
+          dists.clear();
+          inds.clear();
+          KNNList neighbours = knnq.getKNNForDBID(ix, numberOfNeighbours + 1);
+          convertNeighbors(ids, ix, square, neighbours, dists, inds);
+          betas[ix.getOffset()] = computeSigma(ix.getOffset(), dists, perplexity, logPerp, //
+              pij[ix.getOffset()] = new double[dists.size()]);
+          indices[ix.getOffset()] = inds.toArray();
+        }
+        if(prog != null) {
+          prog.incrementProcessed(end - start, LOG);
+        }
       }
-      indices[ix.getOffset()] = inds.toArray();
-      LOG.incrementProcessed(prog);
-    }
+    });
     LOG.ensureCompleted(prog);
     // Sum of the sparse affinity matrix:
     double sum = 0.;
@@ -185,7 +191,11 @@ public class NearestNeighborAffinityMatrixBuilder<O> extends PerplexityAffinityM
         }
       }
     }
-    if(LOG.isStatistics()) { // timer != null, mv != null
+    if(LOG.isStatistics()) { // timer != null
+      MeanVariance mv = new MeanVariance();
+      for(double beta : betas) {
+        mv.put(beta > 0 ? FastMath.sqrt(.5 / beta) : 0.); // Sigma
+      }
       LOG.statistics(timer.end());
       LOG.statistics(new DoubleStatistic(NearestNeighborAffinityMatrixBuilder.class.getName() + ".sigma.average", mv.getMean()));
       LOG.statistics(new DoubleStatistic(NearestNeighborAffinityMatrixBuilder.class.getName() + ".sigma.stddev", mv.getSampleStddev()));
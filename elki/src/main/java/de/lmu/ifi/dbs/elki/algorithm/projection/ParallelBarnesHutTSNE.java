@@ -0,0 +1,411 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.projection;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor.RangeTask;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Multi-threaded tSNE using Barnes-Hut-Approximation.
+ *
+ * Instead of a pointer-based quad tree, this uses a binary space partitioning
+ * tree (split at the middle of the widest side of the bounding box) stored in
+ * flat arrays: node ranges, centers of mass and sizes are kept in parallel
+ * arrays, and the points are kept in tree order in one coordinate array. All
+ * arrays are allocated once, so rebuilding the tree in every iteration does
+ * not allocate memory. The repulsive and attractive forces are then computed
+ * for all points in parallel.
+ *
+ * Reference:
+ * <p>
+ * L. van der Maaten<br />
+ * Accelerating t-SNE using Tree-Based Algorithms<br />
+ * Journal of Machine Learning Research 15
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has FlatTree
+ *
+ * @param <O> Object type
+ */
+public class ParallelBarnesHutTSNE<O> extends BarnesHutTSNE<O> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelBarnesHutTSNE.class);
+
+  /**
+   * Number of points to process at once.
+   */
+  private static final int CHUNK = 256;
+
+  /**
+   * Minimum resolution of the tree.
+   */
+  private static final double TREE_MIN_RESOLUTION = 1e-10;
+
+  /**
+   * Constructor.
+   *
+   * @param affinity Affinity matrix builder
+   * @param dim Output dimensionality
+   * @param finalMomentum Final momentum
+   * @param learningRate Learning rate
+   * @param maxIterations Maximum number of iterations
+   * @param random Random generator
+   * @param keep Keep the original data (or remove it)
+   * @param theta Approximation quality threshold
+   */
+  public ParallelBarnesHutTSNE(AffinityMatrixBuilder<? super O> affinity, int dim, double finalMomentum, double learningRate, int maxIterations, RandomFactory random, boolean keep, double theta) {
+    super(affinity, dim, finalMomentum, learningRate, maxIterations, random, keep, theta);
+  }
+
+  @Override
+  protected void optimizetSNE(AffinityMatrix pij, double[][] sol) {
+    final int size = pij.size();
+    if(size * 3L * dim > 0x7FFF_FFFAL || size * 2L * dim > 0x7FFF_FFFAL) {
+      throw new AbortException("Memory exceeds Java array size limit.");
+    }
+    // Meta information on each point; joined for memory locality.
+    // Gradient, Momentum, and learning rate
+    double[] meta = new double[size * 3 * dim];
+    final int dim3 = dim * 3;
+    for(int off = 2 * dim; off < meta.length; off += dim3) {
+      Arrays.fill(meta, off, off + dim, 1.); // Initial learning rate
+    }
+    FlatTree tree = new FlatTree(size, dim);
+    double[] zs = new double[(size + CHUNK - 1) / CHUNK];
+    AtomicLong distances = new AtomicLong();
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Iterative Optimization", iterations, LOG) : null;
+    Duration timer = LOG.isStatistics() ? LOG.newDuration(this.getClass().getName() + ".runtime.optimization").begin() : null;
+    for(int i = 0; i < iterations; i++) {
+      tree.build(sol);
+      computeGradient(pij, sol, meta, tree, zs, distances);
+      updateSolution(sol, meta, i);
+      // Undo early exaggeration
+      if(i == EARLY_EXAGGERATION_ITERATIONS) {
+        pij.scale(1. / EARLY_EXAGGERATION);
+      }
+      LOG.incrementProcessed(prog);
+    }
+    LOG.ensureCompleted(prog);
+    projectedDistances.increment(distances.get());
+    if(timer != null) {
+      LOG.statistics(timer.end());
+    }
+  }
+
+  /**
+   * Compute the gradient in parallel.
+   *
+   * @param pij Affinity matrix
+   * @param sol Current solution
+   * @param meta Metadata array (gradient output)
+   * @param tree Tree on the current solution
+   * @param zs Normalization per chunk (scratch)
+   * @param distances Distance computation counter
+   */
+  private void computeGradient(final AffinityMatrix pij, final double[][] sol, final double[] meta, final FlatTree tree, final double[] zs, final AtomicLong distances) {
+    final int size = sol.length, dim = this.dim, dim3 = 3 * dim;
+    final double sqtheta = this.sqtheta;
+    // Repulsive forces; the normalization is summed per chunk, for
+    // deterministic results.
+    ParallelExecutor.run(size, CHUNK, new RangeTask() {
+      @Override
+      public void process(int start, int end) {
+        int[] stack = new int[64];
+        long dists = 0;
+        double z = 0.;
+        for(int i = start; i < end; i++) {
+          final int off = i * dim3;
+          Arrays.fill(meta, off, off + dim, 0.);
+          final double[] sol_i = sol[i];
+          final double[] center = tree.center, pos = tree.pos;
+          int sp = 0;
+          stack[sp++] = 0;
+          while(sp > 0) {
+            final int node = stack[--sp];
+            final int begin = tree.begin[node], nend = tree.end[node];
+            final int coff = node * dim;
+            final double dist = sqDist(sol_i, center, coff, dim);
+            ++dists;
+            final int weight = nend - begin;
+            // As in BarnesHutTSNE, the point itself contributes to the
+            // normalization (but exerts no force).
+            if(weight == 1 || tree.sqsize[node] / dist < sqtheta) {
+              // Barnes-Hut approximation:
+              final double u = 1. / (1. + dist), zz = weight * u, a = zz * u;
+              for(int k = 0; k < dim; k++) {
+                meta[off + k] += a * (sol_i[k] - center[coff + k]);
+              }
+              z += zz;
+              continue;
+            }
+            final int child = tree.child[node];
+            if(child < 0) { // Leaf with duplicate points
+              for(int p = begin; p < nend; p++) {
+                final int poff = p * dim;
+                final double pz = 1. / (1. + sqDist(sol_i, pos, poff, dim)), a = pz * pz;
+                ++dists;
+                for(int k = 0; k < dim; k++) {
+                  meta[off + k] += a * (sol_i[k] - pos[poff + k]);
+                }
+                z += pz;
+              }
+              continue;
+            }
+            if(sp + 2 > stack.length) {
+              stack = Arrays.copyOf(stack, stack.length << 1);
+            }
+            stack[sp++] = child;
+            stack[sp++] = child + 1;
+          }
+        }
+        zs[start / CHUNK] = z;
+        distances.addAndGet(dists);
+      }
+    });
+    double z = 0.;
+    for(double zi : zs) {
+      z += zi;
+    }
+    final double s = -1. / z; // Scaling factor, repulsive forces are negative
+    // Normalize repulsive forces, then add the attractive forces:
+    ParallelExecutor.run(size, CHUNK, new RangeTask() {
+      @Override
+      public void process(int start, int end) {
+        long dists = 0;
+        for(int i = start, off = start * dim3; i < end; i++, off += dim3) {
+          for(int k = 0; k < dim; k++) {
+            meta[off + k] *= s;
+          }
+          final double[] sol_i = sol[i];
+          for(int offj = pij.iter(i); pij.iterValid(i, offj); offj = pij.iterAdvance(i, offj)) {
+            final double[] sol_j = sol[pij.iterDim(i, offj)];
+            final double a = pij.iterValue(i, offj) / (1. + sqDist(sol_i, sol_j, 0, dim));
+            ++dists;
+            for(int k = 0; k < dim; k++) {
+              meta[off + k] += a * (sol_i[k] - sol_j[k]);
+            }
+          }
+        }
+        distances.addAndGet(dists);
+      }
+    });
+  }
+
+  /**
+   * Squared distance of a vector to a position in a flat array.
+   *
+   * @param v Vector
+   * @param arr Flat array
+   * @param off Offset in flat array
+   * @param dim Dimensionality
+   * @return Squared distance
+   */
+  private static double sqDist(double[] v, double[] arr, int off, int dim) {
+    double sum = 0;
+    for(int k = 0; k < dim; k++) {
+      final double diff = v[k] - arr[off + k];
+      sum += diff * diff;
+    }
+    return sum;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Space partitioning tree for the Barnes-Hut approximation, stored in flat
+   * arrays.
+   *
+   * Every inner node has exactly two non-empty children, stored at positions
+   * child and child+1, hence there are at most 2n-1 nodes. Leaves either
+   * contain a single point, or (almost) duplicate points.
+   *
+   * @author Erich Schubert
+   */
+  protected static class FlatTree {
+    /**
+     * Dimensionality.
+     */
+    final int dim;
+
+    /**
+     * Point indexes, in tree order.
+     */
+    final int[] perm;
+
+    /**
+     * Point coordinates, in tree order.
+     */
+    final double[] pos;
+
+    /**
+     * Range of each node in perm.
+     */
+    final int[] begin, end;
+
+    /**
+     * First child of each node, -1 for leaves.
+     */
+    final int[] child;
+
+    /**
+     * Center of mass of each node.
+     */
+    final double[] center;
+
+    /**
+     * Squared diagonal of the bounding box of each node.
+     */
+    final double[] sqsize;
+
+    /**
+     * Bounding box scratch array.
+     */
+    private final double[] minmax;
+
+    /**
+     * Constructor.
+     *
+     * @param size Number of points
+     * @param dim Dimensionality
+     */
+    FlatTree(int size, int dim) {
+      final int maxnodes = Math.max(1, 2 * size - 1);
+      this.dim = dim;
+      this.perm = new int[size];
+      this.pos = new double[size * dim];
+      this.begin = new int[maxnodes];
+      this.end = new int[maxnodes];
+      this.child = new int[maxnodes];
+      this.center = new double[maxnodes * dim];
+      this.sqsize = new double[maxnodes];
+      this.minmax = new double[dim << 1];
+    }
+
+    /**
+     * Rebuild the tree for new coordinates.
+     *
+     * @param data Point coordinates
+     */
+    void build(double[][] data) {
+      final int size = perm.length;
+      for(int i = 0; i < size; i++) {
+        perm[i] = i;
+      }
+      begin[0] = 0;
+      end[0] = size;
+      // Nodes are created in breadth-first order, so we do not need a queue.
+      for(int node = 0, numnodes = 1; node < numnodes; node++) {
+        final int b = begin[node], e = end[node];
+        // Bounding box and center of mass:
+        for(int d = 0; d < minmax.length;) {
+          minmax[d++] = Double.POSITIVE_INFINITY;
+          minmax[d++] = Double.NEGATIVE_INFINITY;
+        }
+        final int coff = node * dim;
+        Arrays.fill(center, coff, coff + dim, 0.);
+        for(int p = b; p < e; p++) {
+          final double[] row = data[perm[p]];
+          for(int d = 0, d2 = 0; d < dim; d++, d2 += 2) {
+            final double v = row[d];
+            minmax[d2] = v < minmax[d2] ? v : minmax[d2];
+            minmax[d2 + 1] = v > minmax[d2 + 1] ? v : minmax[d2 + 1];
+            center[coff + d] += v;
+          }
+        }
+        double sq = 0., maxw = 0.;
+        int split = -1;
+        for(int d = 0, d2 = 0; d < dim; d++, d2 += 2) {
+          center[coff + d] /= (e - b);
+          final double w = minmax[d2 + 1] - minmax[d2];
+          sq += w * w;
+          if(w > maxw) {
+            maxw = w;
+            split = d;
+          }
+        }
+        sqsize[node] = sq;
+        if(e - b == 1 || sq <= TREE_MIN_RESOLUTION) {
+          child[node] = -1;
+          continue;
+        }
+        // Partition at the middle of the widest side; the minimum and maximum
+        // end up on different sides, except for numerical corner cases.
+        final double mid = .5 * (minmax[split << 1] + minmax[(split << 1) + 1]);
+        int l = b, r = e - 1;
+        while(l <= r) {
+          if(data[perm[l]][split] <= mid) {
+            ++l;
+          }
+          else {
+            final int tmp = perm[l];
+            perm[l] = perm[r];
+            perm[r--] = tmp;
+          }
+        }
+        if(l == b || l == e) {
+          child[node] = -1;
+          continue;
+        }
+        child[node] = numnodes;
+        begin[numnodes] = b;
+        end[numnodes++] = l;
+        begin[numnodes] = l;
+        end[numnodes++] = e;
+      }
+      // Copy the coordinates in tree order, for sequential access in leaves.
+      for(int p = 0, off = 0; p < size; p++, off += dim) {
+        System.arraycopy(data[perm[p]], 0, pos, off, dim);
+      }
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <O> Object type
+   */
+  public static class Parameterizer<O> extends BarnesHutTSNE.Parameterizer<O> {
+    @Override
+    protected ParallelBarnesHutTSNE<O> makeInstance() {
+      return new ParallelBarnesHutTSNE<>(affinity, dim, finalMomentum, learningRate, iterations, random, keep, theta);
+    }
+  }
+}
@@ -34,6 +34,8 @@ import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.math.MathUtil;
 import de.lmu.ifi.dbs.elki.math.MeanVariance;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor.RangeTask;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
@@ -76,6 +78,11 @@ public class PerplexityAffinityMatrixBuilder<O> extends GaussianAffinityMatrixBu
    */
   final static protected int PERPLEXITY_MAXITER = 50;
 
+  /**
+   * Number of rows to calibrate at once, when running in parallel.
+   */
+  protected static final int PARALLEL_CHUNK = 64;
+
   /**
    * Minimum value for pij entries (even when duplicate)
    */
@@ -120,22 +127,31 @@ public class PerplexityAffinityMatrixBuilder<O> extends GaussianAffinityMatrixBu
    * @param initialScale Initial scale
    * @return Affinity matrix pij
    */
-  protected static double[][] computePij(double[][] dist, double perplexity, double initialScale) {
+  protected static double[][] computePij(final double[][] dist, final double perplexity, double initialScale) {
     final int size = dist.length;
     final double logPerp = FastMath.log(perplexity);
-    double[][] pij = new double[size][size];
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Optimizing perplexities", size, LOG) : null;
+    final double[][] pij = new double[size][size];
+    final FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Optimizing perplexities", size, LOG) : null;
     Duration timer = LOG.isStatistics() ? LOG.newDuration(PerplexityAffinityMatrixBuilder.class.getName() + ".runtime.pijmatrix").begin() : null;
-    MeanVariance mv = LOG.isStatistics() ? new MeanVariance() : null;
-    for(int i = 0; i < size; i++) {
-      double beta = computePi(i, dist[i], pij[i], perplexity, logPerp);
-      if(mv != null) {
-        mv.put(beta > 0 ? FastMath.sqrt(.5 / beta) : 0.); // Sigma
+    // Rows are independent, and are calibrated in parallel.
+    final double[] betas = new double[size];
+    ParallelExecutor.run(size, PARALLEL_CHUNK, new RangeTask() {
+      @Override
+      public void process(int start, int end) {
+        for(int i = start; i < end; i++) {
+          betas[i] = computePi(i, dist[i], pij[i], perplexity, logPerp);
+        }
+        if(prog != null) {
+          prog.incrementProcessed(end - start, LOG);
+        }
       }
-      LOG.incrementProcessed(prog);
-    }
+    });
     LOG.ensureCompleted(prog);
-    if(LOG.isStatistics()) { // timer != null, mv != null
+    if(LOG.isStatistics()) { // timer != null
+      MeanVariance mv = new MeanVariance();
+      for(double beta : betas) {
+        mv.put(beta > 0 ? FastMath.sqrt(.5 / beta) : 0.); // Sigma
+      }
       LOG.statistics(timer.end());
       LOG.statistics(new DoubleStatistic(PerplexityAffinityMatrixBuilder.class.getName() + ".sigma.average", mv.getMean()));
       LOG.statistics(new DoubleStatistic(PerplexityAffinityMatrixBuilder.class.getName() + ".sigma.stddev", mv.getSampleStddev()));
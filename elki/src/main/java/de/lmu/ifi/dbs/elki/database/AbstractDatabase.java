@@ -31,6 +31,8 @@ import de.lmu.ifi.dbs.elki.database.datastore.DataStoreListener;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.planner.FirstMatchQueryPlanner;
+import de.lmu.ifi.dbs.elki.database.query.planner.QueryPlanner;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.rknn.RKNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.similarity.SimilarityQuery;
@@ -74,6 +76,11 @@ public abstract class AbstractDatabase extends AbstractHierarchicalResult implem
    */
   protected final Collection<IndexFactory<?, ?>> indexFactories = new ArrayList<>();
 
+  /**
+   * Query planner for the relations.
+   */
+  protected QueryPlanner planner = FirstMatchQueryPlanner.STATIC;
+
   /**
    * Constructor.
    */
@@ -224,6 +231,14 @@ public abstract class AbstractDatabase extends AbstractHierarchicalResult implem
      */
     public static final OptionID INDEX_ID = new OptionID("db.index", "Database indexes to add.");
 
+    /**
+     * Parameter to specify the query planner, to choose among the indexes.
+     * <p>
+     * Key: {@code -db.planner}
+     * </p>
+     */
+    public static final OptionID PLANNER_ID = new OptionID("db.planner", "Query planner, to choose among the indexes or a linear scan.");
+
     @Override
     protected abstract Database makeInstance();
   }
@@ -32,6 +32,8 @@ import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.HashSetModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.query.planner.FirstMatchQueryPlanner;
+import de.lmu.ifi.dbs.elki.database.query.planner.QueryPlanner;
 import de.lmu.ifi.dbs.elki.database.relation.DBIDView;
 import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
 import de.lmu.ifi.dbs.elki.database.relation.ModifiableRelation;
@@ -92,10 +94,23 @@ public class HashmapDatabase extends AbstractDatabase implements UpdatableDataba
    * @param indexFactories Indexes to add
    */
   public HashmapDatabase(DatabaseConnection databaseConnection, Collection<IndexFactory<?, ?>> indexFactories) {
+    this(databaseConnection, indexFactories, FirstMatchQueryPlanner.STATIC);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param databaseConnection Database connection to get the initial data from.
+   * @param indexFactories Indexes to add
+   * @param planner Query planner, to choose among the indexes
+   */
+  public HashmapDatabase(DatabaseConnection databaseConnection, Collection<IndexFactory<?, ?>> indexFactories, QueryPlanner planner) {
     super();
+    this.planner = planner;
     this.databaseConnection = databaseConnection;
     this.ids = DBIDUtil.newHashSet();
     this.idrep = new DBIDView(this.ids);
+    this.idrep.setQueryPlanner(planner);
     this.relations.add(idrep);
     this.addChildResult(idrep);
 
@@ -200,7 +215,8 @@ public class HashmapDatabase extends AbstractDatabase implements UpdatableDataba
   private Relation<?> addNewRelation(SimpleTypeInformation<?> meta) {
     @SuppressWarnings("unchecked")
     SimpleTypeInformation<Object> ometa = (SimpleTypeInformation<Object>) meta;
-    Relation<?> relation = new MaterializedRelation<>(ometa, ids);
+    MaterializedRelation<?> relation = new MaterializedRelation<>(ometa, ids);
+    relation.setQueryPlanner(planner);
     relations.add(relation);
     getHierarchy().add(this, relation);
     // Try to add indexes where appropriate
@@ -311,6 +327,11 @@ public class HashmapDatabase extends AbstractDatabase implements UpdatableDataba
      */
     private Collection<IndexFactory<?, ?>> indexFactories;
 
+    /**
+     * Query planner.
+     */
+    private QueryPlanner planner;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -324,11 +345,15 @@ public class HashmapDatabase extends AbstractDatabase implements UpdatableDataba
       if(config.grab(indexFactoryP)) {
         indexFactories = indexFactoryP.instantiateClasses(config);
       }
+      final ObjectParameter<QueryPlanner> plannerP = new ObjectParameter<>(PLANNER_ID, QueryPlanner.class, FirstMatchQueryPlanner.class);
+      if(config.grab(plannerP)) {
+        planner = plannerP.instantiateClass(config);
+      }
     }
 
     @Override
     protected HashmapDatabase makeInstance() {
-      return new HashmapDatabase(databaseConnection, indexFactories);
+      return new HashmapDatabase(databaseConnection, indexFactories, planner);
     }
   }
 }
@@ -21,8 +21,12 @@
 package de.lmu.ifi.dbs.elki.database;
 
 import java.util.Collection;
+import java.util.List;
 
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.PackedDoubleVector;
 import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
@@ -30,8 +34,12 @@ import de.lmu.ifi.dbs.elki.database.ids.ArrayStaticDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.query.planner.FirstMatchQueryPlanner;
+import de.lmu.ifi.dbs.elki.database.query.planner.QueryPlanner;
+import de.lmu.ifi.dbs.elki.database.relation.AbstractRelation;
 import de.lmu.ifi.dbs.elki.database.relation.DBIDView;
 import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
+import de.lmu.ifi.dbs.elki.database.relation.PackedVectorRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.datasource.DatabaseConnection;
 import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
@@ -50,6 +58,10 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  * dynamic insert, delete and update operations. However, array access is
  * expected to be faster and use less memory.
  *
+ * Columns of {@link PackedDoubleVector} (e.g. when the parser vector type is
+ * set to {@link PackedDoubleVector.Factory}) are stored packed in a
+ * {@link PackedVectorRelation}.
+ *
  * @author Arthur Zimek
  * @author Erich Schubert
  * @since 0.2
@@ -57,6 +69,7 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  * @apiviz.landmark
  * @apiviz.composedOf ArrayStaticDBIDs
  * @apiviz.uses DatabaseConnection
+ * @apiviz.uses PackedVectorRelation
  */
 @Description("Database using an in-memory hashtable and at least providing linear scans.")
 public class StaticArrayDatabase extends AbstractDatabase {
@@ -87,7 +100,19 @@ public class StaticArrayDatabase extends AbstractDatabase {
    * @param indexFactories Indexes to add
    */
   public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<IndexFactory<?, ?>> indexFactories) {
+    this(databaseConnection, indexFactories, FirstMatchQueryPlanner.STATIC);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param databaseConnection Database connection to get the initial data from.
+   * @param indexFactories Indexes to add
+   * @param planner Query planner, to choose among the indexes
+   */
+  public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<IndexFactory<?, ?>> indexFactories, QueryPlanner planner) {
     super();
+    this.planner = planner;
     this.databaseConnection = databaseConnection;
     this.ids = null;
     this.idrep = null;
@@ -135,6 +160,7 @@ public class StaticArrayDatabase extends AbstractDatabase {
       // Replace id representation (it would be nicer if we would not need
       // DBIDView at all)
       this.idrep = new DBIDView(this.ids);
+      this.idrep.setQueryPlanner(planner);
       relations.add(this.idrep);
       getHierarchy().add(this, idrep);
 
@@ -145,11 +171,22 @@ public class StaticArrayDatabase extends AbstractDatabase {
         SimpleTypeInformation<?> meta = bundle.meta(i);
         @SuppressWarnings("unchecked")
         SimpleTypeInformation<Object> ometa = (SimpleTypeInformation<Object>) meta;
-        WritableDataStore<Object> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, ometa.getRestrictionClass());
-        for(it.seek(0); it.valid(); it.advance()) {
-          store.put(it, bundle.data(it.getOffset(), i));
+        AbstractRelation<?> relation;
+        if(isPacked(meta)) {
+          @SuppressWarnings("unchecked")
+          final VectorFieldTypeInformation<PackedDoubleVector> vmeta = (VectorFieldTypeInformation<PackedDoubleVector>) meta;
+          @SuppressWarnings("unchecked")
+          final List<? extends NumberVector> column = (List<? extends NumberVector>) bundle.getColumn(i);
+          relation = new PackedVectorRelation(vmeta, ids, null, column);
+        }
+        else {
+          WritableDataStore<Object> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, ometa.getRestrictionClass());
+          for(it.seek(0); it.valid(); it.advance()) {
+            store.put(it, bundle.data(it.getOffset(), i));
+          }
+          relation = new MaterializedRelation<>(ometa, ids, null, store);
         }
-        Relation<?> relation = new MaterializedRelation<>(ometa, ids, null, store);
+        relation.setQueryPlanner(planner);
         relations.add(relation);
         getHierarchy().add(this, relation);
 
@@ -176,6 +213,21 @@ public class StaticArrayDatabase extends AbstractDatabase {
     }
   }
 
+  /**
+   * Test whether a column is to be stored in a {@link PackedVectorRelation}.
+   *
+   * @param meta Column type
+   * @return {@code true} for fixed-dimensional packed vectors
+   */
+  private static boolean isPacked(SimpleTypeInformation<?> meta) {
+    if(!(meta instanceof VectorFieldTypeInformation)) {
+      return false;
+    }
+    final VectorFieldTypeInformation<?> vmeta = (VectorFieldTypeInformation<?>) meta;
+    // Ragged data (rows of different length) cannot be packed.
+    return vmeta.getFactory() instanceof PackedDoubleVector.Factory && vmeta.mindim() == vmeta.maxdim();
+  }
+
   @Override
   protected Logging getLogger() {
     return LOG;
@@ -199,6 +251,11 @@ public class StaticArrayDatabase extends AbstractDatabase {
      */
     private Collection<IndexFactory<?, ?>> indexFactories;
 
+    /**
+     * Query planner.
+     */
+    private QueryPlanner planner;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -212,11 +269,15 @@ public class StaticArrayDatabase extends AbstractDatabase {
       if(config.grab(indexFactoryP)) {
         indexFactories = indexFactoryP.instantiateClasses(config);
       }
+      final ObjectParameter<QueryPlanner> plannerP = new ObjectParameter<>(PLANNER_ID, QueryPlanner.class, FirstMatchQueryPlanner.class);
+      if(config.grab(plannerP)) {
+        planner = plannerP.instantiateClass(config);
+      }
     }
 
     @Override
     protected StaticArrayDatabase makeInstance() {
-      return new StaticArrayDatabase(databaseConnection, indexFactories);
+      return new StaticArrayDatabase(databaseConnection, indexFactories, planner);
     }
   }
 }
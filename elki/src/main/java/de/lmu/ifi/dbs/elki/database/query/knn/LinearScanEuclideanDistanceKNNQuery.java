@@ -22,9 +22,14 @@ package de.lmu.ifi.dbs.elki.database.query.knn;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
@@ -35,6 +40,8 @@ import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 
 /**
  * Instance of this query for a particular database.
@@ -48,6 +55,7 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanD
  * @apiviz.uses PrimitiveDistanceQuery
  * @apiviz.uses EuclideanDistanceFunction
  * @apiviz.uses SquaredEuclideanDistanceFunction
+ * @apiviz.has BlockScan
  */
 public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends LinearScanPrimitiveDistanceKNNQuery<O> implements LinearScanQuery {
   /**
@@ -55,6 +63,27 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
    */
   private static final SquaredEuclideanDistanceFunction SQUARED = SquaredEuclideanDistanceFunction.STATIC;
 
+  /**
+   * Number of queries processed together.
+   */
+  private static final int QUERY_BLOCK = 32;
+
+  /**
+   * Number of data points processed together.
+   */
+  private static final int DATA_BLOCK = 256;
+
+  /**
+   * Minimum number of distance computations to use multiple threads.
+   */
+  private static final long PARALLEL_THRESHOLD = 1L << 20;
+
+  /**
+   * Relative tolerance for the norm expansion, which suffers from
+   * cancellation.
+   */
+  private static final double TOLERANCE = 1e-10;
+
   /**
    * Constructor.
    *
@@ -117,13 +146,66 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
   /**
    * Perform a linear scan batch kNN for primitive distance functions.
    *
+   * The data and the queries are packed into contiguous arrays, and processed
+   * in blocks that fit into the CPU caches. Candidates are filtered using the
+   * expansion ||x-y||^2 = ||x||^2 + ||y||^2 - 2 x*y, and the exact distance is
+   * only computed for candidates that may enter the heap, so the result is
+   * identical to a naive scan. Blocks of queries are processed in parallel.
+   *
+   * Note: this temporarily needs a copy of the data set in memory.
+   *
    * @param objs Objects list
    * @param heaps Heaps array
    */
   @Override
   protected void linearScanBatchKNN(List<O> objs, List<KNNHeap> heaps) {
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size(), numq = objs.size();
+    final int dim = numq > 0 ? objs.get(0).getDimensionality() : 0;
+    final double[] data = pack(ids, dim), queries = pack(objs, dim);
+    if(data == null || queries == null) {
+      linearScanBatchKNNNaive(objs, heaps);
+      return;
+    }
+    final double[] datanorms = norms(data, dim), querynorms = norms(queries, dim);
+    final int numblocks = (numq + QUERY_BLOCK - 1) / QUERY_BLOCK;
+    final ParallelCore core = ParallelCore.getCore();
+    if(numblocks < 2 || (long) numq * size < PARALLEL_THRESHOLD || core.getParallelism() < 2) {
+      new BlockScan(ids, data, datanorms, queries, querynorms, dim, heaps, null).run();
+      return;
+    }
+    core.connect();
+    try {
+      final AtomicInteger next = new AtomicInteger();
+      final int numtasks = Math.min(numblocks, core.getParallelism());
+      List<Future<?>> futures = new ArrayList<>(numtasks);
+      for(int i = 0; i < numtasks; i++) {
+        futures.add(core.submit(new BlockScan(ids, data, datanorms, queries, querynorms, dim, heaps, next)));
+      }
+      for(Future<?> f : futures) {
+        f.get();
+      }
+    }
+    catch(ExecutionException e) {
+      throw new RuntimeException("Batch kNN query failed.", e);
+    }
+    catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AbortException("Batch kNN query interrupted.", e);
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Naive batch kNN, used for vectors of varying dimensionality.
+   *
+   * @param objs Objects list
+   * @param heaps Heaps array
+   */
+  private void linearScanBatchKNNNaive(List<O> objs, List<KNNHeap> heaps) {
     final int size = objs.size();
-    // Linear scan style KNN.
     for(DBIDIter iter = relation.getDBIDs().iter(); iter.valid(); iter.advance()) {
       O candidate = relation.get(iter);
       for(int index = 0; index < size; index++) {
@@ -135,4 +217,207 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
       }
     }
   }
+
+  /**
+   * Pack the database vectors into a single array.
+   *
+   * @param ids Object IDs
+   * @param dim Dimensionality
+   * @return Packed array, or {@code null} if not applicable.
+   */
+  private double[] pack(ArrayDBIDs ids, int dim) {
+    if((long) ids.size() * dim > Integer.MAX_VALUE - 8) {
+      return null;
+    }
+    double[] packed = new double[ids.size() * dim];
+    int off = 0;
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance(), off += dim) {
+      if(!copy(relation.get(iter), packed, off, dim)) {
+        return null;
+      }
+    }
+    return packed;
+  }
+
+  /**
+   * Pack the query vectors into a single array.
+   *
+   * @param objs Query objects
+   * @param dim Dimensionality
+   * @return Packed array, or {@code null} if not applicable.
+   */
+  private static double[] pack(List<? extends NumberVector> objs, int dim) {
+    if((long) objs.size() * dim > Integer.MAX_VALUE - 8) {
+      return null;
+    }
+    double[] packed = new double[objs.size() * dim];
+    int off = 0;
+    for(NumberVector v : objs) {
+      if(!copy(v, packed, off, dim)) {
+        return null;
+      }
+      off += dim;
+    }
+    return packed;
+  }
+
+  /**
+   * Copy a vector into a packed array.
+   *
+   * @param v Vector
+   * @param packed Output array
+   * @param off Offset
+   * @param dim Expected dimensionality
+   * @return {@code false} if the dimensionality does not match.
+   */
+  private static boolean copy(NumberVector v, double[] packed, int off, int dim) {
+    if(v.getDimensionality() != dim) {
+      return false;
+    }
+    for(int d = 0; d < dim; d++) {
+      packed[off + d] = v.doubleValue(d);
+    }
+    return true;
+  }
+
+  /**
+   * Compute the squared norms of packed vectors.
+   *
+   * @param packed Packed vectors
+   * @param dim Dimensionality
+   * @return Squared norms
+   */
+  private static double[] norms(double[] packed, int dim) {
+    final int num = dim > 0 ? packed.length / dim : 0;
+    double[] norms = new double[num];
+    for(int i = 0, off = 0; i < num; i++, off += dim) {
+      double agg = 0.;
+      for(int d = 0; d < dim; d++) {
+        final double v = packed[off + d];
+        agg += v * v;
+      }
+      norms[i] = agg;
+    }
+    return norms;
+  }
+
+  /**
+   * Worker processing blocks of queries against all data.
+   *
+   * @author Erich Schubert
+   */
+  private static class BlockScan implements Runnable, Callable<Void> {
+    /**
+     * Data IDs.
+     */
+    private final ArrayDBIDs ids;
+
+    /**
+     * Packed data and queries.
+     */
+    private final double[] data, queries;
+
+    /**
+     * Squared norms.
+     */
+    private final double[] datanorms, querynorms;
+
+    /**
+     * Dimensionality.
+     */
+    private final int dim;
+
+    /**
+     * Output heaps.
+     */
+    private final List<KNNHeap> heaps;
+
+    /**
+     * Shared counter of the next query block, or {@code null} to process all.
+     */
+    private final AtomicInteger next;
+
+    /**
+     * Constructor.
+     *
+     * @param ids Data IDs
+     * @param data Packed data
+     * @param datanorms Data norms
+     * @param queries Packed queries
+     * @param querynorms Query norms
+     * @param dim Dimensionality
+     * @param heaps Output heaps
+     * @param next Shared block counter, may be {@code null}
+     */
+    BlockScan(ArrayDBIDs ids, double[] data, double[] datanorms, double[] queries, double[] querynorms, int dim, List<KNNHeap> heaps, AtomicInteger next) {
+      this.ids = ids;
+      this.data = data;
+      this.datanorms = datanorms;
+      this.queries = queries;
+      this.querynorms = querynorms;
+      this.dim = dim;
+      this.heaps = heaps;
+      this.next = next;
+    }
+
+    @Override
+    public Void call() {
+      run();
+      return null;
+    }
+
+    @Override
+    public void run() {
+      final int numq = querynorms.length;
+      final DBIDArrayIter iter = ids.iter();
+      final KNNHeap[] bheaps = new KNNHeap[QUERY_BLOCK];
+      final double[] kdists = new double[QUERY_BLOCK];
+      for(int qstart = nextBlock(0); qstart < numq; qstart = nextBlock(qstart + QUERY_BLOCK)) {
+        final int qend = Math.min(qstart + QUERY_BLOCK, numq);
+        for(int q = qstart; q < qend; q++) {
+          bheaps[q - qstart] = heaps.get(q);
+          kdists[q - qstart] = bheaps[q - qstart].getKNNDistance();
+        }
+        for(int dstart = 0; dstart < datanorms.length; dstart += DATA_BLOCK) {
+          final int dend = Math.min(dstart + DATA_BLOCK, datanorms.length);
+          for(int q = qstart; q < qend; q++) {
+            final int qoff = q * dim;
+            final double qnorm = querynorms[q];
+            final KNNHeap heap = bheaps[q - qstart];
+            double kdist = kdists[q - qstart];
+            for(int j = dstart, doff = dstart * dim; j < dend; j++, doff += dim) {
+              double dot = 0.;
+              for(int d = 0; d < dim; d++) {
+                dot += queries[qoff + d] * data[doff + d];
+              }
+              final double sum = qnorm + datanorms[j];
+              if(sum - 2 * dot > kdist + sum * TOLERANCE) {
+                continue;
+              }
+              // Exact computation, in the same order as the distance function.
+              double agg = 0.;
+              for(int d = 0; d < dim; d++) {
+                final double delta = queries[qoff + d] - data[doff + d];
+                agg += delta * delta;
+              }
+              if(agg <= kdist) {
+                kdist = heap.insert(agg, iter.seek(j));
+              }
+            }
+            kdists[q - qstart] = kdist;
+          }
+        }
+      }
+    }
+
+    /**
+     * Get the next query block to process.
+     *
+     * @param candidate Next block when processing sequentially
+     * @return Start of next block
+     */
+    private int nextBlock(int candidate) {
+      return next == null ? candidate : next.getAndIncrement() * QUERY_BLOCK;
+    }
+  }
 }
\ No newline at end of file
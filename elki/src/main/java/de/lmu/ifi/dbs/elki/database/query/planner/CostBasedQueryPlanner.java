@@ -0,0 +1,553 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.query.planner;
+
+import java.util.Arrays;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.type.FieldTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.index.Index;
+import de.lmu.ifi.dbs.elki.index.KNNIndex;
+import de.lmu.ifi.dbs.elki.index.RangeIndex;
+import de.lmu.ifi.dbs.elki.index.distancematrix.PrecomputedDistanceMatrix;
+import de.lmu.ifi.dbs.elki.index.graph.HNSWIndex;
+import de.lmu.ifi.dbs.elki.index.lsh.MultiProbeLSHIndex;
+import de.lmu.ifi.dbs.elki.index.preprocessed.knn.AbstractMaterializeKNNPreprocessor;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.MetricalIndexTree;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.covertree.AbstractCoverTree;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialIndexTree;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.kd.MinimalisticMemoryKDTree;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.kd.SmallMemoryKDTree;
+import de.lmu.ifi.dbs.elki.index.vafile.PartialVAFile;
+import de.lmu.ifi.dbs.elki.index.vafile.VAFile;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.math.MathUtil;
+import de.lmu.ifi.dbs.elki.math.statistics.intrinsicdimensionality.HillEstimator;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.QuickSelect;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import net.jafama.FastMath;
+
+/**
+ * Cost-based query planner.
+ *
+ * The cost of each candidate index is estimated in (approximate) distance
+ * computations per query, from the relation size, the dimensionality, and the
+ * value of k (or the query radius) given as hint. Indexes are then tried in the
+ * order of increasing cost; if a linear scan is estimated to be cheaper than
+ * every remaining index, the linear scan is used instead (unless
+ * {@link DatabaseQuery#HINT_OPTIMIZED_ONLY} was given).
+ *
+ * For partitioning indexes, we use the classic rule of thumb that the number
+ * of partitions to inspect grows with {@code 2^d}, so such indexes do not pay
+ * off once {@code 2^d} approaches the data set size. Because this depends on
+ * the intrinsic dimensionality of the data rather than on the number of
+ * attributes, the intrinsic dimensionality is estimated from a small sample
+ * when the number of attributes alone would rule out an index (or is not
+ * known, as for metric indexes on non-vector data). The same sample gives the
+ * selectivity of range queries. If there is no such evidence, we trust that an
+ * index accelerates queries. Approximate indexes (HNSW graphs, LSH) estimate
+ * the number of objects they visit from their own parameters.
+ *
+ * Reference:
+ * <p>
+ * R. Weber, H.-J. Schek, S. Blott<br />
+ * A Quantitative Analysis and Performance Study for Similarity-Search Methods
+ * in High-Dimensional Spaces<br />
+ * Proc. 24th Int. Conf. on Very Large Data Bases (VLDB '98)
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf DataStatistics
+ */
+public class CostBasedQueryPlanner implements QueryPlanner {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(CostBasedQueryPlanner.class);
+
+  /**
+   * Static instance.
+   */
+  public static final CostBasedQueryPlanner STATIC = new CostBasedQueryPlanner();
+
+  /**
+   * Result size assumed when no k is given, and for range queries without a
+   * radius hint.
+   */
+  private static final int DEFAULT_RESULT_SIZE = 10;
+
+  /**
+   * Relative overhead of tree traversal, per distance computation.
+   */
+  private static final double TREE_OVERHEAD = 1.2;
+
+  /**
+   * Metric trees prune less than coordinate-based trees.
+   */
+  private static final double METRIC_OVERHEAD = 2.;
+
+  /**
+   * Cost of scanning an approximation, relative to a distance computation.
+   */
+  private static final double APPROXIMATION_COST = .2;
+
+  /**
+   * Cost of a lookup in a precomputed table, relative to a distance
+   * computation.
+   */
+  private static final double LOOKUP_COST = .1;
+
+  /**
+   * Relative cost assumed for unknown index types; we trust that an index
+   * accelerates queries if we do not know better.
+   */
+  private static final double UNKNOWN_INDEX_COST = .5;
+
+  /**
+   * Number of objects to sample for estimating data statistics.
+   */
+  private static final int SAMPLE_SIZE = 100;
+
+  /**
+   * Number of sample objects to use as queries.
+   */
+  private static final int SAMPLE_QUERIES = 10;
+
+  /**
+   * Number of neighbors for estimating the intrinsic dimensionality.
+   */
+  private static final int SAMPLE_NEIGHBORS = 20;
+
+  /**
+   * Random seed for sampling, so that the plans are reproducible.
+   */
+  private static final int SAMPLE_SEED = 0;
+
+  @Override
+  public <O> KNNQuery<O> getKNNQuery(Relation<O> relation, List<KNNIndex<O>> indexes, DistanceQuery<O> distanceQuery, Object... hints) {
+    if(indexes.isEmpty()) {
+      return null;
+    }
+    final DataStatistics stats = new DataStatistics(relation, distanceQuery);
+    final int k = resultSize(hints);
+    final double[] costs = new double[indexes.size()];
+    for(int i = 0; i < costs.length; i++) {
+      costs[i] = estimateKNNCost(indexes.get(i), stats, k);
+    }
+    final double scan = optimizedOnly(hints) ? Double.POSITIVE_INFINITY : stats.size;
+    for(int i : rank(costs)) {
+      final KNNIndex<O> idx = indexes.get(i);
+      if(costs[i] >= scan) {
+        logDecision("kNN", null, costs[i], scan);
+        return null;
+      }
+      KNNQuery<O> q = idx.getKNNQuery(distanceQuery, hints);
+      if(LOG.isDebuggingFinest()) {
+        LOG.debugFinest((q != null ? "Using" : "Not using") + " index for kNN query: " + idx + " (estimated cost " + costs[i] + ")");
+      }
+      if(q != null) {
+        logDecision("kNN", idx, costs[i], scan);
+        return q;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public <O> RangeQuery<O> getRangeQuery(Relation<O> relation, List<RangeIndex<O>> indexes, DistanceQuery<O> distanceQuery, Object... hints) {
+    if(indexes.isEmpty()) {
+      return null;
+    }
+    final DataStatistics stats = new DataStatistics(relation, distanceQuery);
+    final double radius = radius(hints);
+    final double[] costs = new double[indexes.size()];
+    for(int i = 0; i < costs.length; i++) {
+      costs[i] = estimateRangeCost(indexes.get(i), stats, radius);
+    }
+    final double scan = optimizedOnly(hints) ? Double.POSITIVE_INFINITY : stats.size;
+    for(int i : rank(costs)) {
+      final RangeIndex<O> idx = indexes.get(i);
+      if(costs[i] >= scan) {
+        logDecision("range", null, costs[i], scan);
+        return null;
+      }
+      RangeQuery<O> q = idx.getRangeQuery(distanceQuery, hints);
+      if(LOG.isDebuggingFinest()) {
+        LOG.debugFinest((q != null ? "Using" : "Not using") + " index for range query: " + idx + " (estimated cost " + costs[i] + ")");
+      }
+      if(q != null) {
+        logDecision("range", idx, costs[i], scan);
+        return q;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Estimate the cost of a kNN query, in distance computations.
+   *
+   * @param idx Index
+   * @param stats Data statistics
+   * @param k Number of neighbors
+   * @return Estimated cost
+   */
+  protected double estimateKNNCost(Index idx, DataStatistics stats, int k) {
+    final int size = stats.size;
+    if(idx instanceof AbstractMaterializeKNNPreprocessor) {
+      return k * LOOKUP_COST;
+    }
+    if(idx instanceof PrecomputedDistanceMatrix) {
+      return size * LOOKUP_COST;
+    }
+    if(idx instanceof SpatialIndexTree || idx instanceof SmallMemoryKDTree || idx instanceof MinimalisticMemoryKDTree) {
+      return partitioningCost(stats, k, TREE_OVERHEAD);
+    }
+    if(idx instanceof MetricalIndexTree || idx instanceof AbstractCoverTree) {
+      return partitioningCost(stats, k, METRIC_OVERHEAD);
+    }
+    if(idx instanceof VAFile || idx instanceof PartialVAFile) {
+      return size * APPROXIMATION_COST + k;
+    }
+    if(idx instanceof HNSWIndex) {
+      return ((HNSWIndex<?>) idx).estimateKNNCost(k);
+    }
+    if(idx instanceof MultiProbeLSHIndex.Instance) {
+      // Candidates are refined, and at least k objects are needed.
+      return Math.max(((MultiProbeLSHIndex<?>.Instance) idx).estimateCandidates(), k);
+    }
+    return size * UNKNOWN_INDEX_COST;
+  }
+
+  /**
+   * Estimate the cost of a range query, in distance computations.
+   *
+   * The expected result size is estimated from the distance distribution of a
+   * sample, and the query is then costed like a kNN query of that size.
+   *
+   * @param idx Index
+   * @param stats Data statistics
+   * @param radius Query radius, {@code NaN} if unknown
+   * @return Estimated cost
+   */
+  protected double estimateRangeCost(Index idx, DataStatistics stats, double radius) {
+    if(radius != radius) {
+      return estimateKNNCost(idx, stats, DEFAULT_RESULT_SIZE);
+    }
+    // Query point, plus the expected fraction of the remaining objects.
+    final double expected = 1 + stats.selectivity(radius) * (stats.size - 1);
+    return estimateKNNCost(idx, stats, (int) Math.min(FastMath.ceil(expected), stats.size));
+  }
+
+  /**
+   * Cost model for partitioning indexes: a logarithmic descent plus the
+   * result, times the number of neighboring partitions, which grows with
+   * {@code 2^d}.
+   *
+   * The number of attributes is an upper bound for the dimensionality that
+   * matters; only when it would rule out the index (or is unknown), we
+   * estimate the intrinsic dimensionality from a sample.
+   *
+   * @param stats Data statistics
+   * @param k Result size
+   * @param overhead Relative overhead per distance computation
+   * @return Estimated number of distance computations
+   */
+  private static double partitioningCost(DataStatistics stats, int k, double overhead) {
+    final int size = stats.size, dim = stats.dim;
+    final double descent = FastMath.log(size + 1) / MathUtil.LOG2 + k;
+    final double cost = dim > 0 ? descent * FastMath.pow(2., dim) * overhead : Double.POSITIVE_INFINITY;
+    if(cost < size) {
+      return cost;
+    }
+    final double idim = stats.intrinsicDimensionality();
+    if(idim > 0 && !(idim >= dim && dim > 0)) {
+      return descent * FastMath.pow(2., idim) * overhead;
+    }
+    // Without evidence against the index, trust it.
+    return dim > 0 ? cost : size * UNKNOWN_INDEX_COST;
+  }
+
+  /**
+   * Get the dimensionality of a relation.
+   *
+   * @param relation Relation
+   * @return Dimensionality, or -1 if unknown.
+   */
+  private static int dimensionality(Relation<?> relation) {
+    TypeInformation type = relation.getDataTypeInformation();
+    return (type instanceof FieldTypeInformation) ? ((FieldTypeInformation) type).getDimensionality() : -1;
+  }
+
+  /**
+   * Get the result size from the hints.
+   *
+   * @param hints Optimizer hints
+   * @return Result size
+   */
+  private static int resultSize(Object[] hints) {
+    for(Object hint : hints) {
+      if(hint instanceof Integer) {
+        return (Integer) hint;
+      }
+    }
+    return DEFAULT_RESULT_SIZE;
+  }
+
+  /**
+   * Get the query radius from the hints.
+   *
+   * @param hints Optimizer hints
+   * @return Query radius, or {@code NaN}
+   */
+  private static double radius(Object[] hints) {
+    for(Object hint : hints) {
+      if(hint instanceof Double) {
+        return (Double) hint;
+      }
+    }
+    return Double.NaN;
+  }
+
+  /**
+   * Test for {@link DatabaseQuery#HINT_OPTIMIZED_ONLY}.
+   *
+   * @param hints Optimizer hints
+   * @return {@code true} if linear scans are not allowed
+   */
+  private static boolean optimizedOnly(Object[] hints) {
+    for(Object hint : hints) {
+      if(hint == DatabaseQuery.HINT_OPTIMIZED_ONLY) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Rank candidates by increasing cost. Ties keep their original order.
+   *
+   * @param costs Costs
+   * @return Candidate indexes, by increasing cost
+   */
+  private static int[] rank(double[] costs) {
+    int[] order = new int[costs.length];
+    for(int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    // Insertion sort: we rarely have more than a few indexes.
+    for(int i = 1; i < order.length; i++) {
+      final int v = order[i];
+      int j = i;
+      for(; j > 0 && costs[order[j - 1]] > costs[v]; j--) {
+        order[j] = order[j - 1];
+      }
+      order[j] = v;
+    }
+    return order;
+  }
+
+  /**
+   * Log the planner decision.
+   *
+   * @param type Query type
+   * @param idx Chosen index, {@code null} for a linear scan
+   * @param cost Estimated index cost
+   * @param scan Estimated linear scan cost
+   */
+  private static void logDecision(String type, Index idx, double cost, double scan) {
+    if(LOG.isDebugging()) {
+      LOG.debug(idx != null ? //
+          "Using index for " + type + " query: " + idx + " (estimated cost " + cost + ", linear scan " + scan + ")" : //
+          "Linear scan preferred for " + type + " query (estimated cost " + scan + ", best index " + cost + ")");
+    }
+  }
+
+  /**
+   * Statistics of the data relation, used for cost estimation.
+   *
+   * The distance sample is only computed when needed.
+   *
+   * @author Erich Schubert
+   */
+  protected static class DataStatistics {
+    /**
+     * Relation size.
+     */
+    protected final int size;
+
+    /**
+     * Number of attributes, or -1 if unknown.
+     */
+    protected final int dim;
+
+    /**
+     * Relation to sample from.
+     */
+    private final Relation<?> relation;
+
+    /**
+     * Distance query.
+     */
+    private final DistanceQuery<?> distanceQuery;
+
+    /**
+     * Sorted distances from each sample query to the other sample objects.
+     */
+    private double[][] sample;
+
+    /**
+     * Estimated intrinsic dimensionality, {@code NaN} if not yet estimated,
+     * infinite if the estimation failed.
+     */
+    private double idim = Double.NaN;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Relation
+     * @param distanceQuery Distance query
+     */
+    protected DataStatistics(Relation<?> relation, DistanceQuery<?> distanceQuery) {
+      this.relation = relation;
+      this.distanceQuery = distanceQuery;
+      this.size = relation.size();
+      this.dim = dimensionality(relation);
+    }
+
+    /**
+     * Estimate the intrinsic dimensionality, as the median of the Hill
+     * estimates of the sample queries.
+     *
+     * @return Intrinsic dimensionality, {@code NaN} if it cannot be estimated
+     */
+    protected double intrinsicDimensionality() {
+      if(idim != idim) {
+        idim = estimateIntrinsicDimensionality();
+        if(LOG.isDebuggingFine()) {
+          LOG.debugFine("Estimated intrinsic dimensionality: " + idim);
+        }
+      }
+      return idim < Double.POSITIVE_INFINITY ? idim : Double.NaN;
+    }
+
+    /**
+     * Estimate the intrinsic dimensionality from the sample.
+     *
+     * @return Intrinsic dimensionality, infinite if it cannot be estimated
+     */
+    private double estimateIntrinsicDimensionality() {
+      final double[][] dists = sample();
+      double[] ests = new double[dists.length];
+      int n = 0;
+      for(double[] row : dists) {
+        try {
+          final double est = HillEstimator.STATIC.estimate(row, Math.min(SAMPLE_NEIGHBORS, row.length));
+          if(est > 0 && est < Double.POSITIVE_INFINITY) {
+            ests[n++] = est;
+          }
+        }
+        catch(ArithmeticException e) {
+          // Too many duplicates; skip.
+        }
+      }
+      return n > 0 ? QuickSelect.median(ests, 0, n) : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Estimate the fraction of objects within the given radius.
+     *
+     * @param radius Query radius
+     * @return Fraction of objects within the radius
+     */
+    protected double selectivity(double radius) {
+      final double[][] dists = sample();
+      if(dists.length == 0) {
+        return 0.;
+      }
+      double sum = 0.;
+      for(double[] row : dists) {
+        int c = 0;
+        while(c < row.length && row[c] <= radius) {
+          ++c;
+        }
+        sum += c / (double) row.length;
+      }
+      return sum / dists.length;
+    }
+
+    /**
+     * Compute the distances within a small random sample.
+     *
+     * @return Sorted distances for each sample query
+     */
+    private double[][] sample() {
+      if(sample != null) {
+        return sample;
+      }
+      if(size < 2) {
+        return sample = new double[0][];
+      }
+      final DBIDs ids = relation.getDBIDs();
+      ArrayDBIDs objs = DBIDUtil.ensureArray(size > SAMPLE_SIZE ? DBIDUtil.randomSample(ids, SAMPLE_SIZE, SAMPLE_SEED) : ids);
+      final int m = objs.size(), q = Math.min(SAMPLE_QUERIES, m);
+      sample = new double[q][m - 1];
+      DBIDArrayIter a = objs.iter(), b = objs.iter();
+      for(int i = 0; i < q; i++) {
+        a.seek(i);
+        final double[] row = sample[i];
+        int j = 0;
+        for(b.seek(0); b.valid(); b.advance()) {
+          if(b.getOffset() != i) {
+            row[j++] = distanceQuery.distance(a, b);
+          }
+        }
+        Arrays.sort(row);
+      }
+      return sample;
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractParameterizer {
+    @Override
+    protected CostBasedQueryPlanner makeInstance() {
+      return STATIC;
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.query.planner;
+
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.index.KNNIndex;
+import de.lmu.ifi.dbs.elki.index.RangeIndex;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+
+/**
+ * Trivial query planner, that uses the first index that returns a query.
+ *
+ * This does not estimate any costs, and will never prefer a linear scan over
+ * an index.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class FirstMatchQueryPlanner implements QueryPlanner {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(FirstMatchQueryPlanner.class);
+
+  /**
+   * Static instance.
+   */
+  public static final FirstMatchQueryPlanner STATIC = new FirstMatchQueryPlanner();
+
+  @Override
+  public <O> KNNQuery<O> getKNNQuery(Relation<O> relation, List<KNNIndex<O>> indexes, DistanceQuery<O> distanceQuery, Object... hints) {
+    for(KNNIndex<O> idx : indexes) {
+      KNNQuery<O> q = idx.getKNNQuery(distanceQuery, hints);
+      if(LOG.isDebuggingFinest()) {
+        LOG.debugFinest((q != null ? "Using" : "Not using") + " index for kNN query: " + idx);
+      }
+      if(q != null) {
+        return q;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public <O> RangeQuery<O> getRangeQuery(Relation<O> relation, List<RangeIndex<O>> indexes, DistanceQuery<O> distanceQuery, Object... hints) {
+    for(RangeIndex<O> idx : indexes) {
+      RangeQuery<O> q = idx.getRangeQuery(distanceQuery, hints);
+      if(LOG.isDebuggingFinest()) {
+        LOG.debugFinest((q != null ? "Using" : "Not using") + " index for range query: " + idx);
+      }
+      if(q != null) {
+        return q;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractParameterizer {
+    @Override
+    protected FirstMatchQueryPlanner makeInstance() {
+      return STATIC;
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.query.planner;
+
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.index.KNNIndex;
+import de.lmu.ifi.dbs.elki.index.RangeIndex;
+
+/**
+ * Query planner, to choose among the indexes that could answer a query.
+ *
+ * A planner may also decide that a linear scan is preferable, by returning
+ * {@code null}; the relation will then fall back to a linear scan (unless
+ * {@link de.lmu.ifi.dbs.elki.database.query.DatabaseQuery#HINT_OPTIMIZED_ONLY}
+ * was given).
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses KNNIndex
+ * @apiviz.uses RangeIndex
+ */
+public interface QueryPlanner {
+  /**
+   * Choose a kNN query.
+   *
+   * @param relation Data relation
+   * @param indexes Candidate indexes, in order of preference
+   * @param distanceQuery Distance query
+   * @param hints Optimizer hints
+   * @param <O> Object type
+   * @return kNN query, or {@code null} to use a linear scan
+   */
+  <O> KNNQuery<O> getKNNQuery(Relation<O> relation, List<KNNIndex<O>> indexes, DistanceQuery<O> distanceQuery, Object... hints);
+
+  /**
+   * Choose a range query.
+   *
+   * @param relation Data relation
+   * @param indexes Candidate indexes, in order of preference
+   * @param distanceQuery Distance query
+   * @param hints Optimizer hints
+   * @param <O> Object type
+   * @return Range query, or {@code null} to use a linear scan
+   */
+  <O> RangeQuery<O> getRangeQuery(Relation<O> relation, List<RangeIndex<O>> indexes, DistanceQuery<O> distanceQuery, Object... hints);
+}
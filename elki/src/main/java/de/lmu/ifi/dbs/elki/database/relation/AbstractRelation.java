@@ -20,10 +20,15 @@
  */
 package de.lmu.ifi.dbs.elki.database.relation;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import de.lmu.ifi.dbs.elki.database.QueryUtil;
 import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.planner.FirstMatchQueryPlanner;
+import de.lmu.ifi.dbs.elki.database.query.planner.QueryPlanner;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.rknn.LinearScanRKNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.rknn.RKNNQuery;
@@ -48,12 +53,24 @@ import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 /**
  * Abstract base class for relations.
  *
+ * kNN and range queries are planned by a {@link QueryPlanner}, which chooses
+ * among the indexes attached to this relation. By default, the first index
+ * that can answer the query is used; databases set the planner configured by
+ * the user.
+ *
  * @author Erich Schubert
  * @since 0.7.0
  *
+ * @apiviz.uses QueryPlanner
+ *
  * @param <O> Data type
  */
 public abstract class AbstractRelation<O> extends AbstractHierarchicalResult implements Relation<O> {
+  /**
+   * Query planner, to choose among kNN and range indexes.
+   */
+  private QueryPlanner planner = FirstMatchQueryPlanner.STATIC;
+
   /**
    * Constructor.
    */
@@ -61,6 +78,24 @@ public abstract class AbstractRelation<O> extends AbstractHierarchicalResult imp
     super();
   }
 
+  /**
+   * Set the query planner used to choose among the available indexes.
+   *
+   * @param planner Query planner
+   */
+  public void setQueryPlanner(QueryPlanner planner) {
+    this.planner = planner;
+  }
+
+  /**
+   * Get the query planner used to choose among the available indexes.
+   *
+   * @return Query planner
+   */
+  public QueryPlanner getQueryPlanner() {
+    return planner;
+  }
+
   @Override
   public DistanceQuery<O> getDistanceQuery(DistanceFunction<? super O> distanceFunction, Object... hints) {
     if(distanceFunction == null) {
@@ -126,20 +161,18 @@ public abstract class AbstractRelation<O> extends AbstractHierarchicalResult imp
     if(distanceQuery == null) {
       throw new AbortException("kNN query requested for 'null' distance!");
     }
+    List<KNNIndex<O>> indexes = new ArrayList<>();
     for(Iter<Result> it = getHierarchy().iterChildrenReverse(this); it.valid(); it.advance()) {
-      if(!(it.get() instanceof KNNIndex)) {
-        continue;
-      }
-      @SuppressWarnings("unchecked")
-      final KNNIndex<O> knnIndex = (KNNIndex<O>) it.get();
-      KNNQuery<O> q = knnIndex.getKNNQuery(distanceQuery, hints);
-      if(getLogger().isDebuggingFinest()) {
-        getLogger().debugFinest((q != null ? "Using" : "Not using") + " index for kNN query: " + knnIndex);
-      }
-      if(q != null) {
-        return q;
+      if(it.get() instanceof KNNIndex) {
+        @SuppressWarnings("unchecked")
+        final KNNIndex<O> knnIndex = (KNNIndex<O>) it.get();
+        indexes.add(knnIndex);
       }
     }
+    KNNQuery<O> q = planner.getKNNQuery(this, indexes, distanceQuery, hints);
+    if(q != null) {
+      return q;
+    }
 
     // Default
     for(Object hint : hints) {
@@ -167,20 +200,18 @@ public abstract class AbstractRelation<O> extends AbstractHierarchicalResult imp
     if(distanceQuery == null) {
       throw new AbortException("Range query requested for 'null' distance!");
     }
+    List<RangeIndex<O>> indexes = new ArrayList<>();
     for(Iter<Result> it = getHierarchy().iterChildrenReverse(this); it.valid(); it.advance()) {
-      if(!(it.get() instanceof RangeIndex)) {
-        continue;
-      }
-      @SuppressWarnings("unchecked")
-      final RangeIndex<O> rangeIndex = (RangeIndex<O>) it.get();
-      RangeQuery<O> q = rangeIndex.getRangeQuery(distanceQuery, hints);
-      if(getLogger().isDebuggingFinest()) {
-        getLogger().debugFinest((q != null ? "Using" : "Not using") + " index for range query: " + rangeIndex);
-      }
-      if(q != null) {
-        return q;
+      if(it.get() instanceof RangeIndex) {
+        @SuppressWarnings("unchecked")
+        final RangeIndex<O> rangeIndex = (RangeIndex<O>) it.get();
+        indexes.add(rangeIndex);
       }
     }
+    RangeQuery<O> q = planner.getRangeQuery(this, indexes, distanceQuery, hints);
+    if(q != null) {
+      return q;
+    }
 
     // Default
     for(Object hint : hints) {
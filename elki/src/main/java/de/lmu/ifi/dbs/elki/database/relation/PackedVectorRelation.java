@@ -0,0 +1,238 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.relation;
+
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.PackedDoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.IntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.StaticDBIDs;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Static relation of dense vectors, stored packed in large {@code double[]}
+ * arrays instead of one object per vector.
+ *
+ * Objects returned by {@link #get} are flyweight {@link PackedDoubleVector}
+ * views onto the packed storage. Compared to a {@link MaterializedRelation} of
+ * {@code DoubleVector}s, this saves the object and array headers of every
+ * vector, and keeps the data contiguous in memory. The storage is split into
+ * chunks of at most {@link #MAX_CHUNK} values, so the number of values is not
+ * limited by the maximum array size.
+ *
+ * This relation cannot be modified.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has PackedDoubleVector
+ */
+public class PackedVectorRelation extends AbstractRelation<PackedDoubleVector> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(PackedVectorRelation.class);
+
+  /**
+   * Maximum number of values per chunk (1 GB of doubles).
+   */
+  public static final int MAX_CHUNK = 1 << 27;
+
+  /**
+   * Type information.
+   */
+  private final VectorFieldTypeInformation<PackedDoubleVector> type;
+
+  /**
+   * The DBIDs this is defined for.
+   */
+  private final StaticDBIDs ids;
+
+  /**
+   * Offset map, if the DBIDs are a range.
+   */
+  private final DBIDRange range;
+
+  /**
+   * Offset map, if the DBIDs are not a range.
+   */
+  private final IntegerDataStore offsets;
+
+  /**
+   * Dimensionality.
+   */
+  private final int dim;
+
+  /**
+   * Number of vectors per chunk.
+   */
+  private final int perchunk;
+
+  /**
+   * Packed data.
+   */
+  private final double[][] chunks;
+
+  /**
+   * The relation name.
+   */
+  private String name;
+
+  /**
+   * The relation name (short version)
+   */
+  private String shortname = "relation";
+
+  /**
+   * Constructor.
+   *
+   * @param type Type information
+   * @param ids IDs
+   * @param name Name
+   * @param data Vectors, in the same order as the IDs
+   */
+  public PackedVectorRelation(VectorFieldTypeInformation<PackedDoubleVector> type, ArrayDBIDs ids, String name, List<? extends NumberVector> data) {
+    super();
+    if(data.size() != ids.size()) {
+      throw new AbortException("Number of vectors does not match the number of objects: " + data.size() + " != " + ids.size());
+    }
+    this.type = type;
+    this.ids = DBIDUtil.makeUnmodifiable(ids);
+    this.name = name;
+    this.dim = type.getDimensionality();
+    final int size = ids.size();
+    this.perchunk = dim > 0 ? Math.max(1, MAX_CHUNK / dim) : Math.max(1, size);
+    final int numchunks = (size + perchunk - 1) / perchunk;
+    this.chunks = new double[numchunks][];
+    for(int c = 0, start = 0; c < numchunks; c++, start += perchunk) {
+      final int num = Math.min(perchunk, size - start);
+      final double[] chunk = chunks[c] = new double[num * dim];
+      for(int i = 0, off = 0; i < num; i++, off += dim) {
+        final NumberVector vec = data.get(start + i);
+        if(vec.getDimensionality() != dim) {
+          throw new AbortException("Vector of dimensionality " + vec.getDimensionality() + " in relation of dimensionality " + dim);
+        }
+        for(int d = 0; d < dim; d++) {
+          chunk[off + d] = vec.doubleValue(d);
+        }
+      }
+    }
+    if(ids instanceof DBIDRange) {
+      this.range = (DBIDRange) ids;
+      this.offsets = null;
+    }
+    else {
+      this.range = null;
+      WritableIntegerDataStore map = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_DB, -1);
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        map.putInt(it, it.getOffset());
+      }
+      this.offsets = map;
+    }
+  }
+
+  /**
+   * Get the position of an object in the packed storage.
+   *
+   * @param id Object
+   * @return Position
+   */
+  private int position(DBIDRef id) {
+    return range != null ? range.getOffset(id) : offsets.intValue(id);
+  }
+
+  @Override
+  public PackedDoubleVector get(DBIDRef id) {
+    final int pos = position(id);
+    final int c = pos / perchunk;
+    return new PackedDoubleVector(chunks[c], (pos - c * perchunk) * dim, dim);
+  }
+
+  /**
+   * Get a single value, without creating a vector object.
+   *
+   * @param id Object
+   * @param d Dimension
+   * @return Value
+   */
+  public double doubleValue(DBIDRef id, int d) {
+    assert (d < dim) : "Non-existant dimension accessed.";
+    final int pos = position(id);
+    final int c = pos / perchunk;
+    return chunks[c][(pos - c * perchunk) * dim + d];
+  }
+
+  /**
+   * Get the dimensionality of the vectors.
+   *
+   * @return Dimensionality
+   */
+  public int getDimensionality() {
+    return dim;
+  }
+
+  @Override
+  public StaticDBIDs getDBIDs() {
+    return ids;
+  }
+
+  @Override
+  public DBIDIter iterDBIDs() {
+    return ids.iter();
+  }
+
+  @Override
+  public int size() {
+    return ids.size();
+  }
+
+  @Override
+  public VectorFieldTypeInformation<PackedDoubleVector> getDataTypeInformation() {
+    return type;
+  }
+
+  @Override
+  public String getLongName() {
+    return (name != null) ? name : type.toString();
+  }
+
+  @Override
+  public String getShortName() {
+    return shortname;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+}
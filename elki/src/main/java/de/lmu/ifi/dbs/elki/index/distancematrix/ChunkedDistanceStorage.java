@@ -0,0 +1,190 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.distancematrix;
+
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Storage of a linearized distance matrix, addressed with long offsets.
+ *
+ * The values are kept in chunks of at most 2^27 entries, so that the storage
+ * is not limited by the maximum Java array size. Writes to different offsets
+ * may happen concurrently.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public abstract class ChunkedDistanceStorage {
+  /**
+   * Number of entries per chunk, as bit shift.
+   */
+  protected static final int CHUNK_BITS = 27;
+
+  /**
+   * Mask for the offset within a chunk.
+   */
+  protected static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
+  /**
+   * Number of entries.
+   */
+  protected final long size;
+
+  /**
+   * Constructor.
+   *
+   * @param size Number of entries
+   */
+  protected ChunkedDistanceStorage(long size) {
+    this.size = size;
+  }
+
+  /**
+   * Allocate in-memory storage.
+   *
+   * @param size Number of entries
+   * @param single Store single precision values only
+   * @return Storage
+   */
+  public static ChunkedDistanceStorage allocate(long size, boolean single) {
+    return single ? new FloatStorage(size) : new DoubleStorage(size);
+  }
+
+  /**
+   * Number of chunks needed.
+   *
+   * @param size Number of entries
+   * @return Number of chunks
+   */
+  protected static int numChunks(long size) {
+    final long n = (size + CHUNK_MASK) >>> CHUNK_BITS;
+    if(n > Integer.MAX_VALUE) {
+      throw new AbortException("Distance matrix is too large: " + size + " entries.");
+    }
+    return (int) n;
+  }
+
+  /**
+   * Size of a chunk.
+   *
+   * @param size Number of entries
+   * @param i Chunk number
+   * @return Number of entries in the chunk
+   */
+  protected static int chunkSize(long size, int i) {
+    return (int) Math.min(CHUNK_MASK + 1, size - ((long) i << CHUNK_BITS));
+  }
+
+  /**
+   * Get a value.
+   *
+   * @param pos Offset
+   * @return Value
+   */
+  public abstract double get(long pos);
+
+  /**
+   * Set a value.
+   *
+   * @param pos Offset
+   * @param val Value
+   */
+  public abstract void set(long pos, double val);
+
+  /**
+   * Get the number of entries.
+   *
+   * @return Number of entries
+   */
+  public long size() {
+    return size;
+  }
+
+  /**
+   * Chunked in-memory storage with double precision.
+   *
+   * @author Erich Schubert
+   */
+  private static class DoubleStorage extends ChunkedDistanceStorage {
+    /**
+     * Data chunks.
+     */
+    private final double[][] chunks;
+
+    /**
+     * Constructor.
+     *
+     * @param size Number of entries
+     */
+    DoubleStorage(long size) {
+      super(size);
+      chunks = new double[numChunks(size)][];
+      for(int i = 0; i < chunks.length; i++) {
+        chunks[i] = new double[chunkSize(size, i)];
+      }
+    }
+
+    @Override
+    public double get(long pos) {
+      return chunks[(int) (pos >>> CHUNK_BITS)][(int) (pos & CHUNK_MASK)];
+    }
+
+    @Override
+    public void set(long pos, double val) {
+      chunks[(int) (pos >>> CHUNK_BITS)][(int) (pos & CHUNK_MASK)] = val;
+    }
+  }
+
+  /**
+   * Chunked in-memory storage with single precision.
+   *
+   * @author Erich Schubert
+   */
+  private static class FloatStorage extends ChunkedDistanceStorage {
+    /**
+     * Data chunks.
+     */
+    private final float[][] chunks;
+
+    /**
+     * Constructor.
+     *
+     * @param size Number of entries
+     */
+    FloatStorage(long size) {
+      super(size);
+      chunks = new float[numChunks(size)][];
+      for(int i = 0; i < chunks.length; i++) {
+        chunks[i] = new float[chunkSize(size, i)];
+      }
+    }
+
+    @Override
+    public double get(long pos) {
+      return chunks[(int) (pos >>> CHUNK_BITS)][(int) (pos & CHUNK_MASK)];
+    }
+
+    @Override
+    public void set(long pos, double val) {
+      chunks[(int) (pos >>> CHUNK_BITS)][(int) (pos & CHUNK_MASK)] = (float) val;
+    }
+  }
+}
@@ -20,6 +20,11 @@
  */
 package de.lmu.ifi.dbs.elki.index.distancematrix;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -48,10 +53,15 @@ import de.lmu.ifi.dbs.elki.index.RangeIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.Executor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
@@ -59,14 +69,19 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  *
  * This class uses a linear memory layout (not a ragged array), and assumes
  * symmetry as well as strictness. This way, it only stores the upper triangle
- * matrix with double precision. It has to store (n-1) * (n-2) distance values
- * in memory, requiring 8 * (n-1) * (n-2) bytes. Since Java has a size limit of
- * arrays of 31 bits (signed integer), we can store at most 2^16 objects
- * (precisely, 65536 objects) in a single array, which needs about 16 GB of RAM.
+ * matrix. It has to store n * (n-1) / 2 distance values, requiring 4 * n *
+ * (n-1) bytes with double precision, or half of that with single precision.
+ * Because Java arrays are limited to 2^31 entries, the triangle is split into
+ * chunks, and addressed with long offsets. Alternatively, the matrix can be
+ * stored in a memory-mapped file; then the operating system decides which
+ * parts are kept in main memory.
+ *
+ * The matrix is computed in parallel.
  *
  * @author Erich Schubert
  * @since 0.7.0
  *
+ * @apiviz.composedOf ChunkedDistanceStorage
  * @apiviz.has PrecomputedDistanceQuery
  * @apiviz.has PrecomputedKNNQuery
  * @apiviz.has PrecomputedRangeQuery
@@ -89,10 +104,20 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
    */
   protected DistanceQuery<O> distanceQuery;
 
+  /**
+   * Store distances with single precision only.
+   */
+  private boolean single;
+
+  /**
+   * File to memory-map the matrix to, may be {@code null}.
+   */
+  private File file;
+
   /**
    * Distance matrix.
    */
-  private double[] matrix = null;
+  private ChunkedDistanceStorage matrix = null;
 
   /**
    * DBID range.
@@ -111,8 +136,22 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
    * @param distanceFunction Distance function
    */
   public PrecomputedDistanceMatrix(Relation<O> relation, DistanceFunction<? super O> distanceFunction) {
+    this(relation, distanceFunction, false, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param distanceFunction Distance function
+   * @param single Store distances with single precision only
+   * @param file File to memory-map the matrix to, may be {@code null}
+   */
+  public PrecomputedDistanceMatrix(Relation<O> relation, DistanceFunction<? super O> distanceFunction, boolean single, File file) {
     super(relation);
     this.distanceFunction = distanceFunction;
+    this.single = single;
+    this.file = file;
 
     if(!distanceFunction.isSymmetric()) {
       throw new AbortException("Distance matrixes currently only support symmetric distance functions (Patches welcome).");
@@ -127,28 +166,24 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
     }
     ids = (DBIDRange) rids;
     size = ids.size();
-    if(size > 65536) {
-      throw new AbortException("Distance matrixes currently have a limit of 65536 objects (~16 GB). After this, the array size exceeds the Java integer range, and a different data structure needs to be used.");
-    }
 
     distanceQuery = distanceFunction.instantiate(relation);
 
-    final int msize = triangleSize(size);
-    matrix = new double[msize];
-    DBIDArrayIter ix = ids.iter(), iy = ids.iter();
-
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Precomputing distance matrix", msize, LOG) : null;
-    int pos = 0;
-    for(ix.seek(0); ix.valid(); ix.advance()) {
-      // y < x -- must match {@link #getOffset}!
-      for(iy.seek(0); iy.getOffset() < ix.getOffset(); iy.advance()) {
-        matrix[pos] = distanceQuery.distance(ix, iy);
-        pos++;
+    final long msize = triangleSize(size);
+    if(file != null) {
+      try {
+        matrix = new MappedStorage(file, msize, single);
       }
-      if(prog != null) {
-        prog.setProcessed(prog.getProcessed() + ix.getOffset(), LOG);
+      catch(IOException e) {
+        throw new AbortException("Could not map the distance matrix to file " + file, e);
       }
     }
+    else {
+      matrix = ChunkedDistanceStorage.allocate(msize, single);
+    }
+
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Precomputing distance matrix", size, LOG) : null;
+    ParallelExecutor.run(ids, ParallelExecutor.Scheduling.DYNAMIC, prog, LOG, new RowProcessor());
     LOG.ensureCompleted(prog);
   }
 
@@ -158,7 +193,7 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
    * @param x Offset
    * @return Size of complete triangle
    */
-  protected static int triangleSize(int x) {
+  protected static long triangleSize(long x) {
     return (x * (x - 1)) >>> 1;
   }
 
@@ -169,14 +204,15 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
    * @param y Y parameter
    * @return Array offset
    */
-  private int getOffset(int x, int y) {
+  private static long getOffset(int x, int y) {
     return (y < x) ? (triangleSize(x) + y) : (triangleSize(y) + x);
   }
 
   @Override
   public void logStatistics() {
     if(matrix != null) {
-      LOG.statistics(new LongStatistic(this.getClass().getName() + ".matrix-size", matrix.length));
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".matrix-size", matrix.size()));
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".matrix-bytes", matrix.size() * (single ? 4 : 8)));
     }
   }
 
@@ -223,7 +259,7 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
     @Override
     public double distance(DBIDRef id1, DBIDRef id2) {
       final int x = ids.getOffset(id1), y = ids.getOffset(id2);
-      return (x != y) ? matrix[getOffset(x, y)] : 0.;
+      return (x != y) ? matrix.get(getOffset(x, y)) : 0.;
     }
 
     @Override
@@ -273,9 +309,9 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
 
       final int x = ids.getOffset(id);
       // Case y < x: triangleSize(x) + y
-      int pos = triangleSize(x);
+      long pos = triangleSize(x);
       for(int y = 0; y < x; y++) {
-        final double dist = matrix[pos];
+        final double dist = matrix.get(pos);
         if(dist <= range) {
           result.add(dist, it.seek(y));
         }
@@ -285,7 +321,7 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
       // Case y > x: triangleSize(y) + x
       pos = triangleSize(x + 1) + x;
       for(int y = x + 1; y < size; y++) {
-        final double dist = matrix[pos];
+        final double dist = matrix.get(pos);
         if(dist <= range) {
           result.add(dist, it.seek(y));
         }
@@ -318,9 +354,9 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
       double max = Double.POSITIVE_INFINITY;
       final int x = ids.getOffset(id);
       // Case y < x: triangleSize(x) + y
-      int pos = triangleSize(x);
+      long pos = triangleSize(x);
       for(int y = 0; y < x; y++) {
-        final double dist = matrix[pos];
+        final double dist = matrix.get(pos);
         if(dist <= max) {
           max = heap.insert(dist, it.seek(y));
         }
@@ -330,7 +366,7 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
       // Case y > x: triangleSize(y) + x
       pos = triangleSize(x + 1) + x;
       for(int y = x + 1; y < size; y++) {
-        final double dist = matrix[pos];
+        final double dist = matrix.get(pos);
         if(dist <= max) {
           max = heap.insert(dist, it.seek(y));
         }
@@ -355,6 +391,104 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
     }
   }
 
+  /**
+   * Processor computing one row of the matrix, i.e. the distances to all
+   * objects with a smaller offset.
+   *
+   * @author Erich Schubert
+   */
+  private class RowProcessor implements Processor {
+    @Override
+    public Instance instantiate(Executor executor) {
+      return new Instance();
+    }
+
+    @Override
+    public void cleanup(Processor.Instance inst) {
+      // Nothing to do.
+    }
+
+    /**
+     * Instance for a single thread.
+     *
+     * @author Erich Schubert
+     */
+    private class Instance implements Processor.Instance {
+      /**
+       * Iterator over the second object.
+       */
+      private DBIDArrayIter iy = ids.iter();
+
+      @Override
+      public void map(DBIDRef id) {
+        final int x = ids.getOffset(id);
+        // y < x -- must match {@link #getOffset}!
+        long pos = triangleSize(x);
+        for(iy.seek(0); iy.getOffset() < x; iy.advance(), pos++) {
+          matrix.set(pos, distanceQuery.distance(id, iy));
+        }
+      }
+    }
+  }
+
+  /**
+   * Storage in a memory-mapped file, mapped in chunks of at most 1 GB.
+   *
+   * @author Erich Schubert
+   */
+  private static class MappedStorage extends ChunkedDistanceStorage {
+    /**
+     * Mapped chunks.
+     */
+    private final MappedByteBuffer[] chunks;
+
+    /**
+     * Store single precision values.
+     */
+    private final boolean single;
+
+    /**
+     * Constructor.
+     *
+     * @param file File to map
+     * @param size Number of entries
+     * @param single Store single precision values
+     * @throws IOException on mapping errors
+     */
+    MappedStorage(File file, long size, boolean single) throws IOException {
+      super(size);
+      this.single = single;
+      final int recsize = single ? 4 : 8;
+      chunks = new MappedByteBuffer[numChunks(size)];
+      // The mappings remain valid after the file has been closed.
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+        raf.setLength(size * recsize);
+        for(int i = 0; i < chunks.length; i++) {
+          chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, ((long) i << CHUNK_BITS) * recsize, (long) chunkSize(size, i) * recsize);
+        }
+      }
+    }
+
+    @Override
+    public double get(long pos) {
+      final MappedByteBuffer chunk = chunks[(int) (pos >>> CHUNK_BITS)];
+      final int off = (int) (pos & CHUNK_MASK);
+      return single ? chunk.getFloat(off << 2) : chunk.getDouble(off << 3);
+    }
+
+    @Override
+    public void set(long pos, double val) {
+      final MappedByteBuffer chunk = chunks[(int) (pos >>> CHUNK_BITS)];
+      final int off = (int) (pos & CHUNK_MASK);
+      if(single) {
+        chunk.putFloat(off << 2, (float) val);
+      }
+      else {
+        chunk.putDouble(off << 3, val);
+      }
+    }
+  }
+
   /**
    * Factory for the index.
    *
@@ -370,19 +504,42 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
      */
     final protected DistanceFunction<? super O> distanceFunction;
 
+    /**
+     * Store distances with single precision only.
+     */
+    final protected boolean single;
+
+    /**
+     * File to memory-map the matrix to, may be {@code null}.
+     */
+    final protected File file;
+
     /**
      * Constructor.
      *
      * @param distanceFunction Distance function
      */
     public Factory(DistanceFunction<? super O> distanceFunction) {
+      this(distanceFunction, false, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param distanceFunction Distance function
+     * @param single Store distances with single precision only
+     * @param file File to memory-map the matrix to, may be {@code null}
+     */
+    public Factory(DistanceFunction<? super O> distanceFunction, boolean single, File file) {
       super();
       this.distanceFunction = distanceFunction;
+      this.single = single;
+      this.file = file;
     }
 
     @Override
     public PrecomputedDistanceMatrix<O> instantiate(Relation<O> relation) {
-      return new PrecomputedDistanceMatrix<>(relation, distanceFunction);
+      return new PrecomputedDistanceMatrix<>(relation, distanceFunction, single, file);
     }
 
     @Override
@@ -405,11 +562,31 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
        */
       public static final OptionID DISTANCE_ID = new OptionID("matrix.distance", "Distance function for the precomputed distance matrix.");
 
+      /**
+       * Flag to store distances with single precision.
+       */
+      public static final OptionID FLOAT_ID = new OptionID("matrix.float", "Store distances with single precision only, to halve memory usage.");
+
+      /**
+       * Option to memory-map the matrix to a file.
+       */
+      public static final OptionID FILE_ID = new OptionID("matrix.file", "File to memory-map the distance matrix to, instead of keeping it in main memory. Existing contents will be overwritten.");
+
       /**
        * Nested distance function.
        */
       protected DistanceFunction<? super O> distanceFunction;
 
+      /**
+       * Store distances with single precision only.
+       */
+      protected boolean single = false;
+
+      /**
+       * File to memory-map the matrix to.
+       */
+      protected File file = null;
+
       @Override
       protected void makeOptions(Parameterization config) {
         super.makeOptions(config);
@@ -417,11 +594,20 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
         if(config.grab(distanceP)) {
           distanceFunction = distanceP.instantiateClass(config);
         }
+        Flag floatF = new Flag(FLOAT_ID);
+        if(config.grab(floatF)) {
+          single = floatF.isTrue();
+        }
+        FileParameter fileP = new FileParameter(FILE_ID, FileParameter.FileType.OUTPUT_FILE);
+        fileP.setOptional(true);
+        if(config.grab(fileP)) {
+          file = fileP.getValue();
+        }
       }
 
       @Override
       protected Factory<O> makeInstance() {
-        return new Factory<>(distanceFunction);
+        return new Factory<>(distanceFunction, single, file);
       }
     }
   }
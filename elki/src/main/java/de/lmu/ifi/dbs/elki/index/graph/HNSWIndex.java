@@ -0,0 +1,804 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.graph;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.AbstractDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndex;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.KNNIndex;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor.RangeTask;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMaxHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Hierarchical navigable small world graph (HNSW) for approximate nearest
+ * neighbor search.
+ *
+ * Every object is assigned a random level with exponentially decaying
+ * probability, and is linked to its approximate nearest neighbors on each
+ * layer up to this level. Queries descend greedily from the top layer, and
+ * perform a beam search of width {@code ef} on the bottom layer.
+ *
+ * Objects are inserted in parallel; the adjacency lists are guarded by one
+ * lock per object while the index is built. All adjacency lists are stored in
+ * primitive integer arrays, using array offsets instead of DBIDs: the bottom
+ * layer uses a single array with a fixed stride, the upper layers one array
+ * per object. The first value of each list is the number of neighbors.
+ *
+ * Reference:
+ * <p>
+ * Y. A. Malkov, D. A. Yashunin<br />
+ * Efficient and robust approximate nearest neighbor search using Hierarchical
+ * Navigable Small World graphs<br />
+ * IEEE Transactions on Pattern Analysis and Machine Intelligence
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has HNSWKNNQuery
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "Y. A. Malkov, D. A. Yashunin", //
+    title = "Efficient and robust approximate nearest neighbor search using Hierarchical Navigable Small World graphs", //
+    booktitle = "IEEE Transactions on Pattern Analysis and Machine Intelligence", //
+    url = "http://arxiv.org/abs/1603.09320")
+public class HNSWIndex<O> extends AbstractIndex<O> implements KNNIndex<O> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(HNSWIndex.class);
+
+  /**
+   * Number of objects to insert at once.
+   */
+  private static final int CHUNK_SIZE = 64;
+
+  /**
+   * Distance function.
+   */
+  protected DistanceFunction<? super O> distanceFunction;
+
+  /**
+   * Thread-safe distance query used for construction and search.
+   */
+  private DistanceQuery<O> dq;
+
+  /**
+   * Maximum number of neighbors on the upper layers.
+   */
+  protected int m;
+
+  /**
+   * Maximum number of neighbors on the bottom layer.
+   */
+  protected int m0;
+
+  /**
+   * Beam width used during construction.
+   */
+  protected int efConstruction;
+
+  /**
+   * Default beam width of queries.
+   */
+  protected int ef;
+
+  /**
+   * Random generator for the levels.
+   */
+  protected RandomFactory rnd;
+
+  /**
+   * Indexed objects, in array order.
+   */
+  private ArrayDBIDs ids;
+
+  /**
+   * Level of each object.
+   */
+  private int[] levels;
+
+  /**
+   * Adjacency lists of the bottom layer, with stride m0 + 1.
+   */
+  private int[] links0;
+
+  /**
+   * Adjacency lists of the upper layers, with stride m + 1; null for objects
+   * on the bottom layer only.
+   */
+  private int[][] links;
+
+  /**
+   * Per-object locks, only used during construction.
+   */
+  private Object[] locks;
+
+  /**
+   * Lock for the entry point.
+   */
+  private final Object entryLock = new Object();
+
+  /**
+   * Entry point (array offset).
+   */
+  private int entry = -1;
+
+  /**
+   * Top layer.
+   */
+  private int maxLevel = -1;
+
+  /**
+   * Per-thread search state.
+   */
+  private final ThreadLocal<Searcher> searchers = new ThreadLocal<Searcher>() {
+    @Override
+    protected Searcher initialValue() {
+      return new Searcher();
+    }
+  };
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param distanceFunction Distance function
+   * @param m Maximum number of neighbors on the upper layers
+   * @param efConstruction Beam width used during construction
+   * @param ef Default beam width of queries
+   * @param rnd Random generator
+   */
+  public HNSWIndex(Relation<O> relation, DistanceFunction<? super O> distanceFunction, int m, int efConstruction, int ef, RandomFactory rnd) {
+    super(relation);
+    this.distanceFunction = distanceFunction;
+    this.dq = distanceFunction.instantiate(relation);
+    this.m = m;
+    this.m0 = m << 1;
+    this.efConstruction = efConstruction;
+    this.ef = ef;
+    this.rnd = rnd;
+  }
+
+  @Override
+  public void initialize() {
+    ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    levels = new int[size];
+    links0 = new int[size * (m0 + 1)];
+    links = new int[size][];
+    locks = new Object[size];
+    // Draw the levels in advance, to be independent of the thread scheduling.
+    final Random random = rnd.getSingleThreadedRandom();
+    final double ml = 1. / Math.log(m);
+    for(int i = 0; i < size; i++) {
+      final int level = (int) (-Math.log(1. - random.nextDouble()) * ml);
+      levels[i] = level;
+      links[i] = level > 0 ? new int[level * (m + 1)] : null;
+      locks[i] = new Object();
+    }
+    if(size == 0) {
+      return;
+    }
+    entry = 0;
+    maxLevel = levels[0];
+    ParallelExecutor.run(size - 1, CHUNK_SIZE, new RangeTask() {
+      @Override
+      public void process(int start, int end) {
+        Searcher s = searchers.get();
+        for(int i = start + 1; i <= end; i++) {
+          s.insert(i);
+        }
+      }
+    });
+    locks = null;
+    if(LOG.isStatistics()) {
+      long edges = 0;
+      for(int i = 0; i < size; i++) {
+        edges += links0[i * (m0 + 1)];
+        for(int l = 0; l < levels[i]; l++) {
+          edges += links[i][l * (m + 1)];
+        }
+      }
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".layers", maxLevel + 1));
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".edges", edges));
+    }
+  }
+
+  @Override
+  public void logStatistics() {
+    // Nothing to log.
+  }
+
+  /**
+   * Estimate the number of distance computations of a kNN query.
+   *
+   * The greedy descent visits about one object per upper layer, and the beam
+   * search on the bottom layer expands about {@code max(ef, k)} objects.
+   *
+   * @param k Number of neighbors
+   * @return Estimated number of distance computations
+   */
+  public double estimateKNNCost(int k) {
+    return (maxLevel > 0 ? maxLevel * m : 0) + Math.max(ef, k) * (double) m0;
+  }
+
+  /**
+   * Per-thread search state.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private class Searcher {
+    /**
+     * Iterators for computing distances.
+     */
+    DBIDArrayIter a = ids.iter(), b = ids.iter();
+
+    /**
+     * Visited markers.
+     */
+    int[] visited = new int[ids.size()];
+
+    /**
+     * Current visited marker.
+     */
+    int tag = 0;
+
+    /**
+     * Candidates to expand.
+     */
+    DoubleIntegerMinHeap candidates = new DoubleIntegerMinHeap();
+
+    /**
+     * Best results found.
+     */
+    DoubleIntegerMaxHeap results = new DoubleIntegerMaxHeap();
+
+    /**
+     * Heap for pruning adjacency lists.
+     */
+    DoubleIntegerMaxHeap pruning = new DoubleIntegerMaxHeap();
+
+    /**
+     * Buffer for adjacency lists.
+     */
+    int[] buf = new int[m0 + 1];
+
+    /**
+     * Buffers for neighbor selection.
+     */
+    int[] selIds = new int[Math.max(efConstruction, m0) + 1];
+
+    /**
+     * Buffers for neighbor selection.
+     */
+    double[] selDists = new double[selIds.length];
+
+    /**
+     * Insert an object into the graph.
+     *
+     * @param q Array offset of the object
+     */
+    void insert(int q) {
+      final O obj = relation.get(a.seek(q));
+      final int level = levels[q];
+      int ep, top;
+      synchronized(entryLock) {
+        ep = entry;
+        top = maxLevel;
+      }
+      double epd = dq.distance(obj, a.seek(ep));
+      for(int lc = top; lc > level; lc--) {
+        ep = greedy(obj, ep, epd, lc, true);
+        epd = lastDistance;
+      }
+      results.clear();
+      results.add(epd, ep);
+      for(int lc = Math.min(level, top); lc >= 0; lc--) {
+        nextTag();
+        visited[q] = tag; // Never link to itself.
+        candidates.clear();
+        for(DoubleIntegerHeap.UnsortedIter it = results.unsortedIter(); it.valid(); it.advance()) {
+          candidates.add(it.getKey(), it.getValue());
+          visited[it.getValue()] = tag;
+        }
+        searchLayer(obj, efConstruction, lc, true);
+        // Sort the results ascending by distance:
+        int num = results.size();
+        for(int i = num - 1; i >= 0; i--) {
+          selDists[i] = results.peekKey();
+          selIds[i] = results.peekValue();
+          results.poll();
+        }
+        // Keep all results as entry points for the next layer:
+        for(int i = 0; i < num; i++) {
+          results.add(selDists[i], selIds[i]);
+        }
+        final int sel = selectNeighbors(num, m);
+        final int[] arr = lc == 0 ? links0 : links[q];
+        final int base = lc == 0 ? q * (m0 + 1) : (lc - 1) * (m + 1);
+        synchronized(locks[q]) {
+          arr[base] = sel;
+          System.arraycopy(selIds, 0, arr, base + 1, sel);
+        }
+        // Copy, because connect reuses the selection buffers:
+        final int[] neighbors = Arrays.copyOf(selIds, sel);
+        final double[] dists = Arrays.copyOf(selDists, sel);
+        for(int i = 0; i < sel; i++) {
+          connect(neighbors[i], q, dists[i], lc);
+        }
+      }
+      if(level > top) {
+        synchronized(entryLock) {
+          if(level > maxLevel) {
+            maxLevel = level;
+            entry = q;
+          }
+        }
+      }
+    }
+
+    /**
+     * Add a link from e to q, pruning the neighbors of e if necessary.
+     *
+     * @param e Object to modify
+     * @param q New neighbor
+     * @param dist Distance of e and q
+     * @param lc Layer
+     */
+    private void connect(int e, int q, double dist, int lc) {
+      final int[] arr = lc == 0 ? links0 : links[e];
+      final int base = lc == 0 ? e * (m0 + 1) : (lc - 1) * (m + 1);
+      final int cap = lc == 0 ? m0 : m;
+      synchronized(locks[e]) {
+        final int cnt = arr[base];
+        if(cnt < cap) {
+          arr[base + 1 + cnt] = q;
+          arr[base] = cnt + 1;
+          return;
+        }
+        // Prune the existing neighbors and the new candidate:
+        a.seek(e);
+        for(int i = 0; i < cnt; i++) {
+          final int c = arr[base + 1 + i];
+          pruning.add(dq.distance(a, b.seek(c)), c);
+        }
+        pruning.add(dist, q);
+        final int num = pruning.size();
+        for(int i = num - 1; i >= 0; i--) {
+          selDists[i] = pruning.peekKey();
+          selIds[i] = pruning.peekValue();
+          pruning.poll();
+        }
+        final int sel = selectNeighbors(num, cap);
+        arr[base] = sel;
+        System.arraycopy(selIds, 0, arr, base + 1, sel);
+      }
+    }
+
+    /**
+     * Select neighbors with the diversity heuristic: a candidate is kept
+     * only if it is closer to the base object than to every candidate already
+     * kept. The candidates must be sorted ascending in the selection buffers.
+     *
+     * @param num Number of candidates
+     * @param max Maximum number of neighbors
+     * @return Number of neighbors, stored at the beginning of the buffers
+     */
+    private int selectNeighbors(int num, int max) {
+      int sel = 0;
+      for(int i = 0; i < num && sel < max; i++) {
+        final int c = selIds[i];
+        final double cdist = selDists[i];
+        a.seek(c);
+        boolean good = true;
+        for(int j = 0; j < sel; j++) {
+          if(dq.distance(a, b.seek(selIds[j])) < cdist) {
+            good = false;
+            break;
+          }
+        }
+        if(good) {
+          selIds[sel] = c;
+          selDists[sel] = cdist;
+          ++sel;
+        }
+      }
+      return sel;
+    }
+
+    /**
+     * Distance of the object returned by the last greedy search.
+     */
+    double lastDistance;
+
+    /**
+     * Greedy search for the closest object on a single layer.
+     *
+     * @param obj Query object
+     * @param ep Entry point
+     * @param epd Distance to the entry point
+     * @param lc Layer
+     * @param concurrent Flag to lock the adjacency lists
+     * @return Closest object found; the distance is in {@link #lastDistance}
+     */
+    int greedy(O obj, int ep, double epd, int lc, boolean concurrent) {
+      boolean changed = true;
+      while(changed) {
+        changed = false;
+        final int cnt = copyLinks(ep, lc, concurrent);
+        for(int i = 0; i < cnt; i++) {
+          final int c = buf[i];
+          final double d = dq.distance(obj, a.seek(c));
+          if(d < epd) {
+            epd = d;
+            ep = c;
+            changed = true;
+          }
+        }
+      }
+      lastDistance = epd;
+      return ep;
+    }
+
+    /**
+     * Beam search on a single layer. The entry points must be in the
+     * candidates and results heaps, and be marked as visited.
+     *
+     * @param obj Query object
+     * @param ef Beam width
+     * @param lc Layer
+     * @param concurrent Flag to lock the adjacency lists
+     */
+    void searchLayer(O obj, int ef, int lc, boolean concurrent) {
+      while(!candidates.isEmpty()) {
+        final double cd = candidates.peekKey();
+        final int c = candidates.peekValue();
+        candidates.poll();
+        if(results.size() >= ef && cd > results.peekKey()) {
+          break;
+        }
+        final int cnt = copyLinks(c, lc, concurrent);
+        for(int i = 0; i < cnt; i++) {
+          final int e = buf[i];
+          if(visited[e] == tag) {
+            continue;
+          }
+          visited[e] = tag;
+          final double d = dq.distance(obj, a.seek(e));
+          if(results.size() < ef || d < results.peekKey()) {
+            candidates.add(d, e);
+            results.add(d, e);
+            if(results.size() > ef) {
+              results.poll();
+            }
+          }
+        }
+      }
+    }
+
+    /**
+     * Copy the adjacency list of an object into the buffer.
+     *
+     * @param node Object
+     * @param lc Layer
+     * @param concurrent Flag to lock the adjacency list
+     * @return Number of neighbors
+     */
+    private int copyLinks(int node, int lc, boolean concurrent) {
+      final int[] arr = lc == 0 ? links0 : links[node];
+      final int base = lc == 0 ? node * (m0 + 1) : (lc - 1) * (m + 1);
+      if(!concurrent) {
+        final int cnt = arr[base];
+        System.arraycopy(arr, base + 1, buf, 0, cnt);
+        return cnt;
+      }
+      synchronized(locks[node]) {
+        final int cnt = arr[base];
+        System.arraycopy(arr, base + 1, buf, 0, cnt);
+        return cnt;
+      }
+    }
+
+    /**
+     * Start a new search, invalidating all visited markers.
+     */
+    void nextTag() {
+      if(++tag == 0) {
+        Arrays.fill(visited, 0);
+        tag = 1;
+      }
+    }
+  }
+
+  @Override
+  public KNNQuery<O> getKNNQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    for(Object hint : hints) {
+      if(DatabaseQuery.HINT_EXACT.equals(hint)) {
+        return null;
+      }
+    }
+    // Query on the relation we index
+    if(distanceQuery.getRelation() != relation) {
+      return null;
+    }
+    DistanceFunction<? super O> distanceFunction = (DistanceFunction<? super O>) distanceQuery.getDistanceFunction();
+    if(!this.distanceFunction.equals(distanceFunction)) {
+      LOG.debug("Distance function not supported by index - or 'equals' not implemented right!");
+      return null;
+    }
+    return new HNSWKNNQuery(dq);
+  }
+
+  @Override
+  public String getLongName() {
+    return "HNSW graph index";
+  }
+
+  @Override
+  public String getShortName() {
+    return "hnsw-index";
+  }
+
+  /**
+   * kNN query class.
+   *
+   * @author Erich Schubert
+   */
+  public class HNSWKNNQuery extends AbstractDistanceKNNQuery<O> {
+    /**
+     * Beam width.
+     */
+    private int ef = HNSWIndex.this.ef;
+
+    /**
+     * Constructor.
+     *
+     * @param distanceQuery Distance query
+     */
+    public HNSWKNNQuery(DistanceQuery<O> distanceQuery) {
+      super(distanceQuery);
+    }
+
+    /**
+     * Set the beam width of this query, to trade recall for speed.
+     *
+     * @param ef Beam width
+     */
+    public void setEf(int ef) {
+      this.ef = Math.max(1, ef);
+    }
+
+    @Override
+    public KNNList getKNNForObject(O obj, int k) {
+      KNNHeap heap = DBIDUtil.newHeap(k);
+      if(entry < 0) {
+        return heap.toKNNList();
+      }
+      Searcher s = searchers.get();
+      int ep = entry;
+      double epd = dq.distance(obj, s.a.seek(ep));
+      for(int lc = maxLevel; lc > 0; lc--) {
+        ep = s.greedy(obj, ep, epd, lc, false);
+        epd = s.lastDistance;
+      }
+      s.nextTag();
+      s.visited[ep] = s.tag;
+      s.candidates.clear();
+      s.results.clear();
+      s.candidates.add(epd, ep);
+      s.results.add(epd, ep);
+      s.searchLayer(obj, Math.max(ef, k), 0, false);
+      for(DoubleIntegerHeap.UnsortedIter it = s.results.unsortedIter(); it.valid(); it.advance()) {
+        heap.insert(it.getKey(), s.a.seek(it.getValue()));
+      }
+      return heap.toKNNList();
+    }
+  }
+
+  /**
+   * Index factory for HNSW graphs.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.has HNSWIndex
+   *
+   * @param <O> Object type
+   */
+  public static class Factory<O> implements IndexFactory<O, HNSWIndex<O>> {
+    /**
+     * Distance function.
+     */
+    protected DistanceFunction<? super O> distanceFunction;
+
+    /**
+     * Maximum number of neighbors on the upper layers.
+     */
+    protected int m;
+
+    /**
+     * Beam width used during construction.
+     */
+    protected int efConstruction;
+
+    /**
+     * Default beam width of queries.
+     */
+    protected int ef;
+
+    /**
+     * Random generator for the levels.
+     */
+    protected RandomFactory rnd;
+
+    /**
+     * Constructor.
+     *
+     * @param distanceFunction Distance function
+     * @param m Maximum number of neighbors on the upper layers
+     * @param efConstruction Beam width used during construction
+     * @param ef Default beam width of queries
+     * @param rnd Random generator
+     */
+    public Factory(DistanceFunction<? super O> distanceFunction, int m, int efConstruction, int ef, RandomFactory rnd) {
+      super();
+      this.distanceFunction = distanceFunction;
+      this.m = m;
+      this.efConstruction = efConstruction;
+      this.ef = ef;
+      this.rnd = rnd;
+    }
+
+    @Override
+    public HNSWIndex<O> instantiate(Relation<O> relation) {
+      return new HNSWIndex<>(relation, distanceFunction, m, efConstruction, ef, rnd);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return distanceFunction.getInputTypeRestriction();
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    public static class Parameterizer<O> extends AbstractParameterizer {
+      /**
+       * Parameter for the distance function.
+       */
+      public static final OptionID DISTANCE_FUNCTION_ID = new OptionID("hnsw.distancefunction", "Distance function to determine the distance between objects.");
+
+      /**
+       * Maximum number of neighbors on the upper layers; twice as many are
+       * kept on the bottom layer.
+       */
+      public static final OptionID M_ID = new OptionID("hnsw.m", "Maximum number of neighbors per object on the upper layers; the bottom layer uses twice as many.");
+
+      /**
+       * Beam width used during construction.
+       */
+      public static final OptionID EF_CONSTRUCTION_ID = new OptionID("hnsw.efconstruction", "Beam width used during index construction.");
+
+      /**
+       * Default beam width of queries.
+       */
+      public static final OptionID EF_ID = new OptionID("hnsw.ef", "Beam width used for queries; larger values increase recall and query time.");
+
+      /**
+       * Random generator for the levels.
+       */
+      public static final OptionID SEED_ID = new OptionID("hnsw.seed", "Random generator seed for the object levels.");
+
+      /**
+       * Distance function.
+       */
+      protected DistanceFunction<? super O> distanceFunction;
+
+      /**
+       * Maximum number of neighbors on the upper layers.
+       */
+      protected int m;
+
+      /**
+       * Beam width used during construction.
+       */
+      protected int efConstruction;
+
+      /**
+       * Default beam width of queries.
+       */
+      protected int ef;
+
+      /**
+       * Random generator for the levels.
+       */
+      protected RandomFactory rnd;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        ObjectParameter<DistanceFunction<? super O>> distanceFunctionP = new ObjectParameter<>(DISTANCE_FUNCTION_ID, DistanceFunction.class);
+        if(config.grab(distanceFunctionP)) {
+          distanceFunction = distanceFunctionP.instantiateClass(config);
+        }
+        IntParameter mP = new IntParameter(M_ID, 16) //
+            .addConstraint(CommonConstraints.GREATER_THAN_ONE_INT);
+        if(config.grab(mP)) {
+          m = mP.intValue();
+        }
+        IntParameter efConstructionP = new IntParameter(EF_CONSTRUCTION_ID, 100) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+        if(config.grab(efConstructionP)) {
+          efConstruction = efConstructionP.intValue();
+        }
+        IntParameter efP = new IntParameter(EF_ID, 50) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+        if(config.grab(efP)) {
+          ef = efP.intValue();
+        }
+        RandomParameter rndP = new RandomParameter(SEED_ID);
+        if(config.grab(rndP)) {
+          rnd = rndP.getValue();
+        }
+      }
+
+      @Override
+      protected HNSWIndex.Factory<O> makeInstance() {
+        return new HNSWIndex.Factory<>(distanceFunction, m, efConstruction, ef, rnd);
+      }
+    }
+  }
+}
@@ -0,0 +1,548 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.lsh;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractRefiningIndex;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.KNNIndex;
+import de.lmu.ifi.dbs.elki.index.RangeIndex;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfamilies.LocalitySensitiveHashFunctionFamily;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfunctions.LocalitySensitiveHashFunction;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfunctions.MultiProbeLocalitySensitiveHashFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor.RangeTask;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Multi-probe locality sensitive hashing, with compact bucket storage.
+ *
+ * In addition to the bucket of the query object, neighboring buckets are
+ * probed in the order of their likelihood to contain near neighbors, so much
+ * fewer hash tables are needed for the same recall than in
+ * {@link InMemoryLSHIndex}. Hash functions that do not support multi-probing
+ * are only probed once.
+ *
+ * Each hash table is stored in compressed sparse row form: the sorted bucket
+ * keys, the offsets of each bucket, and a single array of all DBIDs. The hash
+ * tables are built in parallel.
+ *
+ * Reference:
+ * <p>
+ * Q. Lv, W. Josephson, Z. Wang, M. Charikar, K. Li<br />
+ * Multi-probe LSH: efficient indexing for high-dimensional similarity
+ * search<br />
+ * Proc. 33rd Int. Conf. on Very Large Data Bases (VLDB'07)
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has LocalitySensitiveHashFunctionFamily
+ * @apiviz.has Instance
+ *
+ * @param <V> Object type to index
+ */
+@Reference(authors = "Q. Lv, W. Josephson, Z. Wang, M. Charikar, K. Li", //
+    title = "Multi-probe LSH: efficient indexing for high-dimensional similarity search", //
+    booktitle = "Proc. 33rd Int. Conf. on Very Large Data Bases (VLDB'07)", //
+    url = "http://www.vldb.org/conf/2007/papers/research/p950-lv.pdf")
+public class MultiProbeLSHIndex<V> implements IndexFactory<V, MultiProbeLSHIndex<V>.Instance> {
+  /**
+   * Class logger
+   */
+  private static final Logging LOG = Logging.getLogger(MultiProbeLSHIndex.class);
+
+  /**
+   * LSH hash function family to use.
+   */
+  LocalitySensitiveHashFunctionFamily<? super V> family;
+
+  /**
+   * Number of hash tables to use.
+   */
+  int l;
+
+  /**
+   * Number of buckets to use.
+   */
+  int numberOfBuckets;
+
+  /**
+   * Number of buckets to probe in each table.
+   */
+  int probes;
+
+  /**
+   * Constructor.
+   *
+   * @param family Projection family
+   * @param l Number of hash tables to use
+   * @param numberOfBuckets Number of buckets to use.
+   * @param probes Number of buckets to probe per table.
+   */
+  public MultiProbeLSHIndex(LocalitySensitiveHashFunctionFamily<? super V> family, int l, int numberOfBuckets, int probes) {
+    super();
+    this.family = family;
+    this.l = l;
+    this.numberOfBuckets = numberOfBuckets;
+    this.probes = probes;
+  }
+
+  @Override
+  public Instance instantiate(Relation<V> relation) {
+    return new Instance(relation, family.generateHashFunctions(relation, l), numberOfBuckets);
+  }
+
+  @Override
+  public TypeInformation getInputTypeRestriction() {
+    return family.getInputTypeRestriction();
+  }
+
+  /**
+   * Hash table in compressed sparse row form.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  static class Table {
+    /**
+     * Sorted bucket keys.
+     */
+    int[] keys;
+
+    /**
+     * Offsets of the buckets; bucket i is stored at offsets[i] to
+     * offsets[i+1]-1.
+     */
+    int[] offsets;
+
+    /**
+     * Bucket contents.
+     */
+    ArrayDBIDs members;
+
+    /**
+     * Constructor.
+     *
+     * @param keys Sorted bucket keys
+     * @param offsets Bucket offsets
+     * @param members Bucket contents
+     */
+    Table(int[] keys, int[] offsets, ArrayDBIDs members) {
+      this.keys = keys;
+      this.offsets = offsets;
+      this.members = members;
+    }
+  }
+
+  /**
+   * Instance of a LSH index for a single relation.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.has LocalitySensitiveHashFunction
+   */
+  public class Instance extends AbstractRefiningIndex<V> implements KNNIndex<V>, RangeIndex<V> {
+    /**
+     * Hash functions to use.
+     */
+    ArrayList<? extends LocalitySensitiveHashFunction<? super V>> hashfunctions;
+
+    /**
+     * The hash tables.
+     */
+    Table[] hashtables;
+
+    /**
+     * Number of buckets to use.
+     */
+    private int numberOfBuckets;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Relation to index.
+     * @param hashfunctions Hash functions.
+     * @param numberOfBuckets Number of buckets
+     */
+    public Instance(Relation<V> relation, ArrayList<? extends LocalitySensitiveHashFunction<? super V>> hashfunctions, int numberOfBuckets) {
+      super(relation);
+      this.hashfunctions = hashfunctions;
+      this.numberOfBuckets = numberOfBuckets;
+    }
+
+    @Override
+    public String getLongName() {
+      return "Multi-probe LSH index";
+    }
+
+    @Override
+    public String getShortName() {
+      return "multiprobe-lsh-index";
+    }
+
+    @Override
+    public void initialize() {
+      final int numhash = hashfunctions.size();
+      final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+      hashtables = new Table[numhash];
+      ParallelExecutor.run(numhash, 1, new RangeTask() {
+        @Override
+        public void process(int start, int end) {
+          for(int i = start; i < end; i++) {
+            hashtables[i] = buildTable(hashfunctions.get(i), ids);
+          }
+        }
+      });
+      if(LOG.isStatistics()) {
+        int min = Integer.MAX_VALUE, max = 0;
+        long buckets = 0;
+        for(Table table : hashtables) {
+          buckets += table.keys.length;
+          for(int j = 0; j < table.keys.length; j++) {
+            final int size = table.offsets[j + 1] - table.offsets[j];
+            min = size < min ? size : min;
+            max = size > max ? size : max;
+          }
+        }
+        LOG.statistics(new LongStatistic(this.getClass().getName() + ".fill.min", min));
+        LOG.statistics(new LongStatistic(this.getClass().getName() + ".fill.max", max));
+        LOG.statistics(new LongStatistic(this.getClass().getName() + ".buckets", buckets));
+        LOG.statistics(new LongStatistic(this.getClass().getName() + ".hashtables", hashtables.length));
+      }
+    }
+
+    /**
+     * Build a single hash table.
+     *
+     * @param hashfunc Hash function
+     * @param ids Objects to index
+     * @return Hash table
+     */
+    private Table buildTable(LocalitySensitiveHashFunction<? super V> hashfunc, ArrayDBIDs ids) {
+      final int size = ids.size();
+      double[] buf = new double[hashfunc.getNumberOfProjections()];
+      // Pack bucket (high) and position (low), then sort by bucket:
+      long[] pairs = new long[size];
+      DBIDArrayIter iter = ids.iter();
+      for(int i = 0; iter.valid(); iter.advance(), i++) {
+        final int bucket = hashfunc.hashObject(relation.get(iter), buf) % numberOfBuckets;
+        pairs[i] = (((long) bucket) << 32) | i;
+      }
+      Arrays.sort(pairs);
+      int distinct = 0;
+      for(int i = 0; i < size; i++) {
+        if(i == 0 || (pairs[i] >> 32) != (pairs[i - 1] >> 32)) {
+          ++distinct;
+        }
+      }
+      int[] keys = new int[distinct], offsets = new int[distinct + 1];
+      ArrayModifiableDBIDs members = DBIDUtil.newArray(size);
+      for(int i = 0, j = -1; i < size; i++) {
+        final int key = (int) (pairs[i] >> 32);
+        if(j < 0 || keys[j] != key) {
+          keys[++j] = key;
+          offsets[j] = i;
+        }
+        members.add(iter.seek((int) pairs[i]));
+      }
+      offsets[distinct] = size;
+      return new Table(keys, offsets, members);
+    }
+
+    /**
+     * Estimate the number of candidates of a query, from the average bucket
+     * size of each table and the default number of probes.
+     *
+     * @return Estimated number of candidates
+     */
+    public double estimateCandidates() {
+      final int size = relation.size();
+      double candidates = 0;
+      for(int i = 0; i < hashtables.length; i++) {
+        final int p = hashfunctions.get(i) instanceof MultiProbeLocalitySensitiveHashFunction ? probes : 1;
+        candidates += p * size / (double) Math.max(1, hashtables[i].keys.length);
+      }
+      return Math.min(candidates, size);
+    }
+
+    /**
+     * Collect the candidates from all hash tables.
+     *
+     * @param obj Query object
+     * @param probes Number of buckets to probe per table
+     * @param candidates Output candidates
+     */
+    protected void collectCandidates(V obj, int probes, ModifiableDBIDs candidates) {
+      double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
+      int[] codes = new int[probes];
+      for(int i = 0; i < hashtables.length; i++) {
+        final Table table = hashtables[i];
+        final LocalitySensitiveHashFunction<? super V> hashfunc = hashfunctions.get(i);
+        final int n;
+        if(probes > 1 && hashfunc instanceof MultiProbeLocalitySensitiveHashFunction) {
+          @SuppressWarnings("unchecked")
+          final MultiProbeLocalitySensitiveHashFunction<? super V> mp = (MultiProbeLocalitySensitiveHashFunction<? super V>) hashfunc;
+          n = mp.hashProbes(obj, buf, codes);
+        }
+        else {
+          codes[0] = hashfunc.hashObject(obj, buf);
+          n = 1;
+        }
+        DBIDArrayIter it = table.members.iter();
+        for(int j = 0; j < n; j++) {
+          // Reduce to hash table size
+          final int pos = Arrays.binarySearch(table.keys, codes[j] % numberOfBuckets);
+          if(pos < 0) {
+            continue;
+          }
+          for(int k = table.offsets[pos], end = table.offsets[pos + 1]; k < end; k++) {
+            candidates.add(it.seek(k));
+          }
+        }
+      }
+    }
+
+    @Override
+    public Logging getLogger() {
+      return LOG;
+    }
+
+    @Override
+    public KNNQuery<V> getKNNQuery(DistanceQuery<V> distanceQuery, Object... hints) {
+      for(Object hint : hints) {
+        if(DatabaseQuery.HINT_EXACT.equals(hint)) {
+          return null;
+        }
+      }
+      DistanceFunction<? super V> df = distanceQuery.getDistanceFunction();
+      if(!family.isCompatible(df)) {
+        return null;
+      }
+      return new LSHKNNQuery(distanceQuery);
+    }
+
+    @Override
+    public RangeQuery<V> getRangeQuery(DistanceQuery<V> distanceQuery, Object... hints) {
+      for(Object hint : hints) {
+        if(DatabaseQuery.HINT_EXACT.equals(hint)) {
+          return null;
+        }
+      }
+      DistanceFunction<? super V> df = distanceQuery.getDistanceFunction();
+      if(!family.isCompatible(df)) {
+        return null;
+      }
+      return new LSHRangeQuery(distanceQuery);
+    }
+
+    /**
+     * Class for handling kNN queries against the LSH index.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    public class LSHKNNQuery extends AbstractKNNQuery {
+      /**
+       * Number of buckets to probe per table.
+       */
+      private int probes = MultiProbeLSHIndex.this.probes;
+
+      /**
+       * Constructor.
+       *
+       * @param distanceQuery Distance query
+       */
+      public LSHKNNQuery(DistanceQuery<V> distanceQuery) {
+        super(distanceQuery);
+      }
+
+      /**
+       * Set the number of buckets to probe per table, to trade recall for
+       * speed.
+       *
+       * @param probes Number of probes
+       */
+      public void setNumberOfProbes(int probes) {
+        this.probes = Math.max(1, probes);
+      }
+
+      @Override
+      public KNNList getKNNForObject(V obj, int k) {
+        ModifiableDBIDs candidates = DBIDUtil.newHashSet();
+        collectCandidates(obj, probes, candidates);
+
+        // Refine.
+        KNNHeap heap = DBIDUtil.newHeap(k);
+        for(DBIDIter iter = candidates.iter(); iter.valid(); iter.advance()) {
+          final double dist = distanceQuery.distance(obj, iter);
+          super.incRefinements(1);
+          heap.insert(dist, iter);
+        }
+        return heap.toKNNList();
+      }
+    }
+
+    /**
+     * Class for handling range queries against the LSH index.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    public class LSHRangeQuery extends AbstractRangeQuery {
+      /**
+       * Number of buckets to probe per table.
+       */
+      private int probes = MultiProbeLSHIndex.this.probes;
+
+      /**
+       * Constructor.
+       *
+       * @param distanceQuery Distance query
+       */
+      public LSHRangeQuery(DistanceQuery<V> distanceQuery) {
+        super(distanceQuery);
+      }
+
+      /**
+       * Set the number of buckets to probe per table, to trade recall for
+       * speed.
+       *
+       * @param probes Number of probes
+       */
+      public void setNumberOfProbes(int probes) {
+        this.probes = Math.max(1, probes);
+      }
+
+      @Override
+      public void getRangeForObject(V obj, double range, ModifiableDoubleDBIDList result) {
+        ModifiableDBIDs candidates = DBIDUtil.newHashSet();
+        collectCandidates(obj, probes, candidates);
+
+        // Refine.
+        for(DBIDIter iter = candidates.iter(); iter.valid(); iter.advance()) {
+          final double dist = distanceQuery.distance(obj, iter);
+          super.incRefinements(1);
+          if(dist <= range) {
+            result.add(dist, iter);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V> extends AbstractParameterizer {
+    /**
+     * Number of buckets to probe in each hash table.
+     */
+    public static final OptionID PROBES_ID = new OptionID("lsh.probes", "Number of buckets to probe in each hash table.");
+
+    /**
+     * LSH hash function family to use.
+     */
+    LocalitySensitiveHashFunctionFamily<? super V> family;
+
+    /**
+     * Number of hash functions for each table.
+     */
+    int l;
+
+    /**
+     * Number of buckets to use.
+     */
+    int numberOfBuckets;
+
+    /**
+     * Number of buckets to probe.
+     */
+    int probes;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      ObjectParameter<LocalitySensitiveHashFunctionFamily<? super V>> familyP = new ObjectParameter<>(InMemoryLSHIndex.Parameterizer.FAMILY_ID, LocalitySensitiveHashFunctionFamily.class);
+      if(config.grab(familyP)) {
+        family = familyP.instantiateClass(config);
+      }
+
+      IntParameter lP = new IntParameter(InMemoryLSHIndex.Parameterizer.L_ID);
+      lP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(lP)) {
+        l = lP.intValue();
+      }
+
+      IntParameter bucketsP = new IntParameter(InMemoryLSHIndex.Parameterizer.BUCKETS_ID);
+      bucketsP.setDefaultValue(7919); // Primes work best, apparently.
+      bucketsP.addConstraint(CommonConstraints.GREATER_THAN_ONE_INT);
+      if(config.grab(bucketsP)) {
+        numberOfBuckets = bucketsP.intValue();
+      }
+
+      IntParameter probesP = new IntParameter(PROBES_ID, 10);
+      probesP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(probesP)) {
+        probes = probesP.intValue();
+      }
+    }
+
+    @Override
+    protected MultiProbeLSHIndex<V> makeInstance() {
+      return new MultiProbeLSHIndex<>(family, l, numberOfBuckets, probes);
+    }
+  }
+}
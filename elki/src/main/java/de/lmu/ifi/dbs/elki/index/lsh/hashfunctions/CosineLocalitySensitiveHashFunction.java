@@ -42,7 +42,7 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 title = "Similarity estimation techniques from rounding algorithms", //
 booktitle = "Proc. 34th ACM Symposium on Theory of computing, STOC'02", //
 url = "https://dx.doi.org/10.1145/509907.509965")
-public class CosineLocalitySensitiveHashFunction implements LocalitySensitiveHashFunction<NumberVector> {
+public class CosineLocalitySensitiveHashFunction implements MultiProbeLocalitySensitiveHashFunction<NumberVector> {
   /**
    * Projection function.
    */
@@ -81,6 +81,31 @@ public class CosineLocalitySensitiveHashFunction implements LocalitySensitiveHas
     return hashValue;
   }
 
+  @Override
+  public int hashProbes(NumberVector obj, double[] buf, int[] probes) {
+    projection.project(obj, buf);
+    // Perturbations: flip one bit, preferably of a projection close to 0.
+    final int num = buf.length;
+    double[] scores = new double[num];
+    long[] deltas = new long[num];
+    int[] group = new int[num];
+    int hashValue = 0;
+    for(int i = 0, j = 1; i < num; i++, j <<= 1) {
+      if(buf[i] > 0) {
+        hashValue = hashValue | j;
+      }
+      scores[i] = buf[i] * buf[i];
+      deltas[i] = buf[i] > 0 ? -j : j;
+      group[i] = i;
+    }
+    long[] codes = new long[probes.length];
+    final int n = PerturbationSequence.generate(hashValue, scores, new int[num], deltas, group, codes);
+    for(int i = 0; i < n; i++) {
+      probes[i] = (int) codes[i];
+    }
+    return n;
+  }
+
   @Override
   public int getNumberOfProjections() {
     return projection.getOutputDimensionality();
@@ -0,0 +1,47 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.lsh.hashfunctions;
+
+/**
+ * Locality sensitive hash function that also supports multi-probe querying,
+ * i.e. can produce the hash codes of neighboring buckets, in the order of the
+ * likelihood that they contain near neighbors.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses PerturbationSequence
+ *
+ * @param <V> Data type to hash.
+ */
+public interface MultiProbeLocalitySensitiveHashFunction<V> extends LocalitySensitiveHashFunction<V> {
+  /**
+   * Compute the hash value of an object, followed by the hash values of
+   * neighboring buckets to probe.
+   *
+   * @param obj Object to hash
+   * @param buf Buffer, sized according to the number of projections.
+   * @param probes Output array for the hash values; its length is the maximum
+   *        number of probes.
+   * @return Number of hash values produced (at least 1)
+   */
+  int hashProbes(V obj, double[] buf, int[] probes);
+}
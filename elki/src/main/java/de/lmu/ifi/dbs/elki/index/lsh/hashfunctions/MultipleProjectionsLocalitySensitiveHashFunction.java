@@ -44,7 +44,7 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 title = "Locality-sensitive hashing scheme based on p-stable distributions", //
 booktitle = "Proc. 20th annual symposium on Computational geometry", //
 url = "http://dx.doi.org/10.1145/997817.997857")
-public class MultipleProjectionsLocalitySensitiveHashFunction implements LocalitySensitiveHashFunction<NumberVector> {
+public class MultipleProjectionsLocalitySensitiveHashFunction implements MultiProbeLocalitySensitiveHashFunction<NumberVector> {
   /**
    * Projection matrix.
    */
@@ -118,6 +118,36 @@ public class MultipleProjectionsLocalitySensitiveHashFunction implements Localit
     return fastModPrime(t1sum);
   }
 
+  @Override
+  public int hashProbes(NumberVector vec, double[] buf, int[] probes) {
+    // Project the vector:
+    projection.project(vec, buf);
+    final int num = shift.length, p = num << 1;
+    // Perturbations: move one bin down, or one bin up, in each projection.
+    double[] scores = new double[p];
+    long[] deltas = new long[p];
+    int[] group = new int[p];
+    long t1sum = 0L;
+    for(int i = 0, j = 0; i < num; i++) {
+      final double v = (buf[i] + shift[i]) * iwidth, f = Math.floor(v);
+      final long ri = randoms1[i] & MASK32;
+      t1sum += ri * (int) f; // unsigned math!
+      final double lo = v - f, hi = 1. - lo;
+      scores[j] = lo * lo;
+      deltas[j] = -ri;
+      group[j++] = i;
+      scores[j] = hi * hi;
+      deltas[j] = ri;
+      group[j++] = i;
+    }
+    long[] codes = new long[probes.length];
+    final int n = PerturbationSequence.generate(t1sum, scores, new int[p], deltas, group, codes);
+    for(int i = 0; i < n; i++) {
+      probes[i] = fastModPrime(codes[i]);
+    }
+    return n;
+  }
+
   /**
    * Fast modulo operation for the largest unsigned integer prime.
    *
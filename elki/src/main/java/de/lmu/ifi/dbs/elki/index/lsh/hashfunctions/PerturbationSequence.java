@@ -0,0 +1,131 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.lsh.hashfunctions;
+
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.DoubleIntegerArrayQuickSort;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleObjectMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+
+/**
+ * Generate the query-directed probing sequence of multi-probe LSH.
+ *
+ * Each hash code is a sum of per-projection contributions, so moving into a
+ * neighboring bucket (a "perturbation") adds a fixed delta to the raw code.
+ * Perturbation sets are enumerated in the order of increasing score, using
+ * the shift and expand operations on the sorted perturbations.
+ *
+ * Reference:
+ * <p>
+ * Q. Lv, W. Josephson, Z. Wang, M. Charikar, K. Li<br />
+ * Multi-probe LSH: efficient indexing for high-dimensional similarity
+ * search<br />
+ * Proc. 33rd Int. Conf. on Very Large Data Bases (VLDB'07)
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@Reference(authors = "Q. Lv, W. Josephson, Z. Wang, M. Charikar, K. Li", //
+    title = "Multi-probe LSH: efficient indexing for high-dimensional similarity search", //
+    booktitle = "Proc. 33rd Int. Conf. on Very Large Data Bases (VLDB'07)", //
+    url = "http://www.vldb.org/conf/2007/papers/research/p950-lv.pdf")
+public final class PerturbationSequence {
+  /**
+   * Fake constructor: do not instantiate.
+   */
+  private PerturbationSequence() {
+    // Do not instantiate.
+  }
+
+  /**
+   * Generate the probing sequence.
+   *
+   * @param base Raw code of the query bucket
+   * @param scores Score of each perturbation (lower is more promising).
+   *        <b>Will be sorted.</b>
+   * @param idx Buffer for the sort permutation, same length as scores
+   * @param deltas Change of the raw code for each perturbation
+   * @param group Perturbations of the same group are mutually exclusive
+   * @param out Output raw codes; the first is the base code
+   * @return Number of raw codes produced
+   */
+  public static int generate(long base, double[] scores, int[] idx, long[] deltas, int[] group, long[] out) {
+    out[0] = base;
+    final int p = scores.length;
+    if(out.length == 1 || p == 0) {
+      return 1;
+    }
+    // Sort perturbations by score:
+    for(int i = 0; i < p; i++) {
+      idx[i] = i;
+    }
+    DoubleIntegerArrayQuickSort.sort(scores, idx, p);
+    int n = 1;
+    DoubleObjectMinHeap<int[]> heap = new DoubleObjectMinHeap<>();
+    heap.add(scores[0], new int[] { 0 });
+    while(n < out.length && !heap.isEmpty()) {
+      final double score = heap.peekKey();
+      final int[] set = heap.peekValue();
+      heap.poll();
+      final int last = set[set.length - 1], next = last + 1;
+      if(next < p) {
+        // Shift: replace the last perturbation with the next.
+        int[] shift = set.clone();
+        shift[set.length - 1] = next;
+        heap.add(score - scores[last] + scores[next], shift);
+        // Expand: add the next perturbation.
+        int[] expand = new int[set.length + 1];
+        System.arraycopy(set, 0, expand, 0, set.length);
+        expand[set.length] = next;
+        heap.add(score + scores[next], expand);
+      }
+      if(isValid(set, idx, group)) {
+        long code = base;
+        for(int j : set) {
+          code += deltas[idx[j]];
+        }
+        out[n++] = code;
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Check that a perturbation set does not contain two perturbations of the
+   * same group.
+   *
+   * @param set Perturbation set (positions in sorted order)
+   * @param idx Sort permutation
+   * @param group Group of each perturbation
+   * @return {@code true} if valid
+   */
+  private static boolean isValid(int[] set, int[] idx, int[] group) {
+    for(int i = 1; i < set.length; i++) {
+      final int gi = group[idx[set[i]]];
+      for(int j = 0; j < i; j++) {
+        if(group[idx[set[j]]] == gi) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+}
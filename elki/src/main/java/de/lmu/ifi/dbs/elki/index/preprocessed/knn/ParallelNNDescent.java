@@ -0,0 +1,667 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.preprocessed.knn;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor.RangeTask;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Parallel version of {@link NNDescent}.
+ *
+ * The local joins, which perform almost all distance computations, run in
+ * parallel. Each neighbor list is a bounded max-heap in a flat primitive array,
+ * and updated under one of a fixed number of striped locks; candidates that
+ * cannot enter the heap are rejected without locking, by their k-distance.
+ *
+ * As in the original algorithm, the new forward neighbors and the new and old
+ * reverse neighbors are reservoir sampled to at most {@code rho * k} objects
+ * each, while all old forward neighbors (at most k) are used. The memory use is
+ * linear in the data set size and k.
+ *
+ * Reference:
+ * <p>
+ * W. Dong and C. Moses and K. Li<br />
+ * Efficient k-nearest neighbor graph construction for generic similarity
+ * measures<br />
+ * In Proc. 20th international conference on World Wide Web WWW'11
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "W. Dong and C. Moses and K. Li", //
+    title = "Efficient k-nearest neighbor graph construction for generic similarity measures", //
+    booktitle = "Proc. 20th international conference on World Wide Web WWW'11", //
+    url = "http://dx.doi.org/10.1145/1963405.1963487")
+public class ParallelNNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
+  /**
+   * Logger
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelNNDescent.class);
+
+  /**
+   * Number of lock stripes; must be a power of two.
+   */
+  private static final int LOCK_STRIPES = 1024;
+
+  /**
+   * Number of objects to join at once.
+   */
+  private static final int CHUNK_SIZE = 64;
+
+  /**
+   * Log prefix.
+   */
+  private String prefix = getClass().getCanonicalName();
+
+  /**
+   * Random generator
+   */
+  private final RandomFactory rnd;
+
+  /**
+   * Early termination parameter
+   */
+  private double delta = 0.001;
+
+  /**
+   * Sample rate
+   */
+  private double rho = 1.0;
+
+  /**
+   * Maximum number of iterations
+   */
+  private int iterations = 100;
+
+  /**
+   * Size of each neighbor heap (k - 1, the object itself is added in the
+   * end).
+   */
+  private int kk;
+
+  /**
+   * Neighbor heaps, as array offsets, with stride kk.
+   */
+  private int[] nbrs;
+
+  /**
+   * Neighbor distances, with stride kk.
+   */
+  private double[] dists;
+
+  /**
+   * Flags for neighbors not yet joined, with stride kk.
+   */
+  private boolean[] isnew;
+
+  /**
+   * Current size of each heap.
+   */
+  private int[] counts;
+
+  /**
+   * Published k-distance of each heap, as raw long bits; infinite until the
+   * heap is full. Used to reject candidates without locking.
+   */
+  private AtomicLongArray kdists;
+
+  /**
+   * Striped locks for the neighbor heaps.
+   */
+  private Object[] locks;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param distanceFunction distance function
+   * @param k k
+   * @param rnd Random generator
+   * @param delta Delta threshold
+   * @param rho Rho threshold
+   * @param iterations Maximum number of iterations
+   */
+  public ParallelNNDescent(Relation<O> relation, DistanceFunction<? super O> distanceFunction, int k, RandomFactory rnd, double delta, double rho, int iterations) {
+    super(relation, distanceFunction, k);
+    this.rnd = rnd;
+    this.delta = delta;
+    this.rho = rho;
+    this.iterations = iterations;
+  }
+
+  @Override
+  protected void preprocess() {
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    final long starttime = System.currentTimeMillis();
+    kk = Math.max(0, Math.min(k - 1, size - 1));
+    nbrs = new int[size * kk];
+    dists = new double[size * kk];
+    isnew = new boolean[size * kk];
+    counts = new int[size];
+    kdists = new AtomicLongArray(size);
+    final long inf = Double.doubleToRawLongBits(Double.POSITIVE_INFINITY);
+    for(int i = 0; i < size; i++) {
+      kdists.set(i, inf);
+    }
+    locks = new Object[LOCK_STRIPES];
+    for(int i = 0; i < LOCK_STRIPES; i++) {
+      locks[i] = new Object();
+    }
+    if(kk > 0) {
+      final Random random = rnd.getSingleThreadedRandom();
+      initialize(ids, random);
+      iterate(ids, random);
+    }
+    // Convert to kNN lists, adding the object itself.
+    storage = DataStoreFactory.FACTORY.makeStorage(ids, DataStoreFactory.HINT_DB, KNNList.class);
+    DBIDArrayIter it = ids.iter(), it2 = ids.iter();
+    for(int i = 0; it.valid(); it.advance(), i++) {
+      KNNHeap heap = DBIDUtil.newHeap(k);
+      heap.insert(0, it);
+      for(int j = i * kk, end = j + counts[i]; j < end; j++) {
+        heap.insert(dists[j], it2.seek(nbrs[j]));
+      }
+      storage.put(it, heap.toKNNList());
+    }
+    nbrs = null;
+    dists = null;
+    isnew = null;
+    counts = null;
+    kdists = null;
+    locks = null;
+    final long end = System.currentTimeMillis();
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(prefix + ".construction-time.ms", end - starttime));
+    }
+  }
+
+  /**
+   * Initialize the neighbor heaps with random objects.
+   *
+   * @param ids Objects
+   * @param random Random generator
+   */
+  private void initialize(final ArrayDBIDs ids, Random random) {
+    final int size = ids.size();
+    // Partial Fisher-Yates shuffles; the permutation stays valid.
+    final int[] perm = new int[size];
+    for(int i = 0; i < size; i++) {
+      perm[i] = i;
+    }
+    final int[] initial = new int[size * kk];
+    for(int i = 0; i < size; i++) {
+      for(int j = 0, p = 0; j < kk; p++) {
+        final int r = p + random.nextInt(size - p);
+        final int c = perm[r];
+        perm[r] = perm[p];
+        perm[p] = c;
+        if(c != i) {
+          initial[i * kk + j++] = c;
+        }
+      }
+    }
+    ParallelExecutor.run(size, CHUNK_SIZE, new RangeTask() {
+      @Override
+      public void process(int start, int end) {
+        DBIDArrayIter a = ids.iter(), b = ids.iter();
+        for(int i = start; i < end; i++) {
+          a.seek(i);
+          for(int j = i * kk, e = j + kk; j < e; j++) {
+            update(i, initial[j], distanceQuery.distance(a, b.seek(initial[j])));
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Iterate the local joins until convergence.
+   *
+   * @param ids Objects
+   * @param random Random generator
+   */
+  private void iterate(final ArrayDBIDs ids, Random random) {
+    final int size = ids.size();
+    final int items = Math.max(1, (int) Math.ceil(rho * kk));
+    // Sampled forward and reverse neighbors; all old forward neighbors are
+    // kept. The reverse counts include the objects seen by the reservoir
+    // sampling.
+    final int[] newFwd = new int[size * items], newFwdCnt = new int[size];
+    final int[] oldFwd = new int[size * kk], oldFwdCnt = new int[size];
+    final int[] newRev = new int[size * items], newRevCnt = new int[size];
+    final int[] oldRev = new int[size * items], oldRevCnt = new int[size];
+    final int[] slots = new int[items];
+    final AtomicLong distcount = new AtomicLong(), updatecount = new AtomicLong();
+    IndefiniteProgress progress = LOG.isVerbose() ? new IndefiniteProgress("NNDescent iteration", LOG) : null;
+    int iter = 0;
+    for(; iter < iterations; iter++) {
+      // Sample the new neighbors, and mark them as old.
+      Arrays.fill(newRevCnt, 0);
+      Arrays.fill(oldRevCnt, 0);
+      for(int i = 0; i < size; i++) {
+        final int base = i * kk, cnt = counts[i];
+        int seen = 0, ocnt = 0;
+        for(int j = base; j < base + cnt; j++) {
+          if(!isnew[j]) {
+            oldFwd[base + ocnt++] = nbrs[j];
+          }
+          else if(seen++ < items) {
+            slots[seen - 1] = j;
+          }
+          else {
+            final int r = random.nextInt(seen);
+            if(r < items) {
+              slots[r] = j;
+            }
+          }
+        }
+        final int ncnt = Math.min(seen, items);
+        for(int j = 0; j < ncnt; j++) {
+          isnew[slots[j]] = false;
+          newFwd[i * items + j] = nbrs[slots[j]];
+        }
+        newFwdCnt[i] = ncnt;
+        oldFwdCnt[i] = ocnt;
+      }
+      // Sample the reverse neighbors.
+      for(int i = 0; i < size; i++) {
+        for(int j = i * items, e = j + newFwdCnt[i]; j < e; j++) {
+          reservoir(newRev, newRevCnt, newFwd[j], i, items, random);
+        }
+        for(int j = i * kk, e = j + oldFwdCnt[i]; j < e; j++) {
+          reservoir(oldRev, oldRevCnt, oldFwd[j], i, items, random);
+        }
+      }
+      // Local joins, in parallel.
+      distcount.set(0);
+      updatecount.set(0);
+      ParallelExecutor.run(size, CHUNK_SIZE, new RangeTask() {
+        @Override
+        public void process(int start, int end) {
+          DBIDArrayIter a = ids.iter(), b = ids.iter();
+          int[] nl = new int[items << 1], ol = new int[kk + items];
+          long dcount = 0, ucount = 0;
+          for(int v = start; v < end; v++) {
+            final int nn = merge(newFwd, v * items, newFwdCnt[v], newRev, v * items, Math.min(newRevCnt[v], items), nl);
+            final int on = merge(oldFwd, v * kk, oldFwdCnt[v], oldRev, v * items, Math.min(oldRevCnt[v], items), ol);
+            for(int x = 0; x < nn; x++) {
+              final int u1 = nl[x];
+              a.seek(u1);
+              // new x new
+              for(int y = x + 1; y < nn; y++) {
+                final double d = distanceQuery.distance(a, b.seek(nl[y]));
+                ++dcount;
+                ucount += update(u1, nl[y], d) + update(nl[y], u1, d);
+              }
+              // new x old
+              for(int y = 0; y < on; y++) {
+                if(ol[y] == u1) {
+                  continue;
+                }
+                final double d = distanceQuery.distance(a, b.seek(ol[y]));
+                ++dcount;
+                ucount += update(u1, ol[y], d) + update(ol[y], u1, d);
+              }
+            }
+          }
+          distcount.addAndGet(dcount);
+          updatecount.addAndGet(ucount);
+        }
+      });
+      final long updates = updatecount.get();
+      if(LOG.isStatistics()) {
+        LOG.statistics(new LongStatistic(prefix + ".iteration", iter + 1));
+        LOG.statistics(new LongStatistic(prefix + ".distance-computations", distcount.get()));
+        LOG.statistics(new LongStatistic(prefix + ".updates", updates));
+        LOG.statistics(new DoubleStatistic(prefix + ".update-rate", updates / (double) (kk * (long) size)));
+      }
+      LOG.incrementProcessed(progress);
+      if(updates < delta * kk * size) {
+        LOG.verbose("NNDescent terminated because the update rate got smaller than delta.");
+        break;
+      }
+    }
+    if(LOG.isVerbose() && iter == iterations) {
+      LOG.verbose("NNDescent terminated because the maximum number of iterations was reached.");
+    }
+    LOG.setCompleted(progress);
+  }
+
+  /**
+   * Add an object to a bounded sample, using reservoir sampling.
+   *
+   * @param sample Samples, with stride items
+   * @param seen Number of objects seen for each sample
+   * @param i Sample to add to
+   * @param val Object to add
+   * @param items Maximum sample size
+   * @param random Random generator
+   */
+  private static void reservoir(int[] sample, int[] seen, int i, int val, int items, Random random) {
+    final int s = seen[i]++;
+    if(s < items) {
+      sample[i * items + s] = val;
+      return;
+    }
+    final int r = random.nextInt(s + 1);
+    if(r < items) {
+      sample[i * items + r] = val;
+    }
+  }
+
+  /**
+   * Merge two lists into a sorted list without duplicates.
+   *
+   * @param a First array
+   * @param astart First offset
+   * @param alen First length
+   * @param b Second array
+   * @param bstart Second offset
+   * @param blen Second length
+   * @param out Output buffer
+   * @return Number of distinct values
+   */
+  private static int merge(int[] a, int astart, int alen, int[] b, int bstart, int blen, int[] out) {
+    System.arraycopy(a, astart, out, 0, alen);
+    System.arraycopy(b, bstart, out, alen, blen);
+    final int len = alen + blen;
+    if(len == 0) {
+      return 0;
+    }
+    Arrays.sort(out, 0, len);
+    int n = 1;
+    for(int i = 1; i < len; i++) {
+      if(out[i] != out[n - 1]) {
+        out[n++] = out[i];
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Offer a neighbor candidate to the heap of an object.
+   *
+   * Candidates that are not better than the published k-distance are rejected
+   * without locking. The published value is infinite until the heap is full,
+   * and then written under the lock each time the heap changes, so the values
+   * only ever decrease. A stale read thus only lets too many candidates pass,
+   * and these are checked again under the lock.
+   *
+   * @param i Object to update
+   * @param j Candidate neighbor
+   * @param d Distance
+   * @return 1 if the heap was changed, 0 otherwise
+   */
+  private int update(int i, int j, double d) {
+    final int base = i * kk;
+    if(d >= Double.longBitsToDouble(kdists.get(i))) {
+      return 0;
+    }
+    synchronized(locks[i & (LOCK_STRIPES - 1)]) {
+      final int cnt = counts[i];
+      if(cnt == kk && d >= dists[base]) {
+        return 0;
+      }
+      for(int p = base, end = base + cnt; p < end; p++) {
+        if(nbrs[p] == j) {
+          return 0;
+        }
+      }
+      if(cnt < kk) {
+        // Sift up:
+        int pos = cnt;
+        while(pos > 0) {
+          final int parent = (pos - 1) >>> 1;
+          if(dists[base + parent] >= d) {
+            break;
+          }
+          move(base + parent, base + pos);
+          pos = parent;
+        }
+        set(base + pos, j, d);
+        counts[i] = cnt + 1;
+        if(cnt + 1 == kk) {
+          kdists.lazySet(i, Double.doubleToRawLongBits(dists[base]));
+        }
+        return 1;
+      }
+      // Replace the top, then sift down:
+      int pos = 0;
+      while(true) {
+        int child = (pos << 1) + 1;
+        if(child >= kk) {
+          break;
+        }
+        if(child + 1 < kk && dists[base + child + 1] > dists[base + child]) {
+          ++child;
+        }
+        if(dists[base + child] <= d) {
+          break;
+        }
+        move(base + child, base + pos);
+        pos = child;
+      }
+      set(base + pos, j, d);
+      kdists.lazySet(i, Double.doubleToRawLongBits(dists[base]));
+      return 1;
+    }
+  }
+
+  /**
+   * Move a heap entry.
+   *
+   * @param from Source position
+   * @param to Target position
+   */
+  private void move(int from, int to) {
+    nbrs[to] = nbrs[from];
+    dists[to] = dists[from];
+    isnew[to] = isnew[from];
+  }
+
+  /**
+   * Store a new heap entry.
+   *
+   * @param pos Position
+   * @param j Neighbor
+   * @param d Distance
+   */
+  private void set(int pos, int j, double d) {
+    nbrs[pos] = j;
+    dists[pos] = d;
+    isnew[pos] = true;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  @Override
+  public void logStatistics() {
+    // Statistics are logged during construction.
+  }
+
+  @Override
+  public String getLongName() {
+    return "Parallel NNDescent kNN";
+  }
+
+  @Override
+  public String getShortName() {
+    return "parallel-nn-descent-knn";
+  }
+
+  @Override
+  public KNNQuery<O> getKNNQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    for(Object hint : hints) {
+      if(DatabaseQuery.HINT_EXACT.equals(hint)) {
+        return null;
+      }
+    }
+    return super.getKNNQuery(distanceQuery, hints);
+  }
+
+  /**
+   * Index factory.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.has ParallelNNDescent
+   *
+   * @param <O> Object type
+   */
+  public static class Factory<O> extends AbstractMaterializeKNNPreprocessor.Factory<O> {
+    /**
+     * Random generator
+     */
+    private final RandomFactory rnd;
+
+    /**
+     * Early termination parameter
+     */
+    private final double delta;
+
+    /**
+     * Sample rate
+     */
+    private final double rho;
+
+    /**
+     * Maximum number of iterations
+     */
+    private final int iterations;
+
+    /**
+     * Constructor.
+     *
+     * @param k K
+     * @param distanceFunction distance function
+     * @param rnd Random generator
+     * @param delta Delta threshold
+     * @param rho Rho threshold
+     * @param iterations Maximum number of iterations
+     */
+    public Factory(int k, DistanceFunction<? super O> distanceFunction, RandomFactory rnd, double delta, double rho, int iterations) {
+      super(k, distanceFunction);
+      this.rnd = rnd;
+      this.delta = delta;
+      this.rho = rho;
+      this.iterations = iterations;
+    }
+
+    @Override
+    public ParallelNNDescent<O> instantiate(Relation<O> relation) {
+      return new ParallelNNDescent<>(relation, distanceFunction, k, rnd, delta, rho, iterations);
+    }
+
+    /**
+     * Parameterization class
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     *
+     * @param <O> Object type
+     */
+    public static class Parameterizer<O> extends AbstractMaterializeKNNPreprocessor.Factory.Parameterizer<O> {
+      /**
+       * Random generator
+       */
+      private RandomFactory rnd;
+
+      /**
+       * Early termination parameter
+       */
+      private double delta;
+
+      /**
+       * Sample rate
+       */
+      private double rho;
+
+      /**
+       * Maximum number of iterations
+       */
+      private int iterations;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        RandomParameter rndP = new RandomParameter(NNDescent.Factory.Parameterizer.SEED_ID);
+        if(config.grab(rndP)) {
+          rnd = rndP.getValue();
+        }
+        DoubleParameter deltaP = new DoubleParameter(NNDescent.Factory.Parameterizer.DELTA_ID, 0.001) //
+            .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE);
+        if(config.grab(deltaP)) {
+          delta = deltaP.getValue();
+        }
+        DoubleParameter rhoP = new DoubleParameter(NNDescent.Factory.Parameterizer.RHO_ID, 1) //
+            .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE);
+        if(config.grab(rhoP)) {
+          rho = rhoP.getValue();
+        }
+        IntParameter iterP = new IntParameter(NNDescent.Factory.Parameterizer.ITER_ID, 100) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+        if(config.grab(iterP)) {
+          iterations = iterP.getValue();
+        }
+      }
+
+      @Override
+      protected ParallelNNDescent.Factory<O> makeInstance() {
+        return new ParallelNNDescent.Factory<>(k, distanceFunction, rnd, delta, rho, iterations);
+      }
+    }
+  }
+}
@@ -0,0 +1,699 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.metrical.covertree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.AbstractDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.AbstractDistanceRangeQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.index.KNNIndex;
+import de.lmu.ifi.dbs.elki.index.RangeIndex;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor.RangeTask;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+
+/**
+ * Cover tree with parallel bulk loading and a flat, array-based layout.
+ *
+ * The tree is bulk loaded as in {@link CoverTree}, but large subtrees are
+ * deferred, and built in rounds by the {@link ParallelExecutor}. Afterwards,
+ * the tree is compacted into primitive arrays in breadth-first order, such
+ * that the children of each node, and the entries of each node, are stored
+ * contiguously. Queries then only traverse integer offsets, and do not modify
+ * the index, so any number of queries may run concurrently.
+ *
+ * Reference:
+ * <p>
+ * A. Beygelzimer, S. Kakade, J. Langford<br />
+ * Cover trees for nearest neighbor<br />
+ * In Proc. 23rd International Conference on Machine Learning (ICML).
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has CoverTreeRangeQuery
+ * @apiviz.has CoverTreeKNNQuery
+ */
+@Reference(authors = "A. Beygelzimer, S. Kakade, J. Langford", //
+    title = "Cover trees for nearest neighbor", //
+    booktitle = "In Proc. 23rd International Conference on Machine Learning (ICML)", //
+    url = "http://dx.doi.org/10.1145/1143844.1143857")
+public class ParallelCoverTree<O> extends AbstractCoverTree<O> implements RangeIndex<O>, KNNIndex<O> {
+  /**
+   * Class logger.
+   */
+  static final Logging LOG = Logging.getLogger(ParallelCoverTree.class);
+
+  /**
+   * Minimum number of elements to defer a subtree to a separate task.
+   */
+  private static final int PARALLEL_THRESHOLD = 256;
+
+  /**
+   * Thread-safe distance query used for construction.
+   */
+  private DistanceQuery<O> dq;
+
+  /**
+   * Offsets of the children of each node; the children of node i are the
+   * nodes childOff[i] to childOff[i+1]-1. Leaves have no children.
+   */
+  private int[] childOff;
+
+  /**
+   * Offsets of the entries of each node. The first entry is the routing
+   * object.
+   */
+  private int[] entryOff;
+
+  /**
+   * Entries of all nodes, in node order.
+   */
+  private ArrayDBIDs entries;
+
+  /**
+   * Distance of each entry to the routing object of its node.
+   */
+  private double[] entryDist;
+
+  /**
+   * Maximum distance of each node to its descendants.
+   */
+  private double[] maxDist;
+
+  /**
+   * Distance of each node to the routing object of its parent.
+   */
+  private double[] parentDist;
+
+  /**
+   * Constructor.
+   *
+   * @param relation data relation
+   * @param distanceFunction distance function
+   * @param expansion Expansion rate
+   * @param truncate Truncate branches with less than this number of instances.
+   */
+  public ParallelCoverTree(Relation<O> relation, DistanceFunction<? super O> distanceFunction, double expansion, int truncate) {
+    super(relation, distanceFunction, expansion, truncate);
+    this.dq = distanceFunction.instantiate(relation);
+  }
+
+  /**
+   * Temporary node object, used during construction only.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static final class Node {
+    /**
+     * Objects in this node. The first is the routing object.
+     */
+    ModifiableDoubleDBIDList singletons;
+
+    /**
+     * Maximum distance to descendants.
+     */
+    double maxDist;
+
+    /**
+     * Distance to parent.
+     */
+    double parentDist;
+
+    /**
+     * Child nodes, {@code null} for leaves.
+     */
+    ArrayList<Node> children;
+
+    /**
+     * Constructor.
+     *
+     * @param r Routing object
+     * @param maxDist Maximum distance to any descendant
+     * @param parentDist Distance from parent
+     * @param singletons Further singletons, may be {@code null}
+     */
+    Node(DBIDRef r, double maxDist, double parentDist, ModifiableDoubleDBIDList singletons) {
+      this.singletons = singletons != null ? DBIDUtil.newDistanceDBIDList(singletons.size() + 1) : DBIDUtil.newDistanceDBIDList();
+      this.singletons.add(0., r);
+      if(singletons != null) {
+        for(DoubleDBIDListIter it = singletons.iter(); it.valid(); it.advance()) {
+          this.singletons.add(it.doubleValue(), it);
+        }
+      }
+      else {
+        this.children = new ArrayList<>();
+      }
+      this.maxDist = maxDist;
+      this.parentDist = parentDist;
+    }
+
+    /**
+     * True, if the node is a leaf.
+     *
+     * @return {@code true}, if this is a leaf node.
+     */
+    boolean isLeaf() {
+      return children == null || children.isEmpty();
+    }
+  }
+
+  @Override
+  public void initialize() {
+    bulkLoad(relation.getDBIDs());
+    if(LOG.isVerbose()) {
+      final int nodes = maxDist.length;
+      int leaves = 0;
+      for(int i = 0; i < nodes; i++) {
+        leaves += childOff[i] == childOff[i + 1] ? 1 : 0;
+      }
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".nodes", nodes));
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".leaves", leaves));
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".entries", entries.size()));
+    }
+  }
+
+  /**
+   * Bulk-load the index.
+   *
+   * @param ids IDs to load
+   */
+  public void bulkLoad(DBIDs ids) {
+    if(ids.size() == 0) {
+      return;
+    }
+    assert (maxDist == null) : "Tree already initialized.";
+    DBIDIter it = ids.iter();
+    DBID first = DBIDUtil.deref(it);
+    // Compute distances to all neighbors:
+    ModifiableDoubleDBIDList candidates = DBIDUtil.newDistanceDBIDList(ids.size() - 1);
+    for(it.advance(); it.valid(); it.advance()) {
+      candidates.add(dq.distance(first, it), it);
+    }
+    distComputations += candidates.size();
+    final BuildTask root = new BuildTask(null, 0, first, Integer.MAX_VALUE, 0., candidates);
+    // Each round builds the subtrees deferred by the previous round.
+    List<BuildTask> tasks = Collections.singletonList(root);
+    while(!tasks.isEmpty()) {
+      final List<BuildTask> current = tasks;
+      ParallelExecutor.run(current.size(), 1, new RangeTask() {
+        @Override
+        public void process(int start, int end) {
+          for(int i = start; i < end; i++) {
+            current.get(i).run();
+          }
+        }
+      });
+      tasks = new ArrayList<>();
+      for(BuildTask task : current) {
+        distComputations += task.dists;
+        tasks.addAll(task.deferred);
+      }
+    }
+    compact(root.result);
+  }
+
+  /**
+   * Compact the tree into arrays, in breadth-first order.
+   *
+   * @param root Root node
+   */
+  private void compact(Node root) {
+    // Enumerate the nodes in breadth-first order:
+    ArrayList<Node> nodes = new ArrayList<>();
+    nodes.add(root);
+    int size = 0;
+    for(int i = 0; i < nodes.size(); i++) {
+      final Node cur = nodes.get(i);
+      size += cur.singletons.size();
+      if(!cur.isLeaf()) {
+        nodes.addAll(cur.children);
+      }
+    }
+    final int n = nodes.size();
+    childOff = new int[n + 1];
+    entryOff = new int[n + 1];
+    maxDist = new double[n];
+    parentDist = new double[n];
+    ArrayModifiableDBIDs ents = DBIDUtil.newArray(size);
+    entryDist = new double[size];
+    int nextChild = 1, e = 0;
+    for(int i = 0; i < n; i++) {
+      final Node cur = nodes.get(i);
+      nodes.set(i, null); // Allow garbage collection
+      maxDist[i] = cur.maxDist;
+      parentDist[i] = cur.parentDist;
+      childOff[i] = nextChild;
+      nextChild += cur.isLeaf() ? 0 : cur.children.size();
+      entryOff[i] = e;
+      for(DoubleDBIDListIter it = cur.singletons.iter(); it.valid(); it.advance()) {
+        ents.add(it);
+        entryDist[e++] = it.doubleValue();
+      }
+    }
+    childOff[n] = nextChild;
+    entryOff[n] = e;
+    entries = ents;
+  }
+
+  /**
+   * Task to build a subtree.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private class BuildTask {
+    /**
+     * Parent node, {@code null} for the root.
+     */
+    Node parent;
+
+    /**
+     * Position of the subtree in the children of the parent.
+     */
+    int pos;
+
+    /**
+     * Routing object.
+     */
+    DBID cur;
+
+    /**
+     * Maximum scale.
+     */
+    int maxScale;
+
+    /**
+     * Distance to the parent.
+     */
+    double parentDist;
+
+    /**
+     * Elements to process.
+     */
+    ModifiableDoubleDBIDList elems;
+
+    /**
+     * Distance computations performed by this task.
+     */
+    long dists = 0L;
+
+    /**
+     * Subtrees deferred to the next round.
+     */
+    ArrayList<BuildTask> deferred = new ArrayList<>();
+
+    /**
+     * Root of the subtree built.
+     */
+    Node result;
+
+    /**
+     * Constructor.
+     *
+     * @param parent Parent node, {@code null} for the root
+     * @param pos Position in the children of the parent
+     * @param cur Routing object
+     * @param maxScale Maximum scale
+     * @param parentDist Distance to parent
+     * @param elems Elements
+     */
+    BuildTask(Node parent, int pos, DBID cur, int maxScale, double parentDist, ModifiableDoubleDBIDList elems) {
+      this.parent = parent;
+      this.pos = pos;
+      this.cur = cur;
+      this.maxScale = maxScale;
+      this.parentDist = parentDist;
+      this.elems = elems;
+    }
+
+    /**
+     * Build the subtree, and attach it to the parent.
+     */
+    void run() {
+      result = bulkConstruct(cur, maxScale, parentDist, elems);
+      elems = null;
+      if(parent != null) {
+        // The children lists are not resized anymore, so this is safe:
+        parent.children.set(pos, result);
+      }
+    }
+
+    /**
+     * Bulk-load a subtree, as in {@link CoverTree}; large children are
+     * deferred to separate tasks.
+     *
+     * @param cur Current routing object
+     * @param maxScale Maximum scale
+     * @param parentDist Distance to parent
+     * @param elems Candidates
+     * @return Root node of subtree
+     */
+    private Node bulkConstruct(DBIDRef cur, int maxScale, double parentDist, ModifiableDoubleDBIDList elems) {
+      final double max = maxDistance(elems);
+      final int scale = Math.min(distToScale(max) - 1, maxScale);
+      final int nextScale = scale - 1;
+      // Leaf node, because points coincide, we are too deep, or have too few
+      // elements remaining:
+      if(max <= 0 || scale <= scaleBottom || elems.size() < truncate) {
+        return new Node(cur, max, parentDist, elems);
+      }
+      // Find neighbors in the cover of the current object:
+      ModifiableDoubleDBIDList candidates = DBIDUtil.newDistanceDBIDList();
+      excludeNotCovered(elems, scaleToDist(scale), candidates);
+      // If no elements were not in the cover, build a compact tree:
+      if(candidates.size() == 0) {
+        return bulkConstruct(cur, nextScale, parentDist, elems);
+      }
+      // We will have at least one other child, so build the parent:
+      Node node = new Node(cur, max, parentDist, null);
+      // Routing element now is a singleton:
+      final boolean curSingleton = elems.size() == 0;
+      if(!curSingleton) {
+        // Add node for the routing object:
+        addChild(node, DBIDUtil.deref(cur), nextScale, 0, elems);
+      }
+      final double fmax = scaleToDist(nextScale);
+      // Build additional cover nodes:
+      for(DoubleDBIDListIter it = candidates.iter(); it.valid();) {
+        assert (it.getOffset() == 0);
+        ModifiableDoubleDBIDList celems = DBIDUtil.newDistanceDBIDList();
+        collectByCover(it, candidates, fmax, celems);
+        if(celems.size() == 0) { // Singleton
+          node.singletons.add(it.doubleValue(), it);
+        }
+        else {
+          // Build a full child node:
+          addChild(node, DBIDUtil.deref(it), nextScale, it.doubleValue(), celems);
+        }
+        candidates.removeSwap(0);
+      }
+      // Routing object is not yet handled:
+      if(curSingleton) {
+        if(node.isLeaf()) {
+          node.children = null; // First in leaf is enough.
+        }
+        else {
+          node.singletons.add(parentDist, cur); // Add as regular singleton.
+        }
+      }
+      return node;
+    }
+
+    /**
+     * Add a child node, either built directly or deferred to a new task.
+     *
+     * @param node Parent node
+     * @param cur Routing object of the child
+     * @param scale Scale of the child
+     * @param parentDist Distance to the parent
+     * @param elems Elements of the child
+     */
+    private void addChild(Node node, DBID cur, int scale, double parentDist, ModifiableDoubleDBIDList elems) {
+      if(elems.size() < PARALLEL_THRESHOLD) {
+        node.children.add(bulkConstruct(cur, scale, parentDist, elems));
+        return;
+      }
+      deferred.add(new BuildTask(node, node.children.size(), cur, scale, parentDist, elems));
+      node.children.add(null); // Placeholder
+    }
+
+    /**
+     * Collect all elements with respect to a new routing object.
+     *
+     * @param cur Routing object
+     * @param candidates Candidate list
+     * @param fmax Maximum distance
+     * @param collect Output list
+     */
+    private void collectByCover(DBIDRef cur, ModifiableDoubleDBIDList candidates, double fmax, ModifiableDoubleDBIDList collect) {
+      DoubleDBIDListIter it = candidates.iter().advance(); // Except first = cur!
+      while(it.valid()) {
+        final double dist = dq.distance(cur, it);
+        ++dists;
+        if(dist <= fmax) { // Collect
+          collect.add(dist, it);
+          candidates.removeSwap(it.getOffset());
+        }
+        else {
+          it.advance(); // Keep in candidates, outside cover radius.
+        }
+      }
+    }
+  }
+
+  @Override
+  public RangeQuery<O> getRangeQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    // Query on the relation we index
+    if(distanceQuery.getRelation() != relation) {
+      return null;
+    }
+    DistanceFunction<? super O> distanceFunction = (DistanceFunction<? super O>) distanceQuery.getDistanceFunction();
+    if(!this.distanceFunction.equals(distanceFunction)) {
+      LOG.debug("Distance function not supported by index - or 'equals' not implemented right!");
+      return null;
+    }
+    DistanceQuery<O> dq = distanceFunction.instantiate(relation);
+    return new CoverTreeRangeQuery(dq);
+  }
+
+  @Override
+  public KNNQuery<O> getKNNQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    // Query on the relation we index
+    if(distanceQuery.getRelation() != relation) {
+      return null;
+    }
+    DistanceFunction<? super O> distanceFunction = (DistanceFunction<? super O>) distanceQuery.getDistanceFunction();
+    if(!this.distanceFunction.equals(distanceFunction)) {
+      LOG.debug("Distance function not supported by index - or 'equals' not implemented right!");
+      return null;
+    }
+    DistanceQuery<O> dq = distanceFunction.instantiate(relation);
+    return new CoverTreeKNNQuery(dq);
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Range query class.
+   *
+   * @author Erich Schubert
+   */
+  public class CoverTreeRangeQuery extends AbstractDistanceRangeQuery<O> implements RangeQuery<O> {
+    /**
+     * Constructor.
+     *
+     * @param distanceQuery Distance query
+     */
+    public CoverTreeRangeQuery(DistanceQuery<O> distanceQuery) {
+      super(distanceQuery);
+    }
+
+    @Override
+    public void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList ret) {
+      if(maxDist == null) {
+        return; // Empty tree
+      }
+      final DBIDArrayIter it = entries.iter();
+      int[] stack = new int[16];
+      int top = 0;
+      stack[top++] = 0; // Root
+      while(top > 0) {
+        final int cur = stack[--top]; // pop()
+        final int start = entryOff[cur], end = entryOff[cur + 1];
+        final double d = distanceQuery.distance(obj, it.seek(start));
+        // Covered area not in range (metric assumption!):
+        if(d - maxDist[cur] > range) {
+          continue;
+        }
+        final int cstart = childOff[cur], cend = childOff[cur + 1];
+        if(cstart < cend) { // Inner node:
+          for(int c = cstart; c < cend; c++) {
+            if(d - maxDist[c] - parentDist[c] <= range) {
+              if(top == stack.length) {
+                stack = Arrays.copyOf(stack, stack.length << 1);
+              }
+              stack[top++] = c;
+            }
+          }
+        }
+        else if(d <= range) { // Leaf node: consider routing object, too.
+          ret.add(d, it);
+        }
+        // For remaining singletons, compute the distances:
+        for(int e = start + 1; e < end; e++) {
+          if(d - entryDist[e] <= range) {
+            final double d2 = distanceQuery.distance(obj, it.seek(e));
+            if(d2 <= range) {
+              ret.add(d2, it);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * KNN Query class.
+   *
+   * @author Erich Schubert
+   */
+  public class CoverTreeKNNQuery extends AbstractDistanceKNNQuery<O> implements KNNQuery<O> {
+    /**
+     * Constructor.
+     *
+     * @param distanceQuery Distance
+     */
+    public CoverTreeKNNQuery(DistanceQuery<O> distanceQuery) {
+      super(distanceQuery);
+    }
+
+    @Override
+    public KNNList getKNNForObject(O obj, int k) {
+      if(k < 1) {
+        throw new IllegalArgumentException("At least one object has to be requested!");
+      }
+      KNNHeap knnList = DBIDUtil.newHeap(k);
+      if(maxDist == null) {
+        return knnList.toKNNList(); // Empty tree
+      }
+      double d_k = Double.POSITIVE_INFINITY;
+      final DoubleIntegerMinHeap pq = new DoubleIntegerMinHeap();
+      final DBIDArrayIter it = entries.iter(), f = entries.iter();
+
+      // Push the root node
+      final double rootdist = distanceQuery.distance(obj, it.seek(0));
+      pq.add(rootdist - maxDist[0], 0);
+
+      // search in tree
+      while(!pq.isEmpty()) {
+        final int cur = pq.peekValue();
+        final double prio = pq.peekKey(); // Minimum distance to cover
+        final double d = prio + maxDist[cur]; // Restore distance to center.
+        pq.poll(); // Remove
+
+        if(knnList.size() >= k && prio > d_k) {
+          continue;
+        }
+        final int start = entryOff[cur], end = entryOff[cur + 1];
+        it.seek(start);
+        final int cstart = childOff[cur], cend = childOff[cur + 1];
+        if(cstart < cend) { // Inner node:
+          for(int c = cstart; c < cend; c++) {
+            if(d - maxDist[c] - parentDist[c] <= d_k) {
+              f.seek(entryOff[c]);
+              final double dist = DBIDUtil.equal(f, it) ? d : distanceQuery.distance(obj, f);
+              final double newprio = dist - maxDist[c]; // Minimum distance
+              if(newprio <= d_k) {
+                pq.add(newprio, c);
+              }
+            }
+          }
+        }
+        else if(d <= d_k) { // Leaf node: consider routing object, too.
+          d_k = knnList.insert(d, it);
+        }
+        // For remaining singletons, compute the distances:
+        for(int e = start + 1; e < end; e++) {
+          if(d - entryDist[e] <= d_k) {
+            final double d2 = distanceQuery.distance(obj, it.seek(e));
+            if(d2 <= d_k) {
+              d_k = knnList.insert(d2, it);
+            }
+          }
+        }
+      }
+      return knnList.toKNNList();
+    }
+  }
+
+  /**
+   * Index factory.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.has ParallelCoverTree
+   *
+   * @param <O> Object type
+   */
+  public static class Factory<O> extends AbstractCoverTree.Factory<O, ParallelCoverTree<O>> {
+    /**
+     * Constructor.
+     *
+     * @param distanceFunction Distance function
+     * @param expansion Expansion rate
+     * @param truncate Truncate branches with less than this number of
+     *        instances.
+     */
+    public Factory(DistanceFunction<? super O> distanceFunction, double expansion, int truncate) {
+      super(distanceFunction, expansion, truncate);
+    }
+
+    @Override
+    public ParallelCoverTree<O> instantiate(Relation<O> relation) {
+      return new ParallelCoverTree<O>(relation, distanceFunction, expansion, truncate);
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    public static class Parameterizer<O> extends AbstractCoverTree.Factory.Parameterizer<O> {
+      @Override
+      protected ParallelCoverTree.Factory<O> makeInstance() {
+        return new ParallelCoverTree.Factory<>(distanceFunction, expansion, truncate);
+      }
+    }
+  }
+}
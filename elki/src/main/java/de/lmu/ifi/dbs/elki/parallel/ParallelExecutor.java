@@ -26,27 +26,70 @@ import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
 import de.lmu.ifi.dbs.elki.parallel.variables.SharedVariable;
 import de.lmu.ifi.dbs.elki.parallel.variables.SharedVariable.Instance;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 
 /**
  * Class to run processors in parallel, on all available cores.
  *
- * TODO: add progress
+ * Two scheduling strategies are available: {@link Scheduling#STATIC} splits
+ * the data into fixed blocks upfront, which has the least overhead when all
+ * objects are equally expensive to process. {@link Scheduling#DYNAMIC} lets
+ * the worker threads claim chunks of decreasing size from a shared cursor
+ * (guided self-scheduling), so that threads that finish early take over the
+ * remaining work instead of waiting for stragglers. This is preferable when
+ * the cost per object is skewed, e.g., kNN queries on clustered data.
+ *
+ * Execution can be cancelled cooperatively by interrupting the calling thread;
+ * the workers will then stop after their current chunk. If any worker fails,
+ * the remaining workers are cancelled, too.
  *
  * @author Erich Schubert
  * @since 0.7.0
  *
  * @apiviz.has BlockArrayRunner
+ * @apiviz.has DynamicArrayRunner
  * @apiviz.uses ParallelCore
  */
 public class ParallelExecutor {
+  /**
+   * Scheduling strategy.
+   *
+   * @author Erich Schubert
+   */
+  public static enum Scheduling {
+    /**
+     * Static partitioning into blocks of equal size.
+     */
+    STATIC,
+    /**
+     * Dynamic partitioning, where workers claim chunks of adaptive size.
+     */
+    DYNAMIC,
+  }
+
+  /**
+   * Minimum chunk size for dynamic scheduling.
+   */
+  private static final int MIN_CHUNK = 16;
+
+  /**
+   * Maximum number of objects processed before checking for cancellation and
+   * reporting progress in static scheduling.
+   */
+  private static final int MAX_STEP = 1024;
+
   /**
    * Run a task on all available CPUs.
    *
@@ -54,107 +97,266 @@ public class ParallelExecutor {
    * @param procs Processors to run
    */
   public static final void run(DBIDs ids, Processor... procs) {
+    run(ids, Scheduling.STATIC, null, null, procs);
+  }
+
+  /**
+   * Run a task on all available CPUs.
+   *
+   * @param ids IDs to process
+   * @param scheduling Scheduling strategy
+   * @param prog Progress to update (may be {@code null})
+   * @param log Logger to report progress to (may be {@code null} if no
+   *        progress is given)
+   * @param procs Processors to run
+   */
+  public static final void run(DBIDs ids, Scheduling scheduling, FiniteProgress prog, Logging log, Processor... procs) {
     ParallelCore core = ParallelCore.getCore();
     core.connect();
+    final AtomicBoolean cancelled = new AtomicBoolean(false);
+    List<Future<ArrayDBIDs>> parts = null;
     try {
-      // TODO: try different strategies anyway!
       ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
-      final int size = aids.size();
-      int numparts = core.getParallelism();
-      // TODO: are there better heuristics for choosing this?
-      numparts = (size > numparts * numparts * 16) ? numparts * Math.max(1, numparts - 1) : numparts;
-
-      final int blocksize = (size + (numparts - 1)) / numparts;
-      List<Future<ArrayDBIDs>> parts = new ArrayList<>(numparts);
-      for(int i = 0; i < numparts; i++) {
-        final int start = i * blocksize;
-        final int end = (start + blocksize < size) ? start + blocksize : size;
-        Callable<ArrayDBIDs> run = new BlockArrayRunner(aids, start, end, procs);
-        parts.add(core.submit(run));
-      }
-
+      parts = scheduling == Scheduling.DYNAMIC ? //
+          submitDynamic(core, aids, cancelled, prog, log, procs) : //
+          submitStatic(core, aids, cancelled, prog, log, procs);
       for(Future<ArrayDBIDs> fut : parts) {
         fut.get();
       }
     }
     catch(ExecutionException e) {
+      cancel(cancelled, parts);
       throw new RuntimeException("Processor execution failed.", e);
     }
     catch(InterruptedException e) {
-      throw new RuntimeException("Parallel execution interrupted.");
+      cancel(cancelled, parts);
+      Thread.currentThread().interrupt();
+      throw new AbortException("Parallel execution interrupted.", e);
     }
     finally {
       core.disconnect();
     }
+    if(prog != null) {
+      prog.ensureCompleted(log);
+    }
   }
 
   /**
-   * Run for an array part, without step size.
+   * Process the integer range 0 to size in parallel, for algorithms that work
+   * on array offsets rather than on DBIDs.
+   *
+   * Workers claim chunks of the given size from a shared cursor.
+   *
+   * @param size Size of the range
+   * @param chunk Number of offsets to claim at once
+   * @param task Task to run
+   */
+  public static final void run(final int size, final int chunk, final RangeTask task) {
+    ParallelCore core = ParallelCore.getCore();
+    final AtomicInteger cursor = new AtomicInteger(0);
+    final int numworkers = Math.max(1, Math.min(core.getParallelism(), (size + chunk - 1) / chunk));
+    core.runWorkers(numworkers, new Callable<Void>() {
+      @Override
+      public Void call() {
+        try {
+          for(int start; (start = cursor.getAndAdd(chunk)) < size;) {
+            task.process(start, Math.min(start + chunk, size));
+          }
+        }
+        catch(RuntimeException | Error e) {
+          cursor.set(size); // Stop the other workers, too.
+          throw e;
+        }
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Submit the workers for static scheduling.
+   *
+   * @param core Executor core
+   * @param aids IDs to process
+   * @param cancelled Cancellation flag
+   * @param prog Progress
+   * @param log Logger for progress
+   * @param procs Processors to run
+   * @return Futures
+   */
+  private static List<Future<ArrayDBIDs>> submitStatic(ParallelCore core, ArrayDBIDs aids, AtomicBoolean cancelled, FiniteProgress prog, Logging log, Processor[] procs) {
+    final int size = aids.size();
+    int numparts = core.getParallelism();
+    // TODO: are there better heuristics for choosing this?
+    numparts = (size > numparts * numparts * 16) ? numparts * Math.max(1, numparts - 1) : numparts;
+
+    final int blocksize = (size + (numparts - 1)) / numparts;
+    List<Future<ArrayDBIDs>> parts = new ArrayList<>(numparts);
+    for(int i = 0; i < numparts; i++) {
+      final int start = i * blocksize;
+      final int end = (start + blocksize < size) ? start + blocksize : size;
+      if(start >= end) {
+        break;
+      }
+      Callable<ArrayDBIDs> run = new BlockArrayRunner(aids, start, end, procs, cancelled, prog, log);
+      parts.add(core.submit(run));
+    }
+    return parts;
+  }
+
+  /**
+   * Submit the workers for dynamic scheduling.
+   *
+   * @param core Executor core
+   * @param aids IDs to process
+   * @param cancelled Cancellation flag
+   * @param prog Progress
+   * @param log Logger for progress
+   * @param procs Processors to run
+   * @return Futures
+   */
+  private static List<Future<ArrayDBIDs>> submitDynamic(ParallelCore core, ArrayDBIDs aids, AtomicBoolean cancelled, FiniteProgress prog, Logging log, Processor[] procs) {
+    final int size = aids.size();
+    final int numworkers = Math.max(1, Math.min(core.getParallelism(), (size + MIN_CHUNK - 1) / MIN_CHUNK));
+    // Guided self-scheduling: chunks shrink as the remaining work decreases.
+    final int divisor = numworkers << 1;
+    AtomicInteger cursor = new AtomicInteger(0);
+    List<Future<ArrayDBIDs>> parts = new ArrayList<>(numworkers);
+    for(int i = 0; i < numworkers; i++) {
+      Callable<ArrayDBIDs> run = new DynamicArrayRunner(aids, cursor, divisor, procs, cancelled, prog, log);
+      parts.add(core.submit(run));
+    }
+    return parts;
+  }
+
+  /**
+   * Cancel all remaining workers.
+   *
+   * @param cancelled Cancellation flag
+   * @param parts Futures (may be {@code null})
+   */
+  private static void cancel(AtomicBoolean cancelled, List<Future<ArrayDBIDs>> parts) {
+    cancelled.set(true);
+    if(parts != null) {
+      for(Future<ArrayDBIDs> fut : parts) {
+        fut.cancel(true);
+      }
+    }
+  }
+
+  /**
+   * Base class for the workers, that processes ranges of an array.
    *
    * @author Erich Schubert
    *
    * @apiviz.uses Processor
    */
-  protected static class BlockArrayRunner implements Callable<ArrayDBIDs>, Executor {
+  protected abstract static class AbstractArrayRunner implements Callable<ArrayDBIDs>, Executor {
     /**
      * Array IDs to process
      */
-    private ArrayDBIDs ids;
+    protected ArrayDBIDs ids;
 
     /**
-     * Start position
+     * The processor masters that own the instances.
      */
-    private int start;
+    private Processor[] procs;
 
     /**
-     * End position
+     * Cancellation flag, shared by all workers.
      */
-    private int end;
+    private AtomicBoolean cancelled;
 
     /**
-     * The processor masters that own the instances.
+     * Progress (may be {@code null}).
      */
-    private Processor[] procs;
+    private FiniteProgress prog;
+
+    /**
+     * Logger for reporting progress.
+     */
+    private Logging log;
 
     /**
      * Variables map.
      */
     private HashMap<SharedVariable<?>, SharedVariable.Instance<?>> variables = new HashMap<>();
 
+    /**
+     * Processor instances of this worker.
+     */
+    private Processor.Instance[] instances;
+
     /**
      * Constructor.
      *
      * @param ids IDs to process
-     * @param start Starting position
-     * @param end End position
      * @param procs Processors to run
+     * @param cancelled Cancellation flag
+     * @param prog Progress
+     * @param log Logger for progress
      */
-    protected BlockArrayRunner(ArrayDBIDs ids, int start, int end, Processor[] procs) {
+    protected AbstractArrayRunner(ArrayDBIDs ids, Processor[] procs, AtomicBoolean cancelled, FiniteProgress prog, Logging log) {
       super();
       this.ids = ids;
-      this.start = start;
-      this.end = end;
       this.procs = procs;
+      this.cancelled = cancelled;
+      this.prog = prog;
+      this.log = log;
     }
 
     @Override
     public ArrayDBIDs call() {
-      Processor.Instance[] instances = new Processor.Instance[procs.length];
+      instances = new Processor.Instance[procs.length];
       for(int i = 0; i < procs.length; i++) {
         instances[i] = procs[i].instantiate(this);
       }
+      try {
+        process();
+      }
+      catch(RuntimeException | Error e) {
+        cancelled.set(true);
+        throw e;
+      }
+      if(isCancelled()) {
+        return ids;
+      }
+      for(int i = 0; i < instances.length; i++) {
+        procs[i].cleanup(instances[i]);
+      }
+      return ids;
+    }
 
-      DBIDArrayIter iter = ids.iter();
-      iter.seek(start);
-      for(int c = end - start; iter.valid() && c >= 0; iter.advance(), c--) {
+    /**
+     * Process the assigned objects, using {@link #processRange}.
+     */
+    protected abstract void process();
+
+    /**
+     * Process a range of the array.
+     *
+     * @param iter Iterator to use
+     * @param start Start position
+     * @param end End position (exclusive)
+     */
+    protected void processRange(DBIDArrayIter iter, int start, int end) {
+      final Processor.Instance[] instances = this.instances;
+      for(iter.seek(start); iter.getOffset() < end; iter.advance()) {
         for(int i = 0; i < instances.length; i++) {
           instances[i].map(iter);
         }
       }
-      for(int i = 0; i < instances.length; i++) {
-        procs[i].cleanup(instances[i]);
+      if(prog != null) {
+        prog.incrementProcessed(end - start, log);
       }
-      return ids;
+    }
+
+    /**
+     * Test if the execution was cancelled, or the thread was interrupted.
+     *
+     * @return {@code true} if the worker should stop.
+     */
+    protected boolean isCancelled() {
+      return cancelled.get() || Thread.currentThread().isInterrupted();
     }
 
     @Override
@@ -168,4 +370,112 @@ public class ParallelExecutor {
       return inst;
     }
   }
+
+  /**
+   * Run for an array part, without step size.
+   *
+   * @author Erich Schubert
+   */
+  protected static class BlockArrayRunner extends AbstractArrayRunner {
+    /**
+     * Start position
+     */
+    private int start;
+
+    /**
+     * End position
+     */
+    private int end;
+
+    /**
+     * Constructor.
+     *
+     * @param ids IDs to process
+     * @param start Starting position
+     * @param end End position
+     * @param procs Processors to run
+     * @param cancelled Cancellation flag
+     * @param prog Progress
+     * @param log Logger for progress
+     */
+    protected BlockArrayRunner(ArrayDBIDs ids, int start, int end, Processor[] procs, AtomicBoolean cancelled, FiniteProgress prog, Logging log) {
+      super(ids, procs, cancelled, prog, log);
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void process() {
+      DBIDArrayIter iter = ids.iter();
+      for(int pos = start; pos < end && !isCancelled(); pos += MAX_STEP) {
+        processRange(iter, pos, Math.min(pos + MAX_STEP, end));
+      }
+    }
+  }
+
+  /**
+   * Worker that claims chunks of adaptive size from a shared cursor.
+   *
+   * @author Erich Schubert
+   */
+  protected static class DynamicArrayRunner extends AbstractArrayRunner {
+    /**
+     * Shared cursor: next position to process.
+     */
+    private AtomicInteger cursor;
+
+    /**
+     * Divisor for computing the chunk size from the remaining work.
+     */
+    private int divisor;
+
+    /**
+     * Constructor.
+     *
+     * @param ids IDs to process
+     * @param cursor Shared cursor
+     * @param divisor Divisor for the chunk size
+     * @param procs Processors to run
+     * @param cancelled Cancellation flag
+     * @param prog Progress
+     * @param log Logger for progress
+     */
+    protected DynamicArrayRunner(ArrayDBIDs ids, AtomicInteger cursor, int divisor, Processor[] procs, AtomicBoolean cancelled, FiniteProgress prog, Logging log) {
+      super(ids, procs, cancelled, prog, log);
+      this.cursor = cursor;
+      this.divisor = divisor;
+    }
+
+    @Override
+    protected void process() {
+      final int size = ids.size();
+      DBIDArrayIter iter = ids.iter();
+      while(!isCancelled()) {
+        final int start = cursor.get();
+        if(start >= size) {
+          return;
+        }
+        final int chunk = Math.max(MIN_CHUNK, (size - start) / divisor);
+        final int end = (chunk < size - start) ? start + chunk : size;
+        if(cursor.compareAndSet(start, end)) {
+          processRange(iter, start, end);
+        }
+      }
+    }
+  }
+
+  /**
+   * Task processing a range of array offsets.
+   *
+   * @author Erich Schubert
+   */
+  public static interface RangeTask {
+    /**
+     * Process the offsets start (inclusive) to end (exclusive).
+     *
+     * @param start First offset
+     * @param end End of range
+     */
+    void process(int start, int end);
+  }
 }
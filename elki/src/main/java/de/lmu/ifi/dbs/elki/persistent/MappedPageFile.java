@@ -0,0 +1,369 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferObjectInput;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferObjectOutput;
+
+/**
+ * A page file that maps the index file into memory, and reads and writes the
+ * fixed-size pages in place, without copying them into temporary arrays or
+ * using object streams.
+ *
+ * The file layout (header, reserved pages, list of empty pages) is the same as
+ * used by {@link PersistentPageFile}, so an index file can be closed and
+ * reopened across runs. The encoding of the pages however differs, as no
+ * object stream headers are written.
+ *
+ * The file is mapped in chunks of at most 1 GB, to support files larger than
+ * 2 GB. Reading pages is thread safe, but writing is not.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf PageHeader
+ * @apiviz.composedOf MappedByteBuffer
+ *
+ * @param <P> Page type
+ */
+public class MappedPageFile<P extends ExternalizablePage> extends AbstractStoringPageFile<P> {
+  /**
+   * Our logger
+   */
+  private static final Logging LOG = Logging.getLogger(MappedPageFile.class);
+
+  /**
+   * Indicates an empty page.
+   */
+  private static final int EMPTY_PAGE = 0;
+
+  /**
+   * Indicates a filled page.
+   */
+  private static final int FILLED_PAGE = 1;
+
+  /**
+   * Maximum size of a single mapped chunk.
+   */
+  private static final int MAX_CHUNK_BYTES = 1 << 30;
+
+  /**
+   * Minimum number of pages to map.
+   */
+  private static final int MIN_CAPACITY = 16;
+
+  /**
+   * The file storing the pages.
+   */
+  private final RandomAccessFile file;
+
+  /**
+   * The header of this page file.
+   */
+  protected PageHeader header;
+
+  /**
+   * The type of pages we use.
+   */
+  protected final Class<P> pageclass;
+
+  /**
+   * Whether we are initializing from an existing file.
+   */
+  private boolean existed;
+
+  /**
+   * Number of pages in each (but the last) chunk.
+   */
+  private int pagesPerChunk;
+
+  /**
+   * Mapped chunks of the page area.
+   */
+  private volatile MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+
+  /**
+   * Number of pages currently mapped.
+   */
+  private volatile int capacity = 0;
+
+  /**
+   * Constructor.
+   *
+   * @param pageSize the page size
+   * @param fileName the file name
+   * @param pageclass the class of pages to be used
+   */
+  public MappedPageFile(int pageSize, String fileName, Class<P> pageclass) {
+    super(pageSize);
+    this.pageclass = pageclass;
+    File f = new File(fileName);
+    existed = f.exists();
+    try {
+      file = new RandomAccessFile(f, "rw");
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error in loading mapped page file.", e);
+    }
+  }
+
+  /**
+   * Get a view of the buffer for a single page.
+   *
+   * @param pageID Page id
+   * @return Buffer, or {@code null} if beyond the mapped area.
+   */
+  private ByteBuffer pageBuffer(int pageID) {
+    final MappedByteBuffer[] chunks = this.chunks;
+    final int c = pageID / pagesPerChunk;
+    if(pageID < 0 || c >= chunks.length) {
+      return null;
+    }
+    final int off = (pageID - c * pagesPerChunk) * pageSize;
+    if(off + pageSize > chunks[c].capacity()) {
+      return null;
+    }
+    // Duplicate, so that concurrent readers do not share the position.
+    ByteBuffer buf = chunks[c].duplicate();
+    buf.limit(off + pageSize).position(off);
+    return buf;
+  }
+
+  /**
+   * Ensure that a number of pages is mapped.
+   *
+   * @param pages Number of pages required
+   * @throws IOException on errors mapping the file
+   */
+  private synchronized void ensureCapacity(int pages) throws IOException {
+    if(pages <= capacity) {
+      return;
+    }
+    // Grow by 50%, to avoid remapping too often.
+    final int newcap = Math.max(Math.max(pages, MIN_CAPACITY), capacity + (capacity >>> 1));
+    final int nchunks = (newcap + pagesPerChunk - 1) / pagesPerChunk;
+    MappedByteBuffer[] oldchunks = this.chunks;
+    MappedByteBuffer[] newchunks = new MappedByteBuffer[nchunks];
+    final FileChannel channel = file.getChannel();
+    for(int c = 0; c < nchunks; c++) {
+      final long bytes = (long) Math.min(pagesPerChunk, newcap - c * pagesPerChunk) * pageSize;
+      if(c < oldchunks.length && oldchunks[c].capacity() == bytes) {
+        newchunks[c] = oldchunks[c];
+        continue;
+      }
+      // Do not unmap the old chunk, it may still be in use by readers.
+      newchunks[c] = channel.map(MapMode.READ_WRITE, offset(c * pagesPerChunk), bytes);
+    }
+    this.chunks = newchunks;
+    this.capacity = newcap;
+  }
+
+  /**
+   * Unmap all chunks.
+   */
+  private synchronized void unmap() {
+    for(MappedByteBuffer chunk : chunks) {
+      ByteArrayUtil.unmapByteBuffer(chunk);
+    }
+    chunks = new MappedByteBuffer[0];
+    capacity = 0;
+  }
+
+  /**
+   * File offset of a page.
+   *
+   * @param pageID Page id
+   * @return File offset
+   */
+  private long offset(int pageID) {
+    return ((long) (header.getReservedPages() + pageID)) * (long) pageSize;
+  }
+
+  @Override
+  public P readPage(int pageID) {
+    countRead();
+    ByteBuffer buf = pageBuffer(pageID);
+    if(buf == null) {
+      return null;
+    }
+    try {
+      ByteBufferObjectInput in = new ByteBufferObjectInput(buf);
+      int type = in.readInt();
+      if(type == EMPTY_PAGE) {
+        return null;
+      }
+      if(type != FILLED_PAGE) {
+        throw new IllegalArgumentException("Unknown type: " + type);
+      }
+      P page = pageclass.newInstance();
+      page.readExternal(in);
+      return page;
+    }
+    catch(InstantiationException | IllegalAccessException | ClassNotFoundException e) {
+      throw new AbortException("Error instanciating an index page", e);
+    }
+    catch(IOException e) {
+      throw new RuntimeException("IOException occurred during reading of page " + pageID + "\n", e);
+    }
+  }
+
+  @Override
+  public void deletePage(int pageID) {
+    // put id to empty pages list
+    super.deletePage(pageID);
+    countWrite();
+    ByteBuffer buf = pageBuffer(pageID);
+    if(buf != null) {
+      buf.putInt(EMPTY_PAGE);
+    }
+  }
+
+  @Override
+  public void writePage(int pageID, P page) {
+    try {
+      countWrite();
+      ensureCapacity(pageID + 1);
+      ByteBuffer buf = pageBuffer(pageID);
+      ByteBufferObjectOutput out = new ByteBufferObjectOutput(buf);
+      out.writeInt(FILLED_PAGE);
+      page.writeExternal(out);
+      page.setDirty(false);
+    }
+    catch(IOException e) {
+      throw new IllegalArgumentException("Error writing page " + page + ", maybe greater than the page size " + pageSize + "?", e);
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      // Do not call super.close(), which would clear the file.
+      unmap();
+      file.setLength(offset(nextPageID));
+      if(header instanceof TreeIndexHeader) {
+        TreeIndexHeader tiHeader = (TreeIndexHeader) header;
+        // write the list of empty pages to the end of the file
+        tiHeader.writeEmptyPages(emptyPages, file);
+        tiHeader.setLargestPageID(nextPageID);
+      }
+      header.writeHeader(file);
+      file.close();
+    }
+    catch(IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void clear() {
+    try {
+      unmap();
+      file.setLength(offset(0));
+    }
+    catch(IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Set the next page id to the given value. If this means that any page ids
+   * stored in <code>emptyPages</code> are smaller than
+   * <code>next_page_id</code>, they are removed from this file's observation
+   * stack.
+   *
+   * @param next_page_id the id of the next page to be inserted (if there are no
+   *        more empty pages to be filled)
+   */
+  @Override
+  public void setNextPageID(int next_page_id) {
+    this.nextPageID = next_page_id;
+    while(!emptyPages.isEmpty() && emptyPages.peek() >= this.nextPageID) {
+      emptyPages.pop();
+    }
+  }
+
+  @Override
+  public boolean initialize(PageHeader header) {
+    this.header = header;
+    this.pagesPerChunk = Math.max(1, MAX_CHUNK_BYTES / pageSize);
+    try {
+      if(existed) {
+        LOG.debug("Initializing from an existing page file.");
+        header.readHeader(file);
+        if(header instanceof TreeIndexHeader) {
+          TreeIndexHeader tiHeader = (TreeIndexHeader) header;
+          nextPageID = tiHeader.getLargestPageID();
+          try {
+            emptyPages = tiHeader.readEmptyPages(file);
+          }
+          catch(ClassNotFoundException e) {
+            throw new RuntimeException("ClassNotFoundException occurred when reading empty pages.", e);
+          }
+          // Remove the list of empty pages, it will be rewritten on close.
+          file.setLength(offset(nextPageID));
+          ensureCapacity(nextPageID);
+        }
+        else { // must scan complete file
+          final int numpages = (int) (file.length() / pageSize - header.getReservedPages());
+          ensureCapacity(numpages);
+          for(int i = 0; i < numpages; i++) {
+            int type = pageBuffer(i).getInt();
+            if(type == EMPTY_PAGE) {
+              emptyPages.push(i);
+            }
+            else if(type == FILLED_PAGE) {
+              nextPageID = i + 1;
+            }
+            else {
+              throw new IllegalArgumentException("Unknown type: " + type);
+            }
+          }
+          setNextPageID(nextPageID);
+        }
+      }
+      else {
+        LOG.debug("Initializing with a new page file.");
+        header.writeHeader(file);
+      }
+    }
+    catch(IOException e) {
+      throw new RuntimeException("IOException occurred.", e);
+    }
+    return existed;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+}
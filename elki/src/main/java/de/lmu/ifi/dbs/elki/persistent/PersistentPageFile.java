@@ -27,6 +27,8 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
 import de.lmu.ifi.dbs.elki.logging.Logging;
@@ -115,8 +117,15 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
       countRead();
       long offset = ((long) (header.getReservedPages() + pageID)) * (long) pageSize;
       byte[] buffer = new byte[pageSize];
-      file.seek(offset);
-      file.read(buffer);
+      // Positional reads do not move the file pointer, so that concurrent
+      // readers do not interfere with each other.
+      ByteBuffer buf = ByteBuffer.wrap(buffer);
+      FileChannel channel = file.getChannel();
+      while(buf.hasRemaining()) {
+        if(channel.read(buf, offset + buf.position()) < 0) {
+          break;
+        }
+      }
       return byteArrayToPage(buffer);
     }
     catch(IOException e) {
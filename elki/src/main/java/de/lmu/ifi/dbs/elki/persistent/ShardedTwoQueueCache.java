@@ -0,0 +1,447 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.AtomicLongCounter;
+import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * A page cache for concurrent access, split into independently locked shards.
+ * Within each shard, the simplified 2Q replacement policy is used: pages that
+ * are accessed only once (e.g., during a scan) go to a small FIFO queue and do
+ * not displace the frequently used pages held in the main LRU queue. Only the
+ * identifiers of pages evicted from the FIFO are remembered; a page that is
+ * requested again after being evicted from the FIFO is promoted to the main
+ * queue.
+ *
+ * Accesses to the underlying page file are serialized, as the page files are
+ * not thread safe; but cache hits only lock the shard of the page. Locks are
+ * always acquired in the order shard, then file; a miss holds the shard lock
+ * while loading the page, so it cannot overwrite a newer version.
+ *
+ * Reference:
+ * <p>
+ * T. Johnson, D. Shasha<br />
+ * 2Q: A Low Overhead High Performance Buffer Management Replacement
+ * Algorithm<br />
+ * Proc. 20th Int. Conf. on Very Large Data Bases (VLDB 1994)
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses PageFile
+ * @apiviz.composedOf Shard
+ *
+ * @param <P> Page type
+ */
+public class ShardedTwoQueueCache<P extends Page> extends AbstractPageFile<P> {
+  /**
+   * Our class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ShardedTwoQueueCache.class);
+
+  /**
+   * Minimum number of pages per shard.
+   */
+  private static final int MIN_SHARD_SIZE = 16;
+
+  /**
+   * Cache size in bytes.
+   */
+  protected int cacheSizeBytes;
+
+  /**
+   * Maximum number of shards.
+   */
+  protected int maxShards;
+
+  /**
+   * The cache shards.
+   */
+  private Shard<P>[] shards;
+
+  /**
+   * Number of bits to shift the page hash for selecting the shard.
+   */
+  private int shift;
+
+  /**
+   * The underlying file of this cache. Also used for synchronization.
+   */
+  protected PageFile<P> file;
+
+  /**
+   * Statistics: cache hits, misses and evictions.
+   */
+  private Counter hits, misses, evictions;
+
+  /**
+   * Constructor.
+   *
+   * @param cacheSizeBytes the maximum number of bytes for this cache
+   * @param maxShards maximum number of shards (will be rounded down to a power
+   *        of two)
+   * @param file the underlying file of this cache, if a page is dropped it is
+   *        written to the file
+   */
+  public ShardedTwoQueueCache(int cacheSizeBytes, int maxShards, PageFile<P> file) {
+    super();
+    this.file = file;
+    this.cacheSizeBytes = cacheSizeBytes;
+    this.maxShards = maxShards;
+    final String prefix = this.getClass().getName();
+    this.hits = LOG.isStatistics() ? new AtomicLongCounter(prefix + ".hits") : null;
+    this.misses = LOG.isStatistics() ? new AtomicLongCounter(prefix + ".misses") : null;
+    this.evictions = LOG.isStatistics() ? new AtomicLongCounter(prefix + ".evictions") : null;
+  }
+
+  /**
+   * Get the shard responsible for a page.
+   *
+   * @param pageID Page id
+   * @return Shard
+   */
+  private Shard<P> shard(int pageID) {
+    // Fibonacci hashing, as page ids are usually consecutive.
+    return shards[shift < 32 ? (pageID * 0x9E3779B9) >>> shift : 0];
+  }
+
+  @Override
+  public P readPage(int pageID) {
+    countRead();
+    final Shard<P> shard = shard(pageID);
+    // The shard lock is held while loading, so that a concurrent write (and
+    // eviction) of the same page cannot be overwritten with the stale page.
+    synchronized(shard) {
+      P page = shard.get(pageID);
+      if(page != null) {
+        increment(hits);
+        return page;
+      }
+      increment(misses);
+      synchronized(file) {
+        page = file.readPage(pageID);
+      }
+      if(page != null) {
+        shard.put(pageID, page);
+        evict(shard);
+      }
+      return page;
+    }
+  }
+
+  @Override
+  protected void writePage(int pageID, P page) {
+    countWrite();
+    page.setDirty(true);
+    final Shard<P> shard = shard(pageID);
+    synchronized(shard) {
+      shard.put(pageID, page);
+      evict(shard);
+    }
+  }
+
+  @Override
+  public void deletePage(int pageID) {
+    countWrite();
+    final Shard<P> shard = shard(pageID);
+    // Hold the shard lock, so that the page cannot be reloaded meanwhile.
+    synchronized(shard) {
+      shard.remove(pageID);
+      synchronized(file) {
+        file.deletePage(pageID);
+      }
+    }
+  }
+
+  /**
+   * Evict pages from a shard until it is within its capacity. The caller must
+   * hold the shard lock.
+   *
+   * @param shard Shard
+   */
+  private void evict(Shard<P> shard) {
+    P page;
+    while((page = shard.evict()) != null) {
+      increment(evictions);
+      expirePage(page);
+    }
+  }
+
+  /**
+   * Write page through to disk.
+   *
+   * @param page page
+   */
+  protected void expirePage(P page) {
+    if(page.isDirty()) {
+      if(LOG.isDebuggingFine()) {
+        LOG.debugFine("Write to backing:" + page.getPageID());
+      }
+      synchronized(file) {
+        file.writePage(page);
+      }
+    }
+  }
+
+  /**
+   * Increment a counter, unless {@code null}.
+   *
+   * @param c Counter
+   */
+  private static void increment(Counter c) {
+    if(c != null) {
+      c.increment();
+    }
+  }
+
+  @Override
+  public int setPageID(P page) {
+    synchronized(file) {
+      return file.setPageID(page);
+    }
+  }
+
+  @Override
+  public int getNextPageID() {
+    synchronized(file) {
+      return file.getNextPageID();
+    }
+  }
+
+  @Override
+  public void setNextPageID(int nextPageID) {
+    synchronized(file) {
+      file.setNextPageID(nextPageID);
+    }
+  }
+
+  @Override
+  public int getPageSize() {
+    return file.getPageSize();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public boolean initialize(PageHeader header) {
+    boolean created = file.initialize(header);
+    final int cacheSize = cacheSizeBytes / header.getPageSize();
+    if(cacheSize <= 0) {
+      throw new AbortException("Invalid cache size: " + cacheSizeBytes + " / " + header.getPageSize() + " = " + cacheSize);
+    }
+    int bits = 0;
+    while(bits < 30 && (2 << bits) <= maxShards && (cacheSize >>> (bits + 1)) >= MIN_SHARD_SIZE) {
+      bits++;
+    }
+    final int numshards = 1 << bits;
+    this.shift = 32 - bits;
+    this.shards = (Shard<P>[]) new Shard<?>[numshards];
+    for(int i = 0; i < numshards; i++) {
+      // Distribute the remainder over the first shards.
+      shards[i] = new Shard<>(cacheSize / numshards + (i < cacheSize % numshards ? 1 : 0));
+    }
+    if(LOG.isDebugging()) {
+      LOG.debug("2Q cache size is " + cacheSize + " pages in " + numshards + " shards.");
+    }
+    return created;
+  }
+
+  @Override
+  public void close() {
+    flush();
+    file.close();
+  }
+
+  /**
+   * Flushes this caches by writing any entry to the underlying file.
+   */
+  public void flush() {
+    for(Shard<P> shard : shards) {
+      synchronized(shard) {
+        for(P page : shard.in.values()) {
+          expirePage(page);
+        }
+        for(P page : shard.main.values()) {
+          expirePage(page);
+        }
+        shard.clear();
+      }
+    }
+  }
+
+  @Override
+  public void clear() {
+    for(Shard<P> shard : shards) {
+      synchronized(shard) {
+        shard.clear();
+      }
+    }
+  }
+
+  @Override
+  public void logStatistics() {
+    super.logStatistics();
+    if(hits != null) {
+      LOG.statistics(hits);
+      LOG.statistics(misses);
+      LOG.statistics(evictions);
+    }
+    file.logStatistics();
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * A single shard of the cache, using the simplified 2Q policy.
+   *
+   * This class is not thread safe; the owner must synchronize on the shard.
+   *
+   * @author Erich Schubert
+   *
+   * @param <P> Page type
+   */
+  static class Shard<P extends Page> {
+    /**
+     * Pages seen once, in FIFO order ("A1in").
+     */
+    LinkedHashMap<Integer, P> in;
+
+    /**
+     * Frequently used pages, in LRU order ("Am").
+     */
+    LinkedHashMap<Integer, P> main;
+
+    /**
+     * Ids of pages recently evicted from the FIFO ("A1out").
+     */
+    LinkedHashSet<Integer> ghosts;
+
+    /**
+     * Capacity of the shard, size of the FIFO and of the ghost list.
+     */
+    int capacity, inSize, ghostSize;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity Number of pages in this shard
+     */
+    Shard(int capacity) {
+      this.capacity = capacity;
+      // Parameters as recommended in the 2Q paper.
+      this.inSize = Math.max(1, capacity >>> 2);
+      this.ghostSize = Math.max(1, capacity >>> 1);
+      this.in = new LinkedHashMap<>();
+      this.main = new LinkedHashMap<>(16, 0.75f, true);
+      this.ghosts = new LinkedHashSet<>();
+    }
+
+    /**
+     * Get a page from the shard.
+     *
+     * @param pageID Page id
+     * @return Page, or {@code null}
+     */
+    P get(int pageID) {
+      P page = main.get(pageID);
+      return page != null ? page : in.get(pageID);
+    }
+
+    /**
+     * Add or replace a page.
+     *
+     * @param pageID Page id
+     * @param page Page
+     */
+    void put(int pageID, P page) {
+      if(main.containsKey(pageID)) {
+        main.put(pageID, page);
+      }
+      else if(in.containsKey(pageID)) {
+        in.put(pageID, page);
+      }
+      else if(ghosts.remove(pageID)) {
+        main.put(pageID, page);
+      }
+      else {
+        in.put(pageID, page);
+      }
+    }
+
+    /**
+     * Remove a page.
+     *
+     * @param pageID Page id
+     */
+    void remove(int pageID) {
+      if(main.remove(pageID) == null && in.remove(pageID) == null) {
+        ghosts.remove(pageID);
+      }
+    }
+
+    /**
+     * Remove a page if the shard exceeds its capacity.
+     *
+     * @return Evicted page, or {@code null}
+     */
+    P evict() {
+      if(in.size() + main.size() <= capacity) {
+        return null;
+      }
+      if(in.size() > inSize || main.isEmpty()) {
+        Iterator<Map.Entry<Integer, P>> it = in.entrySet().iterator();
+        Map.Entry<Integer, P> eldest = it.next();
+        it.remove();
+        ghosts.add(eldest.getKey());
+        if(ghosts.size() > ghostSize) {
+          Iterator<Integer> git = ghosts.iterator();
+          git.next();
+          git.remove();
+        }
+        return eldest.getValue();
+      }
+      Iterator<P> it = main.values().iterator();
+      P page = it.next();
+      it.remove();
+      return page;
+    }
+
+    /**
+     * Clear the shard.
+     */
+    void clear() {
+      in.clear();
+      main.clear();
+      ghosts.clear();
+    }
+  }
+}
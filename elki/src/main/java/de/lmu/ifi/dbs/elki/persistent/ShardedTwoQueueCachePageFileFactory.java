@@ -0,0 +1,144 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Page file factory for a sharded, scan resistant page cache, that can be
+ * accessed by multiple threads concurrently.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has ShardedTwoQueueCache
+ * @apiviz.composedOf PageFileFactory
+ *
+ * @param <P> Page type
+ */
+public class ShardedTwoQueueCachePageFileFactory<P extends Page> implements PageFileFactory<P> {
+  /**
+   * Inner page file factory.
+   */
+  private PageFileFactory<P> pageFileFactory;
+
+  /**
+   * Cache size, in bytes.
+   */
+  private int cacheSize;
+
+  /**
+   * Maximum number of shards.
+   */
+  private int shards;
+
+  /**
+   * Constructor.
+   *
+   * @param pageFileFactory Inner page file
+   * @param cacheSize Size of cache, in bytes.
+   * @param shards Maximum number of shards
+   */
+  public ShardedTwoQueueCachePageFileFactory(PageFileFactory<P> pageFileFactory, int cacheSize, int shards) {
+    super();
+    this.pageFileFactory = pageFileFactory;
+    this.cacheSize = cacheSize;
+    this.shards = shards;
+  }
+
+  @Override
+  public PageFile<P> newPageFile(Class<P> cls) {
+    PageFile<P> inner = pageFileFactory.newPageFile(cls);
+    return new ShardedTwoQueueCache<>(cacheSize, shards, inner);
+  }
+
+  @Override
+  public int getPageSize() {
+    return pageFileFactory.getPageSize();
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractParameterizer {
+    /**
+     * Parameter to specify the maximum number of shards of the cache.
+     * <p>
+     * Default value: 4 times the number of processors
+     * </p>
+     * <p>
+     * Key: {@code -pagefile.shards}
+     * </p>
+     */
+    public static final OptionID SHARDS_ID = new OptionID("pagefile.shards", "The maximum number of independently locked cache shards.");
+
+    /**
+     * Inner page file factory.
+     */
+    PageFileFactory<Page> pageFileFactory;
+
+    /**
+     * Cache size, in bytes.
+     */
+    protected int cacheSize;
+
+    /**
+     * Maximum number of shards.
+     */
+    protected int shards;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      ObjectParameter<PageFileFactory<Page>> pffP = new ObjectParameter<>(LRUCachePageFileFactory.Parameterizer.PAGEFILE_ID, PageFileFactory.class, PersistentPageFileFactory.class);
+      if(config.grab(pffP)) {
+        pageFileFactory = pffP.instantiateClass(config);
+      }
+
+      IntParameter cacheSizeP = new IntParameter(LRUCachePageFileFactory.Parameterizer.CACHE_SIZE_ID);
+      cacheSizeP.addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT);
+      if(config.grab(cacheSizeP)) {
+        cacheSize = cacheSizeP.getValue();
+      }
+
+      IntParameter shardsP = new IntParameter(SHARDS_ID, 4 * ParallelCore.ALL_PROCESSORS);
+      shardsP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(shardsP)) {
+        shards = shardsP.getValue();
+      }
+    }
+
+    @Override
+    protected ShardedTwoQueueCachePageFileFactory<Page> makeInstance() {
+      return new ShardedTwoQueueCachePageFileFactory<>(pageFileFactory, cacheSize, shards);
+    }
+  }
+}
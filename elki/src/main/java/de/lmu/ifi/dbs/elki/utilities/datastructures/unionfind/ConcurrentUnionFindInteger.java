@@ -0,0 +1,143 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.utilities.datastructures.unionfind;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+
+/**
+ * Lock-free union-find for primitive integers 0 to size-1, that can be used
+ * concurrently from multiple threads.
+ *
+ * Components are always linked by index, i.e., the root with the larger index
+ * is attached to the root with the smaller index using a compare-and-set
+ * operation. This cannot produce cycles, and the representative of each
+ * component is its smallest element. Finds use path-halving, where the
+ * shortcuts are also installed with compare-and-set.
+ *
+ * Reference:
+ * <p>
+ * R. J. Anderson and H. Woll<br />
+ * Wait-free parallel algorithms for the union-find problem<br />
+ * Proc. 23rd Annual ACM Symposium on Theory of Computing
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@Reference(authors = "R. J. Anderson and H. Woll", //
+    title = "Wait-free parallel algorithms for the union-find problem", //
+    booktitle = "Proc. 23rd Annual ACM Symposium on Theory of Computing", //
+    url = "http://dx.doi.org/10.1145/103418.103458")
+public class ConcurrentUnionFindInteger {
+  /**
+   * Parent element
+   */
+  private final AtomicIntegerArray parent;
+
+  /**
+   * Constructor.
+   *
+   * @param size Number of elements
+   */
+  public ConcurrentUnionFindInteger(int size) {
+    parent = new AtomicIntegerArray(size);
+    for(int i = 0; i < size; i++) {
+      parent.lazySet(i, i);
+    }
+  }
+
+  /**
+   * Find the representative of an element.
+   *
+   * @param cur Current entry
+   * @return Representative (smallest element of the component)
+   */
+  public int find(int cur) {
+    while(true) {
+      final int p = parent.get(cur);
+      if(p == cur) {
+        return cur;
+      }
+      final int gp = parent.get(p);
+      if(p != gp) {
+        parent.compareAndSet(cur, p, gp); // Path halving, may fail.
+      }
+      cur = gp;
+    }
+  }
+
+  /**
+   * Join the components of two elements.
+   *
+   * @param first First element
+   * @param second Second element
+   * @return Component id.
+   */
+  public int union(int first, int second) {
+    while(true) {
+      int a = find(first), b = find(second);
+      if(a == b) {
+        return a;
+      }
+      if(a < b) {
+        final int tmp = a;
+        a = b;
+        b = tmp;
+      }
+      // Attach the larger root a to b, unless a was linked concurrently.
+      if(parent.compareAndSet(a, a, b)) {
+        return b;
+      }
+    }
+  }
+
+  /**
+   * Test if two components are connected.
+   *
+   * @param first First element
+   * @param second Second element
+   * @return {@code true} if they are in the same component.
+   */
+  public boolean isConnected(int first, int second) {
+    while(true) {
+      first = find(first);
+      second = find(second);
+      if(first == second) {
+        return true;
+      }
+      // Only valid if first is still a root.
+      if(parent.get(first) == first) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Number of elements.
+   *
+   * @return Size
+   */
+  public int size() {
+    return parent.length();
+  }
+}
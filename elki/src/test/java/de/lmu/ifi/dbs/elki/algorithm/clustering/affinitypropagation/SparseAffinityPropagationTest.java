@@ -0,0 +1,75 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.affinitypropagation;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.model.MedoidModel;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test sparse affinity propagation.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class SparseAffinityPropagationTest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Run SparseAffinityPropagation with fixed parameters and compare the result
+   * to a golden standard.
+   */
+  @Test
+  public void testSparseAffinityPropagationResults() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+
+    ListParameterization params = new ListParameterization();
+    params.addParameter(SparseAffinityPropagation.Parameterizer.K_ID, 100);
+    params.addParameter(AffinityPropagationInitialization.QUANTILE_ID, 0.);
+    SparseAffinityPropagation<DoubleVector> apc = ClassGenericsUtil.parameterizeOrAbort(SparseAffinityPropagation.class, params);
+    testParameterizationOk(params);
+
+    Clustering<MedoidModel> result = apc.run(db);
+    testFMeasure(db, result, 0.94473981);
+    testClusterSizes(result, new int[] { 6, 7, 55, 107, 155 });
+  }
+
+  /**
+   * With all neighbors, the result must agree with the dense version.
+   */
+  @Test
+  public void testSparseAffinityPropagationComplete() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+
+    ListParameterization params = new ListParameterization();
+    params.addParameter(SparseAffinityPropagation.Parameterizer.K_ID, 329);
+    SparseAffinityPropagation<DoubleVector> apc = ClassGenericsUtil.parameterizeOrAbort(SparseAffinityPropagation.class, params);
+    testParameterizationOk(params);
+
+    Clustering<MedoidModel> result = apc.run(db);
+    testFMeasure(db, result, 0.957227259);
+    testClusterSizes(result, new int[] { 5, 5, 7, 55, 105, 153 });
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.em;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeans;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.model.MeanModel;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Performs a full parallel EM run, and compares the result with a clustering
+ * derived from the data set labels, and the results of the sequential
+ * implementation.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ParallelEMTest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Run EM with fixed parameters and compare the result to a golden standard.
+   */
+  @Test
+  public void testEMResults() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.SEED_ID, 1);
+    params.addParameter(EM.Parameterizer.K_ID, 6);
+    EM<DoubleVector, ?> em = ClassGenericsUtil.parameterizeOrAbort(ParallelEM.class, params);
+    testParameterizationOk(params);
+
+    // run EM on database
+    Clustering<?> result = em.run(db);
+    testFMeasure(db, result, 0.967410);
+    testClusterSizes(result, new int[] { 3, 5, 91, 98, 200, 313 });
+  }
+
+  /**
+   * Run EM with fixed parameters and compare the result to a golden standard.
+   */
+  @Test
+  public void testEMResultsDiagonal() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.SEED_ID, 0);
+    params.addParameter(EM.Parameterizer.K_ID, 5);
+    params.addParameter(EM.Parameterizer.INIT_ID, DiagonalGaussianModelFactory.class);
+    EM<DoubleVector, ?> em = ClassGenericsUtil.parameterizeOrAbort(ParallelEM.class, params);
+    testParameterizationOk(params);
+
+    // run EM on database
+    Clustering<?> result = em.run(db);
+    testFMeasure(db, result, 0.9681384);
+    testClusterSizes(result, new int[] { 7, 91, 99, 200, 313 });
+  }
+
+  /**
+   * Run EM with fixed parameters and compare the result to a golden standard.
+   */
+  @Test
+  public void testEMResultsSpherical() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.SEED_ID, 1);
+    params.addParameter(EM.Parameterizer.K_ID, 4);
+    params.addParameter(EM.Parameterizer.INIT_ID, SphericalGaussianModelFactory.class);
+    EM<DoubleVector, ?> em = ClassGenericsUtil.parameterizeOrAbort(ParallelEM.class, params);
+    testParameterizationOk(params);
+
+    // run EM on database
+    Clustering<?> result = em.run(db);
+    testFMeasure(db, result, 0.812082);
+    testClusterSizes(result, new int[] { 87, 143, 163, 317 });
+  }
+
+  /**
+   * Compare to the sequential implementation, with the same seed.
+   */
+  @Test
+  public void testSameAsSequential() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.SEED_ID, 1);
+    params.addParameter(EM.Parameterizer.K_ID, 6);
+    EM<DoubleVector, MeanModel> seq = ClassGenericsUtil.parameterizeOrAbort(EM.class, params);
+    testParameterizationOk(params);
+    params = new ListParameterization();
+    params.addParameter(KMeans.SEED_ID, 1);
+    params.addParameter(EM.Parameterizer.K_ID, 6);
+    EM<DoubleVector, MeanModel> par = ClassGenericsUtil.parameterizeOrAbort(ParallelEM.class, params);
+    testParameterizationOk(params);
+
+    List<? extends Cluster<MeanModel>> cseq = seq.run(db).getAllClusters();
+    List<? extends Cluster<MeanModel>> cpar = par.run(db).getAllClusters();
+    assertEquals("Number of clusters differs.", cseq.size(), cpar.size());
+    for(int i = 0; i < cseq.size(); i++) {
+      assertEquals("Cluster size differs.", cseq.get(i).size(), cpar.get(i).size());
+      // Only the summation order differs:
+      assertArrayEquals("Cluster mean differs.", cseq.get(i).getModel().getMean(), cpar.get(i).getModel().getMean(), 1e-8);
+    }
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.extraction.HDBSCANHierarchyExtraction;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.evaluation.clustering.ClusterContingencyTable;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import de.lmu.ifi.dbs.elki.persistent.AbstractPageFileFactory;
+import de.lmu.ifi.dbs.elki.result.Result;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+import de.lmu.ifi.dbs.elki.workflow.AlgorithmStep;
+
+/**
+ * Regression test for the parallel Borůvka HDBSCAN, which must produce the
+ * same result as {@link HDBSCANLinearMemory}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ParallelBoruvkaHDBSCANTest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Run with a linear scan kNN query.
+   */
+  @Test
+  public void testBoruvka() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+    Clustering<?> clustering = runHDBSCAN(db, ParallelBoruvkaHDBSCAN.class);
+    testFMeasure(db, clustering, 0.9721803480882555);
+    testClusterSizes(clustering, new int[] { 21, 54, 103, 152 });
+  }
+
+  /**
+   * Run with kNN queries using an R*-tree.
+   */
+  @Test
+  public void testBoruvkaRStarTree() {
+    ListParameterization idxparams = new ListParameterization();
+    idxparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    idxparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330, idxparams, null);
+    Clustering<?> clustering = runHDBSCAN(db, ParallelBoruvkaHDBSCAN.class);
+    testFMeasure(db, clustering, 0.9721803480882555);
+    testClusterSizes(clustering, new int[] { 21, 54, 103, 152 });
+  }
+
+  /**
+   * Compare the hierarchy and the flat clustering to
+   * {@link HDBSCANLinearMemory}.
+   */
+  @Test
+  public void testSameAsLinearMemory() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    PointerDensityHierarchyRepresentationResult seq = new HDBSCANLinearMemory<NumberVector>(EuclideanDistanceFunction.STATIC, 20).run(db, rel);
+    PointerDensityHierarchyRepresentationResult par = new ParallelBoruvkaHDBSCAN<NumberVector>(EuclideanDistanceFunction.STATIC, 20).run(db, rel);
+    // The pointers may differ on ties, but the merge heights must agree:
+    double[] seqh = new double[rel.size()], parh = new double[rel.size()];
+    int i = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance(), i++) {
+      assertEquals("Core distance differs.", seq.getCoreDistanceStore().doubleValue(it), par.getCoreDistanceStore().doubleValue(it), 0.);
+      seqh[i] = seq.getParentDistanceStore().doubleValue(it);
+      parh[i] = par.getParentDistanceStore().doubleValue(it);
+    }
+    Arrays.sort(seqh);
+    Arrays.sort(parh);
+    assertArrayEquals("Merge heights differ.", seqh, parh, 1e-15);
+    // Same flat clustering:
+    Clustering<?> cseq = runHDBSCAN(db, HDBSCANLinearMemory.class);
+    Clustering<?> cpar = runHDBSCAN(db, ParallelBoruvkaHDBSCAN.class);
+    ClusterContingencyTable ct = new ClusterContingencyTable(true, false);
+    ct.process(cseq, cpar);
+    assertEquals("Clusterings differ.", 1., ct.getPaircount().f1Measure(), 1e-15);
+  }
+
+  /**
+   * Run HDBSCAN and extract the flat clustering.
+   *
+   * @param db Database
+   * @param cls HDBSCAN class
+   * @return Clustering
+   */
+  private Clustering<?> runHDBSCAN(Database db, Class<?> cls) {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(AbstractHDBSCAN.Parameterizer.MIN_PTS_ID, 20);
+    params.addParameter(HDBSCANHierarchyExtraction.Parameterizer.MINCLUSTERSIZE_ID, 50);
+    params.addParameter(AlgorithmStep.Parameterizer.ALGORITHM_ID, cls);
+    HDBSCANHierarchyExtraction ex = ClassGenericsUtil.parameterizeOrAbort(HDBSCANHierarchyExtraction.class, params);
+    testParameterizationOk(params);
+    Result result = ex.run(db);
+    return findSingleClustering(result);
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.model.KMeansModel;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Regression test for coreset-based streaming k-means.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class KMeansCoresetTest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Order means by their first coordinate.
+   */
+  private static final Comparator<double[]> BY_FIRST = new Comparator<double[]>() {
+    @Override
+    public int compare(double[] o1, double[] o2) {
+      return Double.compare(o1[0], o2[0]);
+    }
+  };
+
+  /**
+   * Run KMeans with fixed parameters and compare the result to a golden
+   * standard.
+   */
+  @Test
+  public void testKMeansCoreset() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    KMeansCoreset kmeans = ClassGenericsUtil.parameterizeOrAbort(KMeansCoreset.class, makeParameters());
+
+    // run KMeans on database
+    Clustering<?> result = kmeans.run(db);
+    testFMeasure(db, result, 0.998005);
+    testClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+  }
+
+  /**
+   * Reading the same data from a streaming parser must give the same means.
+   */
+  @Test
+  public void testStream() throws IOException {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    KMeansCoreset kmeans = ClassGenericsUtil.parameterizeOrAbort(KMeansCoreset.class, makeParameters());
+    Clustering<KMeansModel> result = kmeans.run(db);
+
+    kmeans = ClassGenericsUtil.parameterizeOrAbort(KMeansCoreset.class, makeParameters());
+    double[][] means;
+    try (InputStream is = open(UNITTEST + "different-densities-2d-no-noise.ascii")) {
+      NumberVectorLabelParser<DoubleVector> parser = new NumberVectorLabelParser<>(DoubleVector.FACTORY);
+      parser.initStream(is);
+      means = kmeans.run(parser);
+    }
+    assertEquals("Number of means", 5, means.length);
+    double[][] expect = new double[means.length][];
+    int i = 0;
+    for(Cluster<KMeansModel> c : result.getAllClusters()) {
+      expect[i++] = c.getModel().getMean();
+    }
+    // The order of the means depends on the DBIDs used for initialization.
+    Arrays.sort(means, BY_FIRST);
+    Arrays.sort(expect, BY_FIRST);
+    for(i = 0; i < means.length; i++) {
+      assertArrayEquals("Means differ", expect[i], means[i], 1e-15);
+    }
+  }
+
+  /**
+   * An empty stream gives no means.
+   */
+  @Test
+  public void testEmptyStream() throws IOException {
+    KMeansCoreset kmeans = ClassGenericsUtil.parameterizeOrAbort(KMeansCoreset.class, makeParameters());
+    MultipleObjectsBundle empty = MultipleObjectsBundle.makeSimple(TypeUtil.NUMBER_VECTOR_FIELD, new ArrayList<DoubleVector>());
+    assertEquals("Number of means", 0, kmeans.run(empty.asStream()).length);
+  }
+
+  /**
+   * Parameters for the test.
+   *
+   * @return Parameterization
+   */
+  private static ListParameterization makeParameters() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.K_ID, 5);
+    params.addParameter(KMeans.SEED_ID, 0);
+    params.addParameter(KMeansCoreset.Parameterizer.CORESET_ID, 100);
+    params.addParameter(KMeansCoreset.Parameterizer.RANDOM_ID, 0);
+    return params;
+  }
+}
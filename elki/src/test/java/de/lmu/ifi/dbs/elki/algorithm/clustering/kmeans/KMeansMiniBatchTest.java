@@ -0,0 +1,161 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.model.KMeansModel;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
+import de.lmu.ifi.dbs.elki.math.linearalgebra.VMath;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Regression test for mini-batch k-means.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class KMeansMiniBatchTest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Order means by their first coordinate.
+   */
+  private static final Comparator<double[]> BY_FIRST = new Comparator<double[]>() {
+    @Override
+    public int compare(double[] o1, double[] o2) {
+      return Double.compare(o1[0], o2[0]);
+    }
+  };
+
+  /**
+   * Run KMeans with fixed parameters and compare the result to a golden
+   * standard.
+   */
+  @Test
+  public void testKMeansMiniBatch() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+
+    // Setup algorithm
+    KMeansMiniBatch<DoubleVector> kmeans = makeKMeans(50, 100);
+
+    // run KMeans on database
+    Clustering<?> result = kmeans.run(db);
+    testFMeasure(db, result, 0.998005);
+    testClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+  }
+
+  /**
+   * If the whole stream fits into the sample, the stream must give the same
+   * means as the relation.
+   */
+  @Test
+  public void testStream() throws IOException {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    Clustering<KMeansModel> result = makeKMeans(50, 100).run(db);
+    double[][] means = runStream(makeKMeans(50, 100));
+    assertEquals("Number of means", 5, means.length);
+    double[][] expect = new double[means.length][];
+    int i = 0;
+    for(Cluster<KMeansModel> c : result.getAllClusters()) {
+      expect[i++] = c.getModel().getMean();
+    }
+    Arrays.sort(means, BY_FIRST);
+    Arrays.sort(expect, BY_FIRST);
+    for(i = 0; i < means.length; i++) {
+      assertArrayEquals("Means differ", expect[i], means[i], 1e-15);
+    }
+  }
+
+  /**
+   * With a sample smaller than the stream, the means must still separate the
+   * clusters.
+   */
+  @Test
+  public void testStreamSampled() throws IOException {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    // Sample of 5 * 100 = 500 points only:
+    double[][] means = runStream(makeKMeans(5, 100));
+    assertEquals("Number of means", 5, means.length);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    int[] sizes = new int[means.length];
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      double[] v = rel.get(it).toArray();
+      int best = 0;
+      for(int i = 1; i < means.length; i++) {
+        if(VMath.squareSum(VMath.minus(v, means[i])) < VMath.squareSum(VMath.minus(v, means[best]))) {
+          best = i;
+        }
+      }
+      ++sizes[best];
+    }
+    Arrays.sort(sizes);
+    assertArrayEquals("Cluster sizes", new int[] { 200, 200, 200, 200, 200 }, sizes);
+  }
+
+  /**
+   * Read the test data with a streaming parser.
+   *
+   * @param kmeans Algorithm
+   * @return Means
+   */
+  private double[][] runStream(KMeansMiniBatch<DoubleVector> kmeans) throws IOException {
+    try (InputStream is = open(UNITTEST + "different-densities-2d-no-noise.ascii")) {
+      NumberVectorLabelParser<DoubleVector> parser = new NumberVectorLabelParser<>(DoubleVector.FACTORY);
+      parser.initStream(is);
+      return kmeans.run(parser);
+    }
+  }
+
+  /**
+   * Setup the algorithm.
+   *
+   * @param batchsize Batch size
+   * @param iters Number of iterations
+   * @return Algorithm
+   */
+  private KMeansMiniBatch<DoubleVector> makeKMeans(int batchsize, int iters) {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.K_ID, 5);
+    params.addParameter(KMeans.SEED_ID, 7);
+    params.addParameter(KMeans.MAXITER_ID, iters);
+    params.addParameter(KMeansMiniBatch.Parameterizer.BATCHSIZE_ID, batchsize);
+    params.addParameter(KMeansMiniBatch.Parameterizer.RANDOM_ID, 0);
+    KMeansMiniBatch<DoubleVector> kmeans = ClassGenericsUtil.parameterizeOrAbort(KMeansMiniBatch.class, params);
+    testParameterizationOk(params);
+    return kmeans;
+  }
+}
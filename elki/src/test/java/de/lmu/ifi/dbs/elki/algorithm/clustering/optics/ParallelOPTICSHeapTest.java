@@ -0,0 +1,102 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.optics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Performs a full OPTICS run with parallel prefetching, and compares the result
+ * with a clustering derived from the data set labels, and with the sequential
+ * implementation.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ParallelOPTICSHeapTest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Run OPTICS with fixed parameters and compare the result to a golden
+   * standard.
+   */
+  @Test
+  public void testOPTICSResults() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(OPTICSHeap.Parameterizer.MINPTS_ID, 18);
+    params.addParameter(OPTICSXi.Parameterizer.XI_ID, 0.038);
+    params.addParameter(OPTICSXi.Parameterizer.XIALG_ID, ParallelOPTICSHeap.class);
+    OPTICSXi opticsxi = ClassGenericsUtil.parameterizeOrAbort(OPTICSXi.class, params);
+    testParameterizationOk(params);
+
+    // run OPTICS on database
+    Clustering<?> clustering = opticsxi.run(db);
+
+    testFMeasure(db, clustering, 0.8819664);
+    testClusterSizes(clustering, new int[] { 108, 120, 209, 273 });
+  }
+
+  /**
+   * The cluster order must be identical to the sequential version, also with
+   * small prefetch batches and a limited radius.
+   */
+  @Test
+  public void testIdenticalClusterOrder() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+
+    ListParameterization params = new ListParameterization();
+    params.addParameter(OPTICSHeap.Parameterizer.MINPTS_ID, 18);
+    params.addParameter(OPTICSHeap.Parameterizer.EPSILON_ID, 0.05);
+    OPTICSHeap<?> optics = ClassGenericsUtil.parameterizeOrAbort(OPTICSHeap.class, params);
+    testParameterizationOk(params);
+    ClusterOrder expected = optics.run(db);
+
+    params = new ListParameterization();
+    params.addParameter(OPTICSHeap.Parameterizer.MINPTS_ID, 18);
+    params.addParameter(OPTICSHeap.Parameterizer.EPSILON_ID, 0.05);
+    params.addParameter(ParallelOPTICSHeap.Parameterizer.PREFETCH_ID, 7);
+    ParallelOPTICSHeap<?> poptics = ClassGenericsUtil.parameterizeOrAbort(ParallelOPTICSHeap.class, params);
+    testParameterizationOk(params);
+    ClusterOrder actual = poptics.run(db);
+
+    assertEquals("Cluster order size", expected.size(), actual.size());
+    DBIDVar pe = DBIDUtil.newVar(), pa = DBIDUtil.newVar();
+    for(DBIDArrayIter ie = expected.iter(), ia = actual.iter(); ie.valid(); ie.advance(), ia.advance()) {
+      assertTrue("Cluster order differs at " + ie.getOffset(), DBIDUtil.equal(ie, ia));
+      assertEquals("Reachability differs", expected.getReachability(ie), actual.getReachability(ia), 0.);
+      expected.getPredecessor(ie, pe);
+      actual.getPredecessor(ia, pa);
+      assertTrue("Predecessor differs", pe.isSet() ? DBIDUtil.equal(pe, pa) : !pa.isSet());
+    }
+  }
+}
@@ -20,12 +20,20 @@
  */
 package de.lmu.ifi.dbs.elki.algorithm.outlier.lof.parallel;
 
+import java.io.File;
+import java.io.IOException;
+
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.lof.LOF;
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.index.PagedIndexFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import de.lmu.ifi.dbs.elki.persistent.AbstractPageFileFactory;
+import de.lmu.ifi.dbs.elki.persistent.PersistentPageFileFactory;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
 import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
@@ -55,4 +63,37 @@ public class ParallelLOFTest extends AbstractSimpleAlgorithmTest {
     testSingleScore(result, 1293, 1.1945314199156365);
     testAUC(db, "Noise", result, 0.8921680672268908);
   }
-}
\ No newline at end of file
+
+  /**
+   * Run ParallelLOF with concurrent queries to an R*-tree, stored in a
+   * {@link PersistentPageFileFactory}.
+   *
+   * @throws IOException on errors creating the temporary file
+   */
+  @Test
+  public void testParallelLOFRStarTree() throws IOException {
+    File file = File.createTempFile("ELKIUnitTest", null);
+    file.delete();
+    file.deleteOnExit();
+    ListParameterization idxparams = new ListParameterization();
+    idxparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    idxparams.addParameter(PagedIndexFactory.Parameterizer.PAGEFILE_ID, PersistentPageFileFactory.class);
+    idxparams.addParameter(PersistentPageFileFactory.Parameterizer.FILE_ID, file);
+    idxparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 500);
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-axis-subspaces-6d.ascii", 1345, idxparams, null);
+
+    // Parameterization
+    ListParameterization params = new ListParameterization();
+    params.addParameter(LOF.Parameterizer.K_ID, 10);
+
+    // setup Algorithm
+    ParallelLOF<DoubleVector> lof = ClassGenericsUtil.parameterizeOrAbort(ParallelLOF.class, params);
+    testParameterizationOk(params);
+
+    // run ParallelLOF on database
+    OutlierResult result = lof.run(db);
+
+    testSingleScore(result, 1293, 1.1945314199156365);
+    testAUC(db, "Noise", result, 0.8921680672268908);
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.projection;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Compare the parallel Barnes-Hut tSNE to the sequential implementation.
+ *
+ * With theta = 0, both compute exact gradients, so the embeddings only differ
+ * by the summation order. Because these differences are amplified by the
+ * optimization, only few iterations are run.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ParallelBarnesHutTSNETest extends AbstractSimpleAlgorithmTest {
+  @Test
+  public void testSameAsSequential() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    Relation<DoubleVector> seq = runTSNE(BarnesHutTSNE.class).run(db, rel);
+    Relation<DoubleVector> par = runTSNE(ParallelBarnesHutTSNE.class).run(db, rel);
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      DoubleVector vs = seq.get(it), vp = par.get(it);
+      for(int d = 0; d < vs.getDimensionality(); d++) {
+        assertEquals("Embeddings differ.", vs.doubleValue(d), vp.doubleValue(d), 1e-8);
+      }
+    }
+  }
+
+  /**
+   * Setup tSNE with exact gradients and a fixed seed.
+   *
+   * @param cls tSNE class
+   * @return tSNE instance
+   */
+  private BarnesHutTSNE<NumberVector> runTSNE(Class<?> cls) {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(BarnesHutTSNE.Parameterizer.THETA_ID, 0.);
+    params.addParameter(TSNE.Parameterizer.ITER_ID, 20);
+    params.addParameter(TSNE.Parameterizer.RANDOM_ID, 0L);
+    params.addFlag(AbstractProjectionAlgorithm.KEEP_ID);
+    BarnesHutTSNE<NumberVector> tsne = ClassGenericsUtil.parameterizeOrAbort(cls, params);
+    testParameterizationOk(params);
+    return tsne;
+  }
+}
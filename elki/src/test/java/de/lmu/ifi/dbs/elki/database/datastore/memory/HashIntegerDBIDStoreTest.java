@@ -0,0 +1,167 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.datastore.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+
+/**
+ * Unit test for the open addressing data stores, comparing them to a Java
+ * {@link HashMap} under random insertions and deletions.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class HashIntegerDBIDStoreTest {
+  /**
+   * Number of operations.
+   */
+  private static final int OPS = 100000;
+
+  /**
+   * Range of keys; small enough to have many repeated keys, and to have
+   * deletions within long probe sequences.
+   */
+  private static final int RANGE = 5000;
+
+  @Test
+  public void testDoubleStore() {
+    HashIntegerDBIDDoubleStore store = new HashIntegerDBIDDoubleStore(10, -1.);
+    Map<Integer, Double> ref = new HashMap<>();
+    Random r = new Random(0L);
+    for(int i = 0; i < OPS; i++) {
+      int k = r.nextInt(RANGE) * 37;
+      DBID id = DBIDUtil.importInteger(k);
+      switch(r.nextInt(4)){
+      case 0:
+        store.delete(id);
+        ref.remove(k);
+        break;
+      case 1:
+        store.increment(id, 1.);
+        ref.put(k, ref.getOrDefault(k, -1.) + 1.);
+        break;
+      default:
+        double v = r.nextDouble();
+        Double prev = ref.put(k, v);
+        assertEquals("Previous value", prev != null ? prev : -1., store.putDouble(id, v), 0.);
+      }
+      assertEquals("Size", ref.size(), store.size);
+    }
+    for(int k = 0; k < RANGE * 37; k++) {
+      Double v = ref.get(k);
+      assertEquals("Value at " + k, v != null ? v : -1., store.doubleValue(DBIDUtil.importInteger(k)), 0.);
+    }
+    store.clear();
+    assertEquals("Not cleared", 0, store.size);
+    assertEquals("Not cleared", -1., store.doubleValue(DBIDUtil.importInteger(37)), 0.);
+  }
+
+  @Test
+  public void testIntegerStore() {
+    HashIntegerDBIDIntegerStore store = new HashIntegerDBIDIntegerStore(0);
+    Map<Integer, Integer> ref = new HashMap<>();
+    Random r = new Random(1L);
+    for(int i = 0; i < OPS; i++) {
+      int k = r.nextInt(RANGE);
+      DBID id = DBIDUtil.importInteger(k);
+      switch(r.nextInt(4)){
+      case 0:
+        store.delete(id);
+        ref.remove(k);
+        break;
+      case 1:
+        store.increment(id, 3);
+        ref.put(k, ref.getOrDefault(k, 0) + 3);
+        break;
+      default:
+        int v = r.nextInt();
+        Integer prev = ref.put(k, v);
+        assertEquals("Previous value", prev != null ? prev : 0, store.putInt(id, v));
+      }
+    }
+    for(int k = 0; k < RANGE; k++) {
+      Integer v = ref.get(k);
+      assertEquals("Value at " + k, v != null ? v : 0, store.intValue(DBIDUtil.importInteger(k)));
+    }
+  }
+
+  @Test
+  public void testDBIDStore() {
+    HashIntegerDBIDDBIDStore store = new HashIntegerDBIDDBIDStore(100);
+    Map<Integer, Integer> ref = new HashMap<>();
+    Random r = new Random(2L);
+    for(int i = 0; i < OPS; i++) {
+      int k = r.nextInt(RANGE);
+      DBID id = DBIDUtil.importInteger(k);
+      if(r.nextInt(3) == 0) {
+        store.delete(id);
+        ref.remove(k);
+      }
+      else {
+        int v = r.nextInt(RANGE);
+        store.putDBID(id, DBIDUtil.importInteger(v));
+        ref.put(k, v);
+      }
+    }
+    DBIDVar var = DBIDUtil.newVar();
+    for(int k = 0; k < RANGE; k++) {
+      Integer v = ref.get(k);
+      store.assignVar(DBIDUtil.importInteger(k), var);
+      if(v == null) {
+        assertTrue("Not invalid at " + k, DBIDUtil.equal(var, DBIDUtil.invalid()));
+      }
+      else {
+        assertEquals("Value at " + k, v.intValue(), DBIDUtil.asInteger(var));
+      }
+    }
+  }
+
+  @Test
+  public void testObjectStore() {
+    HashIntegerDBIDStore<String> store = new HashIntegerDBIDStore<>(10);
+    Map<Integer, String> ref = new HashMap<>();
+    Random r = new Random(3L);
+    for(int i = 0; i < OPS; i++) {
+      int k = r.nextInt(RANGE) << 12;
+      DBID id = DBIDUtil.importInteger(k);
+      String v = r.nextInt(3) == 0 ? null : Integer.toString(r.nextInt());
+      String prev = v != null ? ref.put(k, v) : ref.remove(k);
+      assertEquals("Previous value", prev, store.put(id, v));
+    }
+    for(int k = 0; k < RANGE; k++) {
+      assertEquals("Value at " + k, ref.get(k << 12), store.get(DBIDUtil.importInteger(k << 12)));
+    }
+    store.clear();
+    assertNull("Not cleared", store.get(DBIDUtil.importInteger(0)));
+  }
+}
@@ -0,0 +1,354 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.query.planner;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.AbstractDatabase;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.PreprocessorKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.MultipleObjectsBundleDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.strings.LevenshteinDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.graph.HNSWIndex;
+import de.lmu.ifi.dbs.elki.index.lsh.InMemoryLSHIndex;
+import de.lmu.ifi.dbs.elki.index.lsh.MultiProbeLSHIndex;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfamilies.AbstractProjectedHashFunctionFamily;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfamilies.EuclideanHashFunctionFamily;
+import de.lmu.ifi.dbs.elki.index.preprocessed.knn.MaterializeKNNPreprocessor;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.covertree.CoverTree;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.kd.SmallMemoryKDTree;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test the cost-based choice among indexes.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class CostBasedQueryPlannerTest {
+  /**
+   * On low-dimensional data, the k-d-tree should be used.
+   */
+  @Test
+  public void testLowDimensional() {
+    Database db = makeDatabase(2, false);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    DistanceQuery<NumberVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    KNNQuery<NumberVector> knnq = db.getKNNQuery(dq, 10);
+    assertTrue("Unexpected query class: " + knnq.getClass(), knnq instanceof SmallMemoryKDTree.KDTreeKNNQuery);
+    RangeQuery<NumberVector> rq = db.getRangeQuery(dq);
+    assertTrue("Unexpected query class: " + rq.getClass(), rq instanceof SmallMemoryKDTree.KDTreeRangeQuery);
+  }
+
+  /**
+   * On high-dimensional data, a linear scan is cheaper than the k-d-tree.
+   */
+  @Test
+  public void testHighDimensional() {
+    Database db = makeDatabase(30, false);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    DistanceQuery<NumberVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    KNNQuery<NumberVector> knnq = db.getKNNQuery(dq, 10);
+    assertTrue("Unexpected query class: " + knnq.getClass(), knnq instanceof LinearScanQuery);
+    RangeQuery<NumberVector> rq = db.getRangeQuery(dq);
+    assertFalse("Unexpected query class: " + rq.getClass(), rq instanceof SmallMemoryKDTree.KDTreeRangeQuery);
+    // Unless we disallow linear scans:
+    knnq = db.getKNNQuery(dq, 10, DatabaseQuery.HINT_OPTIMIZED_ONLY);
+    assertTrue("Unexpected query class: " + knnq.getClass(), knnq instanceof SmallMemoryKDTree.KDTreeKNNQuery);
+  }
+
+  /**
+   * High-dimensional data with a low intrinsic dimensionality can still use
+   * the k-d-tree.
+   */
+  @Test
+  public void testLowIntrinsicDimensionality() {
+    Database db = makeDatabase(makeEmbedded(30), false);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    DistanceQuery<NumberVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    KNNQuery<NumberVector> knnq = db.getKNNQuery(dq, 10);
+    assertTrue("Unexpected query class: " + knnq.getClass(), knnq instanceof SmallMemoryKDTree.KDTreeKNNQuery);
+  }
+
+  /**
+   * Range queries are planned by their radius.
+   */
+  @Test
+  public void testRangeRadius() {
+    Database db = makeDatabase(2, false);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    DistanceQuery<NumberVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    RangeQuery<NumberVector> rq = db.getRangeQuery(dq, .05);
+    assertTrue("Unexpected query class: " + rq.getClass(), rq instanceof SmallMemoryKDTree.KDTreeRangeQuery);
+    // A radius that covers the entire data set:
+    rq = db.getRangeQuery(dq, 2.);
+    assertFalse("Unexpected query class: " + rq.getClass(), rq instanceof SmallMemoryKDTree.KDTreeRangeQuery);
+  }
+
+  /**
+   * Metric indexes on non-vector data should be used.
+   */
+  @Test
+  public void testMetricNonVector() {
+    // Strings "a...ab...b", i.e., a two-dimensional grid in edit distance.
+    List<String> data = new ArrayList<>();
+    for(int i = 0; i < 32; i++) {
+      for(int j = 0; j < 32; j++) {
+        StringBuilder buf = new StringBuilder(i + j);
+        for(int l = 0; l < i; l++) {
+          buf.append('a');
+        }
+        for(int l = 0; l < j; l++) {
+          buf.append('b');
+        }
+        data.add(buf.toString());
+      }
+    }
+    Collection<IndexFactory<?, ?>> indexes = new ArrayList<>();
+    indexes.add(new CoverTree.Factory<>(LevenshteinDistanceFunction.STATIC_SENSITIVE, 1.3, 10));
+    Database db = new StaticArrayDatabase(new MultipleObjectsBundleDatabaseConnection(MultipleObjectsBundle.makeSimple(TypeUtil.STRING, data)), indexes, CostBasedQueryPlanner.STATIC);
+    db.initialize();
+    Relation<String> rel = db.getRelation(TypeUtil.STRING);
+    DistanceQuery<String> dq = db.getDistanceQuery(rel, LevenshteinDistanceFunction.STATIC_SENSITIVE);
+    KNNQuery<String> knnq = db.getKNNQuery(dq, 10);
+    assertTrue("Unexpected query class: " + knnq.getClass(), knnq instanceof CoverTree.CoverTreeKNNQuery);
+    RangeQuery<String> rq = db.getRangeQuery(dq, 2.);
+    assertTrue("Unexpected query class: " + rq.getClass(), rq instanceof CoverTree.CoverTreeRangeQuery);
+  }
+
+  /**
+   * A materialized kNN preprocessor should be preferred, if it supports k.
+   */
+  @Test
+  public void testPreprocessor() {
+    Database db = makeDatabase(30, true);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    DistanceQuery<NumberVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    KNNQuery<NumberVector> knnq = db.getKNNQuery(dq, 5);
+    assertTrue("Unexpected query class: " + knnq.getClass(), knnq instanceof PreprocessorKNNQuery);
+    knnq = db.getKNNQuery(dq, 20);
+    assertFalse("Unexpected query class: " + knnq.getClass(), knnq instanceof PreprocessorKNNQuery);
+  }
+
+  /**
+   * The planner is chosen by a database parameter; by default, the trivial
+   * planner uses the first index available.
+   */
+  @Test
+  public void testParameterization() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(AbstractDatabase.Parameterizer.DATABASE_CONNECTION_ID, new ArrayAdapterDatabaseConnection(makeData(30)));
+    params.addParameter(AbstractDatabase.Parameterizer.INDEX_ID, SmallMemoryKDTree.Factory.class);
+    Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, params);
+    db.initialize();
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    DistanceQuery<NumberVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    KNNQuery<NumberVector> knnq = db.getKNNQuery(dq, 10);
+    assertTrue("Unexpected query class: " + knnq.getClass(), knnq instanceof SmallMemoryKDTree.KDTreeKNNQuery);
+
+    params = new ListParameterization();
+    params.addParameter(AbstractDatabase.Parameterizer.DATABASE_CONNECTION_ID, new ArrayAdapterDatabaseConnection(makeData(30)));
+    params.addParameter(AbstractDatabase.Parameterizer.INDEX_ID, SmallMemoryKDTree.Factory.class);
+    params.addParameter(AbstractDatabase.Parameterizer.PLANNER_ID, CostBasedQueryPlanner.class);
+    db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, params);
+    db.initialize();
+    rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    knnq = db.getKNNQuery(dq, 10);
+    assertTrue("Unexpected query class: " + knnq.getClass(), knnq instanceof LinearScanQuery);
+  }
+
+  /**
+   * The HNSW graph is used unless its beam is wider than the data set.
+   */
+  @Test
+  public void testHNSW() {
+    Database db = makeApproximateDatabase(makeHNSWParameters(10));
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    KNNQuery<DoubleVector> knnq = db.getKNNQuery(dq, 10);
+    assertTrue("Unexpected query class: " + knnq.getClass(), knnq instanceof HNSWIndex.HNSWKNNQuery);
+
+    db = makeApproximateDatabase(makeHNSWParameters(200));
+    rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    knnq = db.getKNNQuery(dq, 10);
+    assertTrue("Unexpected query class: " + knnq.getClass(), knnq instanceof LinearScanQuery);
+  }
+
+  /**
+   * The LSH index is used if its buckets are small, but not if all objects
+   * hash to the same bucket.
+   */
+  @Test
+  public void testLSH() {
+    Database db = makeApproximateDatabase(makeLSHParameters(.2));
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    KNNQuery<DoubleVector> knnq = db.getKNNQuery(dq, 10);
+    assertTrue("Unexpected query class: " + knnq.getClass(), knnq instanceof MultiProbeLSHIndex.Instance.LSHKNNQuery);
+
+    db = makeApproximateDatabase(makeLSHParameters(1000.));
+    rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    knnq = db.getKNNQuery(dq, 10);
+    assertTrue("Unexpected query class: " + knnq.getClass(), knnq instanceof LinearScanQuery);
+  }
+
+  /**
+   * Build a database from the unit test data, with the cost-based planner.
+   *
+   * @param params Index parameters
+   * @return Database
+   */
+  private static Database makeApproximateDatabase(ListParameterization params) {
+    params.addParameter(AbstractDatabase.Parameterizer.PLANNER_ID, CostBasedQueryPlanner.class);
+    return AbstractSimpleAlgorithmTest.makeSimpleDatabase(AbstractSimpleAlgorithmTest.UNITTEST + "hierarchical-3d2d1d.csv", 600, params, null);
+  }
+
+  /**
+   * Parameters for a HNSW index.
+   *
+   * @param ef Beam width of queries
+   * @return Parameters
+   */
+  private static ListParameterization makeHNSWParameters(int ef) {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(AbstractDatabase.Parameterizer.INDEX_ID, HNSWIndex.Factory.class);
+    params.addParameter(HNSWIndex.Factory.Parameterizer.DISTANCE_FUNCTION_ID, EuclideanDistanceFunction.class);
+    params.addParameter(HNSWIndex.Factory.Parameterizer.M_ID, 8);
+    params.addParameter(HNSWIndex.Factory.Parameterizer.EF_ID, ef);
+    params.addParameter(HNSWIndex.Factory.Parameterizer.SEED_ID, 0L);
+    return params;
+  }
+
+  /**
+   * Parameters for a multi-probe LSH index.
+   *
+   * @param width Bucket width
+   * @return Parameters
+   */
+  private static ListParameterization makeLSHParameters(double width) {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(AbstractDatabase.Parameterizer.INDEX_ID, MultiProbeLSHIndex.class);
+    params.addParameter(InMemoryLSHIndex.Parameterizer.FAMILY_ID, EuclideanHashFunctionFamily.class);
+    params.addParameter(AbstractProjectedHashFunctionFamily.Parameterizer.WIDTH_ID, width);
+    params.addParameter(AbstractProjectedHashFunctionFamily.Parameterizer.NUMPROJ_ID, 3);
+    params.addParameter(AbstractProjectedHashFunctionFamily.Parameterizer.RANDOM_ID, 0L);
+    params.addParameter(InMemoryLSHIndex.Parameterizer.L_ID, 2);
+    params.addParameter(MultiProbeLSHIndex.Parameterizer.PROBES_ID, 1);
+    return params;
+  }
+
+  /**
+   * Build a database with random data, and a k-d-tree.
+   *
+   * @param dim Dimensionality
+   * @param preprocessor Also add a kNN preprocessor
+   * @return Database
+   */
+  private static Database makeDatabase(int dim, boolean preprocessor) {
+    return makeDatabase(makeData(dim), preprocessor);
+  }
+
+  /**
+   * Uniform random data.
+   *
+   * @param dim Dimensionality
+   * @return Data
+   */
+  private static double[][] makeData(int dim) {
+    Random rnd = new Random(0L);
+    double[][] data = new double[1000][dim];
+    for(double[] row : data) {
+      for(int d = 0; d < dim; d++) {
+        row[d] = rnd.nextDouble();
+      }
+    }
+    return data;
+  }
+
+  /**
+   * Random data on a two-dimensional plane, embedded in a higher-dimensional
+   * space.
+   *
+   * @param dim Dimensionality
+   * @return Data
+   */
+  private static double[][] makeEmbedded(int dim) {
+    Random rnd = new Random(0L);
+    double[] a = new double[dim], b = new double[dim];
+    for(int d = 0; d < dim; d++) {
+      a[d] = rnd.nextGaussian();
+      b[d] = rnd.nextGaussian();
+    }
+    double[][] data = new double[1000][dim];
+    for(double[] row : data) {
+      final double x = rnd.nextDouble(), y = rnd.nextDouble();
+      for(int d = 0; d < dim; d++) {
+        row[d] = x * a[d] + y * b[d];
+      }
+    }
+    return data;
+  }
+
+  /**
+   * Build a database with a k-d-tree.
+   *
+   * @param data Data
+   * @param preprocessor Also add a kNN preprocessor
+   * @return Database
+   */
+  private static Database makeDatabase(double[][] data, boolean preprocessor) {
+    Collection<IndexFactory<?, ?>> indexes = new ArrayList<>();
+    indexes.add(new SmallMemoryKDTree.Factory<>());
+    if(preprocessor) {
+      indexes.add(new MaterializeKNNPreprocessor.Factory<>(10, EuclideanDistanceFunction.STATIC));
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), indexes, CostBasedQueryPlanner.STATIC);
+    db.initialize();
+    return db;
+  }
+}
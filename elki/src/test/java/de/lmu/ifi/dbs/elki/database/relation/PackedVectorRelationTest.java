@@ -0,0 +1,156 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.relation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.PackedDoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.datasource.InputStreamDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.MultipleObjectsBundleDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test for the packed vector relation.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class PackedVectorRelationTest {
+  /**
+   * Data set to use.
+   */
+  public static final String filename = "data/testdata/unittests/hierarchical-3d2d1d.csv";
+
+  /**
+   * Load the data set both packed and unpacked, and compare the values.
+   */
+  @Test
+  public void testLoadPacked() throws IOException {
+    Database db;
+    try (InputStream is = AbstractSimpleAlgorithmTest.open(filename)) {
+      NumberVectorLabelParser<PackedDoubleVector> parser = new NumberVectorLabelParser<>(PackedDoubleVector.FACTORY);
+      db = new StaticArrayDatabase(new InputStreamDatabaseConnection(is, null, parser), null);
+      db.initialize();
+    }
+    Relation<? extends NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    assertTrue("Not a packed relation: " + rel.getClass(), rel instanceof PackedVectorRelation);
+
+    Database ref = AbstractSimpleAlgorithmTest.makeSimpleDatabase(filename, 600, new ListParameterization(), null);
+    Relation<NumberVector> refrel = ref.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    assertTrue("Reference is packed: " + refrel.getClass(), refrel instanceof MaterializedRelation);
+
+    DBIDIter it = rel.iterDBIDs(), it2 = refrel.iterDBIDs();
+    for(; it.valid() && it2.valid(); it.advance(), it2.advance()) {
+      NumberVector v = rel.get(it), r = refrel.get(it2);
+      assertEquals("Dimensionality differs.", r.getDimensionality(), v.getDimensionality());
+      for(int d = 0; d < r.getDimensionality(); d++) {
+        assertEquals("Values differ.", r.doubleValue(d), v.doubleValue(d), 0.);
+        assertEquals("Values differ.", r.doubleValue(d), ((PackedVectorRelation) rel).doubleValue(it, d), 0.);
+      }
+    }
+    assertTrue("Relations differ in size.", !it.valid() && !it2.valid());
+  }
+
+  /**
+   * Test with object IDs that are not a range.
+   */
+  @Test
+  public void testShuffledIDs() {
+    final int size = 1000, dim = 5;
+    Random rnd = new Random(0L);
+    ArrayModifiableDBIDs ids = DBIDUtil.newArray(DBIDUtil.generateStaticDBIDRange(size));
+    DBIDUtil.randomShuffle(ids, rnd);
+    List<PackedDoubleVector> vecs = new ArrayList<>(size);
+    for(int i = 0; i < size; i++) {
+      double[] v = new double[dim];
+      for(int d = 0; d < dim; d++) {
+        v[d] = rnd.nextDouble();
+      }
+      vecs.add(PackedDoubleVector.FACTORY.newNumberVector(v));
+    }
+    PackedVectorRelation rel = new PackedVectorRelation(new VectorFieldTypeInformation<>(PackedDoubleVector.FACTORY, dim), ids, null, vecs);
+    int i = 0;
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance(), i++) {
+      PackedDoubleVector v = rel.get(it);
+      assertEquals("Dimensionality differs.", dim, v.getDimensionality());
+      for(int d = 0; d < dim; d++) {
+        assertEquals("Values differ.", vecs.get(i).doubleValue(d), v.doubleValue(d), 0.);
+      }
+    }
+  }
+
+  /**
+   * Rows of different length cannot be packed, but must still load.
+   */
+  @Test
+  public void testRaggedRows() throws IOException {
+    final String data = "1 2 3\n4 5\n6 7 8 9\n";
+    Database db;
+    try (InputStream is = new ByteArrayInputStream(data.getBytes("UTF-8"))) {
+      NumberVectorLabelParser<PackedDoubleVector> parser = new NumberVectorLabelParser<>(PackedDoubleVector.FACTORY);
+      db = new StaticArrayDatabase(new InputStreamDatabaseConnection(is, null, parser), null);
+      db.initialize();
+    }
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_VARIABLE_LENGTH);
+    assertTrue("Ragged data was packed: " + rel.getClass(), rel instanceof MaterializedRelation);
+    assertEquals("Wrong relation size.", 3, rel.size());
+    int[] dims = { 3, 2, 4 };
+    int i = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance(), i++) {
+      assertEquals("Dimensionality differs.", dims[i], rel.get(it).getDimensionality());
+    }
+
+    // Vector field type with a dimensionality range, as in serialized bundles:
+    List<PackedDoubleVector> vecs = new ArrayList<>();
+    vecs.add(PackedDoubleVector.FACTORY.newNumberVector(new double[] { 1, 2, 3 }));
+    vecs.add(PackedDoubleVector.FACTORY.newNumberVector(new double[] { 4, 5 }));
+    VectorFieldTypeInformation<PackedDoubleVector> type = new VectorFieldTypeInformation<>(PackedDoubleVector.FACTORY, 2, 3, PackedDoubleVector.FACTORY.getDefaultSerializer());
+    db = new StaticArrayDatabase(new MultipleObjectsBundleDatabaseConnection(MultipleObjectsBundle.makeSimple(type, vecs)), null);
+    db.initialize();
+    rel = db.getRelation(TypeUtil.NUMBER_VECTOR_VARIABLE_LENGTH);
+    assertTrue("Ragged data was packed: " + rel.getClass(), rel instanceof MaterializedRelation);
+    i = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance(), i++) {
+      assertEquals("Dimensionality differs.", vecs.get(i).getDimensionality(), rel.get(it).getDimensionality());
+    }
+  }
+}
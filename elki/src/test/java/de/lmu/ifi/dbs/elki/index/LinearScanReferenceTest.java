@@ -20,10 +20,30 @@
  */
 package de.lmu.ifi.dbs.elki.index;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
 import org.junit.Test;
 
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanEuclideanDistanceKNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanPrimitiveDistanceKNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.LinearScanPrimitiveDistanceRangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
 
 /**
  * This unit test verifies that the linear scan produces the reference result.
@@ -47,4 +67,35 @@ public class LinearScanReferenceTest extends AbstractIndexStructureTest {
   public void testExactCosine() {
     testExactCosine(null, LinearScanPrimitiveDistanceKNNQuery.class, LinearScanPrimitiveDistanceRangeQuery.class);
   }
+
+  /**
+   * Test that the blocked batch kNN query returns the same result as single
+   * queries. The query set contains every object multiple times, to also use
+   * multiple threads.
+   */
+  @Test
+  public void testBulkEuclidean() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds, new ListParameterization(), null);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dist = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    KNNQuery<DoubleVector> knnq = db.getKNNQuery(dist, k);
+    assertTrue("Unexpected query class: " + knnq.getClass(), knnq instanceof LinearScanEuclideanDistanceKNNQuery);
+
+    ArrayModifiableDBIDs queries = DBIDUtil.newArray(rel.size() * 4);
+    for(int i = 0; i < 4; i++) {
+      queries.addDBIDs(rel.getDBIDs());
+    }
+    List<? extends KNNList> bulk = knnq.getKNNForBulkDBIDs(queries, k);
+    assertEquals("Wrong number of results.", queries.size(), bulk.size());
+    int i = 0;
+    for(DBIDIter it = queries.iter(); it.valid(); it.advance(), i++) {
+      KNNList single = knnq.getKNNForDBID(it, k);
+      KNNList batch = bulk.get(i);
+      assertEquals("Result size does not match.", single.size(), batch.size());
+      for(DoubleDBIDListIter s1 = single.iter(), s2 = batch.iter(); s1.valid(); s1.advance(), s2.advance()) {
+        assertEquals("Distances do not match.", s1.doubleValue(), s2.doubleValue(), 0.);
+        assertTrue("Neighbors do not match.", DBIDUtil.equal(s1, s2));
+      }
+    }
+  }
 }
@@ -0,0 +1,115 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.distancematrix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+
+/**
+ * Unit test for the precomputed distance matrix.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class PrecomputedDistanceMatrixTest {
+  /**
+   * Data set to use.
+   */
+  public static final String dataset = "data/testdata/unittests/hierarchical-3d2d1d.csv";
+
+  /**
+   * Number of neighbors to verify.
+   */
+  private static final int K = 10;
+
+  @Test
+  public void testDouble() {
+    testMatrix(false, null, 0.);
+  }
+
+  @Test
+  public void testFloat() {
+    testMatrix(true, null, 1e-6);
+  }
+
+  @Test
+  public void testMapped() throws IOException {
+    File file = File.createTempFile("elki-matrix", ".bin");
+    try {
+      testMatrix(false, file, 0.);
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  /**
+   * Compare the matrix to direct distance computations.
+   *
+   * @param single Single precision mode
+   * @param file File to map to
+   * @param tol Relative tolerance
+   */
+  private void testMatrix(boolean single, File file, double tol) {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, 600, null, null);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> exact = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    KNNQuery<DoubleVector> scan = new LinearScanDistanceKNNQuery<>(exact);
+
+    PrecomputedDistanceMatrix<DoubleVector> idx = new PrecomputedDistanceMatrix<>(rel, EuclideanDistanceFunction.STATIC, single, file);
+    idx.initialize();
+    DistanceQuery<DoubleVector> dq = idx.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+    KNNQuery<DoubleVector> knnq = idx.getKNNQuery(exact);
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      for(DBIDIter it2 = rel.iterDBIDs(); it2.valid(); it2.advance()) {
+        final double d = exact.distance(it, it2);
+        assertEquals("Distance does not match.", d, dq.distance(it, it2), d * tol);
+      }
+      if(tol == 0.) {
+        KNNList r1 = scan.getKNNForDBID(it, K), r2 = knnq.getKNNForDBID(it, K);
+        assertEquals("kNN size does not match.", r1.size(), r2.size());
+        for(DoubleDBIDListIter i1 = r1.iter(), i2 = r2.iter(); i1.valid(); i1.advance(), i2.advance()) {
+          assertEquals("kNN distance does not match.", i1.doubleValue(), i2.doubleValue(), 0.);
+          assertTrue("kNN does not match.", DBIDUtil.equal(i1, i2) || i1.doubleValue() == r1.getKNNDistance());
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.algorithm.benchmark.ValidateApproximativeKNNIndex;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.QueryUtil;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test for the HNSW graph index.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class HNSWIndexTest extends AbstractIndexStructureTest {
+  /**
+   * Number of neighbors for the recall test.
+   */
+  private static final int K = 10;
+
+  /**
+   * Test {@link HNSWIndex} using a file based database connection.
+   */
+  @Test
+  public void testHNSW() {
+    testExactEuclidean(makeParameters(), HNSWIndex.HNSWKNNQuery.class, null);
+  }
+
+  /**
+   * Test the recall of {@link HNSWIndex} for all objects.
+   */
+  @Test
+  public void testRecall() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase("data/testdata/unittests/hierarchical-3d2d1d.csv", 600, makeParameters(), null);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    KNNQuery<DoubleVector> knnq = db.getKNNQuery(dq, K, DatabaseQuery.HINT_OPTIMIZED_ONLY);
+    assertTrue("Index not used.", knnq instanceof HNSWIndex.HNSWKNNQuery);
+    KNNQuery<DoubleVector> exact = QueryUtil.getLinearScanKNNQuery(dq);
+    assertTrue("Recall too low.", recall(rel, knnq, exact) > 0.99);
+
+    // The benchmark must use the index, or it will fail:
+    ListParameterization params = new ListParameterization();
+    params.addParameter(ValidateApproximativeKNNIndex.Parameterizer.K_ID, K);
+    params.addParameter(ValidateApproximativeKNNIndex.Parameterizer.FORCE_ID, true);
+    ValidateApproximativeKNNIndex<DoubleVector> validate = ClassGenericsUtil.parameterizeOrAbort(ValidateApproximativeKNNIndex.class, params);
+    assertEquals(null, validate.run(db));
+  }
+
+  /**
+   * Test that a larger beam width improves the recall, on a sparse graph.
+   */
+  @Test
+  public void testBeamWidth() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase("data/testdata/unittests/hierarchical-3d2d1d.csv", 600, makeParameters(2), null);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    KNNQuery<DoubleVector> knnq = db.getKNNQuery(dq, K, DatabaseQuery.HINT_OPTIMIZED_ONLY);
+    assertTrue("Index not used.", knnq instanceof HNSWIndex.HNSWKNNQuery);
+    KNNQuery<DoubleVector> exact = QueryUtil.getLinearScanKNNQuery(dq);
+    HNSWIndex<?>.HNSWKNNQuery hq = (HNSWIndex<?>.HNSWKNNQuery) knnq;
+    hq.setEf(K);
+    final double narrow = recall(rel, knnq, exact);
+    // The beam width is at least k:
+    hq.setEf(1);
+    assertEquals("Beam width less than k.", narrow, recall(rel, knnq, exact), 0.);
+    hq.setEf(10 * K);
+    final double wide = recall(rel, knnq, exact);
+    assertTrue("Recall did not improve: " + narrow + " " + wide, wide > narrow + 0.05);
+    assertTrue("Recall too low: " + wide, wide > 0.95);
+  }
+
+  /**
+   * Compute the mean recall over all objects.
+   *
+   * @param rel Relation
+   * @param knnq Approximate query
+   * @param exact Exact query
+   * @return Mean recall
+   */
+  private double recall(Relation<DoubleVector> rel, KNNQuery<DoubleVector> knnq, KNNQuery<DoubleVector> exact) {
+    double sum = 0.;
+    for(DBIDIter iter = rel.iterDBIDs(); iter.valid(); iter.advance()) {
+      KNNList approx = knnq.getKNNForDBID(iter, K), ref = exact.getKNNForDBID(iter, K);
+      sum += DBIDUtil.intersectionSize(approx, ref) / (double) ref.size();
+    }
+    return sum / rel.size();
+  }
+
+  /**
+   * Build the index parameters.
+   *
+   * @return Parameters
+   */
+  private ListParameterization makeParameters() {
+    return makeParameters(8);
+  }
+
+  /**
+   * Build the index parameters.
+   *
+   * @param m Number of neighbors in the graph
+   * @return Parameters
+   */
+  private ListParameterization makeParameters(int m) {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, HNSWIndex.Factory.class);
+    params.addParameter(HNSWIndex.Factory.Parameterizer.DISTANCE_FUNCTION_ID, EuclideanDistanceFunction.class);
+    params.addParameter(HNSWIndex.Factory.Parameterizer.M_ID, m);
+    params.addParameter(HNSWIndex.Factory.Parameterizer.SEED_ID, 0L);
+    return params;
+  }
+}
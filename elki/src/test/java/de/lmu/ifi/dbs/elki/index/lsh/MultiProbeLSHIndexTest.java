@@ -0,0 +1,169 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.lsh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.HashSetModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfamilies.AbstractProjectedHashFunctionFamily;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfamilies.CosineHashFunctionFamily;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfamilies.EuclideanHashFunctionFamily;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfunctions.LocalitySensitiveHashFunction;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfunctions.MultiProbeLocalitySensitiveHashFunction;
+import de.lmu.ifi.dbs.elki.result.ResultUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test for the multi-probe LSH index.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class MultiProbeLSHIndexTest extends AbstractIndexStructureTest {
+  /**
+   * Number of neighbors for the recall test.
+   */
+  private static final int K = 10;
+
+  /**
+   * Test {@link MultiProbeLSHIndex} with Euclidean hash functions.
+   */
+  @Test
+  public void testMultiProbeEuclidean() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, MultiProbeLSHIndex.class);
+    params.addParameter(InMemoryLSHIndex.Parameterizer.FAMILY_ID, EuclideanHashFunctionFamily.class);
+    params.addParameter(AbstractProjectedHashFunctionFamily.Parameterizer.WIDTH_ID, .5);
+    params.addParameter(AbstractProjectedHashFunctionFamily.Parameterizer.NUMPROJ_ID, 3);
+    params.addParameter(AbstractProjectedHashFunctionFamily.Parameterizer.RANDOM_ID, 0L);
+    params.addParameter(InMemoryLSHIndex.Parameterizer.L_ID, 4);
+    params.addParameter(MultiProbeLSHIndex.Parameterizer.PROBES_ID, 10);
+    testExactEuclidean(params, MultiProbeLSHIndex.Instance.LSHKNNQuery.class, MultiProbeLSHIndex.Instance.LSHRangeQuery.class);
+  }
+
+  /**
+   * Test {@link MultiProbeLSHIndex} with random hyperplane hash functions.
+   */
+  @Test
+  public void testMultiProbeCosine() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, MultiProbeLSHIndex.class);
+    params.addParameter(InMemoryLSHIndex.Parameterizer.FAMILY_ID, CosineHashFunctionFamily.class);
+    params.addParameter(CosineHashFunctionFamily.Parameterizer.NUMPROJ_ID, 4);
+    params.addParameter(CosineHashFunctionFamily.Parameterizer.RANDOM_ID, 0L);
+    params.addParameter(InMemoryLSHIndex.Parameterizer.L_ID, 4);
+    params.addParameter(MultiProbeLSHIndex.Parameterizer.PROBES_ID, 5);
+    testExactCosine(params, MultiProbeLSHIndex.Instance.LSHKNNQuery.class, MultiProbeLSHIndex.Instance.LSHRangeQuery.class);
+  }
+
+  /**
+   * More probes, with the same hash tables, should inspect a superset of the
+   * candidates, and thus improve recall.
+   */
+  @Test
+  public void testProbesImproveRecall() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, MultiProbeLSHIndex.class);
+    params.addParameter(InMemoryLSHIndex.Parameterizer.FAMILY_ID, EuclideanHashFunctionFamily.class);
+    params.addParameter(AbstractProjectedHashFunctionFamily.Parameterizer.WIDTH_ID, .2);
+    params.addParameter(AbstractProjectedHashFunctionFamily.Parameterizer.NUMPROJ_ID, 3);
+    params.addParameter(AbstractProjectedHashFunctionFamily.Parameterizer.RANDOM_ID, 0L);
+    params.addParameter(InMemoryLSHIndex.Parameterizer.L_ID, 2);
+    params.addParameter(MultiProbeLSHIndex.Parameterizer.PROBES_ID, 1);
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(AbstractSimpleAlgorithmTest.UNITTEST + "hierarchical-3d2d1d.csv", 600, params, null);
+    Relation<DoubleVector> rep = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dist = db.getDistanceQuery(rep, EuclideanDistanceFunction.STATIC);
+    List<MultiProbeLSHIndex<DoubleVector>.Instance> indexes = ResultUtil.filterResults(db.getHierarchy(), rep, MultiProbeLSHIndex.Instance.class);
+    assertEquals("Index not found.", 1, indexes.size());
+    MultiProbeLSHIndex<DoubleVector>.Instance index = indexes.get(0);
+
+    // The first probe must be the bucket of the object itself.
+    int[] codes = new int[10];
+    for(LocalitySensitiveHashFunction<? super DoubleVector> hashfunc : index.hashfunctions) {
+      assertTrue(hashfunc instanceof MultiProbeLocalitySensitiveHashFunction);
+      @SuppressWarnings("unchecked")
+      MultiProbeLocalitySensitiveHashFunction<? super DoubleVector> mp = (MultiProbeLocalitySensitiveHashFunction<? super DoubleVector>) hashfunc;
+      double[] buf = new double[hashfunc.getNumberOfProjections()];
+      for(DBIDIter it = rep.iterDBIDs(); it.valid(); it.advance()) {
+        final int n = mp.hashProbes(rep.get(it), buf, codes);
+        assertTrue("Not enough probes: " + n, n > 1);
+        assertEquals("First probe is not the object bucket.", hashfunc.hashObject(rep.get(it), buf), codes[0]);
+      }
+    }
+
+    KNNQuery<DoubleVector> exact = db.getKNNQuery(dist, K, DatabaseQuery.HINT_EXACT);
+    MultiProbeLSHIndex<DoubleVector>.Instance.LSHKNNQuery single = (MultiProbeLSHIndex<DoubleVector>.Instance.LSHKNNQuery) db.getKNNQuery(dist, K);
+    MultiProbeLSHIndex<DoubleVector>.Instance.LSHKNNQuery multi = (MultiProbeLSHIndex<DoubleVector>.Instance.LSHKNNQuery) db.getKNNQuery(dist, K);
+    multi.setNumberOfProbes(10);
+    long cand1 = 0, cand10 = 0;
+    int hits1 = 0, hits10 = 0;
+    for(DBIDIter it = rep.iterDBIDs(); it.valid(); it.advance()) {
+      final DoubleVector obj = rep.get(it);
+      HashSetModifiableDBIDs c1 = DBIDUtil.newHashSet(), c10 = DBIDUtil.newHashSet();
+      index.collectCandidates(obj, 1, c1);
+      index.collectCandidates(obj, 10, c10);
+      assertTrue("Candidates of a single probe are not kept.", c10.size() >= c1.size() && DBIDUtil.difference(c1, c10).isEmpty());
+      cand1 += c1.size();
+      cand10 += c10.size();
+      hits1 += recall(exact.getKNNForObject(obj, K), single.getKNNForObject(obj, K));
+      hits10 += recall(exact.getKNNForObject(obj, K), multi.getKNNForObject(obj, K));
+    }
+    assertTrue("Extra probes did not add candidates: " + cand1 + " " + cand10, cand10 > cand1);
+    assertTrue("Extra probes did not improve recall: " + hits1 + " " + hits10, hits10 > hits1);
+    assertTrue("Recall too low with extra probes: " + hits10, hits10 >= .9 * K * rep.size());
+  }
+
+  /**
+   * Count the true neighbors found.
+   *
+   * @param exact Exact result
+   * @param approx Approximate result
+   * @return Number of true neighbors found
+   */
+  private static int recall(KNNList exact, KNNList approx) {
+    HashSetModifiableDBIDs found = DBIDUtil.newHashSet(approx);
+    int hits = 0;
+    for(DoubleDBIDListIter it = exact.iter(); it.valid(); it.advance()) {
+      hits += found.contains(it) ? 1 : 0;
+    }
+    return hits;
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.preprocessed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.preprocessed.knn.NNDescent;
+import de.lmu.ifi.dbs.elki.index.preprocessed.knn.ParallelNNDescent;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Regression test for the parallel NNDescent.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ParallelNNDescentTest {
+  // the following values depend on the data set used!
+  static String dataset = "data/testdata/unittests/3clusters-and-noise-2d.csv";
+
+  // number of kNN to query
+  int k = 10;
+
+  // size of the data set
+  int shoulds = 330;
+
+  /**
+   * Test the recall of the parallel NNDescent, without sampling.
+   */
+  @Test
+  public void testPreprocessor() {
+    testRecall(1., 0.99);
+  }
+
+  /**
+   * Test the recall of the parallel NNDescent, with sampling.
+   */
+  @Test
+  public void testSampled() {
+    testRecall(.3, 0.95);
+  }
+
+  /**
+   * Build the index, and compare to a linear scan.
+   *
+   * @param rho Sampling rate
+   * @param minrecall Minimum recall
+   */
+  private void testRecall(double rho, double minrecall) {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds, null, null);
+
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> distanceQuery = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+
+    // get linear queries
+    LinearScanDistanceKNNQuery<DoubleVector> lin_knn_query = new LinearScanDistanceKNNQuery<>(distanceQuery);
+
+    // get preprocessed queries
+    ListParameterization config = new ListParameterization();
+    config.addParameter(ParallelNNDescent.Factory.DISTANCE_FUNCTION_ID, distanceQuery.getDistanceFunction());
+    config.addParameter(ParallelNNDescent.Factory.K_ID, k);
+    config.addParameter(NNDescent.Factory.Parameterizer.SEED_ID, 0);
+    config.addParameter(NNDescent.Factory.Parameterizer.DELTA_ID, 0.001);
+    config.addParameter(NNDescent.Factory.Parameterizer.RHO_ID, rho);
+    ParallelNNDescent.Factory<DoubleVector> preprocf = ClassGenericsUtil.parameterizeOrAbort(ParallelNNDescent.Factory.class, config);
+    ParallelNNDescent<DoubleVector> preproc = preprocf.instantiate(rel);
+    KNNQuery<DoubleVector> preproc_knn_query = preproc.getKNNQuery(distanceQuery, k);
+    // add as index
+    db.getHierarchy().add(rel, preproc);
+    assertFalse("Preprocessor knn query class incorrect.", preproc_knn_query instanceof LinearScanDistanceKNNQuery);
+
+    // test queries
+    testKNNQueries(rel, lin_knn_query, preproc_knn_query, k, minrecall);
+    // also test partial queries, forward only
+    testKNNQueries(rel, lin_knn_query, preproc_knn_query, k / 2, minrecall);
+  }
+
+  private void testKNNQueries(Relation<DoubleVector> rep, KNNQuery<DoubleVector> lin_knn_query, KNNQuery<DoubleVector> preproc_knn_query, int k, double minrecall) {
+    ArrayDBIDs sample = DBIDUtil.ensureArray(rep.getDBIDs());
+    List<? extends KNNList> lin_knn_ids = lin_knn_query.getKNNForBulkDBIDs(sample, k);
+    List<? extends KNNList> preproc_knn_ids = preproc_knn_query.getKNNForBulkDBIDs(sample, k);
+    double recall = 0.;
+    for(int i = 0; i < rep.size(); i++) {
+      KNNList lin_knn = lin_knn_ids.get(i);
+      KNNList pre_knn = preproc_knn_ids.get(i);
+      assertEquals("kNN sizes do not agree.", lin_knn.size(), pre_knn.size());
+      // The approximate neighbors can only be farther away.
+      for(int j = 0; j < lin_knn.size(); j++) {
+        assertTrue("Approximate kNN closer than exact kNN!", pre_knn.get(j).doubleValue() >= lin_knn.get(j).doubleValue());
+      }
+      recall += DBIDUtil.intersectionSize(lin_knn, pre_knn) / (double) lin_knn.size();
+    }
+    recall /= rep.size();
+    assertTrue("Recall too low: " + recall, recall >= minrecall);
+  }
+}
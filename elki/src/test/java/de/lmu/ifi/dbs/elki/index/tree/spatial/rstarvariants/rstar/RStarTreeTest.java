@@ -20,10 +20,14 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar;
 
+import java.io.File;
+import java.io.IOException;
+
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
 import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.index.PagedIndexFactory;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTreeFactory;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeKNNQuery;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeRangeQuery;
@@ -32,6 +36,7 @@ import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk.File
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk.MaxExtensionBulkSplit;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk.MaxExtensionSortTileRecursiveBulkSplit;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk.OneDimSortBulkSplit;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk.ParallelSortTileRecursiveBulkSplit;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk.SortTileRecursiveBulkSplit;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk.SpatialSortBulkSplit;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.insert.ApproximativeLeastOverlapInsertionStrategy;
@@ -44,6 +49,12 @@ import de.lmu.ifi.dbs.elki.math.spacefillingcurves.HilbertSpatialSorter;
 import de.lmu.ifi.dbs.elki.math.spacefillingcurves.PeanoSpatialSorter;
 import de.lmu.ifi.dbs.elki.math.spacefillingcurves.ZCurveSpatialSorter;
 import de.lmu.ifi.dbs.elki.persistent.AbstractPageFileFactory;
+import de.lmu.ifi.dbs.elki.persistent.LRUCachePageFileFactory;
+import de.lmu.ifi.dbs.elki.persistent.MappedPageFileFactory;
+import de.lmu.ifi.dbs.elki.persistent.MemoryPageFileFactory;
+import de.lmu.ifi.dbs.elki.persistent.PersistentPageFileFactory;
+import de.lmu.ifi.dbs.elki.persistent.ShardedTwoQueueCache;
+import de.lmu.ifi.dbs.elki.persistent.ShardedTwoQueueCachePageFileFactory;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
 
 /**
@@ -91,6 +102,59 @@ public class RStarTreeTest extends AbstractIndexStructureTest {
     testExactCosine(spatparams, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
   }
 
+  /**
+   * Test {@link RStarTree} with a small {@link ShardedTwoQueueCache}, such
+   * that pages need to be evicted and reloaded.
+   */
+  @Test
+  public void testRStarTreeShardedCache() {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    spatparams.addParameter(PagedIndexFactory.Parameterizer.PAGEFILE_ID, ShardedTwoQueueCachePageFileFactory.class);
+    spatparams.addParameter(LRUCachePageFileFactory.Parameterizer.PAGEFILE_ID, MemoryPageFileFactory.class);
+    spatparams.addParameter(LRUCachePageFileFactory.Parameterizer.CACHE_SIZE_ID, 300 * 40);
+    spatparams.addParameter(ShardedTwoQueueCachePageFileFactory.Parameterizer.SHARDS_ID, 2);
+    spatparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    testExactEuclidean(spatparams, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+  }
+
+  /**
+   * Test {@link RStarTree} stored in a {@link MappedPageFileFactory}.
+   *
+   * @throws IOException on errors creating the temporary file
+   */
+  @Test
+  public void testRStarTreeMappedPageFile() throws IOException {
+    File file = File.createTempFile("ELKIUnitTest", null);
+    file.delete();
+    file.deleteOnExit();
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    spatparams.addParameter(PagedIndexFactory.Parameterizer.PAGEFILE_ID, MappedPageFileFactory.class);
+    spatparams.addParameter(PersistentPageFileFactory.Parameterizer.FILE_ID, file);
+    spatparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    testExactEuclidean(spatparams, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+  }
+
+  /**
+   * Test {@link RStarTree} bulk loaded with
+   * {@link ParallelSortTileRecursiveBulkSplit}.
+   */
+  @Test
+  public void testRStarTreeParallelBulkLoad() {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    spatparams.addParameter(AbstractRStarTreeFactory.Parameterizer.BULK_SPLIT_ID, ParallelSortTileRecursiveBulkSplit.class);
+    spatparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    testExactEuclidean(spatparams, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+    //
+    spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    spatparams.addParameter(AbstractRStarTreeFactory.Parameterizer.BULK_SPLIT_ID, ParallelSortTileRecursiveBulkSplit.class);
+    spatparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    testExactCosine(spatparams, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+  }
+
   /**
    * Test {@link RStarTree} using {@link RTreeLinearSplit}
    */
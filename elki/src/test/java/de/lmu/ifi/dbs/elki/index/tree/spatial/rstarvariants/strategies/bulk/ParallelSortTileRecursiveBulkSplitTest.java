@@ -0,0 +1,91 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+
+/**
+ * Unit test comparing the parallel and sequential STR bulk splits.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ParallelSortTileRecursiveBulkSplitTest {
+  @Test
+  public void testSameTiles() {
+    final int size = 100000, maxEntries = 50;
+    Random rnd = new Random(0L);
+    List<DoubleVector> data = new ArrayList<>(size);
+    for(int i = 0; i < size; i++) {
+      data.add(DoubleVector.wrap(new double[] { rnd.nextDouble(), rnd.nextDouble(), rnd.nextDouble() }));
+    }
+    List<List<DoubleVector>> seq = SortTileRecursiveBulkSplit.STATIC.partition(new ArrayList<>(data), 1, maxEntries);
+    List<List<DoubleVector>> par = ParallelSortTileRecursiveBulkSplit.STATIC.partition(new ArrayList<>(data), 1, maxEntries);
+    assertEquals("Number of partitions differs.", seq.size(), par.size());
+    IdentityHashMap<DoubleVector, Integer> assignment = new IdentityHashMap<>(size);
+    for(int i = 0; i < seq.size(); i++) {
+      for(DoubleVector v : seq.get(i)) {
+        assignment.put(v, i);
+      }
+    }
+    int total = 0;
+    for(int i = 0; i < par.size(); i++) {
+      List<DoubleVector> part = par.get(i);
+      assertEquals("Partition size differs.", seq.get(i).size(), part.size());
+      assertTrue("Partition too large.", part.size() <= maxEntries);
+      for(DoubleVector v : part) {
+        assertEquals("Object assigned to a different tile.", Integer.valueOf(i), assignment.get(v));
+      }
+      total += part.size();
+    }
+    assertEquals("Objects lost.", size, total);
+  }
+
+  @Test
+  public void testMapPartitionsOrder() {
+    List<List<Integer>> partitions = new ArrayList<>();
+    for(int i = 0; i < 1000; i++) {
+      List<Integer> part = new ArrayList<>();
+      part.add(i);
+      partitions.add(part);
+    }
+    List<Integer> res = ParallelSortTileRecursiveBulkSplit.STATIC.mapPartitions(partitions, new BulkSplit.PartitionMapper<Integer, Integer>() {
+      @Override
+      public Integer map(List<Integer> partition) {
+        return partition.get(0) * 2;
+      }
+    });
+    assertEquals("Number of results differs.", partitions.size(), res.size());
+    for(int i = 0; i < res.size(); i++) {
+      assertEquals("Result out of order.", Integer.valueOf(i * 2), res.get(i));
+    }
+  }
+}
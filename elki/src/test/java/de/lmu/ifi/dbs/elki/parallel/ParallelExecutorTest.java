@@ -0,0 +1,122 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.parallel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor.Scheduling;
+import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
+
+/**
+ * Test the parallel executor scheduling strategies.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ParallelExecutorTest {
+  /**
+   * Number of objects to process.
+   */
+  private static final int SIZE = 10007;
+
+  @Test
+  public void testStatic() {
+    testVisitOnce(Scheduling.STATIC);
+  }
+
+  @Test
+  public void testDynamic() {
+    testVisitOnce(Scheduling.DYNAMIC);
+  }
+
+  @Test
+  public void testFailureCancels() {
+    final DBIDRange ids = DBIDUtil.generateStaticDBIDRange(SIZE);
+    Processor failing = new Processor() {
+      @Override
+      public Instance instantiate(Executor executor) {
+        return new Instance() {
+          @Override
+          public void map(DBIDRef id) {
+            if(ids.getOffset(id) == 100) {
+              throw new IllegalStateException("Expected failure.");
+            }
+          }
+        };
+      }
+
+      @Override
+      public void cleanup(Instance inst) {
+        // Nothing to do.
+      }
+    };
+    try {
+      ParallelExecutor.run(ids, Scheduling.DYNAMIC, null, null, failing);
+      fail("Exception was not propagated.");
+    }
+    catch(RuntimeException e) {
+      assertTrue("Wrong cause.", e.getCause().getCause() instanceof IllegalStateException);
+    }
+  }
+
+  /**
+   * Verify that every object is processed exactly once.
+   *
+   * @param scheduling Scheduling strategy
+   */
+  private void testVisitOnce(Scheduling scheduling) {
+    final DBIDRange ids = DBIDUtil.generateStaticDBIDRange(SIZE);
+    final AtomicIntegerArray counts = new AtomicIntegerArray(SIZE);
+    final AtomicInteger instances = new AtomicInteger(), cleanups = new AtomicInteger();
+    Processor counter = new Processor() {
+      @Override
+      public Instance instantiate(Executor executor) {
+        instances.incrementAndGet();
+        return new Instance() {
+          @Override
+          public void map(DBIDRef id) {
+            counts.incrementAndGet(ids.getOffset(id));
+          }
+        };
+      }
+
+      @Override
+      public void cleanup(Instance inst) {
+        cleanups.incrementAndGet();
+      }
+    };
+    ParallelExecutor.run(ids, scheduling, null, null, counter);
+    for(int i = 0; i < SIZE; i++) {
+      assertEquals("Object not processed exactly once: " + i, 1, counts.get(i));
+    }
+    assertEquals("Not every instance was cleaned up.", instances.get(), cleanups.get());
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialPointLeafEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeNode;
+
+/**
+ * Test the memory-mapped page file, including reopening an existing file.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class MappedPageFileTest {
+  /**
+   * Page size to use.
+   */
+  private static final int PAGESIZE = 256;
+
+  /**
+   * Number of pages to write.
+   */
+  private static final int NUMPAGES = 100;
+
+  @Test
+  public void testWriteReopen() throws IOException {
+    File file = File.createTempFile("ELKIUnitTest", null);
+    file.delete();
+    file.deleteOnExit();
+
+    MappedPageFile<RStarTreeNode> pf = new MappedPageFile<>(PAGESIZE, file.getPath(), RStarTreeNode.class);
+    assertFalse("File should be new.", pf.initialize(new TreeIndexHeader(PAGESIZE, 5, 5, 2, 2)));
+    for(int i = 0; i < NUMPAGES; i++) {
+      RStarTreeNode node = new RStarTreeNode(5, true);
+      for(int j = 0; j < 3; j++) {
+        node.addLeafEntry(new SpatialPointLeafEntry(DBIDUtil.importInteger(i * 3 + j), new double[] { i, j }));
+      }
+      assertEquals("Page ids not assigned consecutively.", i, pf.writePage(node));
+    }
+    pf.deletePage(7);
+    assertNull("Deleted page was read.", pf.readPage(7));
+    checkPage(pf.readPage(42), 42);
+    pf.close();
+
+    MappedPageFile<RStarTreeNode> pf2 = new MappedPageFile<>(PAGESIZE, file.getPath(), RStarTreeNode.class);
+    assertTrue("File should exist.", pf2.initialize(new TreeIndexHeader()));
+    assertEquals("Next page id not restored.", NUMPAGES, pf2.getNextPageID());
+    for(int i = 0; i < NUMPAGES; i++) {
+      if(i == 7) {
+        assertNull("Deleted page was read.", pf2.readPage(i));
+        continue;
+      }
+      checkPage(pf2.readPage(i), i);
+    }
+    // The deleted page must be reused.
+    RStarTreeNode node = new RStarTreeNode(5, true);
+    assertEquals("Empty page not reused.", 7, pf2.writePage(node));
+    pf2.close();
+    file.delete();
+  }
+
+  /**
+   * Validate the contents of a page.
+   *
+   * @param node Node read
+   * @param i Page number
+   */
+  private void checkPage(RStarTreeNode node, int i) {
+    assertEquals("Page id does not match.", i, node.getPageID());
+    assertEquals("Number of entries does not match.", 3, node.getNumEntries());
+    for(int j = 0; j < 3; j++) {
+      SpatialEntry e = node.getEntry(j);
+      assertEquals("DBID does not match.", i * 3 + j, DBIDUtil.asInteger(((SpatialPointLeafEntry) e).getDBID()));
+      assertEquals("Value does not match.", i, e.getMin(0), 0.);
+      assertEquals("Value does not match.", j, e.getMin(1), 0.);
+    }
+  }
+}
@@ -0,0 +1,178 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Test the sharded 2Q cache under concurrent reads and writes.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ShardedTwoQueueCacheTest {
+  /**
+   * Page size to use.
+   */
+  private static final int PAGESIZE = 64;
+
+  /**
+   * Number of pages.
+   */
+  private static final int NUMPAGES = 64;
+
+  /**
+   * Number of threads writing their own pages.
+   */
+  private static final int WRITERS = 4;
+
+  /**
+   * Number of threads reading random pages.
+   */
+  private static final int READERS = 4;
+
+  /**
+   * Number of operations per thread.
+   */
+  private static final int OPERATIONS = 20000;
+
+  @Test
+  public void testConcurrentReadWrite() throws InterruptedException {
+    final ShardedTwoQueueCache<VersionedPage> cache = new ShardedTwoQueueCache<>(8 * PAGESIZE, 4, new MemoryPageFile<VersionedPage>(PAGESIZE));
+    cache.initialize(new DefaultPageHeader(PAGESIZE));
+    for(int i = 0; i < NUMPAGES; i++) {
+      assertEquals(i, cache.writePage(new VersionedPage(-1, 0)));
+    }
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    // Every writer owns the pages congruent to its number, and must always
+    // read back the version it wrote last.
+    final int[] versions = new int[NUMPAGES];
+    Thread[] threads = new Thread[WRITERS + READERS];
+    for(int t = 0; t < WRITERS; t++) {
+      final int owner = t;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          Random rnd = new Random(owner);
+          for(int i = 0; i < OPERATIONS && failure.get() == null; i++) {
+            final int pageID = rnd.nextInt(NUMPAGES / WRITERS) * WRITERS + owner;
+            cache.writePage(new VersionedPage(pageID, ++versions[pageID]));
+            VersionedPage page = cache.readPage(pageID);
+            if(page.version != versions[pageID]) {
+              failure.compareAndSet(null, new AssertionError("Stale page " + pageID + ": version " + page.version + " instead of " + versions[pageID]));
+            }
+          }
+        }
+      };
+    }
+    for(int t = WRITERS; t < threads.length; t++) {
+      final int seed = t;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          Random rnd = new Random(seed);
+          for(int i = 0; i < OPERATIONS && failure.get() == null; i++) {
+            if(cache.readPage(rnd.nextInt(NUMPAGES)) == null) {
+              failure.compareAndSet(null, new AssertionError("Page lost."));
+            }
+          }
+        }
+      };
+    }
+    for(Thread thread : threads) {
+      thread.start();
+    }
+    for(Thread thread : threads) {
+      thread.join();
+    }
+    if(failure.get() != null) {
+      throw new AssertionError(failure.get().getMessage());
+    }
+    // Deleted pages must not be reloaded.
+    cache.deletePage(3);
+    assertNull("Deleted page was read.", cache.readPage(3));
+    cache.flush();
+    for(int i = 0; i < NUMPAGES; i++) {
+      if(i != 3) {
+        assertEquals("Page not written back.", versions[i], cache.readPage(i).version);
+      }
+    }
+  }
+
+  /**
+   * Page with a version number.
+   *
+   * @author Erich Schubert
+   */
+  private static class VersionedPage implements Page {
+    /**
+     * Page id.
+     */
+    int id;
+
+    /**
+     * Version number.
+     */
+    final int version;
+
+    /**
+     * Dirty flag.
+     */
+    boolean dirty;
+
+    /**
+     * Constructor.
+     *
+     * @param id Page id
+     * @param version Version number
+     */
+    VersionedPage(int id, int version) {
+      this.id = id;
+      this.version = version;
+    }
+
+    @Override
+    public int getPageID() {
+      return id;
+    }
+
+    @Override
+    public void setPageID(int id) {
+      this.id = id;
+    }
+
+    @Override
+    public boolean isDirty() {
+      return dirty;
+    }
+
+    @Override
+    public void setDirty(boolean dirty) {
+      this.dirty = dirty;
+    }
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.utilities.datastructures.unionfind;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Unit test for the concurrent union find.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ConcurrentUnionFindIntegerTest {
+  @Test
+  public void testTree() {
+    ConcurrentUnionFindInteger uf = new ConcurrentUnionFindInteger(8);
+    assertFalse(uf.isConnected(0, 7));
+    uf.union(0, 1);
+    assertTrue(uf.isConnected(0, 1));
+    uf.union(2, 3);
+    assertFalse(uf.isConnected(0, 2));
+    uf.union(0, 2);
+    assertTrue(uf.isConnected(3, 1));
+    uf.union(4, 5);
+    uf.union(6, 7);
+    uf.union(4, 6);
+    assertFalse(uf.isConnected(0, 4));
+    assertEquals("Representative is not the minimum.", 4, uf.find(7));
+    uf.union(7, 3);
+    for(int i = 0; i < 8; i++) {
+      assertEquals("Representative is not the minimum.", 0, uf.find(i));
+      for(int j = 0; j < 8; j++) {
+        assertTrue(uf.isConnected(i, j));
+      }
+    }
+  }
+
+  @Test
+  public void testBruteForce() {
+    final Random r = new Random(0L);
+    final int size = 100;
+    ConcurrentUnionFindInteger uf = new ConcurrentUnionFindInteger(size);
+
+    int[] c = new int[size];
+    for(int i = 0; i < size; i++) {
+      c[i] = i;
+    }
+    int numc = size;
+    while(numc > 1) {
+      // Two randoms, with o1 < o2
+      int o2 = r.nextInt(size - 1) + 1, o1 = r.nextInt(o2);
+      final int c1 = c[o1], c2 = c[o2];
+      assertEquals(c1 == c2, uf.isConnected(o1, o2));
+      uf.union(o1, o2); // always
+      if(c1 != c2) {
+        for(int j = 0; j < size; j++) {
+          if(c[j] == c1) {
+            c[j] = c2;
+          }
+        }
+        --numc;
+      }
+    }
+  }
+
+  /**
+   * Connect chains from multiple threads, in interleaved order.
+   */
+  @Test
+  public void testConcurrent() throws Exception {
+    final int size = 100000, threads = 4;
+    final ConcurrentUnionFindInteger uf = new ConcurrentUnionFindInteger(size);
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      for(int t = 0; t < threads; t++) {
+        final int seed = t;
+        futures.add(pool.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            Random r = new Random(seed);
+            // Two components: even and odd numbers.
+            for(int i = 0; i < size; i++) {
+              int a = r.nextInt(size - 2);
+              uf.union(a, a + 2);
+            }
+            for(int i = 0; i + 2 < size; i++) {
+              uf.union(i, i + 2);
+            }
+            return null;
+          }
+        }));
+      }
+      for(Future<Void> f : futures) {
+        f.get();
+      }
+    }
+    finally {
+      pool.shutdown();
+    }
+    for(int i = 0; i < size; i++) {
+      assertEquals(i & 1, uf.find(i));
+    }
+    assertFalse(uf.isConnected(0, 1));
+  }
+}